@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceMessage;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceTimeoutException;
+import uk.ac.ebi.ena.webin.cli.utils.Deadline;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Analysis;
+
+/** Retrieves analysis references that can be referenced by the submission account. */
+public class AnalysisService extends ReferenceService<Analysis> {
+
+  public static final String SERVICE_NAME = "Analysis";
+
+  public static class Builder extends AbstractReferenceBuilder<AnalysisService> {
+    @Override
+    public AnalysisService build() {
+      return new AnalysisService(this);
+    }
+  }
+
+  public AnalysisService(AbstractReferenceBuilder<AnalysisService> builder) {
+    super(builder);
+  }
+
+  /** Retrieves the analysis within the timeout given to the builder. */
+  public Analysis getAnalysis(String analysisId) {
+    return getReference(analysisId);
+  }
+
+  /**
+   * Retrieves the analysis before the deadline.
+   *
+   * @throws ServiceTimeoutException if the deadline expires.
+   */
+  public Analysis getAnalysis(String analysisId, Deadline deadline) {
+    return getReference(analysisId, deadline);
+  }
+
+  /** Asynchronous counterpart of {@link #getAnalysis(String, Deadline)}. */
+  public CompletableFuture<Analysis> getAnalysisAsync(String analysisId, Deadline deadline) {
+    return getReferenceAsync(analysisId, deadline);
+  }
+
+  /**
+   * Retrieves several analyses concurrently within the timeout given to the builder. An analysis
+   * that cannot be retrieved does not fail the batch. Instead, the error is returned in the batch
+   * result.
+   */
+  public BatchResult<Analysis> getAnalyses(Collection<String> analysisIds) {
+    return getReferences(analysisIds);
+  }
+
+  /** Retrieves several analyses as {@link #getAnalyses(Collection)} does before the deadline. */
+  public BatchResult<Analysis> getAnalyses(Collection<String> analysisIds, Deadline deadline) {
+    return getReferences(analysisIds, deadline);
+  }
+
+  /** Asynchronous counterpart of {@link #getAnalyses(Collection, Deadline)}. */
+  public CompletableFuture<BatchResult<Analysis>> getAnalysesAsync(
+      Collection<String> analysisIds, Deadline deadline) {
+    return getReferencesAsync(analysisIds, deadline);
+  }
+
+  @Override
+  protected String getReferenceType() {
+    return "analysis";
+  }
+
+  @Override
+  protected ServiceMessage getValidationErrorMessage() {
+    return ServiceMessage.ANALYSIS_SERVICE_VALIDATION_ERROR;
+  }
+
+  @Override
+  protected Analysis fetchReference(String analysisId) {
+    AnalysisResponse response =
+        getRestTemplate()
+            .exchange(
+                resolveAgainstWebinRestV1Uri("cli/reference/analysis/{id}"),
+                HttpMethod.GET,
+                new HttpEntity<>(getAuthHeader()),
+                AnalysisResponse.class,
+                analysisId)
+            .getBody();
+
+    if (response == null || !response.canBeReferenced) {
+      return null;
+    }
+
+    return new Analysis(response.id, response.alias);
+  }
+
+  private static class AnalysisResponse {
+    public String id;
+    public String alias;
+    public boolean canBeReferenced;
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.ena.webin.cli.utils.AsyncUtils;
+
+/**
+ * Caches an authentication token until shortly before it expires. The expiry time is decoded from
+ * the {@code exp} claim of the JWT token. All threads share the same token and at most one thread
+ * at a time fetches a new one.
+ *
+ * <p>A token that has been used since it was fetched is refreshed in the background shortly before
+ * it expires so that callers do not have to wait for the authentication service. A shared timer
+ * thread only starts the refresh. The refresh itself, which blocks on the authentication service
+ * and its retries, runs on the given executor.
+ */
+class AuthTokenCache {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AuthTokenCache.class);
+
+  static final Duration DEFAULT_REFRESH_BEFORE_EXPIRY = Duration.ofMinutes(5);
+
+  /** Tokens are not handed out if they would expire before a request could use them. */
+  private static final Duration EXPIRY_SKEW = Duration.ofSeconds(30);
+
+  /** How long to reuse a token whose expiry time cannot be decoded. */
+  private static final Duration UNKNOWN_EXPIRY_LIFETIME = Duration.ofMinutes(10);
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  private static final ScheduledExecutorService REFRESH_SCHEDULER =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread thread = new Thread(r, "webin-cli-auth-token-refresh");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final Supplier<String> tokenSupplier;
+  private final Duration refreshBeforeExpiry;
+  private final Clock clock;
+  private final Executor refreshExecutor;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private volatile CachedToken token;
+
+  private static class CachedToken {
+    private final String value;
+    private final Instant expiresAt;
+    private volatile boolean used;
+
+    private CachedToken(String value, Instant expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  AuthTokenCache(Supplier<String> tokenSupplier) {
+    this(tokenSupplier, AsyncUtils.getDefaultExecutor());
+  }
+
+  /** Caches tokens from the supplier. Tokens are refreshed in the background on the executor. */
+  AuthTokenCache(Supplier<String> tokenSupplier, Executor refreshExecutor) {
+    this(tokenSupplier, DEFAULT_REFRESH_BEFORE_EXPIRY, Clock.systemUTC(), refreshExecutor);
+  }
+
+  AuthTokenCache(Supplier<String> tokenSupplier, Duration refreshBeforeExpiry, Clock clock) {
+    this(tokenSupplier, refreshBeforeExpiry, clock, AsyncUtils.getDefaultExecutor());
+  }
+
+  AuthTokenCache(
+      Supplier<String> tokenSupplier,
+      Duration refreshBeforeExpiry,
+      Clock clock,
+      Executor refreshExecutor) {
+    this.tokenSupplier = tokenSupplier;
+    this.refreshBeforeExpiry = refreshBeforeExpiry;
+    this.clock = clock;
+    this.refreshExecutor = refreshExecutor;
+  }
+
+  /** Returns a cached token or fetches a new one if there is no usable cached token. */
+  String getToken() {
+    CachedToken current = token;
+    if (isUsable(current)) {
+      current.used = true;
+      return current.value;
+    }
+
+    lock.lock();
+    try {
+      // Another thread may have fetched a new token while this one was waiting for the lock.
+      current = token;
+      if (!isUsable(current)) {
+        current = fetch();
+      }
+      current.used = true;
+      return current.value;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Discards the given token if it is still cached, for example after it has been rejected by the
+   * server. A new token will be fetched by the next {@link #getToken()} call.
+   */
+  void invalidate(String value) {
+    lock.lock();
+    try {
+      CachedToken current = token;
+      if (current != null && current.value.equals(value)) {
+        token = null;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean isUsable(CachedToken cachedToken) {
+    return cachedToken != null
+        && clock.instant().isBefore(cachedToken.expiresAt.minus(EXPIRY_SKEW));
+  }
+
+  /** Must be called while holding the lock. */
+  private CachedToken fetch() {
+    String value = tokenSupplier.get();
+
+    Instant now = clock.instant();
+    Instant expiresAt = decodeExpiry(value);
+    if (expiresAt == null) {
+      expiresAt = now.plus(UNKNOWN_EXPIRY_LIFETIME);
+    }
+
+    CachedToken fetchedToken = new CachedToken(value, expiresAt);
+    token = fetchedToken;
+    scheduleRefresh(fetchedToken, now);
+    return fetchedToken;
+  }
+
+  private void scheduleRefresh(CachedToken cachedToken, Instant now) {
+    Duration lifetime = Duration.between(now, cachedToken.expiresAt);
+    // Short-lived tokens are refreshed half way through their lifetime.
+    Duration refreshBefore =
+        refreshBeforeExpiry.compareTo(lifetime.dividedBy(2)) < 0
+            ? refreshBeforeExpiry
+            : lifetime.dividedBy(2);
+    long delayMillis = lifetime.minus(refreshBefore).toMillis();
+    if (delayMillis <= 0) {
+      return;
+    }
+    REFRESH_SCHEDULER.schedule(
+        () -> startRefresh(cachedToken), delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /** Runs on the timer thread and hands the refresh over to the refresh executor. */
+  private void startRefresh(CachedToken expiringToken) {
+    try {
+      refreshExecutor.execute(() -> refresh(expiringToken));
+    } catch (RejectedExecutionException ex) {
+      LOGGER.warn("Failed to refresh authentication token in the background.", ex);
+    }
+  }
+
+  private void refresh(CachedToken expiringToken) {
+    if (!lock.tryLock()) {
+      // A caller is already fetching a new token.
+      return;
+    }
+    try {
+      // Tokens that have not been used are not refreshed. The next caller will fetch a new token
+      // when it needs one.
+      if (token != expiringToken || !expiringToken.used) {
+        return;
+      }
+      fetch();
+    } catch (RuntimeException ex) {
+      LOGGER.warn("Failed to refresh authentication token in the background.", ex);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Returns the expiry time from the JWT token's {@code exp} claim or null if not available. */
+  static Instant decodeExpiry(String jwt) {
+    if (jwt == null) {
+      return null;
+    }
+    String[] parts = jwt.trim().split("\\.");
+    if (parts.length < 2) {
+      return null;
+    }
+    try {
+      byte[] payload = Base64.getUrlDecoder().decode(parts[1]);
+      JsonNode claims = OBJECT_MAPPER.readTree(new String(payload, StandardCharsets.UTF_8));
+      if (claims == null || !claims.hasNonNull("exp") || !claims.get("exp").isNumber()) {
+        return null;
+      }
+      return Instant.ofEpochSecond(claims.get("exp").asLong());
+    } catch (Exception ex) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Result of a batch lookup. Contains the references that were retrieved and the errors for those
+ * that could not be retrieved, both keyed by the trimmed accession given by the caller.
+ */
+public class BatchResult<T> {
+
+  private final Map<String, T> results = new LinkedHashMap<>();
+  private final Map<String, RuntimeException> errors = new LinkedHashMap<>();
+
+  void addResult(String id, T result) {
+    results.put(id, result);
+  }
+
+  void addError(String id, RuntimeException error) {
+    errors.put(id, error);
+  }
+
+  /** Returns the retrieved references. */
+  public Map<String, T> getResults() {
+    return Collections.unmodifiableMap(results);
+  }
+
+  /** Returns the errors for the references that could not be retrieved. */
+  public Map<String, RuntimeException> getErrors() {
+    return Collections.unmodifiableMap(errors);
+  }
+
+  /** Returns the retrieved reference or null if it could not be retrieved. */
+  public T get(String id) {
+    return results.get(id.trim());
+  }
+
+  /** Returns the error or null if the reference was retrieved. */
+  public RuntimeException getError(String id) {
+    return errors.get(id.trim());
+  }
+
+  /** Returns true if all references were retrieved. */
+  public boolean isSuccessful() {
+    return errors.isEmpty();
+  }
+}
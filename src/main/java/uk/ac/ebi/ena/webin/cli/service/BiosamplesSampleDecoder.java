@@ -0,0 +1,287 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Attribute;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Sample;
+
+/**
+ * Decodes Biosamples sample JSON without building a JSON tree. Only the accession, name, taxId and
+ * characteristics fields are read. All other fields, such as relationships and structured data,
+ * are skipped.
+ *
+ * <p>Pages of search results are decoded in the same way, one sample at a time while the page is
+ * being read.
+ */
+class BiosamplesSampleDecoder {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private static final String ORGANISM_ATTRIBUTE_NAME = "organism";
+
+  private BiosamplesSampleDecoder() {}
+
+  /** A page of samples returned by the Biosamples search API. */
+  static class SamplePage {
+    private final List<Sample> samples;
+    private final int number;
+    private final int totalPages;
+
+    SamplePage(List<Sample> samples, int number, int totalPages) {
+      this.samples = samples;
+      this.number = number;
+      this.totalPages = totalPages;
+    }
+
+    List<Sample> getSamples() {
+      return samples;
+    }
+
+    /** Returns the zero-based page number. */
+    int getNumber() {
+      return number;
+    }
+
+    int getTotalPages() {
+      return totalPages;
+    }
+
+    boolean hasNextPage() {
+      return number + 1 < totalPages;
+    }
+  }
+
+  static Sample decode(InputStream inputStream) throws IOException {
+    try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+      return decode(parser);
+    }
+  }
+
+  static Sample decode(byte[] content) throws IOException {
+    try (JsonParser parser = JSON_FACTORY.createParser(content)) {
+      return decode(parser);
+    }
+  }
+
+  /** Decodes the sample object starting at the next token. */
+  static Sample decode(JsonParser parser) throws IOException {
+    if (parser.nextToken() != JsonToken.START_OBJECT) {
+      throw new JsonParseException(parser, "Expected Biosamples sample JSON object.");
+    }
+    return decodeSample(parser);
+  }
+
+  /**
+   * Decodes a page of search results in the HAL format used by the Biosamples search API. The
+   * samples are read from {@code _embedded.samples} and the paging information from {@code page}.
+   */
+  static SamplePage decodePage(InputStream inputStream) throws IOException {
+    try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new JsonParseException(parser, "Expected Biosamples search JSON object.");
+      }
+
+      List<Sample> samples = new ArrayList<>();
+      int number = 0;
+      int totalPages = 0;
+
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String fieldName = parser.currentName();
+        JsonToken token = parser.nextToken();
+        if (fieldName.equals("_embedded") && token == JsonToken.START_OBJECT) {
+          while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            boolean isSamples = parser.currentName().equals("samples");
+            if (parser.nextToken() == JsonToken.START_ARRAY && isSamples) {
+              while (parser.nextToken() == JsonToken.START_OBJECT) {
+                samples.add(decodeSample(parser));
+              }
+            } else {
+              parser.skipChildren();
+            }
+          }
+        } else if (fieldName.equals("page") && token == JsonToken.START_OBJECT) {
+          while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String pageFieldName = parser.currentName();
+            Integer value = readInteger(parser, parser.nextToken());
+            if (pageFieldName.equals("number") && value != null) {
+              number = value;
+            } else if (pageFieldName.equals("totalPages") && value != null) {
+              totalPages = value;
+            }
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
+
+      return new SamplePage(samples, number, totalPages);
+    }
+  }
+
+  /** Decodes the sample object whose start token has just been read. */
+  private static Sample decodeSample(JsonParser parser) throws IOException {
+    Sample sample = new Sample();
+    Integer taxId = null;
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String fieldName = parser.currentName();
+      JsonToken token = parser.nextToken();
+      switch (fieldName) {
+        case "accession":
+          sample.setBioSampleId(readText(parser, token));
+          break;
+        case "name":
+          sample.setName(readText(parser, token));
+          break;
+        case "taxId":
+          taxId = readInteger(parser, token);
+          break;
+        case "characteristics":
+          if (token == JsonToken.START_OBJECT) {
+            sample.setAttributes(readCharacteristics(parser));
+          } else {
+            parser.skipChildren();
+          }
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+
+    Attribute organismAttribute = sample.getAttribute(ORGANISM_ATTRIBUTE_NAME);
+    if (organismAttribute != null) {
+      sample.setOrganism(organismAttribute.getValue());
+    }
+
+    if (taxId == null && organismAttribute != null) {
+      taxId = extractTaxId(organismAttribute.getIri());
+    }
+    sample.setTaxId(taxId);
+
+    return sample;
+  }
+
+  /** Reads characteristics given as an object of characteristic name to array of values. */
+  private static List<Attribute> readCharacteristics(JsonParser parser) throws IOException {
+    List<Attribute> attributes = new ArrayList<>();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String characteristicName = parser.currentName();
+      if (parser.nextToken() != JsonToken.START_ARRAY) {
+        parser.skipChildren();
+        continue;
+      }
+      while (parser.nextToken() == JsonToken.START_OBJECT) {
+        attributes.add(readCharacteristic(parser, characteristicName));
+      }
+    }
+    return attributes;
+  }
+
+  private static Attribute readCharacteristic(JsonParser parser, String characteristicName)
+      throws IOException {
+    String text = null;
+    String unit = null;
+    Set<String> iris = null;
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String fieldName = parser.currentName();
+      JsonToken token = parser.nextToken();
+      switch (fieldName) {
+        case "text":
+          text = readText(parser, token);
+          break;
+        case "unit":
+          unit = readText(parser, token);
+          break;
+        case "ontologyTerms":
+          if (token == JsonToken.START_ARRAY) {
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+              if (token == JsonToken.VALUE_STRING) {
+                if (iris == null) {
+                  iris = new TreeSet<>();
+                }
+                iris.add(parser.getText());
+              } else {
+                parser.skipChildren();
+              }
+            }
+          }
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+
+    return new Attribute(
+        characteristicName, text, iris != null ? iris : Collections.emptySet(), unit, null);
+  }
+
+  private static String readText(JsonParser parser, JsonToken token) throws IOException {
+    if (token == JsonToken.VALUE_NULL) {
+      return null;
+    }
+    if (token.isScalarValue()) {
+      return parser.getText();
+    }
+    parser.skipChildren();
+    return null;
+  }
+
+  private static Integer readInteger(JsonParser parser, JsonToken token) throws IOException {
+    if (token == JsonToken.VALUE_NUMBER_INT) {
+      return parser.getIntValue();
+    }
+    if (token == JsonToken.VALUE_NULL) {
+      return null;
+    }
+    String text = readText(parser, token);
+    try {
+      return text != null ? Integer.valueOf(text.trim()) : null;
+    } catch (NumberFormatException ex) {
+      return null;
+    }
+  }
+
+  private static Integer extractTaxId(Set<String> iris) {
+    for (String iri : iris) {
+      int taxId = extractTaxIdFromIri(iri);
+      if (taxId > 0) {
+        return taxId;
+      }
+    }
+    return null;
+  }
+
+  private static int extractTaxIdFromIri(String iri) {
+    if (iri.isEmpty()) {
+      return 0;
+    } else {
+      String[] segments = iri.split("NCBITaxon_");
+
+      try {
+        return Integer.parseInt(segments[segments.length - 1]);
+      } catch (NumberFormatException ex) {
+        return 0;
+      }
+    }
+  }
+}
@@ -10,10 +10,21 @@
  */
 package uk.ac.ebi.ena.webin.cli.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.*;
@@ -22,9 +33,13 @@ import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
+import uk.ac.ebi.ena.webin.cli.service.BiosamplesSampleDecoder.SamplePage;
 import uk.ac.ebi.ena.webin.cli.service.exception.ServiceException;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceTimeoutException;
+import uk.ac.ebi.ena.webin.cli.utils.AsyncUtils;
+import uk.ac.ebi.ena.webin.cli.utils.CircuitBreaker;
+import uk.ac.ebi.ena.webin.cli.utils.Deadline;
 import uk.ac.ebi.ena.webin.cli.utils.RetryUtils;
-import uk.ac.ebi.ena.webin.cli.validator.reference.Attribute;
 import uk.ac.ebi.ena.webin.cli.validator.reference.Sample;
 
 /**
@@ -45,29 +60,219 @@ class BiosamplesService {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(BiosamplesService.class);
 
+  private static final List<MediaType> JSON_MEDIA_TYPES =
+      Arrays.asList(MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+
+  /** The maximum number of accessions looked up by one search request. */
+  static final int SEARCH_BATCH_SIZE = 50;
+
   private final String webinAuthUri;
   private final String biosamplesUri;
   private final String biosamplesWebinUserName;
   private final String biosamplesWebinPassword;
+  private final RestTemplate restTemplate;
+  private final ServiceMetrics metrics;
+
+  /** Caches the authentication token used when the caller does not provide one. */
+  private final AuthTokenCache authTokenCache;
 
   public BiosamplesService(
       String webinAuthUri,
       String biosamplesUri,
       String biosamplesWebinUserName,
       String biosamplesWebinPassword) {
+    this(
+        webinAuthUri,
+        biosamplesUri,
+        biosamplesWebinUserName,
+        biosamplesWebinPassword,
+        HttpTransport.getDefault(),
+        ServiceMetrics.NOOP);
+  }
+
+  public BiosamplesService(
+      String webinAuthUri,
+      String biosamplesUri,
+      String biosamplesWebinUserName,
+      String biosamplesWebinPassword,
+      HttpTransport httpTransport,
+      ServiceMetrics metrics) {
+    this(
+        webinAuthUri,
+        biosamplesUri,
+        biosamplesWebinUserName,
+        biosamplesWebinPassword,
+        httpTransport,
+        metrics,
+        AsyncUtils.getDefaultExecutor());
+  }
+
+  /**
+   * Creates the service. The cached authentication token is refreshed in the background on the
+   * given executor.
+   */
+  public BiosamplesService(
+      String webinAuthUri,
+      String biosamplesUri,
+      String biosamplesWebinUserName,
+      String biosamplesWebinPassword,
+      HttpTransport httpTransport,
+      ServiceMetrics metrics,
+      Executor asyncExecutor) {
 
     this.webinAuthUri = webinAuthUri;
     this.biosamplesUri = biosamplesUri;
     this.biosamplesWebinUserName = biosamplesWebinUserName;
     this.biosamplesWebinPassword = biosamplesWebinPassword;
+    this.metrics = metrics != null ? metrics : ServiceMetrics.NOOP;
+    this.restTemplate = httpTransport.getRestTemplate(this.metrics);
+    httpTransport.registerServiceUri(webinAuthUri);
+    httpTransport.registerServiceUri(biosamplesUri);
+    this.authTokenCache = new AuthTokenCache(this::getAuthToken, asyncExecutor);
   }
 
   public Sample getSample(String accession, String webinAuthToken) {
-    if (webinAuthToken == null || webinAuthToken.isEmpty()) {
-      webinAuthToken = getAuthToken();
+    return getSample(accession, webinAuthToken, Deadline.none());
+  }
+
+  public Sample getSample(String accession, String webinAuthToken, Deadline deadline) {
+    return getSample(accession, webinAuthToken, null, deadline);
+  }
+
+  /**
+   * Retrieves the sample, or revalidates a cached one. If a cache entry with validators is given,
+   * the request is made conditional and the cached sample is returned if it has not been modified.
+   * Samples are returned as {@link ValidatedSample}s if the response has validators.
+   */
+  public Sample getSample(
+      String accession, String webinAuthToken, SampleCacheEntry cachedEntry, Deadline deadline) {
+    return callWithAuthToken(
+        webinAuthToken,
+        authToken -> getSampleInternal(authToken, accession, cachedEntry, deadline));
+  }
+
+  /**
+   * Retrieves several samples using the Biosamples search API, filtering by up to {@link
+   * #SEARCH_BATCH_SIZE} accessions per request. Samples not returned by the search are retrieved
+   * one at a time.
+   *
+   * @return The samples keyed by the given accessions. The value is null if the sample does not
+   *     exist.
+   */
+  public Map<String, Sample> getSamples(
+      Collection<String> accessions, String webinAuthToken, Deadline deadline) {
+    Map<String, Sample> foundSamples = searchSamples(accessions, webinAuthToken, deadline);
+
+    Map<String, Sample> samples = new LinkedHashMap<>();
+    for (String accession : accessions) {
+      Sample sample = foundSamples.get(accession.trim().toUpperCase());
+      samples.put(
+          accession, sample != null ? sample : getSample(accession, webinAuthToken, deadline));
+    }
+    return samples;
+  }
+
+  /**
+   * Retrieves several samples using the Biosamples search API. Samples that do not exist, or that
+   * are not returned by the search, are missing from the result.
+   *
+   * @return The samples keyed by their upper case accessions.
+   */
+  public Map<String, Sample> searchSamples(
+      Collection<String> accessions, String webinAuthToken, Deadline deadline) {
+    List<String> distinctAccessions =
+        accessions.stream()
+            .map(accession -> accession.trim().toUpperCase())
+            .filter(accession -> !accession.isEmpty())
+            .distinct()
+            .collect(Collectors.toList());
+
+    Map<String, Sample> samples = new HashMap<>();
+    for (int i = 0; i < distinctAccessions.size(); i += SEARCH_BATCH_SIZE) {
+      List<String> batch =
+          distinctAccessions.subList(
+              i, Math.min(i + SEARCH_BATCH_SIZE, distinctAccessions.size()));
+      for (Sample sample :
+          callWithAuthToken(webinAuthToken, authToken -> searchBatch(authToken, batch, deadline))) {
+        if (sample.getBioSampleId() != null) {
+          samples.put(sample.getBioSampleId().toUpperCase(), sample);
+        }
+      }
     }
+    return samples;
+  }
+
+  /**
+   * Calls the function with the given token. If no token is given then the function is called with
+   * the cached token, and if the cached token is rejected, once more with a new token.
+   */
+  private <T> T callWithAuthToken(String webinAuthToken, Function<String, T> call) {
+    if (webinAuthToken != null && !webinAuthToken.isEmpty()) {
+      return call.apply(webinAuthToken);
+    }
+
+    String cachedAuthToken = authTokenCache.getToken();
+    try {
+      return call.apply(cachedAuthToken);
+    } catch (ServiceException ex) {
+      if (!isUnauthorized(ex)) {
+        throw ex;
+      }
+      // The cached token has been rejected before its expiry time. Get a new one and try again.
+      authTokenCache.invalidate(cachedAuthToken);
+      return call.apply(authTokenCache.getToken());
+    }
+  }
+
+  /**
+   * Asynchronous counterpart of {@link #getSample(String, String, Deadline)}. The retrieval runs on
+   * the given executor and waits between retries do not block a thread.
+   */
+  public CompletableFuture<Sample> getSampleAsync(
+      String accession, String webinAuthToken, Deadline deadline, Executor executor) {
+    return getSampleAsync(accession, webinAuthToken, null, deadline, executor);
+  }
+
+  /**
+   * Asynchronous counterpart of {@link #getSample(String, String, SampleCacheEntry, Deadline)}.
+   */
+  public CompletableFuture<Sample> getSampleAsync(
+      String accession,
+      String webinAuthToken,
+      SampleCacheEntry cachedEntry,
+      Deadline deadline,
+      Executor executor) {
+    if (webinAuthToken != null && !webinAuthToken.isEmpty()) {
+      return getSampleInternalAsync(webinAuthToken, accession, cachedEntry, deadline, executor);
+    }
+
+    return CompletableFuture.supplyAsync(authTokenCache::getToken, executor)
+        .thenCompose(
+            cachedAuthToken ->
+                getSampleInternalAsync(
+                        cachedAuthToken, accession, cachedEntry, deadline, executor)
+                    .handle(
+                        (sample, ex) -> {
+                          if (ex == null) {
+                            return CompletableFuture.completedFuture(sample);
+                          }
+                          Throwable cause = AsyncUtils.unwrap(ex);
+                          if (!isUnauthorized(cause)) {
+                            return CompletableFuture.<Sample>failedFuture(cause);
+                          }
+                          authTokenCache.invalidate(cachedAuthToken);
+                          return CompletableFuture.supplyAsync(authTokenCache::getToken, executor)
+                              .thenCompose(
+                                  authToken ->
+                                      getSampleInternalAsync(
+                                          authToken, accession, cachedEntry, deadline, executor));
+                        })
+                    .thenCompose(Function.identity()));
+  }
 
-    return getSampleInternal(webinAuthToken, accession);
+  private static boolean isUnauthorized(Throwable ex) {
+    return ex instanceof ServiceException
+        && ex.getCause() instanceof HttpClientErrorException.Unauthorized;
   }
 
   private String getAuthToken() {
@@ -88,134 +293,189 @@ class BiosamplesService {
 
       HttpEntity<String> entity = new HttpEntity(bodyStr, headers);
 
-      RestTemplate restTemplate = new RestTemplate();
+      // The token is shared by all callers, so its retrieval is not bound by a caller's deadline.
+      String token =
+          RetryUtils.executeWithRetry(
+              webinAuthUri,
+              Deadline.none(),
+              metrics,
+              context ->
+                  restTemplate
+                      .exchange(this.webinAuthUri, HttpMethod.POST, entity, String.class)
+                      .getBody(),
+              context -> LOGGER.warn("Retrying acquiring authentication token from webin auth."),
+              HttpServerErrorException.class,
+              ResourceAccessException.class);
+      metrics.recordTokenFetch(CircuitBreaker.getEndpoint(webinAuthUri), true);
+      return token;
+    } catch (Exception ex) {
+      metrics.recordTokenFetch(CircuitBreaker.getEndpoint(webinAuthUri), false);
+      throw new ServiceException(ex, "Unexpected error getting authentication token.");
+    }
+  }
 
+  private Sample getSampleInternal(
+      String token, String accession, SampleCacheEntry cachedEntry, Deadline deadline) {
+    try {
       return RetryUtils.executeWithRetry(
-          context ->
-              restTemplate
-                  .exchange(this.webinAuthUri, HttpMethod.POST, entity, String.class)
-                  .getBody(),
-          context -> LOGGER.warn("Retrying acquiring authentication token from webin auth."),
+          biosamplesUri,
+          deadline,
+          metrics,
+          context -> fetchSample(token, accession, cachedEntry),
+          context -> LOGGER.warn("Retrying sample retrieval from Biosamples."),
           HttpServerErrorException.class,
           ResourceAccessException.class);
     } catch (Exception ex) {
-      throw new ServiceException(ex, "Unexpected error getting authentication token.");
+      return handleSampleError(ex);
     }
   }
 
-  private Sample getSampleInternal(String token, String accession) {
-    try {
-      HttpHeaders headers = new HttpHeaders();
-      headers.setContentType(MediaType.APPLICATION_JSON);
-      headers.set("Authorization", "Bearer " + token);
-
-      URI sampleGetUri =
-          UriComponentsBuilder.fromUri(URI.create(biosamplesUri + "/v2/samples/" + accession))
-              .build(true)
-              .toUri();
-
-      RequestEntity<Void> requestEntity = new RequestEntity(headers, HttpMethod.GET, sampleGetUri);
-
-      RestTemplate restTemplate = new RestTemplate();
-
-      JsonNode result =
-          RetryUtils.executeWithRetry(
-              context -> restTemplate.exchange(requestEntity, JsonNode.class).getBody(),
-              context -> LOGGER.warn("Retrying sample retrieval from Biosamples."),
-              HttpServerErrorException.class,
-              ResourceAccessException.class);
+  private CompletableFuture<Sample> getSampleInternalAsync(
+      String token,
+      String accession,
+      SampleCacheEntry cachedEntry,
+      Deadline deadline,
+      Executor executor) {
+    return RetryUtils.executeWithRetryAsync(
+            biosamplesUri,
+            deadline,
+            metrics,
+            () -> fetchSample(token, accession, cachedEntry),
+            retryCount -> LOGGER.warn("Retrying sample retrieval from Biosamples."),
+            executor,
+            HttpServerErrorException.class,
+            ResourceAccessException.class)
+        .exceptionally(ex -> handleSampleError(AsyncUtils.unwrap(ex)));
+  }
 
-      return transform(result);
-    } catch (HttpClientErrorException.NotFound ex) {
-      return null;
-    } catch (Exception ex) {
-      throw new ServiceException(ex, "Unexpected error getting sample.");
+  /** Retrieves all pages of search results for the batch of accessions. */
+  private List<Sample> searchBatch(String token, List<String> accessions, Deadline deadline) {
+    List<Sample> samples = new ArrayList<>();
+    int page = 0;
+    while (true) {
+      int pageNumber = page;
+      SamplePage samplePage;
+      try {
+        samplePage =
+            RetryUtils.executeWithRetry(
+                biosamplesUri,
+                deadline,
+                metrics,
+                context -> fetchSearchPage(token, accessions, pageNumber),
+                context -> LOGGER.warn("Retrying sample search from Biosamples."),
+                HttpServerErrorException.class,
+                ResourceAccessException.class);
+      } catch (ServiceException ex) {
+        throw ex;
+      } catch (Exception ex) {
+        throw new ServiceException(ex, "Unexpected error searching samples.");
+      }
+      samples.addAll(samplePage.getSamples());
+      if (!samplePage.hasNextPage() || samplePage.getSamples().isEmpty()) {
+        return samples;
+      }
+      page = samplePage.getNumber() + 1;
     }
   }
 
-  private Sample transform(JsonNode sampleJson) {
-    Sample sample = new Sample();
-    sample.setBioSampleId(sampleJson.get("accession").asText());
-    sample.setName(sampleJson.get("name").asText());
+  /** Makes a single attempt to retrieve a page of search results. */
+  private SamplePage fetchSearchPage(String token, List<String> accessions, int page) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setAccept(JSON_MEDIA_TYPES);
+    headers.set("Authorization", "Bearer " + token);
 
-    sample.setAttributes(extractAttributes(sampleJson));
+    UriComponentsBuilder uriBuilder =
+        UriComponentsBuilder.fromUriString(biosamplesUri + "/samples");
+    for (String accession : accessions) {
+      uriBuilder.queryParam("filter", "acc:" + accession);
+    }
+    URI searchUri =
+        uriBuilder
+            .queryParam("size", accessions.size())
+            .queryParam("page", page)
+            .build()
+            .encode()
+            .toUri();
+
+    return restTemplate.execute(
+        searchUri,
+        HttpMethod.GET,
+        request -> request.getHeaders().putAll(headers),
+        response -> decodeSamplePage(response.getBody()));
+  }
 
-    Attribute organismAttribute =
-        sample.getAttributes().stream()
-            .filter(attribute -> attribute.getName().equalsIgnoreCase("organism"))
-            .findFirst()
-            .orElse(null);
-    if (organismAttribute != null) {
-      sample.setOrganism(organismAttribute.getValue());
+  /** Returns null if the sample does not exist. Otherwise, throws a service exception. */
+  private static Sample handleSampleError(Throwable ex) {
+    if (ex instanceof HttpClientErrorException.NotFound) {
+      return null;
+    }
+    if (ex instanceof ServiceTimeoutException) {
+      throw (ServiceTimeoutException) ex;
     }
+    throw new ServiceException(
+        ex instanceof Exception ? (Exception) ex : new RuntimeException(ex),
+        "Unexpected error getting sample.");
+  }
 
-    sample.setTaxId(extractTaxId(sampleJson, organismAttribute));
-
-    return sample;
-  }
-
-  private List<Attribute> extractAttributes(JsonNode sampleJson) {
-    List<Attribute> attributes = new ArrayList<>();
-
-    sampleJson
-        .get("characteristics")
-        .fields()
-        .forEachRemaining(
-            field -> {
-              String characteristicName = field.getKey();
-              ArrayNode characteristicItems = (ArrayNode) field.getValue();
-
-              characteristicItems.forEach(
-                  characteristicItem -> {
-                    Set<String> iris = new TreeSet<>();
-                    if (characteristicItem.hasNonNull("ontologyTerms")) {
-                      characteristicItem
-                          .get("ontologyTerms")
-                          .forEach(iri -> iris.add(iri.textValue()));
-                    }
-
-                    Attribute attribute =
-                        new Attribute(
-                            characteristicName,
-                            characteristicItem.get("text").asText(),
-                            iris,
-                            characteristicItem.has("unit")
-                                ? characteristicItem.get("unit").asText()
-                                : null,
-                            null);
-
-                    attributes.add(attribute);
-                  });
-            });
-
-    return attributes;
-  }
-
-  private Integer extractTaxId(JsonNode sampleJson, Attribute organismAttribute) {
-    if (sampleJson.hasNonNull("taxId")) {
-      return sampleJson.get("taxId").asInt();
-    } else if (organismAttribute != null && !organismAttribute.getIri().isEmpty()) {
-      return organismAttribute.getIri().stream()
-          .map(this::extractTaxIdFromIri)
-          .filter((taxId) -> taxId > 0)
-          .findFirst()
-          .orElse(null);
+  /**
+   * Makes a single attempt to retrieve the sample. The request is conditional if a cache entry with
+   * validators is given.
+   */
+  private Sample fetchSample(String token, String accession, SampleCacheEntry cachedEntry) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setAccept(JSON_MEDIA_TYPES);
+    headers.set("Authorization", "Bearer " + token);
+    boolean conditional = cachedEntry != null && cachedEntry.hasValidators();
+    if (conditional) {
+      if (cachedEntry.getEtag() != null) {
+        headers.set(HttpHeaders.IF_NONE_MATCH, cachedEntry.getEtag());
+      }
+      if (cachedEntry.getLastModified() != null) {
+        headers.set(HttpHeaders.IF_MODIFIED_SINCE, cachedEntry.getLastModified());
+      }
     }
 
-    return null;
+    URI sampleGetUri =
+        UriComponentsBuilder.fromUri(URI.create(biosamplesUri + "/v2/samples/" + accession))
+            .build(true)
+            .toUri();
+
+    // The response is decoded while it is being read without building a JSON tree.
+    return restTemplate.execute(
+        sampleGetUri,
+        HttpMethod.GET,
+        request -> request.getHeaders().putAll(headers),
+        response -> {
+          if (conditional && response.getStatusCode().value() == HttpStatus.NOT_MODIFIED.value()) {
+            return new ValidatedSample(
+                cachedEntry.getSample(), cachedEntry.getEtag(), cachedEntry.getLastModified());
+          }
+          Sample sample = decodeSample(response.getBody());
+          String etag = response.getHeaders().getFirst(HttpHeaders.ETAG);
+          String lastModified = response.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED);
+          return etag != null || lastModified != null
+              ? new ValidatedSample(sample, etag, lastModified)
+              : sample;
+        });
   }
 
-  private int extractTaxIdFromIri(String iri) {
-    if (iri.isEmpty()) {
-      return 0;
-    } else {
-      String[] segments = iri.split("NCBITaxon_");
+  /**
+   * Invalid JSON is reported as a service exception. Otherwise, it would be reported by the rest
+   * template as an I/O error and retried.
+   */
+  private static Sample decodeSample(InputStream inputStream) throws IOException {
+    try {
+      return BiosamplesSampleDecoder.decode(inputStream);
+    } catch (JsonProcessingException ex) {
+      throw new ServiceException(ex, "Invalid sample JSON received from Biosamples.");
+    }
+  }
 
-      try {
-        return Integer.parseInt(segments[segments.length - 1]);
-      } catch (NumberFormatException ex) {
-        return 0;
-      }
+  private static SamplePage decodeSamplePage(InputStream inputStream) throws IOException {
+    try {
+      return BiosamplesSampleDecoder.decodePage(inputStream);
+    } catch (JsonProcessingException ex) {
+      throw new ServiceException(ex, "Invalid sample search JSON received from Biosamples.");
     }
   }
 }
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * Revalidates GET responses instead of downloading them again. Successful responses that carry an
+ * {@code ETag} or {@code Last-Modified} header are kept in memory together with these validators.
+ * When the same resource is requested again with the same credentials, the request is made
+ * conditional with {@code If-None-Match} or {@code If-Modified-Since} and a {@code 304 Not
+ * Modified} response is answered from the kept response.
+ *
+ * <p>Response bodies are not read ahead of the caller. They are copied while the caller reads them.
+ * Streaming decoders stop reading at the end of the document they decode, so the rest of the body
+ * is read when the response is closed, as long as the body stays within the size limit of an
+ * entry. The response is only kept once its body has been read to the end.
+ *
+ * <p>The kept responses are limited by their total size. The least recently used ones are
+ * discarded first and responses larger than a quarter of the limit are not kept.
+ */
+class ConditionalRequestInterceptor implements ClientHttpRequestInterceptor {
+
+  private final long maxSizeBytes;
+  private final long maxEntrySizeBytes;
+
+  /** Guarded by itself. Access ordered so that the eldest entry is the least recently used. */
+  private final LinkedHashMap<String, CachedResponse> responses =
+      new LinkedHashMap<>(16, 0.75f, true);
+
+  private long sizeBytes;
+
+  private static class CachedResponse {
+    private final String etag;
+    private final String lastModified;
+    private final HttpHeaders headers;
+    private final byte[] body;
+
+    private CachedResponse(String etag, String lastModified, HttpHeaders headers, byte[] body) {
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.headers = headers;
+      this.body = body;
+    }
+  }
+
+  ConditionalRequestInterceptor(long maxSizeBytes) {
+    this.maxSizeBytes = maxSizeBytes;
+    this.maxEntrySizeBytes = maxSizeBytes / 4;
+  }
+
+  @Override
+  public ClientHttpResponse intercept(
+      HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+    if (!HttpMethod.GET.equals(request.getMethod())) {
+      return execution.execute(request, body);
+    }
+
+    // Responses may depend on the submission account, so they are only reused with the same
+    // credentials. Only a digest of the credentials is kept.
+    String key =
+        request.getURI() + " " + digest(request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION));
+    CachedResponse cachedResponse = get(key);
+    if (cachedResponse != null) {
+      if (cachedResponse.etag != null) {
+        request.getHeaders().set(HttpHeaders.IF_NONE_MATCH, cachedResponse.etag);
+      }
+      if (cachedResponse.lastModified != null) {
+        request.getHeaders().set(HttpHeaders.IF_MODIFIED_SINCE, cachedResponse.lastModified);
+      }
+    }
+
+    ClientHttpResponse response = execution.execute(request, body);
+    int statusCode = response.getStatusCode().value();
+    if (statusCode == HttpStatus.NOT_MODIFIED.value() && cachedResponse != null) {
+      response.close();
+      HttpHeaders headers = new HttpHeaders();
+      headers.putAll(cachedResponse.headers);
+      return new BufferedResponse(headers, new ByteArrayInputStream(cachedResponse.body));
+    }
+    if (statusCode != HttpStatus.OK.value()) {
+      return response;
+    }
+
+    String etag = response.getHeaders().getFirst(HttpHeaders.ETAG);
+    String lastModified = response.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED);
+    if ((etag == null && lastModified == null)
+        || response.getHeaders().getContentLength() > maxEntrySizeBytes) {
+      remove(key);
+      return response;
+    }
+    return new KeepingResponse(key, etag, lastModified, response);
+  }
+
+  private static String digest(String credentials) {
+    if (credentials == null) {
+      return null;
+    }
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(credentials.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  private CachedResponse get(String key) {
+    synchronized (responses) {
+      return responses.get(key);
+    }
+  }
+
+  private void put(String key, CachedResponse cachedResponse) {
+    synchronized (responses) {
+      CachedResponse previous = responses.put(key, cachedResponse);
+      if (previous != null) {
+        sizeBytes -= previous.body.length;
+      }
+      sizeBytes += cachedResponse.body.length;
+
+      Iterator<Map.Entry<String, CachedResponse>> iterator = responses.entrySet().iterator();
+      while (sizeBytes > maxSizeBytes && iterator.hasNext()) {
+        sizeBytes -= iterator.next().getValue().body.length;
+        iterator.remove();
+      }
+    }
+  }
+
+  private void remove(String key) {
+    synchronized (responses) {
+      CachedResponse previous = responses.remove(key);
+      if (previous != null) {
+        sizeBytes -= previous.body.length;
+      }
+    }
+  }
+
+  /** Returns the total size of the kept response bodies. */
+  long getSizeBytes() {
+    synchronized (responses) {
+      return sizeBytes;
+    }
+  }
+
+  /** A successful response answered from a kept response. */
+  private static class BufferedResponse implements ClientHttpResponse {
+    private final HttpHeaders headers;
+    private final InputStream body;
+
+    private BufferedResponse(HttpHeaders headers, InputStream body) {
+      this.headers = headers;
+      this.body = body;
+    }
+
+    @Override
+    public HttpStatusCode getStatusCode() {
+      return HttpStatus.OK;
+    }
+
+    @Override
+    public String getStatusText() {
+      return HttpStatus.OK.getReasonPhrase();
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return headers;
+    }
+
+    @Override
+    public InputStream getBody() {
+      return body;
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  /**
+   * A successful response whose body is copied into memory while it is read. The response is kept
+   * once the body has been read to the end, unless it has turned out to be too large or part of it
+   * has been skipped. A body that has been partly read is read to the end when it, or the
+   * response, is closed.
+   */
+  private class KeepingResponse implements ClientHttpResponse {
+    private final String key;
+    private final String etag;
+    private final String lastModified;
+    private final HttpHeaders cachedHeaders = new HttpHeaders();
+    private final ClientHttpResponse response;
+    private CopyingInputStream body;
+
+    private KeepingResponse(
+        String key, String etag, String lastModified, ClientHttpResponse response) {
+      this.key = key;
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.response = response;
+      // The kept headers must not change if the caller modifies the returned ones.
+      cachedHeaders.putAll(response.getHeaders());
+    }
+
+    @Override
+    public HttpStatusCode getStatusCode() throws IOException {
+      return response.getStatusCode();
+    }
+
+    @Override
+    public String getStatusText() throws IOException {
+      return response.getStatusText();
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return response.getHeaders();
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+      if (body == null) {
+        body = new CopyingInputStream(response.getBody());
+      }
+      return body;
+    }
+
+    @Override
+    public void close() {
+      try {
+        if (body != null) {
+          body.close();
+        }
+      } catch (IOException ex) {
+        // The body is not kept.
+      } finally {
+        response.close();
+      }
+    }
+
+    private class CopyingInputStream extends FilterInputStream {
+      private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+      private CopyingInputStream(InputStream in) {
+        super(in);
+      }
+
+      @Override
+      public int read() throws IOException {
+        int b = super.read();
+        if (b == -1) {
+          onEnd();
+        } else if (copy != null) {
+          copy.write(b);
+          checkSize();
+        }
+        return b;
+      }
+
+      @Override
+      public int read(byte[] buffer, int offset, int length) throws IOException {
+        int n = super.read(buffer, offset, length);
+        if (n == -1) {
+          onEnd();
+        } else if (copy != null) {
+          copy.write(buffer, offset, n);
+          checkSize();
+        }
+        return n;
+      }
+
+      @Override
+      public long skip(long n) throws IOException {
+        // Skipped bytes are not copied, so the body can no longer be kept.
+        discard();
+        return super.skip(n);
+      }
+
+      @Override
+      public boolean markSupported() {
+        return false;
+      }
+
+      @Override
+      public void close() throws IOException {
+        try {
+          drain();
+        } finally {
+          super.close();
+        }
+      }
+
+      /** Reads the rest of the body so that it can be kept, unless it is too large. */
+      private void drain() {
+        byte[] buffer = new byte[8192];
+        try {
+          while (copy != null && read(buffer, 0, buffer.length) != -1) {}
+        } catch (IOException ex) {
+          discard();
+        }
+      }
+
+      private void checkSize() {
+        if (copy.size() > maxEntrySizeBytes) {
+          discard();
+        }
+      }
+
+      private void discard() {
+        if (copy != null) {
+          copy = null;
+          remove(key);
+        }
+      }
+
+      private void onEnd() {
+        if (copy != null) {
+          byte[] readBody = copy.toByteArray();
+          copy = null;
+          put(key, new CachedResponse(etag, lastModified, cachedHeaders, readBody));
+        }
+      }
+    }
+  }
+}
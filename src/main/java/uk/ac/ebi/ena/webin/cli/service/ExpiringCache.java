@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import uk.ac.ebi.ena.webin.cli.utils.CacheStats;
+import uk.ac.ebi.ena.webin.cli.utils.LruCache;
+
+/**
+ * Thread-safe in-memory cache of retrieved values and of values that are unknown or cannot be
+ * referenced. Entries expire after a time to live. When the cache is full the least recently used
+ * entry is evicted. Used by {@link InMemorySampleCache} and {@link ReferenceCache}.
+ *
+ * @param <T> the cached value type
+ */
+class ExpiringCache<T> {
+
+  private final LruCache<String, Entry<T>> cache;
+  private final Duration timeToLive;
+  private final Duration notFoundTimeToLive;
+  private final Clock clock;
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  /** A cached value, or the fact that it is unknown or cannot be referenced. */
+  static class Entry<T> {
+    private final T value;
+    private final Instant created;
+    private final Instant expires;
+
+    private Entry(T value, Instant created, Instant expires) {
+      this.value = value;
+      this.created = created;
+      this.expires = expires;
+    }
+
+    /** Returns the cached value or null if it is unknown or cannot be referenced. */
+    T getValue() {
+      return value;
+    }
+
+    boolean isNotFound() {
+      return value == null;
+    }
+
+    Instant getCreated() {
+      return created;
+    }
+
+    Instant getExpires() {
+      return expires;
+    }
+  }
+
+  ExpiringCache(int maxSize, Duration timeToLive, Duration notFoundTimeToLive, Clock clock) {
+    this.cache = new LruCache<>(maxSize);
+    this.timeToLive = timeToLive;
+    this.notFoundTimeToLive = notFoundTimeToLive;
+    this.clock = clock;
+  }
+
+  /** Returns the cached entry or null if the value is not cached or its entry has expired. */
+  Entry<T> get(String key) {
+    Entry<T> entry = cache.get(key);
+    if (entry == null || !clock.instant().isBefore(entry.expires)) {
+      missCount.incrementAndGet();
+      return null;
+    }
+    hitCount.incrementAndGet();
+    return entry;
+  }
+
+  /** Returns the cached entry even if it has expired, or null if the value is not cached. */
+  Entry<T> getStale(String key) {
+    return cache.get(key);
+  }
+
+  /** Caches a retrieved value. */
+  void put(String key, T value) {
+    Instant now = clock.instant();
+    cache.put(key, new Entry<>(value, now, now.plus(timeToLive)));
+  }
+
+  /** Caches that the value is unknown or cannot be referenced. */
+  void putNotFound(String key) {
+    Instant now = clock.instant();
+    cache.put(key, new Entry<>(null, now, now.plus(notFoundTimeToLive)));
+  }
+
+  void invalidate(String key) {
+    cache.remove(key);
+  }
+
+  void clear() {
+    cache.clear();
+  }
+
+  CacheStats getStats() {
+    return new CacheStats(hitCount.get(), missCount.get(), cache.getEvictionCount(), cache.size());
+  }
+}
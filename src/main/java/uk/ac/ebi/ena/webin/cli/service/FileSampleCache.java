@@ -0,0 +1,588 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceException;
+import uk.ac.ebi.ena.webin.cli.utils.CacheStats;
+import uk.ac.ebi.ena.webin.cli.utils.LruCache;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Attribute;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Sample;
+
+/**
+ * Sample cache that is persisted into a directory so that samples retrieved by one validator run
+ * can be reused by the following runs. Cached entries are appended to a log file that is read into
+ * memory when the cache is opened. At most the maximum size of entries are kept in memory and the
+ * least recently used entry is evicted when the cache is full. Evicted entries are read back from
+ * the log file using an index of the offsets of the latest line of each entry. Expired entries are
+ * not returned and
+ * are replaced when the sample is retrieved again, unless they have the validators of the
+ * Biosamples response they were decoded from. These are kept so that the sample can be
+ * revalidated with a conditional request. The log file is compacted when it is opened if
+ * most of its entries have been replaced, evicted or have expired.
+ *
+ * <p>Several validator processes can share the cache directory. Appends and compactions are made
+ * holding an exclusive lock on a lock file next to the log file, so that a compaction never drops
+ * entries appended by another process. The lock file is kept open while the cache is open and
+ * holds a generation number that is incremented whenever the log file is compacted or cleared.
+ * Writers that find the generation changed reopen and reindex the log file before appending.
+ * Lines read back through the index are checked to belong to the entry, so reads do not need the
+ * lock.
+ *
+ * <p>Cached samples are only valid for the submission account that retrieved them. The partition
+ * given when the cache is opened, normally the submission account name, selects the log file so
+ * that samples retrieved for one account are never returned to another.
+ */
+public class FileSampleCache implements SampleCache, Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FileSampleCache.class);
+
+  /** Name of the cache directory created next to the validator process directory. */
+  public static final String DEFAULT_DIRECTORY_NAME = "sample-cache";
+
+  public static final int DEFAULT_MAX_SIZE = 10_000;
+  public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofDays(1);
+  public static final Duration DEFAULT_NOT_FOUND_TIME_TO_LIVE = Duration.ofMinutes(1);
+
+  /** The log file is compacted when it has more than this many lines per live entry. */
+  private static final int COMPACTION_RATIO = 2;
+
+  private static final int COMPACTION_MIN_LINES = 1000;
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  /**
+   * File locks are held by the process, so caches opened on the same file in this process also
+   * synchronize on a shared monitor before locking the file.
+   */
+  private static final Map<Path, Object> LOCK_MONITORS = new ConcurrentHashMap<>();
+
+  private final Path file;
+  private final Path lockFile;
+  private final Object lockMonitor;
+  private final Duration timeToLive;
+  private final Duration notFoundTimeToLive;
+  private final Clock clock;
+
+  private final LruCache<String, SampleCacheEntry> entries;
+
+  /** The offset of the latest line of each entry in the log file. */
+  private final Map<String, Long> offsets = new ConcurrentHashMap<>();
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  private final FileChannel lockChannel;
+
+  /** Appends to the log file. */
+  private FileChannel channel;
+
+  /** Reads lines of entries evicted from memory from the log file. */
+  private volatile FileChannel readChannel;
+
+  /** The generation of the log file the channels were opened on. */
+  private long generation;
+
+  /**
+   * Opens the cache in the given directory using default times to live.
+   *
+   * @param directory the cache directory. It is created if it does not exist.
+   * @param partition the submission account the cached samples were retrieved for
+   */
+  public FileSampleCache(File directory, String partition) {
+    this(
+        directory,
+        partition,
+        DEFAULT_MAX_SIZE,
+        DEFAULT_TIME_TO_LIVE,
+        DEFAULT_NOT_FOUND_TIME_TO_LIVE);
+  }
+
+  /**
+   * Opens the cache in the given directory.
+   *
+   * @param directory the cache directory. It is created if it does not exist.
+   * @param partition the submission account the cached samples were retrieved for
+   * @param maxSize the maximum number of entries kept in memory
+   * @param timeToLive how long retrieved samples are cached
+   * @param notFoundTimeToLive how long unknown samples or samples that cannot be referenced are
+   *     cached
+   */
+  public FileSampleCache(
+      File directory,
+      String partition,
+      int maxSize,
+      Duration timeToLive,
+      Duration notFoundTimeToLive) {
+    this(directory, partition, maxSize, timeToLive, notFoundTimeToLive, Clock.systemUTC());
+  }
+
+  FileSampleCache(
+      File directory,
+      String partition,
+      int maxSize,
+      Duration timeToLive,
+      Duration notFoundTimeToLive,
+      Clock clock) {
+    String baseName = "samples-" + hash(partition);
+    this.file = directory.toPath().resolve(baseName + ".jsonl");
+    this.lockFile = directory.toPath().resolve(baseName + ".lock");
+    this.lockMonitor =
+        LOCK_MONITORS.computeIfAbsent(lockFile.toAbsolutePath().normalize(), path -> new Object());
+    this.entries = new LruCache<>(maxSize);
+    this.timeToLive = timeToLive;
+    this.notFoundTimeToLive = notFoundTimeToLive;
+    this.clock = clock;
+
+    FileChannel openedLockChannel = null;
+    try {
+      Files.createDirectories(directory.toPath());
+      openedLockChannel =
+          FileChannel.open(
+              lockFile,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.READ,
+              StandardOpenOption.WRITE);
+      this.lockChannel = openedLockChannel;
+      synchronized (lockMonitor) {
+        try (FileLock ignored = lockChannel.lock()) {
+          int lineCount = load();
+          generation = readGeneration();
+          if (lineCount > COMPACTION_MIN_LINES && lineCount > COMPACTION_RATIO * offsets.size()) {
+            compact();
+            generation++;
+            writeGeneration(generation);
+          }
+          openChannels();
+        }
+      }
+    } catch (IOException ex) {
+      closeQuietly(openedLockChannel);
+      throw new ServiceException(ex, "Failed to open sample cache: " + file);
+    }
+  }
+
+  /** Returns the default cache directory for the given validator process directory. */
+  public static File getDefaultDirectory(File processDir) {
+    File parentDir = processDir.getAbsoluteFile().getParentFile();
+    return new File(parentDir != null ? parentDir : processDir, DEFAULT_DIRECTORY_NAME);
+  }
+
+  @Override
+  public SampleCacheEntry get(String sampleId) {
+    SampleCacheEntry entry = getEntry(sampleId);
+    if (entry == null || entry.isExpired(clock.instant())) {
+      missCount.incrementAndGet();
+      return null;
+    }
+    hitCount.incrementAndGet();
+    return entry;
+  }
+
+  @Override
+  public SampleCacheEntry getStale(String sampleId) {
+    return getEntry(sampleId);
+  }
+
+  @Override
+  public void put(String sampleId, Sample sample) {
+    put(sampleId, sample, null, null);
+  }
+
+  @Override
+  public void put(String sampleId, Sample sample, String etag, String lastModified) {
+    Instant now = clock.instant();
+    write(sampleId, new SampleCacheEntry(sample, now, now.plus(timeToLive), etag, lastModified));
+  }
+
+  @Override
+  public void putNotFound(String sampleId) {
+    Instant now = clock.instant();
+    write(sampleId, new SampleCacheEntry(null, now, now.plus(notFoundTimeToLive)));
+  }
+
+  @Override
+  public void invalidate(String sampleId) {
+    // The entry may have been evicted from memory but still be in the log file. An entry that
+    // expired at the epoch replaces it when the log is read.
+    write(sampleId, new SampleCacheEntry(null, Instant.EPOCH, Instant.EPOCH));
+    entries.remove(sampleId);
+    offsets.remove(sampleId);
+  }
+
+  @Override
+  public synchronized void clear() {
+    entries.clear();
+    offsets.clear();
+    synchronized (lockMonitor) {
+      try (FileLock ignored = lockChannel.lock()) {
+        reopenChannelsIfReplaced();
+        channel.truncate(0);
+        // Reopening the log file may have read entries back into memory.
+        entries.clear();
+        offsets.clear();
+        generation++;
+        writeGeneration(generation);
+      } catch (IOException ex) {
+        LOGGER.warn("Failed to clear sample cache: " + file, ex);
+      }
+    }
+  }
+
+  @Override
+  public CacheStats getStats() {
+    return new CacheStats(
+        hitCount.get(), missCount.get(), entries.getEvictionCount(), entries.size());
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    // Closing a channel releases the locks the process holds on the file, so the lock channel is
+    // only closed while no other cache in this process holds the lock.
+    synchronized (lockMonitor) {
+      try {
+        channel.close();
+        readChannel.close();
+      } finally {
+        lockChannel.close();
+      }
+    }
+  }
+
+  /** Returns the entry kept in memory, or reads it back from the log file if it was evicted. */
+  private SampleCacheEntry getEntry(String sampleId) {
+    SampleCacheEntry entry = entries.get(sampleId);
+    if (entry != null) {
+      return entry;
+    }
+    Long offset = offsets.get(sampleId);
+    if (offset == null) {
+      return null;
+    }
+    try {
+      String line = readLine(readChannel, offset);
+      if (line == null) {
+        return null;
+      }
+      JsonNode json = OBJECT_MAPPER.readTree(line);
+      // The log file may have been cleared or compacted by another process since it was indexed.
+      if (!sampleId.equals(text(json, "id"))) {
+        return null;
+      }
+      entry = fromJson(json);
+    } catch (Exception ex) {
+      LOGGER.debug("Failed to read sample cache entry: " + sampleId, ex);
+      return null;
+    }
+    entries.put(sampleId, entry);
+    return entry;
+  }
+
+  private synchronized void write(String sampleId, SampleCacheEntry entry) {
+    entries.put(sampleId, entry);
+    try {
+      // Each entry is appended using a single write so that concurrent validator runs sharing the
+      // cache do not interleave partial lines.
+      String line = OBJECT_MAPPER.writeValueAsString(toJson(sampleId, entry)) + "\n";
+      byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+      ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      synchronized (lockMonitor) {
+        try (FileLock ignored = lockChannel.lock()) {
+          reopenChannelsIfReplaced();
+          while (buffer.hasRemaining()) {
+            channel.write(buffer);
+          }
+          // The channel appends, so its position is the end of the file.
+          offsets.put(sampleId, channel.position() - bytes.length);
+        }
+      }
+    } catch (IOException ex) {
+      // The entry is still cached in memory.
+      LOGGER.warn("Failed to write sample cache: " + file, ex);
+    }
+  }
+
+  private void openChannels() throws IOException {
+    channel =
+        FileChannel.open(
+            file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    readChannel = FileChannel.open(file, StandardOpenOption.READ);
+  }
+
+  /**
+   * Reopens and reindexes the log file if another process has compacted or cleared it since it was
+   * opened. Must be called holding the file lock.
+   */
+  private void reopenChannelsIfReplaced() throws IOException {
+    long currentGeneration = readGeneration();
+    if (currentGeneration != generation) {
+      channel.close();
+      readChannel.close();
+      load();
+      openChannels();
+      generation = currentGeneration;
+    }
+  }
+
+  /** Reads the generation of the log file from the lock file. Must be called holding the lock. */
+  private long readGeneration() throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+    while (buffer.hasRemaining() && lockChannel.read(buffer, buffer.position()) != -1) {}
+    return buffer.hasRemaining() ? 0 : buffer.getLong(0);
+  }
+
+  /** Writes the generation of the log file to the lock file. Must be called holding the lock. */
+  private void writeGeneration(long generation) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).putLong(0, generation);
+    while (buffer.hasRemaining()) {
+      lockChannel.write(buffer, buffer.position());
+    }
+  }
+
+  /**
+   * Reads the log file and indexes it. Returns the number of lines read. Must be called holding
+   * the file lock.
+   */
+  private int load() throws IOException {
+    offsets.clear();
+    if (!Files.exists(file)) {
+      return 0;
+    }
+    Instant now = clock.instant();
+    int lineCount = 0;
+    try (InputStream inputStream = Files.newInputStream(file)) {
+      ByteArrayOutputStream line = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      long bufferOffset = 0;
+      long lineOffset = 0;
+      int length;
+      while ((length = inputStream.read(buffer)) != -1) {
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+          if (buffer[i] == '\n') {
+            line.write(buffer, lineStart, i - lineStart);
+            lineCount++;
+            loadLine(line.toString(StandardCharsets.UTF_8), lineOffset, now);
+            line.reset();
+            lineStart = i + 1;
+            lineOffset = bufferOffset + lineStart;
+          }
+        }
+        line.write(buffer, lineStart, length - lineStart);
+        bufferOffset += length;
+      }
+      // A last line without a line separator has not been completely written.
+    }
+    return lineCount;
+  }
+
+  private void loadLine(String line, long offset, Instant now) {
+    try {
+      JsonNode json = OBJECT_MAPPER.readTree(line);
+      String sampleId = json.get("id").asText();
+      SampleCacheEntry entry = fromJson(json);
+      if (entry.isExpired(now) && !entry.hasValidators()) {
+        entries.remove(sampleId);
+        offsets.remove(sampleId);
+      } else {
+        entries.put(sampleId, entry);
+        offsets.put(sampleId, offset);
+      }
+    } catch (Exception ex) {
+      // Ignore lines that have not been completely written.
+      LOGGER.debug("Ignoring invalid sample cache line: " + line);
+    }
+  }
+
+  /**
+   * Rewrites the log file with the latest line of each live entry only, including the entries
+   * evicted from memory. Must be called holding the file lock, right after the log file has been
+   * read, so that no entries appended by other processes are lost.
+   */
+  private void compact() throws IOException {
+    List<Map.Entry<String, Long>> liveOffsets = new ArrayList<>(offsets.entrySet());
+    liveOffsets.sort(Map.Entry.comparingByValue());
+    Map<String, Long> compactedOffsets = new HashMap<>();
+    Path tempFile = Files.createTempFile(file.getParent(), "samples-", ".tmp");
+    try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ);
+        OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(tempFile))) {
+      long offset = 0;
+      for (Map.Entry<String, Long> liveOffset : liveOffsets) {
+        String line = readLine(source, liveOffset.getValue());
+        if (line == null) {
+          continue;
+        }
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        outputStream.write(bytes);
+        compactedOffsets.put(liveOffset.getKey(), offset);
+        offset += bytes.length;
+      }
+    }
+    Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    offsets.clear();
+    offsets.putAll(compactedOffsets);
+  }
+
+  /** Reads the line at the offset, or returns null if it has not been completely written. */
+  private static String readLine(FileChannel fileChannel, long offset) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    ByteBuffer buffer = ByteBuffer.allocate(4096);
+    long position = offset;
+    while (true) {
+      buffer.clear();
+      int length = fileChannel.read(buffer, position);
+      if (length == -1) {
+        return null;
+      }
+      for (int i = 0; i < length; i++) {
+        if (buffer.get(i) == '\n') {
+          line.write(buffer.array(), 0, i);
+          return line.toString(StandardCharsets.UTF_8);
+        }
+      }
+      line.write(buffer.array(), 0, length);
+      position += length;
+    }
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException ex) {
+        // Already failing.
+      }
+    }
+  }
+
+  private static ObjectNode toJson(String sampleId, SampleCacheEntry entry) {
+    ObjectNode json = OBJECT_MAPPER.createObjectNode();
+    json.put("id", sampleId);
+    json.put("created", entry.getCreated().toEpochMilli());
+    json.put("expires", entry.getExpires().toEpochMilli());
+    if (entry.getEtag() != null) {
+      json.put("etag", entry.getEtag());
+    }
+    if (entry.getLastModified() != null) {
+      json.put("lastModified", entry.getLastModified());
+    }
+
+    Sample sample = entry.getSample();
+    if (sample != null) {
+      ObjectNode sampleJson = json.putObject("sample");
+      sampleJson.put("bioSampleId", sample.getBioSampleId());
+      sampleJson.put("sraSampleId", sample.getSraSampleId());
+      sampleJson.put("name", sample.getName());
+      sampleJson.put("taxId", sample.getTaxId());
+      sampleJson.put("organism", sample.getOrganism());
+
+      ArrayNode attributesJson = sampleJson.putArray("attributes");
+      for (Attribute attribute : sample.getAttributes()) {
+        ObjectNode attributeJson = attributesJson.addObject();
+        attributeJson.put("name", attribute.getName());
+        attributeJson.put("value", attribute.getValue());
+        attributeJson.put("unit", attribute.getUnit());
+        attributeJson.put("tag", attribute.getTag());
+        if (attribute.getIri() != null) {
+          ArrayNode iriJson = attributeJson.putArray("iri");
+          attribute.getIri().forEach(iriJson::add);
+        }
+      }
+    }
+    return json;
+  }
+
+  private static SampleCacheEntry fromJson(JsonNode json) {
+    Instant created = Instant.ofEpochMilli(json.get("created").asLong());
+    Instant expires = Instant.ofEpochMilli(json.get("expires").asLong());
+
+    JsonNode sampleJson = json.get("sample");
+    if (sampleJson == null || sampleJson.isNull()) {
+      return new SampleCacheEntry(null, created, expires);
+    }
+
+    Sample sample = new Sample();
+    sample.setBioSampleId(text(sampleJson, "bioSampleId"));
+    sample.setSraSampleId(text(sampleJson, "sraSampleId"));
+    sample.setName(text(sampleJson, "name"));
+    sample.setOrganism(text(sampleJson, "organism"));
+    if (sampleJson.hasNonNull("taxId")) {
+      sample.setTaxId(sampleJson.get("taxId").asInt());
+    }
+    for (JsonNode attributeJson : sampleJson.get("attributes")) {
+      Set<String> iri = null;
+      if (attributeJson.hasNonNull("iri")) {
+        iri = new TreeSet<>();
+        for (JsonNode iriJson : attributeJson.get("iri")) {
+          iri.add(iriJson.asText());
+        }
+      }
+      sample.addAttribute(
+          new Attribute(
+              text(attributeJson, "name"),
+              text(attributeJson, "value"),
+              iri,
+              text(attributeJson, "unit"),
+              text(attributeJson, "tag")));
+    }
+    return new SampleCacheEntry(
+        sample, created, expires, text(json, "etag"), text(json, "lastModified"));
+  }
+
+  private static String text(JsonNode json, String fieldName) {
+    return json.hasNonNull(fieldName) ? json.get(fieldName).asText() : null;
+  }
+
+  private static String hash(String partition) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      byte[] hash =
+          digest.digest((partition != null ? partition : "").getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(hash, 0, 8);
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * Requests gzip content encoding and decompresses gzip encoded responses while they are read. Used
+ * with HTTP clients that do not decompress responses themselves.
+ */
+class GzipDecodingInterceptor implements ClientHttpRequestInterceptor {
+
+  private static final String GZIP = "gzip";
+
+  @Override
+  public ClientHttpResponse intercept(
+      HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+    if (!request.getHeaders().containsKey(HttpHeaders.ACCEPT_ENCODING)) {
+      request.getHeaders().set(HttpHeaders.ACCEPT_ENCODING, GZIP);
+    }
+    ClientHttpResponse response = execution.execute(request, body);
+    String contentEncoding = response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+    if (contentEncoding == null || !GZIP.equalsIgnoreCase(contentEncoding.trim())) {
+      return response;
+    }
+
+    // The decompressed response no longer has the encoding and length of the received one.
+    HttpHeaders headers = new HttpHeaders();
+    headers.putAll(response.getHeaders());
+    headers.remove(HttpHeaders.CONTENT_ENCODING);
+    headers.remove(HttpHeaders.CONTENT_LENGTH);
+    return new DecodedResponse(response, headers);
+  }
+
+  private static class DecodedResponse implements ClientHttpResponse {
+    private final ClientHttpResponse response;
+    private final HttpHeaders headers;
+    private InputStream body;
+
+    private DecodedResponse(ClientHttpResponse response, HttpHeaders headers) {
+      this.response = response;
+      this.headers = headers;
+    }
+
+    @Override
+    public HttpStatusCode getStatusCode() throws IOException {
+      return response.getStatusCode();
+    }
+
+    @Override
+    public String getStatusText() throws IOException {
+      return response.getStatusText();
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return headers;
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+      if (body == null) {
+        // Responses without content, for example 304 Not Modified, may still declare the encoding.
+        PushbackInputStream inputStream = new PushbackInputStream(response.getBody());
+        int b = inputStream.read();
+        if (b == -1) {
+          body = InputStream.nullInputStream();
+        } else {
+          inputStream.unread(b);
+          body = new GZIPInputStream(inputStream);
+        }
+      }
+      return body;
+    }
+
+    @Override
+    public void close() {
+      response.close();
+    }
+  }
+}
@@ -0,0 +1,430 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.InterceptingClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+import uk.ac.ebi.ena.webin.cli.utils.CircuitBreaker;
+import uk.ac.ebi.ena.webin.cli.utils.Deadline;
+
+/**
+ * HTTP transport shared by the Webin services. It keeps a pool of keep-alive connections so that
+ * consecutive requests to the same host reuse an open connection instead of paying for a new TCP
+ * and TLS handshake every time.
+ *
+ * <p>With {@link Protocol#HTTP_2}, requests are sent with the JDK HTTP client instead. Concurrent
+ * requests to a host that supports HTTP/2 are multiplexed over a single connection, so many
+ * concurrent requests do not need a connection each. Hosts that do not support HTTP/2 are called
+ * with HTTP/1.1. The connection pool settings do not apply to this protocol.
+ *
+ * <p>Responses are requested with gzip content encoding and decompressed while they are read. When
+ * enabled with {@link Builder#setResponseCacheSizeBytes(long)}, GET responses that carry an {@code
+ * ETag} or {@code Last-Modified} header are kept in a bounded in-memory cache and are revalidated
+ * with a conditional request instead of being downloaded again.
+ *
+ * <p>Requests made while a {@link Deadline} is set for the current thread wait for a pooled
+ * connection, and for response data, no longer than the time remaining before the deadline.
+ *
+ * <p>The requests to each service are throttled. A service is identified by the base URI its
+ * client registered with {@link #registerServiceUri(String)}, and requests outside the registered
+ * services by their host, so services that share a host do not throttle each other. The number of
+ * requests in flight to a service is limited, and the limit can adapt to the service's latency.
+ * No requests are made to a service for the time given by the {@code Retry-After} header of a 429
+ * (Too Many Requests) or 503 (Service Unavailable) response. The rate of requests to each service
+ * can also be limited.
+ *
+ * <p>The transport is thread-safe. Unless a transport is given to a service builder, all services
+ * share the transport returned by {@link #getDefault()}.
+ */
+public class HttpTransport implements Closeable {
+
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+  public static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 100;
+  public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+  public static final Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(60);
+  public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofSeconds(30);
+  public static final long DEFAULT_RESPONSE_CACHE_SIZE_BYTES = 0;
+  public static final double DEFAULT_MAX_REQUESTS_PER_SECOND_PER_HOST = 0;
+
+  /** The default maximum number of concurrent requests to a single host with HTTP/2. */
+  public static final int DEFAULT_MAX_CONCURRENT_STREAMS_PER_HOST = 100;
+
+  /** Pooled connections that have been idle for longer than this are checked before reuse. */
+  private static final TimeValue VALIDATE_AFTER_INACTIVITY = TimeValue.ofSeconds(2);
+
+  public enum Protocol {
+    /** HTTP/1.1 with a pool of keep-alive connections. */
+    HTTP_1_1,
+    /** HTTP/2 with multiplexed requests, or HTTP/1.1 if the host does not support HTTP/2. */
+    HTTP_2
+  }
+
+  private final Protocol protocol;
+
+  /** Null if HTTP/2 is used. */
+  private final CloseableHttpClient httpClient;
+
+  private final ClientHttpRequestFactory requestFactory;
+  private final List<ClientHttpRequestInterceptor> interceptors;
+  private final ThrottlingInterceptor throttlingInterceptor;
+  private final RestTemplate restTemplate;
+  private final Duration connectTimeout;
+  private final Duration readTimeout;
+
+  public static class Builder {
+    private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    private int maxConnectionsTotal = DEFAULT_MAX_CONNECTIONS_TOTAL;
+    private Duration connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private Duration readTimeout = DEFAULT_READ_TIMEOUT;
+    private Duration idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private long responseCacheSizeBytes = DEFAULT_RESPONSE_CACHE_SIZE_BYTES;
+    private double maxRequestsPerSecondPerHost = DEFAULT_MAX_REQUESTS_PER_SECOND_PER_HOST;
+    private boolean adaptiveConcurrency;
+    private Protocol protocol = Protocol.HTTP_1_1;
+    private int maxConcurrentRequestsPerHost;
+
+    /**
+     * The maximum number of pooled connections to a single host. This is also the most requests
+     * that are made to a single host at once.
+     */
+    public Builder setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+      this.maxConnectionsPerHost = maxConnectionsPerHost;
+      return this;
+    }
+
+    /** The maximum number of pooled connections across all hosts. */
+    public Builder setMaxConnectionsTotal(int maxConnectionsTotal) {
+      this.maxConnectionsTotal = maxConnectionsTotal;
+      return this;
+    }
+
+    public Builder setConnectTimeout(Duration connectTimeout) {
+      this.connectTimeout = connectTimeout;
+      return this;
+    }
+
+    /** The maximum time to wait for response data once a request has been sent. */
+    public Builder setReadTimeout(Duration readTimeout) {
+      this.readTimeout = readTimeout;
+      return this;
+    }
+
+    /** Pooled connections that stay unused for longer than this are closed. */
+    public Builder setIdleTimeout(Duration idleTimeout) {
+      this.idleTimeout = idleTimeout;
+      return this;
+    }
+
+    /**
+     * The maximum total size of the GET responses kept for revalidation. Responses are not kept if
+     * the size is 0, which is the default.
+     */
+    public Builder setResponseCacheSizeBytes(long responseCacheSizeBytes) {
+      this.responseCacheSizeBytes = responseCacheSizeBytes;
+      return this;
+    }
+
+    /** The protocol used to send requests. HTTP/1.1 by default. */
+    public Builder setProtocol(Protocol protocol) {
+      this.protocol = protocol;
+      return this;
+    }
+
+    /**
+     * The maximum number of requests made to a single service at once. Defaults to the maximum
+     * number of connections per host with HTTP/1.1 and to {@link
+     * #DEFAULT_MAX_CONCURRENT_STREAMS_PER_HOST} with HTTP/2.
+     */
+    public Builder setMaxConcurrentRequestsPerHost(int maxConcurrentRequestsPerHost) {
+      this.maxConcurrentRequestsPerHost = maxConcurrentRequestsPerHost;
+      return this;
+    }
+
+    /**
+     * The maximum rate of requests to a single service, including retries. The rate is not limited
+     * if this is 0.
+     */
+    public Builder setMaxRequestsPerSecondPerHost(double maxRequestsPerSecondPerHost) {
+      this.maxRequestsPerSecondPerHost = maxRequestsPerSecondPerHost;
+      return this;
+    }
+
+    /**
+     * If true, the number of concurrent requests to a service starts at half the maximum number of
+     * concurrent requests and adapts to how the service copes with the load. Otherwise, it is only
+     * limited by the maximum number of concurrent requests. Disabled by default.
+     */
+    public Builder setAdaptiveConcurrency(boolean adaptiveConcurrency) {
+      this.adaptiveConcurrency = adaptiveConcurrency;
+      return this;
+    }
+
+    public HttpTransport build() {
+      return new HttpTransport(this);
+    }
+  }
+
+  private static class DefaultHolder {
+    private static final HttpTransport INSTANCE = new HttpTransport.Builder().build();
+  }
+
+  /**
+   * Returns the transport shared by all services that have not been given one explicitly. It lives
+   * as long as the JVM and must not be closed.
+   */
+  public static HttpTransport getDefault() {
+    return DefaultHolder.INSTANCE;
+  }
+
+  protected HttpTransport(Builder builder) {
+    this.protocol = builder.protocol;
+    this.connectTimeout = builder.connectTimeout;
+    this.readTimeout = builder.readTimeout;
+
+    int maxConcurrentRequestsPerHost = builder.maxConcurrentRequestsPerHost;
+    if (protocol == Protocol.HTTP_2) {
+      this.httpClient = null;
+      this.requestFactory = createHttp2RequestFactory(builder);
+      if (maxConcurrentRequestsPerHost <= 0) {
+        maxConcurrentRequestsPerHost = DEFAULT_MAX_CONCURRENT_STREAMS_PER_HOST;
+      }
+    } else {
+      this.httpClient = createHttpClient(builder);
+      this.requestFactory = new DeadlineAwareRequestFactory(httpClient, readTimeout);
+      if (maxConcurrentRequestsPerHost <= 0) {
+        maxConcurrentRequestsPerHost = builder.maxConnectionsPerHost;
+      }
+    }
+
+    // Conditional requests are throttled like any other request.
+    List<ClientHttpRequestInterceptor> transportInterceptors = new ArrayList<>();
+    if (builder.responseCacheSizeBytes > 0) {
+      transportInterceptors.add(new ConditionalRequestInterceptor(builder.responseCacheSizeBytes));
+    }
+    this.throttlingInterceptor =
+        new ThrottlingInterceptor(
+            builder.maxRequestsPerSecondPerHost,
+            maxConcurrentRequestsPerHost,
+            builder.adaptiveConcurrency);
+    transportInterceptors.add(throttlingInterceptor);
+    this.interceptors = Collections.unmodifiableList(transportInterceptors);
+    this.restTemplate = createRestTemplate(interceptors);
+  }
+
+  private static CloseableHttpClient createHttpClient(Builder builder) {
+    PoolingHttpClientConnectionManager connectionManager =
+        PoolingHttpClientConnectionManagerBuilder.create()
+            .setMaxConnPerRoute(builder.maxConnectionsPerHost)
+            .setMaxConnTotal(builder.maxConnectionsTotal)
+            .setDefaultConnectionConfig(
+                ConnectionConfig.custom()
+                    .setConnectTimeout(Timeout.of(builder.connectTimeout))
+                    .setSocketTimeout(Timeout.of(builder.readTimeout))
+                    .setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY)
+                    .build())
+            .build();
+
+    // Retries are done by RetryUtils and the services do not rely on cookies. Cookies are disabled
+    // so that no state leaks between services sharing the same connection pool.
+    return HttpClients.custom()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(
+            RequestConfig.custom()
+                .setResponseTimeout(Timeout.of(builder.readTimeout))
+                .setContentCompressionEnabled(true)
+                .build())
+        .evictExpiredConnections()
+        .evictIdleConnections(TimeValue.of(builder.idleTimeout))
+        .disableAutomaticRetries()
+        .disableCookieManagement()
+        .build();
+  }
+
+  /**
+   * Creates a request factory that sends requests with the JDK HTTP client. Unlike the pooled
+   * client, the JDK client does not decompress responses, so this is done by an interceptor that
+   * sees each response before the transport's other interceptors.
+   */
+  private static ClientHttpRequestFactory createHttp2RequestFactory(Builder builder) {
+    // Redirects are followed as they are by the pooled client. Cookies are not kept.
+    HttpClient jdkHttpClient =
+        HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(builder.connectTimeout)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .executor(Http2ExecutorHolder.EXECUTOR)
+            .build();
+    return new InterceptingClientHttpRequestFactory(
+        new DeadlineAwareJdkRequestFactory(jdkHttpClient, builder.readTimeout),
+        Collections.singletonList(new GzipDecodingInterceptor()));
+  }
+
+  private RestTemplate createRestTemplate(List<ClientHttpRequestInterceptor> interceptors) {
+    RestTemplate template = new RestTemplate(requestFactory);
+    if (!interceptors.isEmpty()) {
+      template.setInterceptors(interceptors);
+    }
+    return template;
+  }
+
+  /** Limits the timeouts of each request to the time remaining before the current deadline. */
+  private static class DeadlineAwareRequestFactory extends HttpComponentsClientHttpRequestFactory {
+    private final Duration readTimeout;
+
+    private DeadlineAwareRequestFactory(CloseableHttpClient httpClient, Duration readTimeout) {
+      super(httpClient);
+      this.readTimeout = readTimeout;
+    }
+
+    @Override
+    protected HttpContext createHttpContext(HttpMethod httpMethod, URI uri) {
+      Deadline deadline = Deadline.current();
+      if (deadline.isNone()) {
+        return super.createHttpContext(httpMethod, uri);
+      }
+      // Zero would disable the timeout.
+      Timeout timeout =
+          Timeout.ofMilliseconds(
+              Math.max(1, Math.min(readTimeout.toMillis(), deadline.getRemainingMillis())));
+      HttpClientContext context = HttpClientContext.create();
+      context.setRequestConfig(
+          RequestConfig.custom()
+              .setResponseTimeout(timeout)
+              .setConnectionRequestTimeout(timeout)
+              .setContentCompressionEnabled(true)
+              .build());
+      return context;
+    }
+  }
+
+  /** Runs the response handling of the JDK HTTP clients. Created only if HTTP/2 is used. */
+  private static class Http2ExecutorHolder {
+    private static final ExecutorService EXECUTOR =
+        Executors.newCachedThreadPool(
+            r -> {
+              Thread thread = new Thread(r, "webin-cli-http2");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /** Limits the timeout of each request to the time remaining before the current deadline. */
+  private static class DeadlineAwareJdkRequestFactory implements ClientHttpRequestFactory {
+    private final HttpClient httpClient;
+    private final Duration readTimeout;
+    private final JdkClientHttpRequestFactory requestFactory;
+
+    private DeadlineAwareJdkRequestFactory(HttpClient httpClient, Duration readTimeout) {
+      this.httpClient = httpClient;
+      this.readTimeout = readTimeout;
+      this.requestFactory = createRequestFactory(readTimeout);
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+      Deadline deadline = Deadline.current();
+      if (deadline.isNone()) {
+        return requestFactory.createRequest(uri, httpMethod);
+      }
+      // The JDK request factory holds no resources, so one is created for each timeout.
+      Duration timeout =
+          Duration.ofMillis(
+              Math.max(1, Math.min(readTimeout.toMillis(), deadline.getRemainingMillis())));
+      return createRequestFactory(timeout).createRequest(uri, httpMethod);
+    }
+
+    private JdkClientHttpRequestFactory createRequestFactory(Duration timeout) {
+      JdkClientHttpRequestFactory factory =
+          new JdkClientHttpRequestFactory(httpClient, Http2ExecutorHolder.EXECUTOR);
+      factory.setReadTimeout(timeout);
+      return factory;
+    }
+  }
+
+  /**
+   * Registers the base URI of a service. Requests to URIs under the base URI are throttled
+   * separately from the other requests to the same host.
+   */
+  void registerServiceUri(String baseUri) {
+    if (baseUri != null) {
+      throttlingInterceptor.addServiceEndpoint(CircuitBreaker.getServiceEndpoint(baseUri));
+    }
+  }
+
+  /** Returns a thread-safe rest template that sends its requests through this transport. */
+  public RestTemplate getRestTemplate() {
+    return restTemplate;
+  }
+
+  /**
+   * Returns a rest template that sends its requests through this transport and reports them to the
+   * given metrics. The shared rest template is returned if the metrics are {@link
+   * ServiceMetrics#NOOP}.
+   */
+  RestTemplate getRestTemplate(ServiceMetrics metrics) {
+    if (metrics == null || metrics == ServiceMetrics.NOOP) {
+      return restTemplate;
+    }
+    // Metrics are recorded for the requests that are actually made, including conditional ones.
+    List<ClientHttpRequestInterceptor> meteredInterceptors = new ArrayList<>(interceptors);
+    meteredInterceptors.add(new ServiceMetricsInterceptor(metrics));
+    return createRestTemplate(meteredInterceptors);
+  }
+
+  public Protocol getProtocol() {
+    return protocol;
+  }
+
+  public Duration getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  public Duration getReadTimeout() {
+    return readTimeout;
+  }
+
+  /**
+   * Closes all pooled connections. The connections of the JDK HTTP client used for HTTP/2 are
+   * closed once they are idle.
+   */
+  @Override
+  public void close() throws IOException {
+    if (httpClient != null) {
+      httpClient.close();
+    }
+  }
+}
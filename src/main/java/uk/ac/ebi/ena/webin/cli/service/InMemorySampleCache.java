@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import uk.ac.ebi.ena.webin.cli.utils.CacheStats;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Sample;
+
+/**
+ * Thread-safe in-memory sample cache. Entries expire after a time to live. When the cache is full
+ * the least recently used entry is evicted.
+ */
+public class InMemorySampleCache implements SampleCache {
+
+  public static final int DEFAULT_MAX_SIZE = 10_000;
+  public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofHours(1);
+  public static final Duration DEFAULT_NOT_FOUND_TIME_TO_LIVE = Duration.ofMinutes(1);
+
+  private final ExpiringCache<ValidatedEntry> cache;
+
+  /** A cached sample and the validators of the response it was decoded from. */
+  private static class ValidatedEntry {
+    private final Sample sample;
+    private final String etag;
+    private final String lastModified;
+
+    private ValidatedEntry(Sample sample, String etag, String lastModified) {
+      this.sample = sample;
+      this.etag = etag;
+      this.lastModified = lastModified;
+    }
+  }
+
+  public InMemorySampleCache() {
+    this(DEFAULT_MAX_SIZE, DEFAULT_TIME_TO_LIVE, DEFAULT_NOT_FOUND_TIME_TO_LIVE);
+  }
+
+  /**
+   * @param maxSize the maximum number of cached entries
+   * @param timeToLive how long retrieved samples are cached
+   * @param notFoundTimeToLive how long unknown samples or samples that cannot be referenced are
+   *     cached
+   */
+  public InMemorySampleCache(int maxSize, Duration timeToLive, Duration notFoundTimeToLive) {
+    this(maxSize, timeToLive, notFoundTimeToLive, Clock.systemUTC());
+  }
+
+  InMemorySampleCache(int maxSize, Duration timeToLive, Duration notFoundTimeToLive, Clock clock) {
+    this.cache = new ExpiringCache<>(maxSize, timeToLive, notFoundTimeToLive, clock);
+  }
+
+  @Override
+  public SampleCacheEntry get(String sampleId) {
+    return toSampleCacheEntry(cache.get(sampleId));
+  }
+
+  @Override
+  public SampleCacheEntry getStale(String sampleId) {
+    return toSampleCacheEntry(cache.getStale(sampleId));
+  }
+
+  @Override
+  public void put(String sampleId, Sample sample) {
+    put(sampleId, sample, null, null);
+  }
+
+  @Override
+  public void put(String sampleId, Sample sample, String etag, String lastModified) {
+    cache.put(sampleId, new ValidatedEntry(sample, etag, lastModified));
+  }
+
+  @Override
+  public void putNotFound(String sampleId) {
+    cache.putNotFound(sampleId);
+  }
+
+  @Override
+  public void invalidate(String sampleId) {
+    cache.invalidate(sampleId);
+  }
+
+  @Override
+  public void clear() {
+    cache.clear();
+  }
+
+  @Override
+  public CacheStats getStats() {
+    return cache.getStats();
+  }
+
+  private static SampleCacheEntry toSampleCacheEntry(ExpiringCache.Entry<ValidatedEntry> entry) {
+    if (entry == null) {
+      return null;
+    }
+    if (entry.isNotFound()) {
+      return new SampleCacheEntry(null, entry.getCreated(), entry.getExpires());
+    }
+    ValidatedEntry value = entry.getValue();
+    return new SampleCacheEntry(
+        value.sample, entry.getCreated(), entry.getExpires(), value.etag, value.lastModified);
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import uk.ac.ebi.ena.webin.cli.utils.CacheStats;
+
+/**
+ * Thread-safe in-memory cache for the studies, runs and analyses retrieved by a {@link
+ * ReferenceService}. Besides references, the cache also remembers references that are unknown or
+ * cannot be referenced so that they are not looked up again. Entries expire after a time to live.
+ * When the cache is full the least recently used entry is evicted.
+ *
+ * <p>One cache can be shared by the study, run and analysis services. Entries are keyed by
+ * reference type as well as by accession. Cached references are only valid for the submission
+ * account that retrieved them and are shared between callers, so they must not be modified.
+ */
+public class ReferenceCache {
+
+  public static final int DEFAULT_MAX_SIZE = 10_000;
+  public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofHours(1);
+  public static final Duration DEFAULT_NOT_FOUND_TIME_TO_LIVE = Duration.ofMinutes(1);
+
+  private final ExpiringCache<Object> cache;
+
+  public ReferenceCache() {
+    this(DEFAULT_MAX_SIZE, DEFAULT_TIME_TO_LIVE, DEFAULT_NOT_FOUND_TIME_TO_LIVE);
+  }
+
+  /**
+   * @param maxSize the maximum number of cached entries
+   * @param timeToLive how long retrieved references are cached
+   * @param notFoundTimeToLive how long unknown references or references that cannot be referenced
+   *     are cached
+   */
+  public ReferenceCache(int maxSize, Duration timeToLive, Duration notFoundTimeToLive) {
+    this(maxSize, timeToLive, notFoundTimeToLive, Clock.systemUTC());
+  }
+
+  ReferenceCache(int maxSize, Duration timeToLive, Duration notFoundTimeToLive, Clock clock) {
+    this.cache = new ExpiringCache<>(maxSize, timeToLive, notFoundTimeToLive, clock);
+  }
+
+  /** Returns the cached entry or null if the reference is not cached or its entry has expired. */
+  ExpiringCache.Entry<Object> get(String referenceType, String id) {
+    return cache.get(toKey(referenceType, id));
+  }
+
+  /** Caches a retrieved reference. */
+  void put(String referenceType, String id, Object reference) {
+    cache.put(toKey(referenceType, id), reference);
+  }
+
+  /** Caches that the reference is unknown or cannot be referenced. */
+  void putNotFound(String referenceType, String id) {
+    cache.putNotFound(toKey(referenceType, id));
+  }
+
+  public void invalidate(String referenceType, String id) {
+    cache.invalidate(toKey(referenceType, id));
+  }
+
+  public void clear() {
+    cache.clear();
+  }
+
+  public CacheStats getStats() {
+    return cache.getStats();
+  }
+
+  private static String toKey(String referenceType, String id) {
+    return referenceType + ":" + id;
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceException;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceTimeoutException;
+import uk.ac.ebi.ena.webin.cli.utils.AsyncUtils;
+import uk.ac.ebi.ena.webin.cli.utils.Deadline;
+import uk.ac.ebi.ena.webin.cli.utils.SingleFlight;
+
+/**
+ * Looks up references by accession for {@link SampleService} and {@link ReferenceService}. Cached
+ * references are returned straight away. Otherwise, concurrent lookups of the same accession are
+ * coalesced and the retrieved reference, or the fact that it is unknown or cannot be referenced,
+ * is cached. Batch lookups retrieve their references concurrently, up to the batch parallelism,
+ * and return the errors of individual references in the batch result.
+ *
+ * @param <T> the reference type
+ */
+abstract class ReferenceLookup<T> {
+
+  private final int batchParallelism;
+  private final Executor executor;
+
+  private final SingleFlight<String, T> inFlightLookups = new SingleFlight<>();
+
+  ReferenceLookup(int batchParallelism, Executor executor) {
+    this.batchParallelism = Math.max(1, batchParallelism);
+    this.executor = executor;
+  }
+
+  /** Returns the reference type used in messages, for example {@code sample}. */
+  abstract String getReferenceType();
+
+  /**
+   * Returns the cached reference, or null if the reference is not cached or caching is disabled.
+   * Throws an exception if the reference is cached as not found.
+   */
+  abstract T getCached(String id, String key);
+
+  /** Caches a retrieved reference unless caching is disabled. */
+  abstract void putCached(String key, T reference);
+
+  /** Caches that the reference is unknown or cannot be referenced unless caching is disabled. */
+  abstract void putNotFound(String key);
+
+  /** Returns true if the retrieval failed because the reference is unknown or cannot be used. */
+  abstract boolean isNotFound(Throwable ex);
+
+  /** Returns the exception for a lookup that has not completed before the deadline. */
+  abstract ServiceTimeoutException timeout(String id);
+
+  /**
+   * Returns the cached reference, or retrieves and caches it. The retrieval is only started if the
+   * reference is not cached and no lookup with the same key is in progress. A retrieval that
+   * completes straight away, for example one made on the caller thread, completes the returned
+   * future before it is returned.
+   *
+   * <p>The returned future fails with the exception returned by {@link #timeout(String)} if the
+   * lookup has not completed before the deadline. The retrieval itself is bounded by the deadline
+   * of the caller that started it.
+   */
+  CompletableFuture<T> lookupAsync(
+      String id, String key, Deadline deadline, Supplier<CompletableFuture<T>> retrieval) {
+    try {
+      T cachedReference = getCached(id, key);
+      if (cachedReference != null) {
+        return CompletableFuture.completedFuture(cachedReference);
+      }
+    } catch (RuntimeException ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+
+    CompletableFuture<T> lookup =
+        inFlightLookups.executeAsync(
+            key,
+            () -> {
+              // The reference may have been cached by a lookup that completed after the cache was
+              // checked above.
+              T reference = getCached(id, key);
+              return reference != null
+                  ? CompletableFuture.completedFuture(reference)
+                  : retrieveAndCache(key, retrieval);
+            });
+    return AsyncUtils.withDeadline(lookup, deadline, () -> timeout(id));
+  }
+
+  private CompletableFuture<T> retrieveAndCache(
+      String key, Supplier<CompletableFuture<T>> retrieval) {
+    return retrieval
+        .get()
+        .whenComplete(
+            (reference, ex) -> {
+              if (ex == null) {
+                if (reference != null) {
+                  putCached(key, reference);
+                }
+              } else if (isNotFound(AsyncUtils.unwrap(ex))) {
+                putNotFound(key);
+              }
+            });
+  }
+
+  /**
+   * Looks up several references with the given lookup. Accessions are trimmed and duplicates are
+   * looked up only once. At most the batch parallelism of lookups are in progress at the same
+   * time. A reference that cannot be retrieved does not fail the batch. Instead, the error is
+   * returned in the batch result.
+   */
+  CompletableFuture<BatchResult<T>> lookupBatchAsync(
+      Collection<String> ids, Function<String, CompletableFuture<T>> lookup) {
+    List<String> distinctIds = getDistinctIds(ids);
+    if (distinctIds.isEmpty()) {
+      return CompletableFuture.completedFuture(new BatchResult<>());
+    }
+
+    List<CompletableFuture<T>> lookups = new ArrayList<>(distinctIds.size());
+    for (int i = 0; i < distinctIds.size(); i++) {
+      lookups.add(new CompletableFuture<>());
+    }
+    AtomicInteger nextLookup = new AtomicInteger();
+    for (int i = 0; i < Math.min(batchParallelism, distinctIds.size()); i++) {
+      startNextBatchLookup(distinctIds, lookup, lookups, nextLookup);
+    }
+
+    return CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0]))
+        .handle(
+            (ignored, ignoredEx) -> {
+              BatchResult<T> batchResult = new BatchResult<>();
+              for (int i = 0; i < distinctIds.size(); i++) {
+                try {
+                  batchResult.addResult(distinctIds.get(i), lookups.get(i).join());
+                } catch (CompletionException ex) {
+                  batchResult.addError(
+                      distinctIds.get(i), toRuntimeException(AsyncUtils.unwrap(ex)));
+                }
+              }
+              return batchResult;
+            });
+  }
+
+  /** Starts the next batch lookup, and when it completes, the one after it. */
+  private void startNextBatchLookup(
+      List<String> ids,
+      Function<String, CompletableFuture<T>> lookup,
+      List<CompletableFuture<T>> lookups,
+      AtomicInteger nextLookup) {
+    int i = nextLookup.getAndIncrement();
+    if (i >= ids.size()) {
+      return;
+    }
+    CompletableFuture<T> result = lookups.get(i);
+    // Continued on the executor so that lookups completed straight away, for example from the
+    // cache, do not start the next one recursively.
+    lookup
+        .apply(ids.get(i))
+        .whenCompleteAsync(
+            (reference, ex) -> {
+              if (ex == null) {
+                result.complete(reference);
+              } else {
+                result.completeExceptionally(AsyncUtils.unwrap(ex));
+              }
+              startNextBatchLookup(ids, lookup, lookups, nextLookup);
+            },
+            executor);
+  }
+
+  /** Waits for a batch lookup started by {@link #lookupBatchAsync}. */
+  BatchResult<T> awaitBatch(CompletableFuture<BatchResult<T>> batch) {
+    try {
+      return batch.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new ServiceException(
+          ex, "Interrupted while retrieving " + getReferenceType() + " references.");
+    } catch (ExecutionException ex) {
+      throw toRuntimeException(ex.getCause());
+    }
+  }
+
+  /** Returns the trimmed accessions without blank ones and duplicates, in the given order. */
+  static List<String> getDistinctIds(Collection<String> ids) {
+    Set<String> distinctIds = new LinkedHashSet<>();
+    for (String id : ids) {
+      if (id != null && !id.trim().isEmpty()) {
+        distinctIds.add(id.trim());
+      }
+    }
+    return new ArrayList<>(distinctIds);
+  }
+
+  RuntimeException toRuntimeException(Throwable ex) {
+    if (ex instanceof RuntimeException) {
+      return (RuntimeException) ex;
+    }
+    return new ServiceException(
+        ex instanceof Exception ? (Exception) ex : new RuntimeException(ex),
+        "Unexpected error getting " + getReferenceType() + ".");
+  }
+}
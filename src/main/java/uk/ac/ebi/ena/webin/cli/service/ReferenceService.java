@@ -0,0 +1,306 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceException;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceMessage;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceTimeoutException;
+import uk.ac.ebi.ena.webin.cli.utils.AsyncUtils;
+import uk.ac.ebi.ena.webin.cli.utils.Deadline;
+import uk.ac.ebi.ena.webin.cli.utils.RetryUtils;
+
+/**
+ * Base class of the services that retrieve references from the Webin REST service one accession
+ * at a time. Lookups are retried with the same policy as sample lookups and are sent through the
+ * service's pooled transport.
+ *
+ * <p>Retrieved references, and references that are unknown or cannot be referenced, are cached.
+ * Concurrent lookups of the same reference are coalesced. Batch lookups retrieve their references
+ * concurrently, up to the configured batch parallelism, so that a manifest with many references
+ * is resolved in about as many round trips as the batch parallelism allows. Unknown references
+ * are reported like references that cannot be referenced.
+ *
+ * @param <T> the reference type
+ */
+public abstract class ReferenceService<T> extends WebinService {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ReferenceService.class);
+
+  public static final int DEFAULT_BATCH_PARALLELISM = 10;
+
+  private final ReferenceCache referenceCache;
+  private final Duration timeout;
+  private final ReferenceLookup<T> referenceLookup;
+
+  public abstract static class AbstractReferenceBuilder<T> extends AbstractBuilder<T> {
+    protected ReferenceCache referenceCache = new ReferenceCache();
+    protected int batchParallelism = DEFAULT_BATCH_PARALLELISM;
+    protected Duration timeout;
+
+    @Override
+    public AbstractReferenceBuilder<T> setWebinRestV1Uri(String webinRestV1Uri) {
+      super.setWebinRestV1Uri(webinRestV1Uri);
+      return this;
+    }
+
+    @Override
+    public AbstractReferenceBuilder<T> setWebinRestV2Uri(String webinRestV2Uri) {
+      super.setWebinRestV2Uri(webinRestV2Uri);
+      return this;
+    }
+
+    @Override
+    public AbstractReferenceBuilder<T> setUserName(String userName) {
+      super.setUserName(userName);
+      return this;
+    }
+
+    @Override
+    public AbstractReferenceBuilder<T> setPassword(String password) {
+      super.setPassword(password);
+      return this;
+    }
+
+    @Override
+    public AbstractReferenceBuilder<T> setCredentials(String userName, String password) {
+      super.setCredentials(userName, password);
+      return this;
+    }
+
+    @Override
+    public AbstractReferenceBuilder<T> setAuthToken(String authToken) {
+      super.setAuthToken(authToken);
+      return this;
+    }
+
+    @Override
+    public AbstractReferenceBuilder<T> setHttpTransport(HttpTransport httpTransport) {
+      super.setHttpTransport(httpTransport);
+      return this;
+    }
+
+    @Override
+    public AbstractReferenceBuilder<T> setAsyncExecutor(Executor asyncExecutor) {
+      super.setAsyncExecutor(asyncExecutor);
+      return this;
+    }
+
+    @Override
+    public AbstractReferenceBuilder<T> setMetrics(ServiceMetrics metrics) {
+      super.setMetrics(metrics);
+      return this;
+    }
+
+    /**
+     * Sets the cache used to avoid retrieving the same reference again. By default, each service
+     * has its own cache. The same cache can be given to the study, run and analysis services of a
+     * submission account. Caching is disabled if the cache is null.
+     */
+    public AbstractReferenceBuilder<T> setReferenceCache(ReferenceCache referenceCache) {
+      this.referenceCache = referenceCache;
+      return this;
+    }
+
+    /** The maximum number of references retrieved concurrently by a batch lookup. */
+    public AbstractReferenceBuilder<T> setBatchParallelism(int batchParallelism) {
+      this.batchParallelism = batchParallelism;
+      return this;
+    }
+
+    /**
+     * Sets the time allowed for retrieving a reference, including all retries. Lookups that run
+     * out of time fail with {@link ServiceTimeoutException}. By default, there is no limit. Batch
+     * lookups apply the limit to the batch as a whole.
+     */
+    public AbstractReferenceBuilder<T> setTimeout(Duration timeout) {
+      this.timeout = timeout;
+      return this;
+    }
+  }
+
+  protected ReferenceService(AbstractReferenceBuilder<?> builder) {
+    super(builder);
+    this.referenceCache = builder.referenceCache;
+    this.timeout = builder.timeout;
+    this.referenceLookup = new CachedReferenceLookup(builder.batchParallelism);
+  }
+
+  /** Returns the reference type used in cache keys and messages, for example {@code run}. */
+  protected abstract String getReferenceType();
+
+  /** Returns the message reported for an unknown reference or one that cannot be referenced. */
+  protected abstract ServiceMessage getValidationErrorMessage();
+
+  /**
+   * Makes a single attempt to retrieve the reference. Returns null if the reference cannot be
+   * referenced by the submission account.
+   */
+  protected abstract T fetchReference(String id);
+
+  /** Returns the reference cache or null if caching is disabled. */
+  public ReferenceCache getReferenceCache() {
+    return referenceCache;
+  }
+
+  /** Returns the reference accession in the form used as the cache key. */
+  public static String normalizeId(String id) {
+    return id.trim().toUpperCase();
+  }
+
+  /** Retrieves the reference within the timeout given to the builder. */
+  protected final T getReference(String id) {
+    return getReference(id, Deadline.after(timeout));
+  }
+
+  /**
+   * Retrieves the reference before the deadline.
+   *
+   * @throws ServiceTimeoutException if the deadline expires.
+   */
+  protected final T getReference(String id, Deadline deadline) {
+    return AsyncUtils.join(getReferenceAsync(id, deadline));
+  }
+
+  /** Asynchronous counterpart of {@link #getReference(String, Deadline)}. */
+  protected final CompletableFuture<T> getReferenceAsync(String id, Deadline deadline) {
+    return referenceLookup.lookupAsync(
+        id, normalizeId(id), deadline, () -> retrieveReference(id, deadline));
+  }
+
+  /**
+   * Retrieves the reference. Fails with {@link ReferenceNotFoundException} if the reference is
+   * unknown or cannot be referenced.
+   */
+  private CompletableFuture<T> retrieveReference(String id, Deadline deadline) {
+    CompletableFuture<T> retrieval =
+        RetryUtils.executeWithRetryAsync(
+            getWebinRestV1Uri(),
+            deadline,
+            getMetrics(),
+            () -> {
+              try {
+                return fetchReference(id.trim());
+              } catch (HttpClientErrorException.NotFound ex) {
+                // Unknown references are reported like references that cannot be referenced.
+                return null;
+              }
+            },
+            retryCount -> LOGGER.warn("Retrying " + getReferenceType() + " retrieval from server."),
+            getAsyncExecutor(),
+            HttpServerErrorException.class,
+            ResourceAccessException.class);
+
+    return AsyncUtils.propagateCancellation(
+        retrieval.thenApply(
+            reference -> {
+              if (reference == null) {
+                throw new ReferenceNotFoundException(getValidationErrorMessage().format(id));
+              }
+              return reference;
+            }),
+        retrieval);
+  }
+
+  /**
+   * Retrieves several references concurrently. Duplicate accessions are retrieved only once. A
+   * reference that cannot be retrieved does not fail the batch. Instead, the error is returned in
+   * the batch result.
+   */
+  protected final BatchResult<T> getReferences(Collection<String> ids) {
+    return getReferences(ids, Deadline.after(timeout));
+  }
+
+  /**
+   * Retrieves several references as {@link #getReferences(Collection)} does before the deadline.
+   */
+  protected final BatchResult<T> getReferences(Collection<String> ids, Deadline deadline) {
+    return referenceLookup.awaitBatch(getReferencesAsync(ids, deadline));
+  }
+
+  /**
+   * Asynchronous counterpart of {@link #getReferences(Collection, Deadline)}. At most the
+   * configured batch parallelism of references are retrieved at the same time.
+   */
+  protected final CompletableFuture<BatchResult<T>> getReferencesAsync(
+      Collection<String> ids, Deadline deadline) {
+    return referenceLookup.lookupBatchAsync(ids, id -> getReferenceAsync(id, deadline));
+  }
+
+  /** Looks up references through the reference cache, if caching is enabled. */
+  private class CachedReferenceLookup extends ReferenceLookup<T> {
+    private CachedReferenceLookup(int batchParallelism) {
+      super(batchParallelism, getAsyncExecutor());
+    }
+
+    @Override
+    String getReferenceType() {
+      return ReferenceService.this.getReferenceType();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    T getCached(String id, String key) {
+      if (referenceCache == null) {
+        return null;
+      }
+      ExpiringCache.Entry<Object> entry = referenceCache.get(getReferenceType(), key);
+      if (entry == null) {
+        return null;
+      }
+      if (entry.isNotFound()) {
+        throw new ReferenceNotFoundException(getValidationErrorMessage().format(id));
+      }
+      return (T) entry.getValue();
+    }
+
+    @Override
+    void putCached(String key, T reference) {
+      if (referenceCache != null) {
+        referenceCache.put(getReferenceType(), key, reference);
+      }
+    }
+
+    @Override
+    void putNotFound(String key) {
+      if (referenceCache != null) {
+        referenceCache.putNotFound(getReferenceType(), key);
+      }
+    }
+
+    @Override
+    boolean isNotFound(Throwable ex) {
+      return ex instanceof ReferenceNotFoundException;
+    }
+
+    @Override
+    ServiceTimeoutException timeout(String id) {
+      return new ServiceTimeoutException(
+          ServiceMessage.REFERENCE_SERVICE_TIMEOUT_ERROR.format(getReferenceType(), id));
+    }
+  }
+
+  /** Thrown when a reference is unknown or cannot be referenced by the submission account. */
+  private static class ReferenceNotFoundException extends ServiceException {
+    private static final long serialVersionUID = 1L;
+
+    private ReferenceNotFoundException(String message) {
+      super(message);
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceMessage;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceTimeoutException;
+import uk.ac.ebi.ena.webin.cli.utils.Deadline;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Run;
+
+/** Retrieves run references that can be referenced by the submission account. */
+public class RunService extends ReferenceService<Run> {
+
+  public static final String SERVICE_NAME = "Run";
+
+  public static class Builder extends AbstractReferenceBuilder<RunService> {
+    @Override
+    public RunService build() {
+      return new RunService(this);
+    }
+  }
+
+  public RunService(AbstractReferenceBuilder<RunService> builder) {
+    super(builder);
+  }
+
+  /** Retrieves the run within the timeout given to the builder. */
+  public Run getRun(String runId) {
+    return getReference(runId);
+  }
+
+  /**
+   * Retrieves the run before the deadline.
+   *
+   * @throws ServiceTimeoutException if the deadline expires.
+   */
+  public Run getRun(String runId, Deadline deadline) {
+    return getReference(runId, deadline);
+  }
+
+  /** Asynchronous counterpart of {@link #getRun(String, Deadline)}. */
+  public CompletableFuture<Run> getRunAsync(String runId, Deadline deadline) {
+    return getReferenceAsync(runId, deadline);
+  }
+
+  /**
+   * Retrieves several runs concurrently within the timeout given to the builder. A run that cannot
+   * be retrieved does not fail the batch. Instead, the error is returned in the batch result.
+   */
+  public BatchResult<Run> getRuns(Collection<String> runIds) {
+    return getReferences(runIds);
+  }
+
+  /** Retrieves several runs as {@link #getRuns(Collection)} does before the deadline. */
+  public BatchResult<Run> getRuns(Collection<String> runIds, Deadline deadline) {
+    return getReferences(runIds, deadline);
+  }
+
+  /** Asynchronous counterpart of {@link #getRuns(Collection, Deadline)}. */
+  public CompletableFuture<BatchResult<Run>> getRunsAsync(
+      Collection<String> runIds, Deadline deadline) {
+    return getReferencesAsync(runIds, deadline);
+  }
+
+  @Override
+  protected String getReferenceType() {
+    return "run";
+  }
+
+  @Override
+  protected ServiceMessage getValidationErrorMessage() {
+    return ServiceMessage.RUN_SERVICE_VALIDATION_ERROR;
+  }
+
+  @Override
+  protected Run fetchReference(String runId) {
+    RunResponse response =
+        getRestTemplate()
+            .exchange(
+                resolveAgainstWebinRestV1Uri("cli/reference/run/{id}"),
+                HttpMethod.GET,
+                new HttpEntity<>(getAuthHeader()),
+                RunResponse.class,
+                runId)
+            .getBody();
+
+    if (response == null || !response.canBeReferenced) {
+      return null;
+    }
+
+    return new Run(response.id, response.alias);
+  }
+
+  private static class RunResponse {
+    public String id;
+    public String alias;
+    public boolean canBeReferenced;
+  }
+}
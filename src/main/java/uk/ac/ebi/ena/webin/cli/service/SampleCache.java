@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import uk.ac.ebi.ena.webin.cli.utils.CacheStats;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Sample;
+
+/**
+ * Cache for samples retrieved by {@link SampleService}. Besides samples, the cache also remembers
+ * samples that are unknown or cannot be referenced so that they are not looked up again.
+ *
+ * <p>Cache keys are sample accessions normalised by {@link SampleService#normalizeSampleId}.
+ * Cached samples are shared between callers and must not be modified.
+ */
+public interface SampleCache {
+
+  /** Returns the cached entry or null if the sample is not cached or its entry has expired. */
+  SampleCacheEntry get(String sampleId);
+
+  /** Caches a retrieved sample. */
+  void put(String sampleId, Sample sample);
+
+  /**
+   * Caches a retrieved sample together with the validators of the response it was decoded from.
+   * Caches that do not keep validators cache the sample only.
+   */
+  default void put(String sampleId, Sample sample, String etag, String lastModified) {
+    put(sampleId, sample);
+  }
+
+  /**
+   * Returns the cached entry even if it has expired, or null if the sample is not cached. Expired
+   * entries that have validators are revalidated instead of being retrieved again in full. Caches
+   * that do not keep validators return null.
+   */
+  default SampleCacheEntry getStale(String sampleId) {
+    return null;
+  }
+
+  /** Caches that the sample is unknown or cannot be referenced. */
+  void putNotFound(String sampleId);
+
+  void invalidate(String sampleId);
+
+  void clear();
+
+  CacheStats getStats();
+}
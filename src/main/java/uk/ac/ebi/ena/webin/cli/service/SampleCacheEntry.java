@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import java.time.Instant;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Sample;
+
+/**
+ * Cached sample or a record that the sample is unknown or cannot be referenced. A sample retrieved
+ * from Biosamples also keeps the {@code ETag} and {@code Last-Modified} validators of the response
+ * it was decoded from so that it can be revalidated with a conditional request once it has
+ * expired.
+ */
+public class SampleCacheEntry {
+
+  private final Sample sample;
+  private final Instant created;
+  private final Instant expires;
+  private final String etag;
+  private final String lastModified;
+
+  public SampleCacheEntry(Sample sample, Instant created, Instant expires) {
+    this(sample, created, expires, null, null);
+  }
+
+  public SampleCacheEntry(
+      Sample sample, Instant created, Instant expires, String etag, String lastModified) {
+    this.sample = sample;
+    this.created = created;
+    this.expires = expires;
+    this.etag = etag;
+    this.lastModified = lastModified;
+  }
+
+  /** Returns the cached sample or null if the sample is unknown or cannot be referenced. */
+  public Sample getSample() {
+    return sample;
+  }
+
+  public boolean isNotFound() {
+    return sample == null;
+  }
+
+  public Instant getCreated() {
+    return created;
+  }
+
+  public Instant getExpires() {
+    return expires;
+  }
+
+  public boolean isExpired(Instant now) {
+    return !now.isBefore(expires);
+  }
+
+  /** Returns the {@code ETag} of the response the sample was decoded from, or null. */
+  public String getEtag() {
+    return etag;
+  }
+
+  /** Returns the {@code Last-Modified} date of the sample's response, or null. */
+  public String getLastModified() {
+    return lastModified;
+  }
+
+  /** Returns true if the sample can be revalidated with a conditional request. */
+  public boolean hasValidators() {
+    return sample != null && (etag != null || lastModified != null);
+  }
+}
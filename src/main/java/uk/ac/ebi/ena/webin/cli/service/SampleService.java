@@ -10,17 +10,34 @@
  */
 package uk.ac.ebi.ena.webin.cli.service;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.client.RestTemplate;
 import uk.ac.ebi.ena.webin.cli.service.exception.ServiceException;
 import uk.ac.ebi.ena.webin.cli.service.exception.ServiceMessage;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceTimeoutException;
+import uk.ac.ebi.ena.webin.cli.utils.AsyncUtils;
+import uk.ac.ebi.ena.webin.cli.utils.Deadline;
 import uk.ac.ebi.ena.webin.cli.utils.RetryUtils;
 import uk.ac.ebi.ena.webin.cli.validator.reference.Sample;
 
@@ -31,18 +48,82 @@ public class SampleService extends WebinService {
 
   public static final String BIOSAMPLES_ID_PREFIX = "SAM";
 
+  /** Prefixes of ENA, NCBI and DDBJ sample accessions. */
+  private static final List<String> SRA_SAMPLE_ID_PREFIXES = Arrays.asList("ERS", "SRS", "DRS");
+
+  public static final int DEFAULT_BATCH_PARALLELISM = 10;
+
   private final String biosamplesWebinAuthToken;
 
   private final BiosamplesService biosamplesService;
 
   private final SampleXmlService sampleXmlService;
 
+  private final SampleCache sampleCache;
+
+  private final boolean hedgedLookup;
+
+  private final Duration timeout;
+
+  private final boolean biosamplesSearch;
+
+  private final TaxonomyIndex taxonomyIndex;
+
+  private final ReferenceLookup<Sample> sampleLookup;
+
+  /** Retrieves samples on the caller thread. The returned futures are always complete. */
+  private final SampleSource blockingSampleSource =
+      new SampleSource() {
+        @Override
+        public CompletableFuture<Sample> getBiosamplesSample(
+            String sampleId, SampleCacheEntry staleEntry, Deadline deadline) {
+          return callBlocking(
+              () -> SampleService.this.getBiosamplesSample(sampleId, staleEntry, deadline));
+        }
+
+        @Override
+        public CompletableFuture<Sample> getSraSample(String sampleId, Deadline deadline) {
+          return callBlocking(() -> SampleService.this.getSraSample(sampleId, deadline));
+        }
+
+        @Override
+        public CompletableFuture<Sample> getSampleXml(String sraSampleId, Deadline deadline) {
+          return callBlocking(() -> sampleXmlService.getSample(sraSampleId, deadline));
+        }
+      };
+
+  /** Retrieves samples on the service's executor. */
+  private final SampleSource asyncSampleSource =
+      new SampleSource() {
+        @Override
+        public CompletableFuture<Sample> getBiosamplesSample(
+            String sampleId, SampleCacheEntry staleEntry, Deadline deadline) {
+          return getBiosamplesSampleAsync(sampleId, staleEntry, deadline);
+        }
+
+        @Override
+        public CompletableFuture<Sample> getSraSample(String sampleId, Deadline deadline) {
+          return getSraSampleAsync(sampleId, deadline);
+        }
+
+        @Override
+        public CompletableFuture<Sample> getSampleXml(String sraSampleId, Deadline deadline) {
+          return sampleXmlService.getSampleAsync(sraSampleId, deadline);
+        }
+      };
+
   public static class Builder extends AbstractBuilder<SampleService> {
     protected String webinAuthUri;
     protected String biosamplesUri;
     protected String biosamplesWebinAuthToken;
     protected String biosamplesWebinUserName;
     protected String biosamplesWebinPassword;
+    protected int batchParallelism = DEFAULT_BATCH_PARALLELISM;
+    protected SampleCache sampleCache;
+    protected boolean hedgedLookup;
+    protected Duration timeout;
+    protected boolean biosamplesSearch = true;
+    protected TaxonomyIndex taxonomyIndex;
 
     @Override
     public Builder setWebinRestV1Uri(String webinRestV1Uri) {
@@ -80,6 +161,24 @@ public class SampleService extends WebinService {
       return this;
     }
 
+    @Override
+    public Builder setHttpTransport(HttpTransport httpTransport) {
+      super.setHttpTransport(httpTransport);
+      return this;
+    }
+
+    @Override
+    public Builder setAsyncExecutor(Executor asyncExecutor) {
+      super.setAsyncExecutor(asyncExecutor);
+      return this;
+    }
+
+    @Override
+    public Builder setMetrics(ServiceMetrics metrics) {
+      super.setMetrics(metrics);
+      return this;
+    }
+
     public Builder setWebinAuthUri(String webinAuthUri) {
       this.webinAuthUri = webinAuthUri;
       return this;
@@ -105,6 +204,67 @@ public class SampleService extends WebinService {
       return this;
     }
 
+    /** The maximum number of samples retrieved concurrently by {@link #getSamples(Collection)}. */
+    public Builder setBatchParallelism(int batchParallelism) {
+      this.batchParallelism = batchParallelism;
+      return this;
+    }
+
+    /**
+     * Sets the cache used to avoid retrieving the same sample again, for example an {@link
+     * InMemorySampleCache}. By default, there is no cache and every lookup retrieves the sample.
+     *
+     * <p>Cached samples are shared between all callers of the service and must not be modified.
+     */
+    public Builder setSampleCache(SampleCache sampleCache) {
+      this.sampleCache = sampleCache;
+      return this;
+    }
+
+    /**
+     * Enables hedged lookups. The fallback sources of a sample are queried in parallel with the
+     * preferred source instead of only after the preferred source has failed to return a valid
+     * sample. Fallback calls are cancelled once the preferred source has returned a valid sample.
+     * The sample returned is the same as without hedging, but samples that need a fallback source
+     * are returned sooner at the cost of some calls whose results are not used. Hedged lookups run
+     * on the async executor even when called through {@link SampleService#getSample(String)}.
+     */
+    public Builder setHedgedLookup(boolean hedgedLookup) {
+      this.hedgedLookup = hedgedLookup;
+      return this;
+    }
+
+    /**
+     * Sets the time allowed for retrieving a sample, including all the services it is retrieved
+     * from and all retries. Lookups that run out of time fail with {@link ServiceTimeoutException}.
+     * By default, there is no limit. Batch lookups apply the limit to the batch as a whole.
+     */
+    public Builder setTimeout(Duration timeout) {
+      this.timeout = timeout;
+      return this;
+    }
+
+    /**
+     * Enables or disables the Biosamples search API in {@link SampleService#getSamples}. When
+     * enabled, which is the default, uncached Biosamples accessions are first retrieved many at a
+     * time through the search API and added to the sample cache. The search is only used if a cache
+     * has been set with {@link #setSampleCache(SampleCache)}.
+     */
+    public Builder setBiosamplesSearch(boolean biosamplesSearch) {
+      this.biosamplesSearch = biosamplesSearch;
+      return this;
+    }
+
+    /**
+     * Sets a local taxonomy index used to add the taxonomy id, or the organism, missing from a
+     * retrieved sample. Biosamples samples whose organism is given without an NCBI taxonomy IRI are
+     * otherwise returned without a taxonomy id. By default, there is no index.
+     */
+    public Builder setTaxonomyIndex(TaxonomyIndex taxonomyIndex) {
+      this.taxonomyIndex = taxonomyIndex;
+      return this;
+    }
+
     @Override
     public SampleService build() {
       return new SampleService(this);
@@ -115,13 +275,22 @@ public class SampleService extends WebinService {
     super(builder);
 
     this.biosamplesWebinAuthToken = builder.biosamplesWebinAuthToken;
+    this.sampleCache = builder.sampleCache;
+    this.hedgedLookup = builder.hedgedLookup;
+    this.timeout = builder.timeout;
+    this.biosamplesSearch = builder.biosamplesSearch;
+    this.taxonomyIndex = builder.taxonomyIndex;
+    this.sampleLookup = new CachedSampleLookup(builder.batchParallelism);
 
     biosamplesService =
         new BiosamplesService(
             builder.webinAuthUri,
             builder.biosamplesUri,
             builder.biosamplesWebinUserName,
-            builder.biosamplesWebinPassword);
+            builder.biosamplesWebinPassword,
+            getHttpTransport(),
+            getMetrics(),
+            getAsyncExecutor());
 
     sampleXmlService =
         new SampleXmlService.Builder()
@@ -130,6 +299,9 @@ public class SampleService extends WebinService {
             .setAuthToken(getAuthToken())
             .setUserName(getUserName())
             .setPassword(getPassword())
+            .setHttpTransport(getHttpTransport())
+            .setAsyncExecutor(getAsyncExecutor())
+            .setMetrics(getMetrics())
             .build();
   }
 
@@ -137,59 +309,471 @@ public class SampleService extends WebinService {
    * Depending on what the given sample ID looks like, sample information will be retrieved from
    * either ENA or Biosamples. Also, if the sample is not retrieved from Biosamples then an attempt
    * will be made to retrieve it from ENA.
+   *
+   * <p>If a sample cache has been set, retrieved samples, and samples that are unknown or cannot be
+   * referenced, are cached. Cached samples are shared between callers and must not be modified.
+   * Expired Biosamples samples that were cached with the validators of their response are
+   * revalidated with a conditional request instead of being retrieved again in full.
+   *
+   * <p>Concurrent lookups of the same sample are coalesced. Only one of the callers retrieves the
+   * sample and the others wait for it to share its sample or its error.
+   *
+   * <p>The lookup is limited by the timeout given to the builder.
+   *
+   * @throws ServiceException if the sample is unknown or cannot be referenced.
    */
   public Sample getSample(String sampleId) {
-    boolean isBiosamplesRetrievalAlreadyAttempted = false;
+    return getSample(sampleId, Deadline.after(timeout));
+  }
 
-    if (isBiosamplesId(sampleId)) {
-      Sample biosamplesSample = getBiosamplesSample(sampleId);
+  /**
+   * Retrieves the sample as {@link #getSample(String)} does, but before the given deadline instead
+   * of within the timeout given to the builder. A caller waiting for a lookup started by another
+   * caller stops waiting at its own deadline.
+   *
+   * @throws ServiceTimeoutException if the deadline expires.
+   */
+  public Sample getSample(String sampleId, Deadline deadline) {
+    // The blocking source completes the lookup on this thread before the future is returned,
+    // unless the lookup has been started by another caller.
+    return AsyncUtils.join(
+        sampleLookup.lookupAsync(
+            sampleId,
+            normalizeSampleId(sampleId),
+            deadline,
+            () -> retrieveCompleteSample(sampleId, blockingSampleSource, deadline)));
+  }
 
-      if (isBiosamplesSampleValid(biosamplesSample)) {
-        return biosamplesSample;
-      }
+  /**
+   * Asynchronous counterpart of {@link #getSample(String)}. The sample is retrieved on the
+   * service's executor and waits between retries are scheduled on a timer instead of blocking a
+   * thread. The returned future is completed with the same sample, or the same exception, that
+   * {@link #getSample(String)} would return or throw.
+   */
+  public CompletableFuture<Sample> getSampleAsync(String sampleId) {
+    return getSampleAsync(sampleId, Deadline.after(timeout));
+  }
+
+  /** Asynchronous counterpart of {@link #getSample(String, Deadline)}. */
+  public CompletableFuture<Sample> getSampleAsync(String sampleId, Deadline deadline) {
+    return sampleLookup.lookupAsync(
+        sampleId,
+        normalizeSampleId(sampleId),
+        deadline,
+        () -> retrieveCompleteSample(sampleId, asyncSampleSource, deadline));
+  }
+
+  /**
+   * Retrieves the sample and adds the taxonomy information missing from it. An unknown sample is
+   * reported with the same exception whether or not it has been cached as not found.
+   */
+  private CompletableFuture<Sample> retrieveCompleteSample(
+      String sampleId, SampleSource sampleSource, Deadline deadline) {
+    SampleCacheEntry staleEntry = getStaleEntry(sampleId);
+    CompletableFuture<Sample> lookup =
+        hedgedLookup
+            ? retrieveSampleHedged(sampleId, staleEntry, deadline)
+            : retrieveSample(sampleId, staleEntry, sampleSource, deadline);
+    CompletableFuture<Sample> completeLookup =
+        taxonomyIndex != null ? lookup.thenApply(this::completeSample) : lookup;
+    return AsyncUtils.propagateCancellation(
+        completeLookup.exceptionallyCompose(
+            ex -> {
+              Throwable cause = AsyncUtils.unwrap(ex);
+              return CompletableFuture.failedFuture(
+                  cause instanceof HttpClientErrorException.NotFound
+                      ? new SampleNotFoundException(sampleId, (Exception) cause)
+                      : cause);
+            }),
+        lookup);
+  }
 
-      isBiosamplesRetrievalAlreadyAttempted = true;
+  /**
+   * Returns the expired cache entry of the sample if it can be revalidated, or null. The entry is
+   * used when the sample is retrieved from Biosamples with the accession of the cached sample.
+   */
+  private SampleCacheEntry getStaleEntry(String sampleId) {
+    if (sampleCache == null) {
+      return null;
+    }
+    SampleCacheEntry staleEntry = sampleCache.getStale(normalizeSampleId(sampleId));
+    return staleEntry != null && staleEntry.hasValidators() ? staleEntry : null;
+  }
+
+  /** Returns the sample cache or null if caching is disabled. */
+  public SampleCache getSampleCache() {
+    return sampleCache;
+  }
+
+  /**
+   * Retrieves the sample from the given source. The same steps are used for synchronous and
+   * asynchronous lookups. With the blocking source every step completes before the next one is
+   * composed, so the whole retrieval runs on the caller thread.
+   */
+  private CompletableFuture<Sample> retrieveSample(
+      String sampleId, SampleCacheEntry staleEntry, SampleSource sampleSource, Deadline deadline) {
+    if (isBiosamplesId(sampleId)) {
+      return sampleSource
+          .getBiosamplesSample(sampleId, staleEntry, deadline)
+          .thenCompose(
+              biosamplesSample ->
+                  isBiosamplesSampleValid(biosamplesSample)
+                      ? CompletableFuture.completedFuture(biosamplesSample)
+                      : retrieveSraSample(sampleId, null, sampleSource, deadline, true));
     }
 
+    return retrieveSraSample(sampleId, staleEntry, sampleSource, deadline, false);
+  }
+
+  private CompletableFuture<Sample> retrieveSraSample(
+      String sampleId,
+      SampleCacheEntry staleEntry,
+      SampleSource sampleSource,
+      Deadline deadline,
+      boolean isBiosamplesRetrievalAlreadyAttempted) {
+
     // If the sample couldn't be retrieved from BioSamples above, then retrieve it from ENA.
-    Sample sraSample = getSraSample(sampleId);
+    return sampleSource
+        .getSraSample(sampleId, deadline)
+        .thenCompose(
+            sraSample -> {
+              if (sraSample == null) {
+                return CompletableFuture.completedFuture(null);
+              }
+
+              // If an SRA sample has a Biosamples accession, then retrieve it from Biosamples using
+              // this accession. This is because getting samples data from Biosamples is always
+              // preferred.
+              if (sraSample.getBioSampleId() != null && !isBiosamplesRetrievalAlreadyAttempted) {
+                return sampleSource
+                    .getBiosamplesSample(sraSample.getBioSampleId(), staleEntry, deadline)
+                    .thenCompose(
+                        biosamplesSample ->
+                            isBiosamplesSampleValid(biosamplesSample)
+                                ? CompletableFuture.completedFuture(biosamplesSample)
+                                : addSampleXmlAttributes(sraSample, sampleSource, deadline));
+              }
+
+              return addSampleXmlAttributes(sraSample, sampleSource, deadline);
+            });
+  }
 
-    if (sraSample == null) {
-      return null;
+  /**
+   * Getting here means we couldn't get a sample from Biosamples. So return the SRA sample instead
+   * after adding attribute information to it.
+   */
+  private CompletableFuture<Sample> addSampleXmlAttributes(
+      Sample sraSample, SampleSource sampleSource, Deadline deadline) {
+    return sampleSource
+        .getSampleXml(sraSample.getSraSampleId(), deadline)
+        .thenApply(
+            sampleFromXml -> {
+              sraSample.setAttributes(sampleFromXml.getAttributes());
+              return sraSample;
+            });
+  }
+
+  /**
+   * Retrieves the sample from the same sources, and with the same precedence, as {@link
+   * #retrieveSample(String, SampleCacheEntry, SampleSource, Deadline)}, but queries the fallback
+   * sources without waiting for Biosamples.
+   *
+   * <ul>
+   *   <li>For a Biosamples accession, the ENA sample, followed by its sample XML, is retrieved
+   *       while waiting for Biosamples.
+   *   <li>For other accessions, the sample XML is retrieved while waiting for the Biosamples sample
+   *       referenced by the ENA sample. If the accession is an ENA sample accession, which is what
+   *       the sample XML is retrieved by, the sample XML is retrieved while waiting for the ENA
+   *       sample as well.
+   * </ul>
+   */
+  private CompletableFuture<Sample> retrieveSampleHedged(
+      String sampleId, SampleCacheEntry staleEntry, Deadline deadline) {
+    if (isBiosamplesId(sampleId)) {
+      CompletableFuture<Sample> biosamplesLookup =
+          getBiosamplesSampleAsync(sampleId, staleEntry, deadline);
+      CompletableFuture<Sample> fallbackLookup =
+          AsyncUtils.thenComposeCancellable(
+              getSraSampleAsync(sampleId, deadline),
+              sraSample ->
+                  sraSample != null && isFallbackNeeded(biosamplesLookup)
+                      ? addSampleXmlAttributesCancellable(sraSample, deadline)
+                      : CompletableFuture.completedFuture(sraSample));
+      return preferBiosamplesSample(biosamplesLookup, fallbackLookup);
     }
 
-    // If an SRA sample has a Biosamples accession, then retrieve it from Biosamples using this
-    // accession. This is because getting samples data from Biosamples is always preferred.
-    if (sraSample.getBioSampleId() != null && !isBiosamplesRetrievalAlreadyAttempted) {
-      Sample biosamplesSample = getBiosamplesSample(sraSample.getBioSampleId());
+    CompletableFuture<Sample> sampleXmlLookup =
+        isSraSampleId(sampleId) ? sampleXmlService.getSampleAsync(sampleId.trim(), deadline) : null;
+
+    CompletableFuture<Sample> result =
+        AsyncUtils.thenComposeCancellable(
+            getSraSampleAsync(sampleId, deadline),
+            sraSample -> {
+              if (sraSample == null) {
+                return CompletableFuture.completedFuture(null);
+              }
+              CompletableFuture<Sample> fallbackLookup =
+                  addSampleXmlAttributesCancellable(
+                      sraSample,
+                      getSampleXmlLookup(sampleId, sraSample, sampleXmlLookup, deadline));
+              if (sraSample.getBioSampleId() == null) {
+                return fallbackLookup;
+              }
+              return preferBiosamplesSample(
+                  getBiosamplesSampleAsync(sraSample.getBioSampleId(), staleEntry, deadline),
+                  fallbackLookup);
+            });
+    if (sampleXmlLookup != null) {
+      // Cancels the sample XML lookup if the ENA sample lookup fails, is cancelled or does not use
+      // the sample XML.
+      result.whenComplete((sample, ex) -> sampleXmlLookup.cancel(false));
+    }
+    return result;
+  }
 
-      if (isBiosamplesSampleValid(biosamplesSample)) {
-        return biosamplesSample;
+  /**
+   * Returns the sample XML lookup started before the ENA sample was retrieved, or starts a new one
+   * if the ENA sample has a different accession than the one the lookup was started with.
+   */
+  private CompletableFuture<Sample> getSampleXmlLookup(
+      String sampleId,
+      Sample sraSample,
+      CompletableFuture<Sample> sampleXmlLookup,
+      Deadline deadline) {
+    if (sampleXmlLookup != null) {
+      if (sraSample.getSraSampleId() != null
+          && normalizeSampleId(sampleId).equals(normalizeSampleId(sraSample.getSraSampleId()))) {
+        return sampleXmlLookup;
       }
+      sampleXmlLookup.cancel(false);
     }
+    return sampleXmlService.getSampleAsync(sraSample.getSraSampleId(), deadline);
+  }
 
-    // Getting here means we couldn't get a sample from Biosamples. So return the SRA sample instead
-    // after adding attribute information to it.
-    Sample sampleFromXml = sampleXmlService.getSample(sraSample.getSraSampleId());
+  /**
+   * Returns the Biosamples sample if it is valid and otherwise the result of the fallback lookup.
+   * The fallback lookup is cancelled if its result is not needed. Errors from Biosamples are
+   * returned as they would be without hedging.
+   */
+  private CompletableFuture<Sample> preferBiosamplesSample(
+      CompletableFuture<Sample> biosamplesLookup, CompletableFuture<Sample> fallbackLookup) {
+    CompletableFuture<Sample> result =
+        biosamplesLookup.thenCompose(
+            biosamplesSample -> {
+              if (isBiosamplesSampleValid(biosamplesSample)) {
+                fallbackLookup.cancel(false);
+                return CompletableFuture.completedFuture(biosamplesSample);
+              }
+              return fallbackLookup;
+            });
+    result.whenComplete(
+        (sample, ex) -> {
+          if (ex != null) {
+            fallbackLookup.cancel(false);
+          }
+        });
+    return result;
+  }
 
-    sraSample.setAttributes(sampleFromXml.getAttributes());
+  /** Returns false if the Biosamples lookup has already decided the result. */
+  private boolean isFallbackNeeded(CompletableFuture<Sample> biosamplesLookup) {
+    if (!biosamplesLookup.isDone()) {
+      return true;
+    }
+    if (biosamplesLookup.isCompletedExceptionally()) {
+      return false;
+    }
+    Sample biosamplesSample = biosamplesLookup.join();
+    return biosamplesSample != null && !isBiosamplesSampleValid(biosamplesSample);
+  }
 
-    return sraSample;
+  private CompletableFuture<Sample> addSampleXmlAttributesCancellable(
+      Sample sraSample, Deadline deadline) {
+    return addSampleXmlAttributesCancellable(
+        sraSample, sampleXmlService.getSampleAsync(sraSample.getSraSampleId(), deadline));
+  }
+
+  private static CompletableFuture<Sample> addSampleXmlAttributesCancellable(
+      Sample sraSample, CompletableFuture<Sample> sampleXmlLookup) {
+    return AsyncUtils.propagateCancellation(
+        sampleXmlLookup.thenApply(
+            sampleFromXml -> {
+              sraSample.setAttributes(sampleFromXml.getAttributes());
+              return sraSample;
+            }),
+        sampleXmlLookup);
+  }
+
+  /**
+   * Retrieves several samples concurrently using {@link #getSampleAsync(String)}. Duplicate
+   * accessions are retrieved only once. A sample that cannot be retrieved does not fail the batch.
+   * Instead, the error is returned in the batch result.
+   *
+   * <p>Uncached Biosamples accessions are first retrieved many at a time through the Biosamples
+   * search API unless disabled with {@link Builder#setBiosamplesSearch(boolean)}.
+   *
+   * <p>The batch is limited by the timeout given to the builder. Samples not retrieved in time are
+   * returned with a {@link ServiceTimeoutException} error.
+   */
+  public BatchResult<Sample> getSamples(Collection<String> sampleIds) {
+    return getSamples(sampleIds, Deadline.after(timeout));
+  }
+
+  /** Retrieves several samples as {@link #getSamples(Collection)} does before the deadline. */
+  public BatchResult<Sample> getSamples(Collection<String> sampleIds, Deadline deadline) {
+    return sampleLookup.awaitBatch(getSamplesAsync(sampleIds, deadline));
+  }
+
+  /**
+   * Asynchronous counterpart of {@link #getSamples(Collection)}. At most the configured batch
+   * parallelism of samples are retrieved at the same time.
+   */
+  public CompletableFuture<BatchResult<Sample>> getSamplesAsync(Collection<String> sampleIds) {
+    return getSamplesAsync(sampleIds, Deadline.after(timeout));
+  }
+
+  /** Asynchronous counterpart of {@link #getSamples(Collection, Deadline)}. */
+  public CompletableFuture<BatchResult<Sample>> getSamplesAsync(
+      Collection<String> sampleIds, Deadline deadline) {
+    List<String> distinctSampleIds = ReferenceLookup.getDistinctIds(sampleIds);
+    if (distinctSampleIds.isEmpty()) {
+      return CompletableFuture.completedFuture(new BatchResult<>());
+    }
+
+    // Biosamples accessions are retrieved from Biosamples first and other accessions from ENA
+    // first. Interleaving the two groups spreads the load across both services.
+    Map<Boolean, List<String>> groups =
+        distinctSampleIds.stream()
+            .collect(Collectors.partitioningBy(SampleService::isBiosamplesId));
+    List<String> orderedSampleIds = interleave(groups.get(true), groups.get(false));
+
+    return searchBiosamplesSamples(groups.get(true), deadline)
+        .thenCompose(foundSamples -> lookupSamples(orderedSampleIds, foundSamples, deadline));
+  }
+
+  /**
+   * Retrieves the Biosamples samples that are not cached using the Biosamples search API, many
+   * accessions per request. The valid samples are returned by their sample cache key, and cached
+   * if there is a sample cache, so that they are not retrieved one at a time. Samples not returned
+   * by the search, or not valid, are retrieved one at a time as usual. The search is only an
+   * optimisation and its errors are not reported to the caller.
+   */
+  private CompletableFuture<Map<String, Sample>> searchBiosamplesSamples(
+      List<String> biosamplesIds, Deadline deadline) {
+    if (!biosamplesSearch) {
+      return CompletableFuture.completedFuture(Collections.emptyMap());
+    }
+    Set<String> uncachedSampleKeys = new LinkedHashSet<>();
+    for (String biosamplesId : biosamplesIds) {
+      String sampleKey = normalizeSampleId(biosamplesId);
+      if (sampleCache == null || sampleCache.get(sampleKey) == null) {
+        uncachedSampleKeys.add(sampleKey);
+      }
+    }
+    if (uncachedSampleKeys.size() < 2) {
+      return CompletableFuture.completedFuture(Collections.emptyMap());
+    }
+
+    return CompletableFuture.supplyAsync(
+        () -> {
+          Map<String, Sample> foundSamples = new HashMap<>();
+          try {
+            biosamplesService
+                .searchSamples(uncachedSampleKeys, biosamplesWebinAuthToken, deadline)
+                .forEach(
+                    (sampleKey, sample) -> {
+                      if (uncachedSampleKeys.contains(sampleKey)
+                          && isBiosamplesSampleValid(sample)) {
+                        foundSamples.put(sampleKey, completeSample(sample));
+                      }
+                    });
+          } catch (RuntimeException ex) {
+            LOGGER.warn(
+                "Failed to search samples in Biosamples. Retrieving them one at a time.", ex);
+          }
+          if (sampleCache != null) {
+            foundSamples.forEach(sampleCache::put);
+          }
+          return foundSamples;
+        },
+        getAsyncExecutor());
+  }
+
+  /**
+   * Looks up the samples one at a time, except for those already found by the Biosamples search.
+   */
+  private CompletableFuture<BatchResult<Sample>> lookupSamples(
+      List<String> orderedSampleIds, Map<String, Sample> foundSamples, Deadline deadline) {
+    return sampleLookup.lookupBatchAsync(
+        orderedSampleIds,
+        sampleId -> {
+          Sample foundSample = foundSamples.get(normalizeSampleId(sampleId));
+          if (foundSample != null) {
+            return CompletableFuture.completedFuture(foundSample);
+          }
+          return getSampleAsync(sampleId, deadline)
+              .thenApply(
+                  sample -> {
+                    if (sample == null) {
+                      throw new ServiceException(
+                          ServiceMessage.SAMPLE_SERVICE_VALIDATION_ERROR.format(sampleId));
+                    }
+                    return sample;
+                  });
+        });
   }
 
   public static boolean isBiosamplesId(String biosampleId) {
     return biosampleId.toUpperCase().startsWith(BIOSAMPLES_ID_PREFIX);
   }
 
+  /** Returns true if the accession is an ENA, NCBI or DDBJ sample accession. */
+  public static boolean isSraSampleId(String sampleId) {
+    String normalizedSampleId = normalizeSampleId(sampleId);
+    return SRA_SAMPLE_ID_PREFIXES.stream().anyMatch(normalizedSampleId::startsWith);
+  }
+
+  /** Returns the sample accession in the form used as the sample cache key. */
+  public static String normalizeSampleId(String sampleId) {
+    return sampleId.trim().toUpperCase();
+  }
+
   /** The returned sample will not have attribute information. */
-  private Sample getSraSample(String sampleId) {
-    RestTemplate restTemplate = new RestTemplate();
+  private Sample getSraSample(String sampleId, Deadline deadline) {
     ResponseEntity<SampleResponse> response =
-        executeHttpGet(restTemplate, getAuthHeader(), sampleId);
+        RetryUtils.executeWithRetry(
+            getWebinRestV1Uri(),
+            deadline,
+            getMetrics(),
+            context -> fetchSraSample(sampleId),
+            context -> LOGGER.warn("Retrying sample retrieval from server."),
+            HttpServerErrorException.class,
+            ResourceAccessException.class);
+
+    return toSraSample(sampleId, response);
+  }
+
+  private CompletableFuture<Sample> getSraSampleAsync(String sampleId, Deadline deadline) {
+    CompletableFuture<ResponseEntity<SampleResponse>> retrieval =
+        RetryUtils.executeWithRetryAsync(
+            getWebinRestV1Uri(),
+            deadline,
+            getMetrics(),
+            () -> fetchSraSample(sampleId),
+            retryCount -> LOGGER.warn("Retrying sample retrieval from server."),
+            getAsyncExecutor(),
+            HttpServerErrorException.class,
+            ResourceAccessException.class);
+
+    return AsyncUtils.propagateCancellation(
+        retrieval.thenApply(response -> toSraSample(sampleId, response)), retrieval);
+  }
+
+  private static Sample toSraSample(String sampleId, ResponseEntity<SampleResponse> response) {
     SampleResponse sampleResponse = response.getBody();
 
     if (sampleResponse == null || !sampleResponse.canBeReferenced) {
-      throw new ServiceException(ServiceMessage.SAMPLE_SERVICE_VALIDATION_ERROR.format(sampleId));
+      throw new SampleNotFoundException(sampleId);
     }
 
     Sample sample = new Sample();
@@ -202,9 +786,33 @@ public class SampleService extends WebinService {
     return sample;
   }
 
-  /** Returned sample will contain attribute information as well. */
-  private Sample getBiosamplesSample(String sampleId) {
-    return biosamplesService.getSample(sampleId, biosamplesWebinAuthToken);
+  /**
+   * Returned sample will contain attribute information as well. The stale cache entry is
+   * revalidated if it holds the requested Biosamples sample.
+   */
+  private Sample getBiosamplesSample(
+      String sampleId, SampleCacheEntry staleEntry, Deadline deadline) {
+    return biosamplesService.getSample(
+        sampleId, biosamplesWebinAuthToken, getEntryToRevalidate(sampleId, staleEntry), deadline);
+  }
+
+  private CompletableFuture<Sample> getBiosamplesSampleAsync(
+      String sampleId, SampleCacheEntry staleEntry, Deadline deadline) {
+    return biosamplesService.getSampleAsync(
+        sampleId,
+        biosamplesWebinAuthToken,
+        getEntryToRevalidate(sampleId, staleEntry),
+        deadline,
+        getAsyncExecutor());
+  }
+
+  private static SampleCacheEntry getEntryToRevalidate(
+      String biosamplesId, SampleCacheEntry staleEntry) {
+    return staleEntry != null
+            && staleEntry.getSample().getBioSampleId() != null
+            && staleEntry.getSample().getBioSampleId().equalsIgnoreCase(biosamplesId.trim())
+        ? staleEntry
+        : null;
   }
 
   /**
@@ -222,25 +830,141 @@ public class SampleService extends WebinService {
    *     otherwise
    */
   private boolean isBiosamplesSampleValid(Sample sample) {
-    return sample.getTaxId() != null
-        || sample.getAttributes().stream()
-            .anyMatch(attribute -> attribute.getName().equalsIgnoreCase("organism"));
-  }
-
-  private ResponseEntity<SampleResponse> executeHttpGet(
-      RestTemplate restTemplate, HttpHeaders headers, String sampleId) {
-
-    return RetryUtils.executeWithRetry(
-        context ->
-            restTemplate.exchange(
-                resolveAgainstWebinRestV1Uri("cli/reference/sample/{id}"),
-                HttpMethod.GET,
-                new HttpEntity<>(headers),
-                SampleResponse.class,
-                sampleId.trim()),
-        context -> LOGGER.warn("Retrying sample retrieval from server."),
-        HttpServerErrorException.class,
-        ResourceAccessException.class);
+    return sample.getTaxId() != null || sample.getAttribute("organism") != null;
+  }
+
+  /**
+   * Adds the taxonomy id or the organism if the sample has only one of them and the other can be
+   * resolved using the taxonomy index.
+   */
+  private Sample completeSample(Sample sample) {
+    if (taxonomyIndex == null || sample == null) {
+      return sample;
+    }
+    if (sample.getTaxId() == null && sample.getOrganism() != null) {
+      sample.setTaxId(taxonomyIndex.getTaxId(sample.getOrganism()));
+    } else if (sample.getTaxId() != null && sample.getOrganism() == null) {
+      sample.setOrganism(taxonomyIndex.getScientificName(sample.getTaxId()));
+    }
+    return sample;
+  }
+
+  private static List<String> interleave(List<String> first, List<String> second) {
+    List<String> interleaved = new ArrayList<>(first.size() + second.size());
+    Iterator<String> firstIterator = first.iterator();
+    Iterator<String> secondIterator = second.iterator();
+    while (firstIterator.hasNext() || secondIterator.hasNext()) {
+      if (firstIterator.hasNext()) {
+        interleaved.add(firstIterator.next());
+      }
+      if (secondIterator.hasNext()) {
+        interleaved.add(secondIterator.next());
+      }
+    }
+    return interleaved;
+  }
+
+  /** Makes a single attempt to retrieve the sample. */
+  private ResponseEntity<SampleResponse> fetchSraSample(String sampleId) {
+    return getRestTemplate()
+        .exchange(
+            resolveAgainstWebinRestV1Uri("cli/reference/sample/{id}"),
+            HttpMethod.GET,
+            new HttpEntity<>(getAuthHeader()),
+            SampleResponse.class,
+            sampleId.trim());
+  }
+
+  /** Completes a blocking call on the caller thread. */
+  private static <T> CompletableFuture<T> callBlocking(Supplier<T> call) {
+    try {
+      return CompletableFuture.completedFuture(call.get());
+    } catch (RuntimeException ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+  }
+
+  /** Looks up samples through the sample cache, if caching is enabled. */
+  private class CachedSampleLookup extends ReferenceLookup<Sample> {
+    private CachedSampleLookup(int batchParallelism) {
+      super(batchParallelism, getAsyncExecutor());
+    }
+
+    @Override
+    String getReferenceType() {
+      return "sample";
+    }
+
+    @Override
+    Sample getCached(String sampleId, String sampleKey) {
+      if (sampleCache == null) {
+        return null;
+      }
+      SampleCacheEntry cacheEntry = sampleCache.get(sampleKey);
+      if (cacheEntry == null) {
+        return null;
+      }
+      if (cacheEntry.isNotFound()) {
+        throw new SampleNotFoundException(sampleId);
+      }
+      return cacheEntry.getSample();
+    }
+
+    @Override
+    void putCached(String sampleKey, Sample sample) {
+      if (sampleCache == null) {
+        return;
+      }
+      if (sample instanceof ValidatedSample) {
+        ValidatedSample validatedSample = (ValidatedSample) sample;
+        sampleCache.put(
+            sampleKey, sample, validatedSample.getEtag(), validatedSample.getLastModified());
+      } else {
+        sampleCache.put(sampleKey, sample);
+      }
+    }
+
+    @Override
+    void putNotFound(String sampleKey) {
+      if (sampleCache != null) {
+        sampleCache.putNotFound(sampleKey);
+      }
+    }
+
+    @Override
+    boolean isNotFound(Throwable ex) {
+      return ex instanceof SampleNotFoundException;
+    }
+
+    @Override
+    ServiceTimeoutException timeout(String sampleId) {
+      return new ServiceTimeoutException(
+          ServiceMessage.SAMPLE_SERVICE_TIMEOUT_ERROR.format(sampleId));
+    }
+  }
+
+  /** The services a sample is retrieved from. */
+  private interface SampleSource {
+    /** Revalidates the stale cache entry instead if it holds the requested sample. */
+    CompletableFuture<Sample> getBiosamplesSample(
+        String sampleId, SampleCacheEntry staleEntry, Deadline deadline);
+
+    CompletableFuture<Sample> getSraSample(String sampleId, Deadline deadline);
+
+    CompletableFuture<Sample> getSampleXml(String sraSampleId, Deadline deadline);
+  }
+
+  /** Thrown when a sample is unknown or cannot be referenced by the submission account. */
+  private static class SampleNotFoundException extends ServiceException {
+    private static final long serialVersionUID = 1L;
+
+    private SampleNotFoundException(String sampleId) {
+      super(ServiceMessage.SAMPLE_SERVICE_VALIDATION_ERROR.format(sampleId));
+    }
+
+    private SampleNotFoundException(String sampleId, Exception cause) {
+      super(cause, ServiceMessage.SAMPLE_SERVICE_VALIDATION_ERROR.format(sampleId));
+    }
   }
 
   private static class SampleResponse {
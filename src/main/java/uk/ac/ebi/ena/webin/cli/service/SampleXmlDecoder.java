@@ -0,0 +1,183 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import java.io.InputStream;
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Attribute;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Sample;
+
+/**
+ * Decodes ENA sample XML in a single pass without building a DOM tree. Reads the alias of the first
+ * SAMPLE element, the TAXON_ID and SCIENTIFIC_NAME of the first SAMPLE_NAME element and the TAG,
+ * VALUE and UNITS of all SAMPLE_ATTRIBUTE elements.
+ */
+class SampleXmlDecoder {
+
+  /** The factory is thread-safe once configured. DTDs and external entities are not supported. */
+  private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
+  private SampleXmlDecoder() {}
+
+  private static XMLInputFactory createXmlInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    trySetProperty(factory, XMLConstants.ACCESS_EXTERNAL_DTD, "");
+    trySetProperty(factory, XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+    return factory;
+  }
+
+  private static void trySetProperty(XMLInputFactory factory, String name, Object value) {
+    try {
+      factory.setProperty(name, value);
+    } catch (IllegalArgumentException ex) {
+      // Not supported by this StAX implementation.
+    }
+  }
+
+  static Sample decode(InputStream inputStream) throws XMLStreamException {
+    XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+    try {
+      return decode(reader);
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static Sample decode(XMLStreamReader reader) throws XMLStreamException {
+    Sample sample = new Sample();
+    boolean isSampleRead = false;
+    boolean isSampleNameRead = false;
+
+    while (reader.hasNext()) {
+      if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+        continue;
+      }
+      switch (reader.getLocalName()) {
+        case "SAMPLE":
+          if (!isSampleRead) {
+            String alias = reader.getAttributeValue(null, "alias");
+            sample.setName(alias != null ? alias : "");
+            isSampleRead = true;
+          }
+          break;
+        case "SAMPLE_NAME":
+          if (!isSampleNameRead) {
+            readSampleName(reader, sample);
+            isSampleNameRead = true;
+          }
+          break;
+        case "SAMPLE_ATTRIBUTE":
+          sample.addAttribute(readSampleAttribute(reader));
+          break;
+        default:
+      }
+    }
+
+    return sample;
+  }
+
+  /** Reads the SAMPLE_NAME element the reader is positioned at. */
+  private static void readSampleName(XMLStreamReader reader, Sample sample)
+      throws XMLStreamException {
+    String taxId = null;
+    String scientificName = null;
+
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        String name = reader.getLocalName();
+        if (taxId == null && name.equals("TAXON_ID")) {
+          taxId = readText(reader);
+        } else if (scientificName == null && name.equals("SCIENTIFIC_NAME")) {
+          scientificName = readText(reader);
+        } else {
+          depth++;
+        }
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+
+    if (taxId != null) {
+      sample.setTaxId(Integer.valueOf(taxId.trim()));
+    }
+    if (scientificName != null) {
+      sample.setOrganism(scientificName);
+    }
+  }
+
+  /** Reads the SAMPLE_ATTRIBUTE element the reader is positioned at. */
+  private static Attribute readSampleAttribute(XMLStreamReader reader)
+      throws XMLStreamException {
+    String tag = null;
+    String value = null;
+    String units = null;
+
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        String name = reader.getLocalName();
+        if (tag == null && name.equals("TAG")) {
+          tag = readText(reader);
+        } else if (value == null && name.equals("VALUE")) {
+          value = readText(reader);
+        } else if (units == null && name.equals("UNITS")) {
+          units = readText(reader);
+        } else {
+          depth++;
+        }
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+
+    if (tag == null) {
+      throw new XMLStreamException("Missing sample attribute TAG.", reader.getLocation());
+    }
+    return new Attribute(tag, value, null, units, null);
+  }
+
+  /**
+   * Reads the text content of the element the reader is positioned at, including the text of any
+   * nested elements. The reader is left at the end of the element.
+   */
+  private static String readText(XMLStreamReader reader) throws XMLStreamException {
+    StringBuilder text = new StringBuilder();
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      switch (event) {
+        case XMLStreamConstants.START_ELEMENT:
+          depth++;
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          depth--;
+          break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.SPACE:
+          text.append(reader.getText());
+          break;
+        default:
+      }
+    }
+    return text.toString();
+  }
+}
@@ -10,27 +10,28 @@
  */
 package uk.ac.ebi.ena.webin.cli.service;
 
-import java.io.StringReader;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import javax.xml.stream.XMLStreamException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.MediaType;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.client.RestTemplate;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
 import uk.ac.ebi.ena.webin.cli.service.exception.ServiceException;
 import uk.ac.ebi.ena.webin.cli.service.exception.ServiceMessage;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceTimeoutException;
+import uk.ac.ebi.ena.webin.cli.utils.AsyncUtils;
+import uk.ac.ebi.ena.webin.cli.utils.Deadline;
 import uk.ac.ebi.ena.webin.cli.utils.RetryUtils;
-import uk.ac.ebi.ena.webin.cli.validator.reference.Attribute;
 import uk.ac.ebi.ena.webin.cli.validator.reference.Sample;
 
 public class SampleXmlService extends WebinService {
@@ -38,6 +39,9 @@ public class SampleXmlService extends WebinService {
 
   public static final String SERVICE_NAME = "SampleXml";
 
+  private static final List<MediaType> XML_MEDIA_TYPES =
+      Arrays.asList(MediaType.APPLICATION_XML, MediaType.ALL);
+
   public static class Builder extends AbstractBuilder<SampleXmlService> {
     @Override
     public SampleXmlService build() {
@@ -50,92 +54,107 @@ public class SampleXmlService extends WebinService {
   }
 
   public Sample getSample(String sampleId) {
-    RestTemplate restTemplate = new RestTemplate();
-    HttpHeaders headers = getAuthHeader();
-    ResponseEntity<String> response = executeHttpGet(restTemplate, headers, sampleId);
+    return getSample(sampleId, Deadline.none());
+  }
 
-    if (response == null) {
-      throw new ServiceException(ServiceMessage.SAMPLE_SERVICE_VALIDATION_ERROR.format(sampleId));
-    }
+  /**
+   * Retrieves the sample before the deadline.
+   *
+   * @throws ServiceTimeoutException if the deadline expires.
+   */
+  public Sample getSample(String sampleId, Deadline deadline) {
+    Sample sample =
+        RetryUtils.executeWithRetry(
+            getWebinRestV1Uri(),
+            deadline,
+            getMetrics(),
+            context -> fetchSample(sampleId),
+            context -> LOGGER.warn("Retrying sample xml retrieval from server."),
+            HttpServerErrorException.class,
+            ResourceAccessException.class);
+
+    return checkSample(sampleId, sample);
+  }
 
-    return getSampleFromXml(sampleId, response.getBody());
+  /**
+   * Asynchronous counterpart of {@link #getSample(String)}. The retrieval runs on the service's
+   * executor and waits between retries do not block a thread. Cancelling the returned future stops
+   * any further retries.
+   */
+  public CompletableFuture<Sample> getSampleAsync(String sampleId) {
+    return getSampleAsync(sampleId, Deadline.none());
   }
 
-  private Sample getSampleFromXml(String sampleId, String sampleXml) {
+  /** Asynchronous counterpart of {@link #getSample(String, Deadline)}. */
+  public CompletableFuture<Sample> getSampleAsync(String sampleId, Deadline deadline) {
+    CompletableFuture<Sample> retrieval =
+        RetryUtils.executeWithRetryAsync(
+            getWebinRestV1Uri(),
+            deadline,
+            getMetrics(),
+            () -> fetchSample(sampleId),
+            retryCount -> LOGGER.warn("Retrying sample xml retrieval from server."),
+            getAsyncExecutor(),
+            HttpServerErrorException.class,
+            ResourceAccessException.class);
+
+    return AsyncUtils.propagateCancellation(
+        retrieval.thenApply(sample -> checkSample(sampleId, sample)), retrieval);
+  }
 
-    try {
-      Sample sample = new Sample();
-
-      DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-      DocumentBuilder db = dbf.newDocumentBuilder();
-      Document doc = db.parse(new InputSource(new StringReader(sampleXml)));
-      doc.getDocumentElement().normalize();
-
-      // name
-      NodeList sampleList = doc.getElementsByTagName("SAMPLE");
-      for (int i = 0; i < Math.min(1, sampleList.getLength()); i++) {
-        Node node = sampleList.item(i);
-        if (node.getNodeType() == Node.ELEMENT_NODE) {
-          Element element = (Element) node;
-          sample.setName(element.getAttribute("alias"));
-        }
-      }
+  private static Sample checkSample(String sampleId, Sample sample) {
+    if (sample == null) {
+      throw new ServiceException(ServiceMessage.SAMPLE_SERVICE_VALIDATION_ERROR.format(sampleId));
+    }
+    return sample;
+  }
 
-      // taxid, organism
-      NodeList sampleNameList = doc.getElementsByTagName("SAMPLE_NAME");
-      for (int i = 0; i < Math.min(1, sampleNameList.getLength()); i++) {
-        Node node = sampleNameList.item(i);
-        if (node.getNodeType() == Node.ELEMENT_NODE) {
-          Element element = (Element) node;
-          if (element.getElementsByTagName("TAXON_ID").getLength() > 0) {
-            sample.setTaxId(
-                Integer.valueOf(element.getElementsByTagName("TAXON_ID").item(0).getTextContent()));
-          }
-          if (element.getElementsByTagName("SCIENTIFIC_NAME").getLength() > 0) {
-            sample.setOrganism(
-                element.getElementsByTagName("SCIENTIFIC_NAME").item(0).getTextContent());
-          }
-        }
-      }
+  /** Makes a single attempt to retrieve the sample. */
+  private Sample fetchSample(String sampleId) {
+    HttpHeaders headers = getAuthHeader();
+    headers.setAccept(XML_MEDIA_TYPES);
+
+    return getRestTemplate()
+        .execute(
+            resolveAgainstWebinRestV1Uri("samples/{id}"),
+            HttpMethod.GET,
+            request -> request.getHeaders().putAll(headers),
+            response -> decodeSample(sampleId, response.getBody()),
+            sampleId.trim());
+  }
 
-      // attributes
-      NodeList attributeList = doc.getElementsByTagName("SAMPLE_ATTRIBUTE");
-      for (int i = 0; i < attributeList.getLength(); i++) {
-        Node node = attributeList.item(i);
-        if (node.getNodeType() == Node.ELEMENT_NODE) {
-          Element element = (Element) node;
-          String tag = element.getElementsByTagName("TAG").item(0).getTextContent();
-          String value =
-              element.getElementsByTagName("VALUE").getLength() > 0
-                  ? element.getElementsByTagName("VALUE").item(0).getTextContent()
-                  : null;
-          String units =
-              element.getElementsByTagName("UNITS").getLength() > 0
-                  ? element.getElementsByTagName("UNITS").item(0).getTextContent()
-                  : null;
-          sample.addAttribute(new Attribute(tag, value, null, units, null));
-        }
+  /**
+   * Parses the sample XML while it is read from the response. Parse errors are thrown as a service
+   * exception so that the rest template does not report them as a retryable I/O error. I/O errors
+   * that occur while the response is read are thrown as they are, so that they are retried.
+   */
+  static Sample decodeSample(String sampleId, InputStream inputStream) throws IOException {
+    try {
+      return SampleXmlDecoder.decode(inputStream);
+    } catch (XMLStreamException | RuntimeException ex) {
+      IOException ioException = findIOException(ex);
+      if (ioException != null) {
+        throw ioException;
       }
-      return sample;
-    } catch (Exception ex) {
       throw new ServiceException(
           ex, ServiceMessage.SAMPLE_SERVICE_VALIDATION_ERROR.format(sampleId));
     }
   }
 
-  private ResponseEntity<String> executeHttpGet(
-      RestTemplate restTemplate, HttpHeaders headers, String sampleId) {
-
-    return RetryUtils.executeWithRetry(
-        context ->
-            restTemplate.exchange(
-                resolveAgainstWebinRestV1Uri("samples/{id}"),
-                HttpMethod.GET,
-                new HttpEntity<>(headers),
-                String.class,
-                sampleId.trim()),
-        context -> LOGGER.warn("Retrying sample xml retrieval from server."),
-        HttpServerErrorException.class,
-        ResourceAccessException.class);
+  /** Returns the I/O error the StAX reader, or the decoder, wrapped in the exception, or null. */
+  private static IOException findIOException(Throwable ex) {
+    Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    while (ex != null && seen.add(ex)) {
+      if (ex instanceof IOException) {
+        return (IOException) ex;
+      }
+      if (ex instanceof XMLStreamException
+          && ((XMLStreamException) ex).getNestedException() != null) {
+        ex = ((XMLStreamException) ex).getNestedException();
+      } else {
+        ex = ex.getCause();
+      }
+    }
+    return null;
   }
 }
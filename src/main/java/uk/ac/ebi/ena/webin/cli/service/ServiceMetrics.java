@@ -0,0 +1,49 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import java.time.Duration;
+
+/**
+ * Receives measurements from the service layer. Implementations can forward them to a metrics
+ * library, for example by recording latencies in a histogram per endpoint. All methods do nothing
+ * by default and {@link #NOOP} is used unless a service is given an implementation.
+ *
+ * <p>Endpoints are identified by the scheme and authority of the URI being called, for example
+ * {@code https://www.ebi.ac.uk}. Implementations must be thread-safe and must not block.
+ */
+public interface ServiceMetrics {
+
+  /** Discards all measurements. */
+  ServiceMetrics NOOP = new ServiceMetrics() {};
+
+  /**
+   * Called for every HTTP request once the response status has been received, or once the request
+   * has failed without a response.
+   *
+   * @param statusCode - The response status code, or 0 if no response was received.
+   * @param latency - The time until the response status was received or the request failed.
+   */
+  default void recordRequest(String endpoint, String method, int statusCode, Duration latency) {}
+
+  /** Called when a response body has been closed with the number of bytes read from it. */
+  default void recordBytesReceived(String endpoint, long bytes) {}
+
+  /**
+   * Called before every retry.
+   *
+   * @param retryCount - The number of the retry, starting from 1.
+   */
+  default void recordRetry(String endpoint, int retryCount) {}
+
+  /** Called every time an authentication token is fetched. */
+  default void recordTokenFetch(String endpoint, boolean success) {}
+}
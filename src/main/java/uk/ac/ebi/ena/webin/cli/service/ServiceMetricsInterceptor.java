@@ -0,0 +1,136 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import uk.ac.ebi.ena.webin.cli.utils.CircuitBreaker;
+
+/** Reports the latency, status code and size of every response to {@link ServiceMetrics}. */
+class ServiceMetricsInterceptor implements ClientHttpRequestInterceptor {
+
+  private final ServiceMetrics metrics;
+
+  ServiceMetricsInterceptor(ServiceMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public ClientHttpResponse intercept(
+      HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+    String endpoint = CircuitBreaker.getEndpoint(request.getURI().toString());
+    String method = request.getMethod().name();
+    long startNanos = System.nanoTime();
+    ClientHttpResponse response;
+    try {
+      response = execution.execute(request, body);
+    } catch (IOException | RuntimeException ex) {
+      metrics.recordRequest(endpoint, method, 0, elapsedSince(startNanos));
+      throw ex;
+    }
+    metrics.recordRequest(
+        endpoint, method, response.getStatusCode().value(), elapsedSince(startNanos));
+    return new MeteredResponse(response, endpoint);
+  }
+
+  private static Duration elapsedSince(long startNanos) {
+    return Duration.ofNanos(System.nanoTime() - startNanos);
+  }
+
+  /** Counts the bytes read from the response body and reports them when it is closed. */
+  private class MeteredResponse implements ClientHttpResponse {
+    private final ClientHttpResponse response;
+    private final String endpoint;
+    private CountingInputStream body;
+    private boolean closed;
+
+    private MeteredResponse(ClientHttpResponse response, String endpoint) {
+      this.response = response;
+      this.endpoint = endpoint;
+    }
+
+    @Override
+    public HttpStatusCode getStatusCode() throws IOException {
+      return response.getStatusCode();
+    }
+
+    @Override
+    public String getStatusText() throws IOException {
+      return response.getStatusText();
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return response.getHeaders();
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+      if (body == null) {
+        body = new CountingInputStream(response.getBody());
+      }
+      return body;
+    }
+
+    @Override
+    public void close() {
+      try {
+        response.close();
+      } finally {
+        if (!closed) {
+          closed = true;
+          metrics.recordBytesReceived(endpoint, body != null ? body.count : 0);
+        }
+      }
+    }
+  }
+
+  private static class CountingInputStream extends FilterInputStream {
+    private long count;
+
+    private CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b != -1) {
+        count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        count += n;
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count += skipped;
+      return skipped;
+    }
+  }
+}
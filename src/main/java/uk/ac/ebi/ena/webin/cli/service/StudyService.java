@@ -0,0 +1,118 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceMessage;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceTimeoutException;
+import uk.ac.ebi.ena.webin.cli.utils.Deadline;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Study;
+
+/** Retrieves study references that can be referenced by the submission account. */
+public class StudyService extends ReferenceService<Study> {
+
+  public static final String SERVICE_NAME = "Study";
+
+  public static class Builder extends AbstractReferenceBuilder<StudyService> {
+    @Override
+    public StudyService build() {
+      return new StudyService(this);
+    }
+  }
+
+  public StudyService(AbstractReferenceBuilder<StudyService> builder) {
+    super(builder);
+  }
+
+  /** Retrieves the study within the timeout given to the builder. */
+  public Study getStudy(String studyId) {
+    return getReference(studyId);
+  }
+
+  /**
+   * Retrieves the study before the deadline.
+   *
+   * @throws ServiceTimeoutException if the deadline expires.
+   */
+  public Study getStudy(String studyId, Deadline deadline) {
+    return getReference(studyId, deadline);
+  }
+
+  /** Asynchronous counterpart of {@link #getStudy(String, Deadline)}. */
+  public CompletableFuture<Study> getStudyAsync(String studyId, Deadline deadline) {
+    return getReferenceAsync(studyId, deadline);
+  }
+
+  /**
+   * Retrieves several studies concurrently within the timeout given to the builder. A study that
+   * cannot be retrieved does not fail the batch. Instead, the error is returned in the batch
+   * result.
+   */
+  public BatchResult<Study> getStudies(Collection<String> studyIds) {
+    return getReferences(studyIds);
+  }
+
+  /** Retrieves several studies as {@link #getStudies(Collection)} does before the deadline. */
+  public BatchResult<Study> getStudies(Collection<String> studyIds, Deadline deadline) {
+    return getReferences(studyIds, deadline);
+  }
+
+  /** Asynchronous counterpart of {@link #getStudies(Collection, Deadline)}. */
+  public CompletableFuture<BatchResult<Study>> getStudiesAsync(
+      Collection<String> studyIds, Deadline deadline) {
+    return getReferencesAsync(studyIds, deadline);
+  }
+
+  @Override
+  protected String getReferenceType() {
+    return "study";
+  }
+
+  @Override
+  protected ServiceMessage getValidationErrorMessage() {
+    return ServiceMessage.STUDY_SERVICE_VALIDATION_ERROR;
+  }
+
+  @Override
+  protected Study fetchReference(String studyId) {
+    StudyResponse response =
+        getRestTemplate()
+            .exchange(
+                resolveAgainstWebinRestV1Uri("cli/reference/project/{id}"),
+                HttpMethod.GET,
+                new HttpEntity<>(getAuthHeader()),
+                StudyResponse.class,
+                studyId)
+            .getBody();
+
+    if (response == null || !response.canBeReferenced) {
+      return null;
+    }
+
+    Study study = new Study();
+    study.setStudyId(response.id);
+    study.setBioProjectId(response.bioProjectId);
+    study.setLocusTags(response.locusTags != null ? response.locusTags : new ArrayList<>());
+    return study;
+  }
+
+  private static class StudyResponse {
+    public String id;
+    public String bioProjectId;
+    public List<String> locusTags;
+    public boolean canBeReferenced;
+  }
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceException;
+
+/**
+ * Read-only taxonomy index that resolves scientific names to taxonomy ids, taxonomy ids to
+ * scientific names and taxonomy ids to lineages without calling a remote service. The index is
+ * built once from the {@code names.dmp} and {@code nodes.dmp} files of an NCBI taxonomy dump and is
+ * memory-mapped when opened, so opening it is fast and its pages are shared with other processes
+ * using the same file.
+ *
+ * <p>The index file contains a table of taxa sorted by taxonomy id, a table of taxa sorted by
+ * lower-case scientific name and the strings referenced by both. Lookups are binary searches over
+ * the mapped file. The index is thread-safe.
+ */
+public class TaxonomyIndex {
+
+  private static final int MAGIC = 0x54415849; // "TAXI"
+  private static final int VERSION = 1;
+
+  private static final int HEADER_SIZE = 5 * Integer.BYTES;
+
+  /** Taxonomy id, parent taxonomy id, scientific name offset and rank offset. */
+  private static final int TAXON_RECORD_SIZE = 4 * Integer.BYTES;
+
+  private static final String DMP_FIELD_SEPARATOR = "\t|\t";
+  private static final String DMP_LINE_TERMINATOR = "\t|";
+  private static final String SCIENTIFIC_NAME_CLASS = "scientific name";
+
+  private final ByteBuffer buffer;
+  private final int taxonCount;
+  private final int nameIndexOffset;
+  private final int stringsOffset;
+
+  /** A taxon in the index. */
+  public static class Taxon {
+    private final int taxId;
+    private final int parentTaxId;
+    private final String scientificName;
+    private final String rank;
+
+    Taxon(int taxId, int parentTaxId, String scientificName, String rank) {
+      this.taxId = taxId;
+      this.parentTaxId = parentTaxId;
+      this.scientificName = scientificName;
+      this.rank = rank;
+    }
+
+    public int getTaxId() {
+      return taxId;
+    }
+
+    /** Returns the parent taxonomy id. The root taxon is its own parent. */
+    public int getParentTaxId() {
+      return parentTaxId;
+    }
+
+    public String getScientificName() {
+      return scientificName;
+    }
+
+    /** Returns the rank, for example {@code species}, or {@code no rank}. */
+    public String getRank() {
+      return rank;
+    }
+  }
+
+  private TaxonomyIndex(ByteBuffer buffer) {
+    this.buffer = buffer;
+    if (buffer.getInt(0) != MAGIC || buffer.getInt(Integer.BYTES) != VERSION) {
+      throw new ServiceException("Unsupported taxonomy index file format.");
+    }
+    this.taxonCount = buffer.getInt(2 * Integer.BYTES);
+    this.nameIndexOffset = buffer.getInt(3 * Integer.BYTES);
+    this.stringsOffset = buffer.getInt(4 * Integer.BYTES);
+  }
+
+  /** Memory-maps an index file written by {@link #build(Path, Path)}. */
+  public static TaxonomyIndex open(Path indexFile) {
+    // The mapping remains valid after the channel has been closed.
+    try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+      return new TaxonomyIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } catch (IOException ex) {
+      throw new ServiceException(ex, "Failed to open taxonomy index: " + indexFile);
+    }
+  }
+
+  /**
+   * Builds an index file from an NCBI taxonomy dump and opens it. The file is replaced atomically
+   * so that processes that have already opened the previous index are not affected.
+   *
+   * @param taxdumpDirectory the directory containing {@code names.dmp} and {@code nodes.dmp}
+   * @param indexFile the index file to write
+   */
+  public static TaxonomyIndex build(Path taxdumpDirectory, Path indexFile) {
+    try {
+      Map<Integer, String> scientificNames = readScientificNames(taxdumpDirectory);
+      List<Taxon> taxa = readNodes(taxdumpDirectory, scientificNames);
+      writeIndex(taxa, indexFile);
+    } catch (IOException ex) {
+      throw new ServiceException(ex, "Failed to build taxonomy index: " + indexFile);
+    }
+    return open(indexFile);
+  }
+
+  /** Returns the number of taxa in the index. */
+  public int size() {
+    return taxonCount;
+  }
+
+  /** Returns the taxon or null if the taxonomy id is unknown. */
+  public Taxon getTaxon(int taxId) {
+    int index = findTaxonIndex(taxId);
+    return index >= 0 ? readTaxon(index) : null;
+  }
+
+  /** Returns the scientific name or null if the taxonomy id is unknown. */
+  public String getScientificName(int taxId) {
+    int index = findTaxonIndex(taxId);
+    return index >= 0 ? readScientificName(index) : null;
+  }
+
+  /**
+   * Returns the taxonomy id of the scientific name, or null if the name is unknown or is the
+   * scientific name of more than one taxon. Names are matched ignoring case.
+   */
+  public Integer getTaxId(String scientificName) {
+    List<Integer> taxIds = getTaxIds(scientificName);
+    return taxIds.size() == 1 ? taxIds.get(0) : null;
+  }
+
+  /** Returns the taxonomy ids of all taxa with the scientific name, matched ignoring case. */
+  public List<Integer> getTaxIds(String scientificName) {
+    if (scientificName == null || scientificName.isBlank()) {
+      return Collections.emptyList();
+    }
+    String key = toKey(scientificName);
+
+    // Finds the first name that is not less than the key.
+    int low = 0;
+    int high = taxonCount;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (toKey(readScientificName(taxonIndexAt(middle))).compareTo(key) < 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+
+    List<Integer> taxIds = new ArrayList<>(1);
+    for (int i = low; i < taxonCount; i++) {
+      int index = taxonIndexAt(i);
+      if (!toKey(readScientificName(index)).equals(key)) {
+        break;
+      }
+      taxIds.add(buffer.getInt(taxonRecordOffset(index)));
+    }
+    return taxIds;
+  }
+
+  /**
+   * Returns the lineage of the taxon starting with the taxon itself and ending with the root, or an
+   * empty list if the taxonomy id is unknown.
+   */
+  public List<Taxon> getLineage(int taxId) {
+    List<Taxon> lineage = new ArrayList<>();
+    Taxon taxon = getTaxon(taxId);
+    // The depth is bounded in case the dump contains a cycle.
+    while (taxon != null && lineage.size() < taxonCount) {
+      lineage.add(taxon);
+      if (taxon.getParentTaxId() == taxon.getTaxId()) {
+        break;
+      }
+      taxon = getTaxon(taxon.getParentTaxId());
+    }
+    return lineage;
+  }
+
+  private int findTaxonIndex(int taxId) {
+    int low = 0;
+    int high = taxonCount - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int middleTaxId = buffer.getInt(taxonRecordOffset(middle));
+      if (middleTaxId < taxId) {
+        low = middle + 1;
+      } else if (middleTaxId > taxId) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -1;
+  }
+
+  private static int taxonRecordOffset(int index) {
+    return HEADER_SIZE + index * TAXON_RECORD_SIZE;
+  }
+
+  private Taxon readTaxon(int index) {
+    int offset = taxonRecordOffset(index);
+    return new Taxon(
+        buffer.getInt(offset),
+        buffer.getInt(offset + Integer.BYTES),
+        readScientificName(index),
+        readString(buffer.getInt(offset + 3 * Integer.BYTES)));
+  }
+
+  private String readScientificName(int index) {
+    return readString(buffer.getInt(taxonRecordOffset(index) + 2 * Integer.BYTES));
+  }
+
+  /** Returns the index of the taxon at the given position of the table sorted by name. */
+  private int taxonIndexAt(int position) {
+    return buffer.getInt(nameIndexOffset + position * Integer.BYTES);
+  }
+
+  /** Strings are stored as an unsigned short length followed by the UTF-8 bytes. */
+  private String readString(int offset) {
+    int position = stringsOffset + offset;
+    int length = Short.toUnsignedInt(buffer.getShort(position));
+    byte[] bytes = new byte[length];
+    buffer.get(position + Short.BYTES, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static String toKey(String scientificName) {
+    return scientificName.trim().toLowerCase(Locale.ROOT);
+  }
+
+  private static Map<Integer, String> readScientificNames(Path taxdumpDirectory)
+      throws IOException {
+    Map<Integer, String> scientificNames = new HashMap<>();
+    try (BufferedReader reader =
+        Files.newBufferedReader(taxdumpDirectory.resolve("names.dmp"), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] fields = splitDmpLine(line);
+        if (fields.length >= 4 && fields[3].equals(SCIENTIFIC_NAME_CLASS)) {
+          scientificNames.put(Integer.parseInt(fields[0]), fields[1]);
+        }
+      }
+    }
+    return scientificNames;
+  }
+
+  private static List<Taxon> readNodes(Path taxdumpDirectory, Map<Integer, String> scientificNames)
+      throws IOException {
+    List<Taxon> taxa = new ArrayList<>(scientificNames.size());
+    try (BufferedReader reader =
+        Files.newBufferedReader(taxdumpDirectory.resolve("nodes.dmp"), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] fields = splitDmpLine(line);
+        if (fields.length < 3) {
+          continue;
+        }
+        int taxId = Integer.parseInt(fields[0]);
+        String scientificName = scientificNames.get(taxId);
+        if (scientificName != null) {
+          taxa.add(new Taxon(taxId, Integer.parseInt(fields[1]), scientificName, fields[2]));
+        }
+      }
+    }
+    taxa.sort(Comparator.comparingInt(Taxon::getTaxId));
+    return taxa;
+  }
+
+  /** Splits a line of a taxonomy dump file whose fields are separated by tab, pipe, tab. */
+  private static String[] splitDmpLine(String line) {
+    if (line.endsWith(DMP_LINE_TERMINATOR)) {
+      line = line.substring(0, line.length() - DMP_LINE_TERMINATOR.length());
+    }
+    List<String> fields = new ArrayList<>();
+    int start = 0;
+    int end;
+    while ((end = line.indexOf(DMP_FIELD_SEPARATOR, start)) >= 0) {
+      fields.add(line.substring(start, end).trim());
+      start = end + DMP_FIELD_SEPARATOR.length();
+    }
+    fields.add(line.substring(start).trim());
+    return fields.toArray(new String[0]);
+  }
+
+  private static void writeIndex(List<Taxon> taxa, Path indexFile) throws IOException {
+    // Ranks are few and are stored once.
+    List<byte[]> strings = new ArrayList<>();
+    Map<String, Integer> rankOffsets = new HashMap<>();
+    int[] nameOffsets = new int[taxa.size()];
+    int[] rankOffsetsByTaxon = new int[taxa.size()];
+    long stringsSize = 0;
+    for (int i = 0; i < taxa.size(); i++) {
+      Taxon taxon = taxa.get(i);
+      nameOffsets[i] = (int) stringsSize;
+      stringsSize += addString(strings, taxon.getScientificName());
+
+      Integer rankOffset = rankOffsets.get(taxon.getRank());
+      if (rankOffset == null) {
+        rankOffset = (int) stringsSize;
+        rankOffsets.put(taxon.getRank(), rankOffset);
+        stringsSize += addString(strings, taxon.getRank());
+      }
+      rankOffsetsByTaxon[i] = rankOffset;
+    }
+
+    long nameIndexOffset = HEADER_SIZE + (long) taxa.size() * TAXON_RECORD_SIZE;
+    long stringsOffset = nameIndexOffset + (long) taxa.size() * Integer.BYTES;
+    if (stringsOffset + stringsSize > Integer.MAX_VALUE) {
+      throw new IOException("Taxonomy index would exceed 2 GB.");
+    }
+
+    List<Integer> nameOrder = new ArrayList<>(taxa.size());
+    for (int i = 0; i < taxa.size(); i++) {
+      nameOrder.add(i);
+    }
+    nameOrder.sort(
+        Comparator.comparing((Integer i) -> toKey(taxa.get(i).getScientificName()))
+            .thenComparingInt(i -> taxa.get(i).getTaxId()));
+
+    Path tempFile =
+        Files.createTempFile(indexFile.toAbsolutePath().getParent(), "taxonomy-", ".tmp");
+    try (DataOutputStream output =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeInt(taxa.size());
+      output.writeInt((int) nameIndexOffset);
+      output.writeInt((int) stringsOffset);
+      for (int i = 0; i < taxa.size(); i++) {
+        output.writeInt(taxa.get(i).getTaxId());
+        output.writeInt(taxa.get(i).getParentTaxId());
+        output.writeInt(nameOffsets[i]);
+        output.writeInt(rankOffsetsByTaxon[i]);
+      }
+      for (int i : nameOrder) {
+        output.writeInt(i);
+      }
+      for (byte[] string : strings) {
+        output.writeShort(string.length);
+        output.write(string);
+      }
+    } catch (IOException ex) {
+      Files.deleteIfExists(tempFile);
+      throw ex;
+    }
+    Files.move(
+        tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /** Returns the number of bytes the string takes in the index. */
+  private static int addString(List<byte[]> strings, String string) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > 0xFFFF) {
+      throw new IOException("Taxonomy string is too long: " + string.substring(0, 100));
+    }
+    strings.add(bytes);
+    return Short.BYTES + bytes.length;
+  }
+}
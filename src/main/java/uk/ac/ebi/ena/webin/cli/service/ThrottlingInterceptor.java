@@ -0,0 +1,219 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import uk.ac.ebi.ena.webin.cli.utils.AdaptiveConcurrencyLimiter;
+import uk.ac.ebi.ena.webin.cli.utils.CircuitBreaker;
+import uk.ac.ebi.ena.webin.cli.utils.Deadline;
+import uk.ac.ebi.ena.webin.cli.utils.RateLimiter;
+import uk.ac.ebi.ena.webin.cli.utils.RetryUtils;
+
+/**
+ * Limits the rate and the concurrency of the requests made to each service so that parallel lookups
+ * do not trip the throttling of the upstream services.
+ *
+ * <p>Requests are grouped by the longest registered service endpoint their URI starts with, or by
+ * their host if they are not made to a registered service. Every request takes a token from the
+ * service's {@link RateLimiter} and a permit from its {@link AdaptiveConcurrencyLimiter}. The
+ * permit is held until the response has been closed. Responses with status 429 (Too Many
+ * Requests) or 503 (Service Unavailable) cut the service's concurrency limit and, if they have a
+ * {@code Retry-After} header, pause its rate limiter for the time given by the header. Requests
+ * wait for a token or a permit no longer than the current {@link Deadline}.
+ */
+class ThrottlingInterceptor implements ClientHttpRequestInterceptor {
+
+  /** Longer {@code Retry-After} times do not pause the rate limiter in full. */
+  private static final Duration MAX_PAUSE = Duration.ofSeconds(60);
+
+  private final double requestsPerSecond;
+  private final int maxConcurrentRequests;
+  private final boolean adaptiveConcurrency;
+
+  private final Set<String> serviceEndpoints = ConcurrentHashMap.newKeySet();
+  private final ConcurrentMap<String, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, AdaptiveConcurrencyLimiter> concurrencyLimiters =
+      new ConcurrentHashMap<>();
+
+  /**
+   * @param requestsPerSecond - The maximum rate of requests to a service. The rate is not limited
+   *     if this is 0.
+   * @param maxConcurrentRequests - The maximum number of concurrent requests to a service.
+   * @param adaptiveConcurrency - If true, the concurrency limit starts at half the maximum and
+   *     adapts to the latency and the load shedding of the service. Otherwise, it stays at the
+   *     maximum.
+   */
+  ThrottlingInterceptor(
+      double requestsPerSecond, int maxConcurrentRequests, boolean adaptiveConcurrency) {
+    this.requestsPerSecond = requestsPerSecond;
+    this.maxConcurrentRequests = maxConcurrentRequests;
+    this.adaptiveConcurrency = adaptiveConcurrency;
+  }
+
+  @Override
+  public ClientHttpResponse intercept(
+      HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+    String endpoint = getEndpoint(request.getURI().toString());
+    Deadline deadline = Deadline.current();
+
+    getRateLimiter(endpoint).acquire(deadline);
+    AdaptiveConcurrencyLimiter concurrencyLimiter = getConcurrencyLimiter(endpoint);
+    concurrencyLimiter.acquire(deadline);
+
+    long startNanos = System.nanoTime();
+    ClientHttpResponse response;
+    try {
+      response = execution.execute(request, body);
+    } catch (IOException | RuntimeException ex) {
+      concurrencyLimiter.onIgnore();
+      throw ex;
+    }
+    Duration latency = Duration.ofNanos(System.nanoTime() - startNanos);
+
+    int statusCode;
+    try {
+      statusCode = response.getStatusCode().value();
+    } catch (IOException | RuntimeException ex) {
+      concurrencyLimiter.onIgnore();
+      response.close();
+      throw ex;
+    }
+    boolean overloaded =
+        statusCode == HttpStatus.TOO_MANY_REQUESTS.value()
+            || statusCode == HttpStatus.SERVICE_UNAVAILABLE.value();
+    if (overloaded) {
+      Duration retryAfter =
+          RetryUtils.parseRetryAfter(
+              response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER), Instant.now());
+      if (retryAfter != null) {
+        getRateLimiter(endpoint)
+            .pause(retryAfter.compareTo(MAX_PAUSE) < 0 ? retryAfter : MAX_PAUSE);
+      }
+    }
+    return new ThrottledResponse(response, concurrencyLimiter, latency, overloaded);
+  }
+
+  /** Throttles the requests to URIs that start with the given endpoint together. */
+  void addServiceEndpoint(String endpoint) {
+    serviceEndpoints.add(endpoint);
+  }
+
+  /** Returns the registered service endpoint of the URI, or its host if there is none. */
+  String getEndpoint(String uri) {
+    String serviceEndpoint = null;
+    for (String endpoint : serviceEndpoints) {
+      if (isUnder(uri, endpoint)
+          && (serviceEndpoint == null || endpoint.length() > serviceEndpoint.length())) {
+        serviceEndpoint = endpoint;
+      }
+    }
+    return serviceEndpoint != null ? serviceEndpoint : CircuitBreaker.getEndpoint(uri);
+  }
+
+  private static boolean isUnder(String uri, String endpoint) {
+    if (!uri.startsWith(endpoint)) {
+      return false;
+    }
+    if (uri.length() == endpoint.length()) {
+      return true;
+    }
+    char next = uri.charAt(endpoint.length());
+    return next == '/' || next == '?' || next == '#';
+  }
+
+  RateLimiter getRateLimiter(String endpoint) {
+    return rateLimiters.computeIfAbsent(
+        endpoint, e -> new RateLimiter(e, requestsPerSecond, Math.max(1, requestsPerSecond)));
+  }
+
+  AdaptiveConcurrencyLimiter getConcurrencyLimiter(String endpoint) {
+    return concurrencyLimiters.computeIfAbsent(
+        endpoint,
+        e ->
+            adaptiveConcurrency
+                ? new AdaptiveConcurrencyLimiter(
+                    e,
+                    Math.max(1, maxConcurrentRequests / 2),
+                    AdaptiveConcurrencyLimiter.DEFAULT_MIN_LIMIT,
+                    maxConcurrentRequests)
+                : new AdaptiveConcurrencyLimiter(
+                    e, maxConcurrentRequests, maxConcurrentRequests, maxConcurrentRequests));
+  }
+
+  /** Reports the outcome of the request to the concurrency limiter when the response is closed. */
+  private static class ThrottledResponse implements ClientHttpResponse {
+    private final ClientHttpResponse response;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final Duration latency;
+    private final boolean overloaded;
+    private boolean closed;
+
+    private ThrottledResponse(
+        ClientHttpResponse response,
+        AdaptiveConcurrencyLimiter concurrencyLimiter,
+        Duration latency,
+        boolean overloaded) {
+      this.response = response;
+      this.concurrencyLimiter = concurrencyLimiter;
+      this.latency = latency;
+      this.overloaded = overloaded;
+    }
+
+    @Override
+    public HttpStatusCode getStatusCode() throws IOException {
+      return response.getStatusCode();
+    }
+
+    @Override
+    public String getStatusText() throws IOException {
+      return response.getStatusText();
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return response.getHeaders();
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+      return response.getBody();
+    }
+
+    @Override
+    public void close() {
+      try {
+        response.close();
+      } finally {
+        if (!closed) {
+          closed = true;
+          if (overloaded) {
+            concurrencyLimiter.onOverload();
+          } else {
+            concurrencyLimiter.onSuccess(latency);
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import uk.ac.ebi.ena.webin.cli.validator.reference.Sample;
+
+/**
+ * Sample retrieved from Biosamples together with the {@code ETag} and {@code Last-Modified}
+ * validators of the response it was decoded from. The validators are cached with the sample so
+ * that it can be revalidated with a conditional request once its cache entry has expired.
+ */
+class ValidatedSample extends Sample {
+
+  private final String etag;
+  private final String lastModified;
+
+  /** Copies the sample and its list of attributes. */
+  ValidatedSample(Sample sample, String etag, String lastModified) {
+    setBioSampleId(sample.getBioSampleId());
+    setSraSampleId(sample.getSraSampleId());
+    setName(sample.getName());
+    setTaxId(sample.getTaxId());
+    setOrganism(sample.getOrganism());
+    setAttributes(sample.getAttributes());
+    this.etag = etag;
+    this.lastModified = lastModified;
+  }
+
+  String getEtag() {
+    return etag;
+  }
+
+  String getLastModified() {
+    return lastModified;
+  }
+}
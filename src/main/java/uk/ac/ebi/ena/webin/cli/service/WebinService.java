@@ -10,7 +10,10 @@
  */
 package uk.ac.ebi.ena.webin.cli.service;
 
+import java.util.concurrent.Executor;
 import org.springframework.http.HttpHeaders;
+import org.springframework.web.client.RestTemplate;
+import uk.ac.ebi.ena.webin.cli.utils.AsyncUtils;
 
 public class WebinService {
   private final String webinRestV1Uri;
@@ -20,12 +23,21 @@ public class WebinService {
   private final String password;
   private final String authToken;
 
+  private final HttpTransport httpTransport;
+  private final ServiceMetrics metrics;
+  private final RestTemplate restTemplate;
+
+  private final Executor asyncExecutor;
+
   public abstract static class AbstractBuilder<T> {
     protected String webinRestV1Uri;
     protected String webinRestV2Uri;
     protected String userName;
     protected String password;
     protected String authToken;
+    protected HttpTransport httpTransport;
+    protected Executor asyncExecutor;
+    protected ServiceMetrics metrics;
 
     public AbstractBuilder<T> setWebinRestV1Uri(String webinRestV1Uri) {
       this.webinRestV1Uri = webinRestV1Uri;
@@ -58,6 +70,33 @@ public class WebinService {
       return this;
     }
 
+    /**
+     * Sets the HTTP transport used by the service. If not set, the service uses the shared {@link
+     * HttpTransport#getDefault()} transport.
+     */
+    public AbstractBuilder<T> setHttpTransport(HttpTransport httpTransport) {
+      this.httpTransport = httpTransport;
+      return this;
+    }
+
+    /**
+     * Sets the executor that runs asynchronous service calls. If not set, the service uses the
+     * shared {@link AsyncUtils#getDefaultExecutor()} executor.
+     */
+    public AbstractBuilder<T> setAsyncExecutor(Executor asyncExecutor) {
+      this.asyncExecutor = asyncExecutor;
+      return this;
+    }
+
+    /**
+     * Sets the metrics that receive the latency, status code and size of every request made by the
+     * service, and its retries. If not set, measurements are discarded.
+     */
+    public AbstractBuilder<T> setMetrics(ServiceMetrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
     public abstract T build();
   }
 
@@ -67,6 +106,14 @@ public class WebinService {
     this.userName = builder.userName;
     this.password = builder.password;
     this.authToken = builder.authToken;
+    this.httpTransport =
+        builder.httpTransport != null ? builder.httpTransport : HttpTransport.getDefault();
+    this.asyncExecutor =
+        builder.asyncExecutor != null ? builder.asyncExecutor : AsyncUtils.getDefaultExecutor();
+    this.metrics = builder.metrics != null ? builder.metrics : ServiceMetrics.NOOP;
+    this.restTemplate = httpTransport.getRestTemplate(metrics);
+    httpTransport.registerServiceUri(webinRestV1Uri);
+    httpTransport.registerServiceUri(webinRestV2Uri);
   }
 
   final String getWebinRestV1Uri() {
@@ -77,6 +124,22 @@ public class WebinService {
     return webinRestV2Uri;
   }
 
+  public HttpTransport getHttpTransport() {
+    return this.httpTransport;
+  }
+
+  public Executor getAsyncExecutor() {
+    return this.asyncExecutor;
+  }
+
+  public ServiceMetrics getMetrics() {
+    return this.metrics;
+  }
+
+  final RestTemplate getRestTemplate() {
+    return restTemplate;
+  }
+
   public String getUserName() {
     return this.userName;
   }
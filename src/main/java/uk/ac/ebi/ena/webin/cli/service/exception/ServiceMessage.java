@@ -10,19 +10,36 @@
  */
 package uk.ac.ebi.ena.webin.cli.service.exception;
 
+import java.text.MessageFormat;
+import uk.ac.ebi.ena.webin.cli.validator.message.source.MessageFormatCache;
 import uk.ac.ebi.ena.webin.cli.validator.message.source.MessageFormatSource;
 
 public enum ServiceMessage implements MessageFormatSource {
   SAMPLE_SERVICE_VALIDATION_ERROR(
-      "Unknown sample {0} or the sample cannot be referenced by your submission account. Samples must be submitted before they can be referenced in the submission.");
+      "Unknown sample {0} or the sample cannot be referenced by your submission account. Samples must be submitted before they can be referenced in the submission."),
+  SAMPLE_SERVICE_TIMEOUT_ERROR("Timed out retrieving sample {0}."),
+  STUDY_SERVICE_VALIDATION_ERROR(
+      "Unknown study {0} or the study cannot be referenced by your submission account. Studies must be submitted before they can be referenced in the submission."),
+  RUN_SERVICE_VALIDATION_ERROR(
+      "Unknown run {0} or the run cannot be referenced by your submission account. Runs must be submitted before they can be referenced in the submission."),
+  ANALYSIS_SERVICE_VALIDATION_ERROR(
+      "Unknown analysis {0} or the analysis cannot be referenced by your submission account. Analyses must be submitted before they can be referenced in the submission."),
+  REFERENCE_SERVICE_TIMEOUT_ERROR("Timed out retrieving {0} {1}.");
 
   private final String text;
+  private final MessageFormatCache messageFormat;
 
   ServiceMessage(String text) {
     this.text = text;
+    this.messageFormat = new MessageFormatCache(text);
   }
 
   public String text() {
     return text;
   }
+
+  @Override
+  public MessageFormat messageFormat() {
+    return messageFormat.get();
+  }
 }
@@ -0,0 +1,24 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service.exception;
+
+/** Thrown when a service call does not complete before its deadline. */
+public class ServiceTimeoutException extends ServiceException {
+  private static final long serialVersionUID = 1L;
+
+  public ServiceTimeoutException(Exception ex, String messages) {
+    super(ex, messages);
+  }
+
+  public ServiceTimeoutException(String messages) {
+    super(messages);
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceException;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceTimeoutException;
+
+/**
+ * Limits the number of concurrent requests to an endpoint and adapts the limit to how the endpoint
+ * copes with the load (additive increase, multiplicative decrease). The limit grows by one for
+ * every limit's worth of successful requests made while the limit was nearly used up. It is cut by
+ * a quarter when the endpoint sheds load, or when the latency of a request is well above the
+ * latency the endpoint has when it is not loaded.
+ *
+ * <p>The limit is cut at most once per {@link #DECREASE_INTERVAL} so that the requests that were
+ * already in flight when the endpoint became overloaded do not cut it to the minimum.
+ *
+ * <p>Callers wait for a permit on a lock condition rather than on the monitor of the limiter so
+ * that waiting virtual threads do not pin their carrier threads.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+  public static final int DEFAULT_MIN_LIMIT = 1;
+
+  private static final double DECREASE_FACTOR = 0.75;
+
+  /** Requests slower than this multiple of the unloaded latency indicate an overload. */
+  private static final double LATENCY_TOLERANCE = 2.5;
+
+  /** Weight given to a request that is slower than the current unloaded latency estimate. */
+  private static final double LATENCY_SMOOTHING = 0.01;
+
+  /** Latencies below this are too short to indicate an overload. */
+  private static final long MIN_OVERLOAD_LATENCY_NANOS = Duration.ofMillis(50).toNanos();
+
+  static final Duration DECREASE_INTERVAL = Duration.ofSeconds(1);
+
+  private final String endpoint;
+  private final int minLimit;
+  private final int maxLimit;
+  private final Clock clock;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition permitReleased = lock.newCondition();
+
+  private double limit;
+  private int inFlight;
+  private double unloadedLatencyNanos;
+  private Instant decreasedAt;
+
+  public AdaptiveConcurrencyLimiter(String endpoint, int initialLimit, int minLimit, int maxLimit) {
+    this(endpoint, initialLimit, minLimit, maxLimit, Clock.systemUTC());
+  }
+
+  AdaptiveConcurrencyLimiter(
+      String endpoint, int initialLimit, int minLimit, int maxLimit, Clock clock) {
+    this.endpoint = endpoint;
+    this.minLimit = Math.max(1, minLimit);
+    this.maxLimit = Math.max(this.minLimit, maxLimit);
+    this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+    this.clock = clock;
+  }
+
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  /** Returns the current number of concurrent requests allowed. */
+  public int getLimit() {
+    lock.lock();
+    try {
+      return (int) limit;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getInFlight() {
+    lock.lock();
+    try {
+      return inFlight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns true if a request may be made now. A caller that is given permission must report the
+   * outcome of the request with {@link #onSuccess(Duration)}, {@link #onOverload()} or {@link
+   * #onIgnore()}.
+   */
+  public boolean tryAcquire() {
+    lock.lock();
+    try {
+      if (inFlight >= (int) limit) {
+        return false;
+      }
+      inFlight++;
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until a request may be made. Does not wait beyond the deadline. The outcome of the
+   * request must be reported as for {@link #tryAcquire()}.
+   *
+   * @throws ServiceTimeoutException if the deadline expires.
+   */
+  public void acquire(Deadline deadline) {
+    try {
+      lock.lockInterruptibly();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new ServiceException(ex, "Interrupted while waiting to call " + endpoint + ".");
+    }
+    try {
+      while (inFlight >= (int) limit) {
+        if (deadline.isNone()) {
+          permitReleased.await();
+        } else {
+          long remainingMillis = deadline.getRemainingMillis();
+          if (remainingMillis <= 0) {
+            throw new ServiceTimeoutException("Timed out waiting to call " + endpoint + ".");
+          }
+          permitReleased.await(remainingMillis, TimeUnit.MILLISECONDS);
+        }
+      }
+      inFlight++;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new ServiceException(ex, "Interrupted while waiting to call " + endpoint + ".");
+    } finally {
+      // A permit released while this caller was giving up is passed on to the next one.
+      if (inFlight < (int) limit) {
+        permitReleased.signal();
+      }
+      lock.unlock();
+    }
+  }
+
+  /** Reports a request that completed with the given latency. */
+  public void onSuccess(Duration latency) {
+    long latencyNanos = latency.toNanos();
+    lock.lock();
+    try {
+      boolean limitUsed = inFlight * 2 >= limit;
+      release();
+
+      if (unloadedLatencyNanos == 0 || latencyNanos < unloadedLatencyNanos) {
+        unloadedLatencyNanos = latencyNanos;
+      } else {
+        // Follows lasting increases of the latency, for example when responses become larger.
+        unloadedLatencyNanos += (latencyNanos - unloadedLatencyNanos) * LATENCY_SMOOTHING;
+      }
+
+      if (latencyNanos > MIN_OVERLOAD_LATENCY_NANOS
+          && latencyNanos > unloadedLatencyNanos * LATENCY_TOLERANCE) {
+        decrease();
+      } else if (limitUsed) {
+        // Increasing the limit while most of it is unused would not show if the endpoint copes.
+        limit = Math.min(maxLimit, limit + 1 / limit);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Reports a request that the endpoint rejected because it is overloaded. */
+  public void onOverload() {
+    lock.lock();
+    try {
+      release();
+      decrease();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Reports a request whose outcome says nothing about the load of the endpoint. */
+  public void onIgnore() {
+    lock.lock();
+    try {
+      release();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void release() {
+    if (inFlight > 0) {
+      inFlight--;
+    }
+    permitReleased.signal();
+  }
+
+  private void decrease() {
+    Instant now = clock.instant();
+    if (decreasedAt != null && now.isBefore(decreasedAt.plus(DECREASE_INTERVAL))) {
+      return;
+    }
+    decreasedAt = now;
+    limit = Math.max(minLimit, limit * DECREASE_FACTOR);
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+public class AsyncUtils {
+
+  private static class DefaultExecutorHolder {
+    private static final Executor INSTANCE = createDefaultExecutor();
+  }
+
+  /**
+   * Returns the executor used by asynchronous service calls unless the service has been given one.
+   * On Java 21 or later every task runs on its own virtual thread. On earlier versions tasks run on
+   * a shared, unbounded pool of daemon threads.
+   */
+  public static Executor getDefaultExecutor() {
+    return DefaultExecutorHolder.INSTANCE;
+  }
+
+  private static Executor createDefaultExecutor() {
+    try {
+      // Java 21 API looked up reflectively because the project is compiled for Java 17.
+      return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException ex) {
+      AtomicInteger threadCount = new AtomicInteger();
+      return Executors.newCachedThreadPool(
+          r -> {
+            Thread thread = new Thread(r, "webin-cli-async-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          });
+    }
+  }
+
+  /** Returns the exception wrapped by {@link CompletionException} or {@link ExecutionException}. */
+  public static Throwable unwrap(Throwable ex) {
+    while ((ex instanceof CompletionException || ex instanceof ExecutionException)
+        && ex.getCause() != null) {
+      ex = ex.getCause();
+    }
+    return ex;
+  }
+
+  /**
+   * Waits for the future to complete and returns its result. If the future completed exceptionally
+   * then the unchecked exception it completed with is thrown as is.
+   */
+  public static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException ex) {
+      Throwable cause = unwrap(ex);
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw ex;
+    }
+  }
+
+  /**
+   * Cancels the source future when the dependent future is cancelled. Cancelling a future returned
+   * by {@link CompletableFuture#thenApply} does not otherwise affect the future it depends on.
+   *
+   * @return the dependent future
+   */
+  public static <T> CompletableFuture<T> propagateCancellation(
+      CompletableFuture<T> dependent, CompletableFuture<?> source) {
+    dependent.whenComplete(
+        (result, ex) -> {
+          if (dependent.isCancelled()) {
+            source.cancel(false);
+          }
+        });
+    return dependent;
+  }
+
+  /**
+   * Like {@link CompletableFuture#thenCompose} except that cancelling the returned future also
+   * cancels the source future, or the composed future if it has already been started. If the
+   * returned future is cancelled before the source completes then the function is not called.
+   */
+  public static <T, U> CompletableFuture<U> thenComposeCancellable(
+      CompletableFuture<T> source, Function<? super T, CompletableFuture<U>> fn) {
+    CompletableFuture<U> result = new CompletableFuture<>();
+    propagateCancellation(result, source);
+
+    source.whenComplete(
+        (value, ex) -> {
+          if (result.isDone()) {
+            return;
+          }
+          if (ex != null) {
+            result.completeExceptionally(unwrap(ex));
+            return;
+          }
+          CompletableFuture<U> composed;
+          try {
+            composed = fn.apply(value);
+          } catch (RuntimeException | Error fnEx) {
+            result.completeExceptionally(fnEx);
+            return;
+          }
+          propagateCancellation(result, composed);
+          composed.whenComplete(
+              (composedValue, composedEx) -> {
+                if (composedEx != null) {
+                  result.completeExceptionally(unwrap(composedEx));
+                } else {
+                  result.complete(composedValue);
+                }
+              });
+        });
+
+    return result;
+  }
+
+  /**
+   * Returns a copy of the future that is completed with the given error if the future has not
+   * completed before the deadline. The future itself is not affected, so that a call shared with
+   * other callers is not abandoned because one of them has run out of time.
+   */
+  public static <T> CompletableFuture<T> withDeadline(
+      CompletableFuture<T> future,
+      Deadline deadline,
+      Supplier<? extends RuntimeException> timeoutError) {
+    if (deadline.isNone() || future.isDone()) {
+      return future;
+    }
+    CompletableFuture<T> result = future.copy();
+    CompletableFuture.delayedExecutor(deadline.getRemainingMillis(), TimeUnit.MILLISECONDS)
+        .execute(
+            () -> {
+              if (!result.isDone()) {
+                result.completeExceptionally(timeoutError.get());
+              }
+            });
+    return result;
+  }
+}
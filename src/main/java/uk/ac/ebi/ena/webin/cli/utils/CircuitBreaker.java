@@ -0,0 +1,176 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops calls to an endpoint that is failing. The circuit breaker is closed while calls succeed. It
+ * opens after a number of consecutive failures and then rejects all calls until the open duration
+ * has passed. It is then half-open and lets a single trial call through. The circuit breaker closes
+ * if the trial call succeeds and opens again if it fails.
+ *
+ * <p>Circuit breakers are shared by all callers of the same service. A service is identified by its
+ * base URI rather than by its host, so that a failing service does not stop calls to the other
+ * services on the same host. See {@link #forEndpoint(String)}.
+ */
+public class CircuitBreaker {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+  public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(30);
+
+  private static final ConcurrentMap<String, CircuitBreaker> CIRCUIT_BREAKERS =
+      new ConcurrentHashMap<>();
+
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private final String endpoint;
+  private final int failureThreshold;
+  private final Duration openDuration;
+  private final Clock clock;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private Instant openedAt;
+  private boolean trialCallInProgress;
+
+  public CircuitBreaker(String endpoint, int failureThreshold, Duration openDuration) {
+    this(endpoint, failureThreshold, openDuration, Clock.systemUTC());
+  }
+
+  CircuitBreaker(String endpoint, int failureThreshold, Duration openDuration, Clock clock) {
+    this.endpoint = endpoint;
+    this.failureThreshold = failureThreshold;
+    this.openDuration = openDuration;
+    this.clock = clock;
+  }
+
+  /**
+   * Returns the circuit breaker shared by all calls to the endpoint. The endpoint is the base URI
+   * of a service. See {@link #getServiceEndpoint(String)}.
+   */
+  public static CircuitBreaker forEndpoint(String endpoint) {
+    return CIRCUIT_BREAKERS.computeIfAbsent(
+        endpoint, e -> new CircuitBreaker(e, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DURATION));
+  }
+
+  /**
+   * Returns the scheme and authority of the URI, for example {@code https://www.ebi.ac.uk} for
+   * {@code https://www.ebi.ac.uk/ena/submit/drop-box/}. The URI may contain template variables.
+   */
+  public static String getEndpoint(String uri) {
+    int schemeEnd = uri.indexOf("://");
+    int pathStart = uri.indexOf('/', schemeEnd < 0 ? 0 : schemeEnd + 3);
+    return pathStart < 0 ? uri : uri.substring(0, pathStart);
+  }
+
+  /**
+   * Returns the base URI of a service without its query, fragment or trailing slashes, for example
+   * {@code https://www.ebi.ac.uk/ena/submit/drop-box} for {@code
+   * https://www.ebi.ac.uk/ena/submit/drop-box/}.
+   */
+  public static String getServiceEndpoint(String uri) {
+    int end = uri.length();
+    int queryStart = uri.indexOf('?');
+    if (queryStart >= 0) {
+      end = queryStart;
+    }
+    int fragmentStart = uri.indexOf('#');
+    if (fragmentStart >= 0 && fragmentStart < end) {
+      end = fragmentStart;
+    }
+    while (end > 0 && uri.charAt(end - 1) == '/') {
+      end--;
+    }
+    return uri.substring(0, end);
+  }
+
+  /**
+   * Returns true if a call may be made. A caller that is given permission must report the outcome
+   * of the call with {@link #onSuccess()}, {@link #onFailure()} or {@link #onIgnore()}.
+   */
+  public synchronized boolean tryAcquirePermission() {
+    switch (state) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        if (clock.instant().isBefore(openedAt.plus(openDuration))) {
+          return false;
+        }
+        state = State.HALF_OPEN;
+        trialCallInProgress = true;
+        return true;
+      case HALF_OPEN:
+      default:
+        if (trialCallInProgress) {
+          return false;
+        }
+        trialCallInProgress = true;
+        return true;
+    }
+  }
+
+  /** Reports a call that succeeded or failed for reasons other than the endpoint's health. */
+  public synchronized void onSuccess() {
+    if (state != State.CLOSED) {
+      LOGGER.info("Calls to {} have succeeded again.", endpoint);
+    }
+    state = State.CLOSED;
+    consecutiveFailures = 0;
+    trialCallInProgress = false;
+  }
+
+  /** Reports a call that failed because the endpoint is unavailable or returned a server error. */
+  public synchronized void onFailure() {
+    trialCallInProgress = false;
+    consecutiveFailures++;
+    if (state == State.HALF_OPEN
+        || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+      if (state == State.CLOSED) {
+        LOGGER.warn(
+            "Stopping calls to {} for {} seconds after {} consecutive failures.",
+            endpoint,
+            openDuration.getSeconds(),
+            consecutiveFailures);
+      }
+      state = State.OPEN;
+      openedAt = clock.instant();
+    }
+  }
+
+  /**
+   * Reports a call whose outcome says nothing about the endpoint's health, for example because the
+   * endpoint is throttling the client. A trial call may be made again.
+   */
+  public synchronized void onIgnore() {
+    trialCallInProgress = false;
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  public String getEndpoint() {
+    return endpoint;
+  }
+}
@@ -0,0 +1,20 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+/** Thrown when a call is not made because the endpoint's circuit breaker is open. */
+public class CircuitBreakerOpenException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  public CircuitBreakerOpenException(String endpoint) {
+    super("Calls to " + endpoint + " are stopped because it is failing.");
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import java.time.Duration;
+
+/**
+ * The point in time by which a call, including all its retries, must complete. Deadlines are
+ * passed from the caller down to each HTTP request so that the retries and read timeouts of the
+ * request respect the time that remains.
+ */
+public final class Deadline {
+
+  private static final Deadline NONE = new Deadline(null, 0);
+
+  /** The deadline of the HTTP request being made by the current thread. */
+  private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+  private final Duration timeout;
+  private final long deadlineNanos;
+
+  private Deadline(Duration timeout, long deadlineNanos) {
+    this.timeout = timeout;
+    this.deadlineNanos = deadlineNanos;
+  }
+
+  /** Returns a deadline that never expires. */
+  public static Deadline none() {
+    return NONE;
+  }
+
+  /** Returns a deadline that expires after the timeout, or never if the timeout is null. */
+  public static Deadline after(Duration timeout) {
+    if (timeout == null) {
+      return NONE;
+    }
+    return new Deadline(timeout, System.nanoTime() + timeout.toNanos());
+  }
+
+  public boolean isNone() {
+    return timeout == null;
+  }
+
+  public boolean isExpired() {
+    return !isNone() && System.nanoTime() - deadlineNanos >= 0;
+  }
+
+  /** Returns the remaining time in milliseconds, or {@link Long#MAX_VALUE} if there is no limit. */
+  public long getRemainingMillis() {
+    if (isNone()) {
+      return Long.MAX_VALUE;
+    }
+    return Math.max(0, Duration.ofNanos(deadlineNanos - System.nanoTime()).toMillis());
+  }
+
+  /** Returns the timeout the deadline was created with, or null if there is no limit. */
+  public Duration getTimeout() {
+    return timeout;
+  }
+
+  /**
+   * Returns the deadline of the HTTP request being made by the current thread. The deadline is set
+   * by {@link RetryUtils} for the duration of each attempt.
+   */
+  public static Deadline current() {
+    Deadline deadline = CURRENT.get();
+    return deadline != null ? deadline : NONE;
+  }
+
+  /** Sets the deadline of the current thread and returns the previous one. */
+  static Deadline setCurrent(Deadline deadline) {
+    Deadline previous = CURRENT.get();
+    CURRENT.set(deadline);
+    return previous;
+  }
+
+  static void restoreCurrent(Deadline previous) {
+    if (previous != null) {
+      CURRENT.set(previous);
+    } else {
+      CURRENT.remove();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return isNone() ? "none" : getRemainingMillis() + "ms remaining of " + timeout;
+  }
+}
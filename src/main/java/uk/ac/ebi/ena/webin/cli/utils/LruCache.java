@@ -0,0 +1,77 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe size-bounded cache. When the cache is full the least recently used entry is evicted.
+ */
+public class LruCache<K, V> {
+
+  private final int maxSize;
+  private final AtomicLong evictionCount = new AtomicLong();
+  private final LinkedHashMap<K, V> map;
+
+  public LruCache(int maxSize) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("Cache size must be positive: " + maxSize);
+    }
+    this.maxSize = maxSize;
+    this.map =
+        new LinkedHashMap<K, V>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            if (size() > LruCache.this.maxSize) {
+              evictionCount.incrementAndGet();
+              return true;
+            }
+            return false;
+          }
+        };
+  }
+
+  public synchronized V get(K key) {
+    return map.get(key);
+  }
+
+  public synchronized void put(K key, V value) {
+    map.put(key, value);
+  }
+
+  public synchronized V remove(K key) {
+    return map.remove(key);
+  }
+
+  public synchronized void clear() {
+    map.clear();
+  }
+
+  /** Returns a copy of the cached entries ordered from the least to the most recently used. */
+  public synchronized Map<K, V> toMap() {
+    return new LinkedHashMap<>(map);
+  }
+
+  public synchronized int size() {
+    return map.size();
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /** Returns the number of entries evicted because the cache was full. */
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceException;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceTimeoutException;
+
+/**
+ * Token bucket that limits the rate of requests to an endpoint. Tokens are added at a fixed rate up
+ * to the burst size and every request takes one. A request that finds the bucket empty waits until
+ * a token has been added.
+ *
+ * <p>The limiter can also be paused, for example when the endpoint has asked for requests to be
+ * delayed with a {@code Retry-After} header. No tokens are added while the limiter is paused.
+ *
+ * <p>Callers wait for their token on a lock condition rather than on the monitor of the limiter so
+ * that waiting virtual threads do not pin their carrier threads. A caller that is interrupted while
+ * waiting gives its token back.
+ */
+public class RateLimiter {
+
+  private final String endpoint;
+  private final double permitsPerSecond;
+  private final double burst;
+  private final Clock clock;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition tokenDue = lock.newCondition();
+
+  private double tokens;
+
+  /** Tokens are added from this time. It is in the future while the limiter is paused. */
+  private Instant updatedAt;
+
+  /**
+   * @param endpoint - The endpoint whose requests are limited.
+   * @param permitsPerSecond - The number of requests allowed per second. The rate is not limited if
+   *     this is 0, but the limiter can still be paused.
+   * @param burst - The number of requests that can be made at once after a quiet period.
+   */
+  public RateLimiter(String endpoint, double permitsPerSecond, double burst) {
+    this(endpoint, permitsPerSecond, burst, Clock.systemUTC());
+  }
+
+  RateLimiter(String endpoint, double permitsPerSecond, double burst, Clock clock) {
+    this.endpoint = endpoint;
+    this.permitsPerSecond = permitsPerSecond;
+    this.burst = Math.max(1, burst);
+    this.clock = clock;
+    this.tokens = this.burst;
+    this.updatedAt = clock.instant();
+  }
+
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  /**
+   * Takes a token, waiting for one if necessary. Does not wait beyond the deadline.
+   *
+   * @throws ServiceTimeoutException if no token would be available before the deadline.
+   */
+  public void acquire(Deadline deadline) {
+    long waitMillis = reserve(deadline.isNone() ? Long.MAX_VALUE : deadline.getRemainingMillis());
+    if (waitMillis < 0) {
+      throw new ServiceTimeoutException("Timed out waiting to call " + endpoint + ".");
+    }
+    if (waitMillis > 0) {
+      await(waitMillis);
+    }
+  }
+
+  /**
+   * Waits until the reserved token may be used. The condition is never signalled. Waiting on it
+   * releases the lock, so other callers can reserve tokens in the meantime.
+   */
+  private void await(long waitMillis) {
+    long remainingNanos = TimeUnit.MILLISECONDS.toNanos(waitMillis);
+    lock.lock();
+    try {
+      while (remainingNanos > 0) {
+        remainingNanos = tokenDue.awaitNanos(remainingNanos);
+      }
+    } catch (InterruptedException ex) {
+      if (permitsPerSecond > 0) {
+        tokens = Math.min(burst, tokens + 1);
+      }
+      Thread.currentThread().interrupt();
+      throw new ServiceException(ex, "Interrupted while waiting to call " + endpoint + ".");
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Takes a token and returns how long the caller must wait before using it, or -1 without taking a
+   * token if the wait would be longer than the given maximum. Tokens that are not yet available
+   * are borrowed from the future so that waiting callers are served in order.
+   */
+  long reserve(long maxWaitMillis) {
+    lock.lock();
+    try {
+      refill();
+      long waitMillis = Math.max(0, Duration.between(clock.instant(), updatedAt).toMillis());
+      if (permitsPerSecond > 0 && tokens < 1) {
+        waitMillis += (long) Math.ceil((1 - tokens) * 1000 / permitsPerSecond);
+      }
+      if (waitMillis > maxWaitMillis) {
+        return -1;
+      }
+      if (permitsPerSecond > 0) {
+        tokens -= 1;
+      }
+      return waitMillis;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Stops handing out tokens for the given time. Tokens saved up so far are discarded. */
+  public void pause(Duration duration) {
+    lock.lock();
+    try {
+      refill();
+      Instant until = clock.instant().plus(duration);
+      if (until.isAfter(updatedAt)) {
+        tokens = Math.min(tokens, 0);
+        updatedAt = until;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void refill() {
+    Instant now = clock.instant();
+    long elapsedMillis = Duration.between(updatedAt, now).toMillis();
+    if (elapsedMillis > 0) {
+      if (permitsPerSecond > 0) {
+        tokens = Math.min(burst, tokens + elapsedMillis * permitsPerSecond / 1000);
+      }
+      updatedAt = now;
+    }
+  }
+}
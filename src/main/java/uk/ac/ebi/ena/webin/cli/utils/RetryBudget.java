@@ -0,0 +1,74 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Limits retries to a ratio of the requests made. Every request deposits the ratio into the budget
+ * and every retry withdraws one from it. A minimum number of retries per second is always allowed
+ * so that retries are possible while few requests are made. The budget is capped so that a long
+ * healthy period does not allow a burst of retries once an endpoint starts failing.
+ */
+public class RetryBudget {
+
+  public static final double DEFAULT_RETRY_RATIO = 0.2;
+  public static final double DEFAULT_MIN_RETRIES_PER_SECOND = 1;
+  public static final double DEFAULT_MAX_BALANCE = 20;
+
+  private final double retryRatio;
+  private final double minRetriesPerSecond;
+  private final double maxBalance;
+  private final Clock clock;
+
+  private double balance;
+  private Instant updatedAt;
+
+  public RetryBudget(double retryRatio, double minRetriesPerSecond, double maxBalance) {
+    this(retryRatio, minRetriesPerSecond, maxBalance, Clock.systemUTC());
+  }
+
+  RetryBudget(double retryRatio, double minRetriesPerSecond, double maxBalance, Clock clock) {
+    this.retryRatio = retryRatio;
+    this.minRetriesPerSecond = minRetriesPerSecond;
+    this.maxBalance = maxBalance;
+    this.clock = clock;
+    this.balance = maxBalance;
+    this.updatedAt = clock.instant();
+  }
+
+  /** Records a request, not including retries. */
+  public synchronized void onRequest() {
+    refill();
+    balance = Math.min(maxBalance, balance + retryRatio);
+  }
+
+  /** Returns true if a retry is allowed, in which case the retry is withdrawn from the budget. */
+  public synchronized boolean tryRetry() {
+    refill();
+    if (balance < 1) {
+      return false;
+    }
+    balance -= 1;
+    return true;
+  }
+
+  private void refill() {
+    Instant now = clock.instant();
+    long elapsedMillis = Duration.between(updatedAt, now).toMillis();
+    if (elapsedMillis > 0) {
+      balance = Math.min(maxBalance, balance + elapsedMillis * minRetriesPerSecond / 1000);
+      updatedAt = now;
+    }
+  }
+}
@@ -10,18 +10,85 @@
  */
 package uk.ac.ebi.ena.webin.cli.utils;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import org.springframework.http.HttpHeaders;
 import org.springframework.retry.RetryCallback;
 import org.springframework.retry.RetryContext;
+import org.springframework.retry.backoff.BackOffContext;
+import org.springframework.retry.backoff.BackOffInterruptedException;
+import org.springframework.retry.backoff.BackOffPolicy;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.retry.support.RetryTemplateBuilder;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientResponseException;
+import uk.ac.ebi.ena.webin.cli.service.ServiceMetrics;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceTimeoutException;
 
+/**
+ * Retries failed calls with backoff.
+ *
+ * <p>When given the base URI of the service being called, calls are made through the circuit
+ * breaker of the service. Once the service is failing, calls fail straight away with {@link
+ * CircuitBreakerOpenException} instead of being retried. Retries of all calls are also limited by a
+ * shared {@link RetryBudget}.
+ *
+ * <p>When given a {@link Deadline}, no attempt is started, and no retry is scheduled, that could
+ * not complete before the deadline. The deadline is also made available to the HTTP transport
+ * through {@link Deadline#current()} so that read timeouts do not exceed it. A call that runs out
+ * of time fails with {@link ServiceTimeoutException}.
+ *
+ * <p>Responses with status 429 (Too Many Requests) are retried by every call that retries other
+ * errors. When a failed response has a {@code Retry-After} header, the retry is not made before
+ * the time given by the header.
+ */
 public class RetryUtils {
 
+  private static final int MAX_ATTEMPTS = 7;
+  private static final long INITIAL_BACKOFF_MILLIS = 1000;
+  private static final double BACKOFF_MULTIPLIER = 3;
+  private static final long MAX_BACKOFF_MILLIS = 5_000;
+
+  /** Wait times are randomly increased or decreased by up to this fraction. */
+  private static final double BACKOFF_JITTER = 0.25;
+
+  /** Retries are not made unless at least this much time would remain for the attempt. */
+  private static final long MIN_ATTEMPT_MILLIS = 500;
+
+  /** Longer {@code Retry-After} times are not waited for in full. */
+  private static final long MAX_RETRY_AFTER_MILLIS = 60_000;
+
+  private static final RetryBudget RETRY_BUDGET =
+      new RetryBudget(
+          RetryBudget.DEFAULT_RETRY_RATIO,
+          RetryBudget.DEFAULT_MIN_RETRIES_PER_SECOND,
+          RetryBudget.DEFAULT_MAX_BALANCE);
+
+  /** Retry templates are thread-safe and are shared by all calls retrying on the same errors. */
+  private static final ConcurrentMap<List<Class<? extends Exception>>, RetryTemplate>
+      RETRY_TEMPLATES = new ConcurrentHashMap<>();
+
   /**
    * Create a default retry template that does a total of 7 attempts (1 initial try + 6 failure
-   * retries) with wait times of 1s before 1st retry, 3s before 2nd and then 5s before remaining
-   * retries when given errors occur.
+   * retries) with wait times of about 1s before 1st retry, 3s before 2nd and then 5s before
+   * remaining retries when given errors occur. The wait times are jittered so that callers that
+   * failed at the same time do not retry at the same time.
+   *
+   * <p>Responses with status 429 (Too Many Requests) are retried together with the given errors.
    *
    * @param retryOnErrors
    * @return
@@ -30,13 +97,14 @@ public class RetryUtils {
       Class<? extends Exception>... retryOnErrors) {
     RetryTemplateBuilder builder =
         RetryTemplate.builder()
-            .maxAttempts(7)
-            .exponentialBackoff(1000, 3, 5_000); // 1s, 3s, 5s, 5s, 5s, 5s
+            .maxAttempts(MAX_ATTEMPTS)
+            .customBackoff(new JitteredBackOffPolicy()); // 1s, 3s, 5s, 5s, 5s, 5s
 
-    if (retryOnErrors != null) {
+    if (retryOnErrors != null && retryOnErrors.length > 0) {
       for (int i = 0; i < retryOnErrors.length; i++) {
         builder = builder.retryOn(retryOnErrors[i]);
       }
+      builder = builder.retryOn(HttpClientErrorException.TooManyRequests.class);
     }
 
     return builder.build();
@@ -57,16 +125,387 @@ public class RetryUtils {
       Consumer<RetryContext> beforeRetryCallback,
       Class<? extends Exception>... retryOnErrors)
       throws E {
+    return executeWithRetry(
+        null,
+        Deadline.none(),
+        ServiceMetrics.NOOP,
+        retryCallback,
+        beforeRetryCallback,
+        retryOnErrors);
+  }
+
+  /**
+   * @param uri - The base URI of the service being called. Calls are made through the circuit
+   *     breaker of the service. No circuit breaker is used if null.
+   * @param deadline - The deadline for the call including all retries.
+   * @param metrics - Receives the retries made for the endpoint of the URI. Retries are not
+   *     recorded if the URI is null.
+   * @param retryCallback
+   * @param beforeRetryCallback - Invoked before every retry attempt. This does not include the
+   *     first attempt.
+   * @param retryOnErrors - Errors that are retried. These errors are also counted as failures by
+   *     the circuit breaker. Responses with status 429 (Too Many Requests) are not counted.
+   * @return
+   * @param <T>
+   * @param <E>
+   * @throws E
+   * @throws ServiceTimeoutException if the deadline expires.
+   */
+  public static <T, E extends Throwable> T executeWithRetry(
+      String uri,
+      Deadline deadline,
+      ServiceMetrics metrics,
+      RetryCallback<T, E> retryCallback,
+      Consumer<RetryContext> beforeRetryCallback,
+      Class<? extends Exception>... retryOnErrors)
+      throws E {
+
+    CircuitBreaker circuitBreaker = getCircuitBreaker(uri);
+    RETRY_BUDGET.onRequest();
+    String endpoint = uri != null ? CircuitBreaker.getEndpoint(uri) : null;
+
+    return getRetryTemplate(retryOnErrors)
+        .execute(
+            ctx -> {
+              if (ctx.getRetryCount() > 0) {
+                if (endpoint != null) {
+                  metrics.recordRetry(endpoint, ctx.getRetryCount());
+                }
+                beforeRetryCallback.accept(ctx);
+              }
+
+              checkDeadline(uri, deadline, ctx.getLastThrowable());
 
-    RetryTemplate retryTemplate = createDefaultRetryTemplate(retryOnErrors);
+              if (circuitBreaker != null && !circuitBreaker.tryAcquirePermission()) {
+                ctx.setExhaustedOnly();
+                throw new CircuitBreakerOpenException(circuitBreaker.getEndpoint());
+              }
 
-    return retryTemplate.execute(
-        ctx -> {
-          if (ctx.getRetryCount() > 0) {
-            beforeRetryCallback.accept(ctx);
+              Deadline previousDeadline = Deadline.setCurrent(deadline);
+              try {
+                T result = retryCallback.doWithRetry(ctx);
+                if (circuitBreaker != null) {
+                  circuitBreaker.onSuccess();
+                }
+                return result;
+              } catch (Throwable ex) {
+                if (!isRetryAllowed(circuitBreaker, ex, retryOnErrors, ctx.getRetryCount())) {
+                  ctx.setExhaustedOnly();
+                  throw ex;
+                }
+                if (!isRetryBeforeDeadline(deadline, ctx.getRetryCount() + 1, ex)) {
+                  ctx.setExhaustedOnly();
+                  throw timeout(uri, ex);
+                }
+                throw ex;
+              } finally {
+                Deadline.restoreCurrent(previousDeadline);
+              }
+            });
+  }
+
+  /**
+   * Asynchronous counterpart of {@link #executeWithRetry}. Makes the same attempts with the same
+   * wait times, but the waits are scheduled on a timer instead of blocking a thread. Each attempt
+   * runs on the given executor.
+   *
+   * @param uri - The base URI of the service being called. Calls are made through the circuit
+   *     breaker of the service. No circuit breaker is used if null.
+   * @param deadline - The deadline for the call including all retries.
+   * @param metrics - Receives the retries made for the endpoint of the URI. Retries are not
+   *     recorded if the URI is null.
+   * @param callable - The attempt. Exceptions other than the given errors are not retried.
+   * @param beforeRetryCallback - Invoked with the retry count before every retry attempt. This does
+   *     not include the first attempt.
+   * @param executor
+   * @param retryOnErrors - Errors that are retried. These errors are also counted as failures by
+   *     the circuit breaker. Responses with status 429 (Too Many Requests) are not counted.
+   * @return A future completed with the result of the first successful attempt or with the
+   *     exception of the last attempt, or {@link ServiceTimeoutException} if the deadline expires.
+   *     Cancelling the future stops further attempts.
+   * @param <T>
+   */
+  public static <T> CompletableFuture<T> executeWithRetryAsync(
+      String uri,
+      Deadline deadline,
+      ServiceMetrics metrics,
+      Callable<T> callable,
+      IntConsumer beforeRetryCallback,
+      Executor executor,
+      Class<? extends Exception>... retryOnErrors) {
+
+    CircuitBreaker circuitBreaker = getCircuitBreaker(uri);
+    RETRY_BUDGET.onRequest();
+
+    IntConsumer recordingBeforeRetryCallback =
+        uri == null
+            ? beforeRetryCallback
+            : retryCount -> {
+              metrics.recordRetry(CircuitBreaker.getEndpoint(uri), retryCount);
+              beforeRetryCallback.accept(retryCount);
+            };
+
+    CompletableFuture<T> result = new CompletableFuture<>();
+    executeAttemptAsync(
+        uri,
+        deadline,
+        circuitBreaker,
+        callable,
+        recordingBeforeRetryCallback,
+        executor,
+        retryOnErrors,
+        0,
+        null,
+        result);
+    return result;
+  }
+
+  private static <T> void executeAttemptAsync(
+      String uri,
+      Deadline deadline,
+      CircuitBreaker circuitBreaker,
+      Callable<T> callable,
+      IntConsumer beforeRetryCallback,
+      Executor executor,
+      Class<? extends Exception>[] retryOnErrors,
+      int retryCount,
+      Throwable lastThrowable,
+      CompletableFuture<T> result) {
+
+    Executor attemptExecutor =
+        retryCount == 0
+            ? executor
+            : CompletableFuture.delayedExecutor(
+                getBackoffMillis(retryCount, lastThrowable), TimeUnit.MILLISECONDS, executor);
+
+    Runnable attempt =
+        () -> {
+          if (result.isDone()) {
+            // Cancelled by the caller.
+            return;
+          }
+          if (retryCount > 0) {
+            beforeRetryCallback.accept(retryCount);
+          }
+
+          if (deadline.isExpired()) {
+            result.completeExceptionally(timeout(uri, lastThrowable));
+            return;
           }
 
-          return retryCallback.doWithRetry(ctx);
-        });
+          if (circuitBreaker != null && !circuitBreaker.tryAcquirePermission()) {
+            result.completeExceptionally(
+                new CircuitBreakerOpenException(circuitBreaker.getEndpoint()));
+            return;
+          }
+
+          Deadline previousDeadline = Deadline.setCurrent(deadline);
+          try {
+            T value = callable.call();
+            if (circuitBreaker != null) {
+              circuitBreaker.onSuccess();
+            }
+            result.complete(value);
+          } catch (Exception ex) {
+            if (!isRetryAllowed(circuitBreaker, ex, retryOnErrors, retryCount)) {
+              result.completeExceptionally(ex);
+            } else if (!isRetryBeforeDeadline(deadline, retryCount + 1, ex)) {
+              result.completeExceptionally(timeout(uri, ex));
+            } else {
+              executeAttemptAsync(
+                  uri,
+                  deadline,
+                  circuitBreaker,
+                  callable,
+                  beforeRetryCallback,
+                  executor,
+                  retryOnErrors,
+                  retryCount + 1,
+                  ex,
+                  result);
+            }
+          } catch (Error ex) {
+            isRetryAllowed(circuitBreaker, ex, retryOnErrors, retryCount);
+            result.completeExceptionally(ex);
+            throw ex;
+          } finally {
+            Deadline.restoreCurrent(previousDeadline);
+          }
+        };
+
+    try {
+      attemptExecutor.execute(attempt);
+    } catch (RuntimeException ex) {
+      result.completeExceptionally(ex);
+    }
+  }
+
+  /**
+   * Reports the failed attempt to the circuit breaker and returns true if the attempt may be
+   * retried. Errors that are not retried do not indicate that the endpoint is failing, and neither
+   * does throttling.
+   */
+  private static boolean isRetryAllowed(
+      CircuitBreaker circuitBreaker,
+      Throwable ex,
+      Class<? extends Exception>[] retryOnErrors,
+      int retryCount) {
+    boolean retryable = isRetryable(ex, retryOnErrors);
+    if (circuitBreaker != null) {
+      if (ex instanceof HttpClientErrorException.TooManyRequests) {
+        circuitBreaker.onIgnore();
+      } else if (!retryable) {
+        circuitBreaker.onSuccess();
+      } else {
+        circuitBreaker.onFailure();
+        if (circuitBreaker.getState() == CircuitBreaker.State.OPEN) {
+          return false;
+        }
+      }
+    }
+    if (!retryable) {
+      return false;
+    }
+    return retryCount + 1 < MAX_ATTEMPTS && RETRY_BUDGET.tryRetry();
+  }
+
+  /**
+   * Returns false if the deadline would expire before, or shortly after, the retry starts. A retry
+   * that can only start at the deadline would fail with a timeout anyway.
+   */
+  private static boolean isRetryBeforeDeadline(Deadline deadline, int retryCount, Throwable ex) {
+    if (deadline.isNone()) {
+      return true;
+    }
+    double maxBackoffMillis =
+        Math.max(getBaseBackoffMillis(retryCount) * (1 + BACKOFF_JITTER), getRetryAfterMillis(ex));
+    return deadline.getRemainingMillis() > maxBackoffMillis + MIN_ATTEMPT_MILLIS;
+  }
+
+  private static void checkDeadline(String uri, Deadline deadline, Throwable lastThrowable) {
+    if (deadline.isExpired()) {
+      throw timeout(uri, lastThrowable);
+    }
+  }
+
+  private static ServiceTimeoutException timeout(String uri, Throwable lastThrowable) {
+    String message =
+        "Timed out calling " + (uri != null ? CircuitBreaker.getEndpoint(uri) : "service") + ".";
+    if (lastThrowable instanceof Exception) {
+      return new ServiceTimeoutException((Exception) lastThrowable, message);
+    }
+    return new ServiceTimeoutException(message);
+  }
+
+  private static CircuitBreaker getCircuitBreaker(String uri) {
+    return uri != null ? CircuitBreaker.forEndpoint(CircuitBreaker.getServiceEndpoint(uri)) : null;
+  }
+
+  private static RetryTemplate getRetryTemplate(Class<? extends Exception>[] retryOnErrors) {
+    List<Class<? extends Exception>> key =
+        retryOnErrors != null ? Arrays.asList(retryOnErrors) : List.of();
+    return RETRY_TEMPLATES.computeIfAbsent(
+        key, k -> createDefaultRetryTemplate(k.toArray(new Class[0])));
+  }
+
+  /**
+   * Returns the jittered wait time before the given retry, or the time asked for by the failed
+   * response's {@code Retry-After} header if that is longer.
+   */
+  private static long getBackoffMillis(int retryCount, Throwable lastThrowable) {
+    double jitter = ThreadLocalRandom.current().nextDouble(-BACKOFF_JITTER, BACKOFF_JITTER);
+    return Math.max(
+        (long) (getBaseBackoffMillis(retryCount) * (1 + jitter)),
+        getRetryAfterMillis(lastThrowable));
+  }
+
+  /** Returns the time asked for by the {@code Retry-After} header of the failed response, or 0. */
+  static long getRetryAfterMillis(Throwable ex) {
+    if (!(ex instanceof RestClientResponseException)) {
+      return 0;
+    }
+    HttpHeaders headers = ((RestClientResponseException) ex).getResponseHeaders();
+    if (headers == null) {
+      return 0;
+    }
+    Duration retryAfter = parseRetryAfter(headers.getFirst(HttpHeaders.RETRY_AFTER), Instant.now());
+    return retryAfter != null ? Math.min(retryAfter.toMillis(), MAX_RETRY_AFTER_MILLIS) : 0;
+  }
+
+  /**
+   * Parses a {@code Retry-After} header given either as a number of seconds or as an HTTP date.
+   * Returns null if the value is missing or invalid, and zero if the date has already passed.
+   */
+  public static Duration parseRetryAfter(String value, Instant now) {
+    if (value == null || value.isBlank()) {
+      return null;
+    }
+    String trimmed = value.trim();
+    try {
+      long seconds = Long.parseLong(trimmed);
+      return seconds >= 0 ? Duration.ofSeconds(seconds) : null;
+    } catch (NumberFormatException ex) {
+      // Not a number of seconds.
+    }
+    try {
+      Instant retryAt =
+          ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+      return retryAt.isAfter(now) ? Duration.between(now, retryAt) : Duration.ZERO;
+    } catch (DateTimeParseException ex) {
+      return null;
+    }
+  }
+
+  /** Returns the wait time before the given retry without jitter. */
+  private static double getBaseBackoffMillis(int retryCount) {
+    return Math.min(
+        INITIAL_BACKOFF_MILLIS * Math.pow(BACKOFF_MULTIPLIER, retryCount - 1), MAX_BACKOFF_MILLIS);
+  }
+
+  private static boolean isRetryable(Throwable ex, Class<? extends Exception>[] retryOnErrors) {
+    if (retryOnErrors == null || retryOnErrors.length == 0) {
+      return false;
+    }
+    if (ex instanceof HttpClientErrorException.TooManyRequests) {
+      // The endpoint is throttling the client. The request is valid and will succeed later.
+      return true;
+    }
+    for (Class<? extends Exception> retryOnError : retryOnErrors) {
+      if (retryOnError.isInstance(ex)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Waits for {@link #getBackoffMillis(int, Throwable)} before each retry. */
+  private static class JitteredBackOffPolicy implements BackOffPolicy {
+
+    private static class JitteredBackOffContext implements BackOffContext {
+      private final RetryContext retryContext;
+      private int retryCount;
+
+      private JitteredBackOffContext(RetryContext retryContext) {
+        this.retryContext = retryContext;
+      }
+    }
+
+    @Override
+    public BackOffContext start(RetryContext context) {
+      return new JitteredBackOffContext(context);
+    }
+
+    @Override
+    public void backOff(BackOffContext backOffContext) throws BackOffInterruptedException {
+      JitteredBackOffContext context = (JitteredBackOffContext) backOffContext;
+      context.retryCount++;
+      try {
+        Thread.sleep(
+            getBackoffMillis(context.retryCount, context.retryContext.getLastThrowable()));
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new BackOffInterruptedException("Thread interrupted while sleeping", ex);
+      }
+    }
   }
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key. The first caller executes the call and any caller
+ * that asks for the same key while the call is in progress waits for, and shares, its result. If
+ * the call fails then all waiting callers receive the same exception.
+ *
+ * <p>Results are not retained once the call has completed.
+ */
+public class SingleFlight<K, V> {
+
+  private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+  /**
+   * Executes the call unless a call for the same key is already in progress, in which case waits
+   * for that call to complete and returns its result.
+   */
+  public V execute(K key, Supplier<V> call) {
+    CompletableFuture<V> future = new CompletableFuture<>();
+    CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+    if (existing != null) {
+      return await(existing);
+    }
+
+    try {
+      V result = call.get();
+      future.complete(result);
+      return result;
+    } catch (RuntimeException | Error ex) {
+      future.completeExceptionally(ex);
+      throw ex;
+    } finally {
+      inFlight.remove(key, future);
+    }
+  }
+
+  /**
+   * Asynchronous counterpart of {@link #execute}. Starts the call unless a call for the same key is
+   * already in progress, in which case returns a future completed with that call's result.
+   * Synchronous and asynchronous calls for the same key are coalesced with each other.
+   */
+  public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> call) {
+    CompletableFuture<V> future = new CompletableFuture<>();
+    CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+    if (existing != null) {
+      // A copy so that callers can't complete the shared future.
+      return existing.copy();
+    }
+
+    try {
+      call.get()
+          .whenComplete(
+              (result, ex) -> {
+                if (ex == null) {
+                  future.complete(result);
+                } else {
+                  future.completeExceptionally(AsyncUtils.unwrap(ex));
+                }
+                inFlight.remove(key, future);
+              });
+    } catch (RuntimeException | Error ex) {
+      future.completeExceptionally(ex);
+      inFlight.remove(key, future);
+    }
+    return future.copy();
+  }
+
+  /** Returns the number of calls in progress. */
+  public int getInFlightCount() {
+    return inFlight.size();
+  }
+
+  private static <V> V await(CompletableFuture<V> future) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return future.get();
+        } catch (InterruptedException ex) {
+          // The call is executed by another caller and can't be abandoned half way. Keep waiting
+          // and restore the interrupt status afterwards.
+          interrupted = true;
+        }
+      }
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.validator.message;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends lines to a report file and forces them to storage in groups. Each line is written to the
+ * file as soon as it is given, so that it can be read straight away, but the file is only forced to
+ * storage by a background thread once the flush interval has passed or the flush count has been
+ * reached. A report with millions of lines is therefore not forced to storage millions of times.
+ *
+ * <p>{@link #flush()} and {@link #close()} force all written lines to storage before they return.
+ * The writer is thread-safe. The background thread only holds the writer weakly, so a writer that
+ * is not closed stops being flushed once it has been garbage collected.
+ */
+public class ReportWriter implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ReportWriter.class);
+
+  public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofSeconds(1);
+  public static final int DEFAULT_FLUSH_COUNT = 1000;
+
+  private static final ScheduledThreadPoolExecutor FLUSH_SCHEDULER = createFlushScheduler();
+
+  private final Path reportFile;
+  private final FileChannel channel;
+  private final int flushCount;
+  private final ScheduledFuture<?> scheduledFlush;
+
+  private final Object flushLock = new Object();
+  private final AtomicLong writtenLines = new AtomicLong();
+  private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+  /** The number of written lines that have been forced to storage. Updated under the flush lock. */
+  private volatile long flushedLines;
+
+  private volatile boolean closed;
+
+  /** Appends to the report file, creating it if it does not exist. */
+  public ReportWriter(Path reportFile) throws IOException {
+    this(reportFile, DEFAULT_FLUSH_INTERVAL, DEFAULT_FLUSH_COUNT);
+  }
+
+  /**
+   * Appends to the report file, creating it if it does not exist.
+   *
+   * @param flushInterval - The longest time that written lines may wait before they are forced to
+   *     storage.
+   * @param flushCount - The number of written lines that causes them to be forced to storage before
+   *     the flush interval has passed.
+   */
+  public ReportWriter(Path reportFile, Duration flushInterval, int flushCount) throws IOException {
+    this.reportFile = reportFile;
+    this.channel =
+        FileChannel.open(
+            reportFile,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+    this.flushCount = Math.max(1, flushCount);
+    long flushIntervalMillis = Math.max(1, flushInterval.toMillis());
+    ScheduledFlush flushTask = new ScheduledFlush(this);
+    this.scheduledFlush =
+        FLUSH_SCHEDULER.scheduleWithFixedDelay(
+            flushTask, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    flushTask.scheduledFlush = scheduledFlush;
+  }
+
+  private static ScheduledThreadPoolExecutor createFlushScheduler() {
+    ScheduledThreadPoolExecutor scheduler =
+        new ScheduledThreadPoolExecutor(
+            1,
+            r -> {
+              Thread thread = new Thread(r, "webin-cli-report-writer");
+              thread.setDaemon(true);
+              return thread;
+            });
+    // Cancelled flushes are removed from the queue straight away instead of when they are due.
+    scheduler.setRemoveOnCancelPolicy(true);
+    return scheduler;
+  }
+
+  public Path getReportFile() {
+    return reportFile;
+  }
+
+  /** Appends the text to the report file. The text is forced to storage later. */
+  public void write(CharSequence text) throws IOException {
+    ByteBuffer buffer = StandardCharsets.UTF_8.encode(CharBuffer.wrap(text));
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    long lines = writtenLines.incrementAndGet();
+    if (lines - flushedLines >= flushCount && flushRequested.compareAndSet(false, true)) {
+      FLUSH_SCHEDULER.execute(this::flushInBackground);
+    }
+  }
+
+  /** Forces all written text to storage. */
+  public void flush() throws IOException {
+    synchronized (flushLock) {
+      long lines = writtenLines.get();
+      if (lines == flushedLines) {
+        return;
+      }
+      channel.force(false);
+      flushedLines = lines;
+    }
+  }
+
+  /** Returns the number of written lines that have been forced to storage. */
+  long getFlushedLines() {
+    return flushedLines;
+  }
+
+  ScheduledFuture<?> getScheduledFlush() {
+    return scheduledFlush;
+  }
+
+  /** Returns true if the flush is still queued on the background thread. */
+  static boolean isQueued(ScheduledFuture<?> scheduledFlush) {
+    return FLUSH_SCHEDULER.getQueue().contains(scheduledFlush);
+  }
+
+  private void flushInBackground() {
+    flushRequested.set(false);
+    if (closed) {
+      return;
+    }
+    try {
+      flush();
+    } catch (IOException ex) {
+      if (!closed) {
+        LOGGER.warn("Failed to flush report file {}.", reportFile, ex);
+      }
+    }
+  }
+
+  /** Forces all written text to storage and closes the report file. */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    scheduledFlush.cancel(false);
+    try {
+      flush();
+    } finally {
+      closed = true;
+      channel.close();
+    }
+  }
+
+  /**
+   * Flushes the writer at the flush interval. The writer is held weakly and the flush is cancelled
+   * once the writer has been garbage collected.
+   */
+  private static class ScheduledFlush implements Runnable {
+    private final WeakReference<ReportWriter> reportWriter;
+
+    /** Set once the flush has been scheduled. */
+    private volatile ScheduledFuture<?> scheduledFlush;
+
+    private ScheduledFlush(ReportWriter reportWriter) {
+      this.reportWriter = new WeakReference<>(reportWriter);
+    }
+
+    @Override
+    public void run() {
+      ReportWriter writer = reportWriter.get();
+      if (writer != null) {
+        writer.flushInBackground();
+      } else if (scheduledFlush != null) {
+        scheduledFlush.cancel(false);
+      }
+    }
+  }
+}
@@ -10,12 +10,27 @@
  */
 package uk.ac.ebi.ena.webin.cli.validator.message;
 
+import java.text.DateFormat;
+import java.text.Format;
 import java.text.MessageFormat;
+import java.text.NumberFormat;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import uk.ac.ebi.ena.webin.cli.validator.message.source.MessageFormatSource;
 import uk.ac.ebi.ena.webin.cli.validator.message.source.MessageSource;
 
+/**
+ * Validation message with a severity and origins. Messages created from a message source, or from a
+ * pattern and arguments, are formatted when {@link #getMessage()} is first called. Messages that
+ * are only counted by severity or source are never formatted. The arguments must therefore not be
+ * changed after the message has been created.
+ *
+ * <p>The pattern is parsed, and the arguments are checked against it, when the message is created,
+ * so that an invalid pattern or argument throws an {@link IllegalArgumentException} where the
+ * message is created rather than where it is formatted.
+ */
 public class ValidationMessage {
 
   public enum Severity {
@@ -24,25 +39,49 @@ public class ValidationMessage {
   }
 
   private final Severity severity;
-  private final String message;
   private LinkedList<ValidationOrigin> origin = new LinkedList<>();
   private final Exception ex;
 
+  /** The message source, or null if the message was not created from a message source. */
+  private final MessageSource source;
+
+  /** The parsed message pattern, or null if the message was not created from a pattern. */
+  private final MessageFormat pattern;
+
+  private final Object[] arguments;
+
+  /** The formatted message. Null until formatted. */
+  private volatile String message;
+
   public ValidationMessage(Severity severity, MessageSource message, Object... arguments) {
-    this.severity = severity;
-    this.message = message.format(arguments);
-    this.ex = null;
+    this(severity, message, null, arguments, null, null);
   }
 
   public ValidationMessage(Severity severity, String message) {
-    this.severity = severity;
-    this.message = message;
-    this.ex = null;
+    this(severity, null, null, null, message, null);
   }
 
   public ValidationMessage(Severity severity, Exception ex) {
+    this(severity, null, null, null, ex.getMessage(), ex);
+  }
+
+  private ValidationMessage(
+      Severity severity,
+      MessageSource source,
+      String pattern,
+      Object[] arguments,
+      String message,
+      Exception ex) {
     this.severity = severity;
-    this.message = ex.getMessage();
+    this.source = source;
+    this.pattern = pattern != null ? new MessageFormat(pattern) : null;
+    if (source instanceof MessageFormatSource) {
+      checkArguments(((MessageFormatSource) source).messageFormat(), arguments);
+    } else if (this.pattern != null) {
+      checkArguments(this.pattern, arguments);
+    }
+    this.arguments = arguments;
+    this.message = message;
     this.ex = ex;
   }
 
@@ -70,12 +109,53 @@ public class ValidationMessage {
     return this;
   }
 
+  /**
+   * Checks that the arguments can be formatted by the pattern, as {@link MessageFormat} would when
+   * it formats them.
+   */
+  private static void checkArguments(MessageFormat format, Object[] arguments) {
+    if (arguments == null) {
+      return;
+    }
+    Format[] formats = format.getFormatsByArgumentIndex();
+    for (int i = 0; i < Math.min(formats.length, arguments.length); i++) {
+      Object argument = arguments[i];
+      if (formats[i] == null || argument == null) {
+        continue;
+      }
+      if (formats[i] instanceof NumberFormat && !(argument instanceof Number)) {
+        throw new IllegalArgumentException(
+            "Cannot format argument " + i + " as a number: " + argument);
+      }
+      if (formats[i] instanceof DateFormat
+          && !(argument instanceof Date || argument instanceof Number)) {
+        throw new IllegalArgumentException(
+            "Cannot format argument " + i + " as a date: " + argument);
+      }
+    }
+  }
+
   public Severity getSeverity() {
     return severity;
   }
 
+  /** Returns the formatted message. The message is formatted by the first call. */
   public String getMessage() {
-    return message;
+    String formattedMessage = message;
+    if (formattedMessage == null && (source != null || pattern != null)) {
+      // Concurrent callers may both format the message, which gives the same result.
+      formattedMessage =
+          source != null
+              ? source.format(arguments)
+              : ((MessageFormat) pattern.clone()).format(arguments);
+      message = formattedMessage;
+    }
+    return formattedMessage;
+  }
+
+  /** Returns the message source, or null if the message was not created from a message source. */
+  public MessageSource getSource() {
+    return source;
   }
 
   public List<ValidationOrigin> getOrigin() {
@@ -90,8 +170,9 @@ public class ValidationMessage {
     return new ValidationMessage(Severity.ERROR, message, arguments);
   }
 
+  /** Creates an error message from a {@link java.text.MessageFormat} pattern. */
   public static ValidationMessage error(String message, Object... arguments) {
-    return new ValidationMessage(Severity.ERROR, MessageFormat.format(message, arguments));
+    return new ValidationMessage(Severity.ERROR, null, message, arguments, null, null);
   }
 
   public static ValidationMessage error(String message) {
@@ -106,8 +187,9 @@ public class ValidationMessage {
     return new ValidationMessage(Severity.INFO, message, arguments);
   }
 
+  /** Creates an info message from a {@link java.text.MessageFormat} pattern. */
   public static ValidationMessage info(String message, Object... arguments) {
-    return new ValidationMessage(Severity.INFO, MessageFormat.format(message, arguments));
+    return new ValidationMessage(Severity.INFO, null, message, arguments, null, null);
   }
 
   public static ValidationMessage info(String message) {
@@ -12,34 +12,40 @@ package uk.ac.ebi.ena.webin.cli.validator.message;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.ac.ebi.ena.webin.cli.validator.message.ValidationMessage.Severity;
 import uk.ac.ebi.ena.webin.cli.validator.message.listener.MessageListener;
 
+/**
+ * Collects validation messages. Messages added to a validation result are also added to the
+ * validation result it was created from, and are written to its report file and logged.
+ *
+ * <p>Validation results are thread-safe. Messages can be added to the same result, or to linked
+ * results, from many threads at once, for example when the files or chunks of a submission are
+ * validated in parallel. Messages are counted without locking and each message is written to a
+ * report file as a whole line.
+ */
 public class ValidationResult implements AutoCloseable {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(ValidationResult.class);
 
-  private final OutputStream strm;
+  private final ReportWriter reportWriter;
   private final ValidationResult parentResult;
   private final List<ValidationOrigin> origin = new ArrayList<>();
-  private final List<MessageListener> listener = new ArrayList<>();
-  private boolean log = true;
-  private int infoCount = 0;
-  private int errorCount = 0;
+  private final List<MessageListener> listener = new CopyOnWriteArrayList<>();
+  private final LongAdder infoCount = new LongAdder();
+  private final LongAdder errorCount = new LongAdder();
+  private volatile boolean log = true;
 
   /** Creates a new validation result that logs messages. */
   public ValidationResult() {
-    this.strm = null;
+    this.reportWriter = null;
     this.parentResult = null;
   }
 
@@ -51,20 +57,7 @@ public class ValidationResult implements AutoCloseable {
 
   public ValidationResult(
       ValidationResult parentResult, File reportFile, ValidationOrigin... origin) {
-    try {
-      if (reportFile != null) {
-        this.strm =
-            Files.newOutputStream(
-                reportFile.toPath(),
-                StandardOpenOption.CREATE,
-                StandardOpenOption.APPEND,
-                StandardOpenOption.SYNC);
-      } else {
-        this.strm = null;
-      }
-    } catch (IOException ex) {
-      throw new RuntimeException(ex);
-    }
+    this.reportWriter = openReport(reportFile);
     this.parentResult = parentResult;
     this.origin.addAll(Arrays.asList(origin));
   }
@@ -79,21 +72,18 @@ public class ValidationResult implements AutoCloseable {
    * Creates a new validation result that writes messages to a file. By default also logs messages.
    */
   public ValidationResult(File reportFile) {
-    try {
-      if (reportFile != null) {
-        this.strm =
-            Files.newOutputStream(
-                reportFile.toPath(),
-                StandardOpenOption.CREATE,
-                StandardOpenOption.APPEND,
-                StandardOpenOption.SYNC);
-      } else {
-        this.strm = null;
-      }
-    } catch (IOException ex) {
-      throw new RuntimeException(ex);
-    }
+    this.reportWriter = openReport(reportFile);
+    this.parentResult = null;
+  }
+
+  /**
+   * Creates a new validation result that writes messages with the given report writer. The report
+   * writer is closed when the validation result is closed. By default also logs messages.
+   */
+  public ValidationResult(ReportWriter reportWriter, List<ValidationOrigin> origin) {
+    this.reportWriter = reportWriter;
     this.parentResult = null;
+    this.origin.addAll(origin);
   }
 
   /**
@@ -113,10 +103,21 @@ public class ValidationResult implements AutoCloseable {
   }
 
   private ValidationResult(ValidationResult parentResult) {
-    this.strm = null;
+    this.reportWriter = null;
     this.parentResult = parentResult;
   }
 
+  private static ReportWriter openReport(File reportFile) {
+    if (reportFile == null) {
+      return null;
+    }
+    try {
+      return new ReportWriter(reportFile.toPath());
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
   private ValidationResult(ValidationResult parentResult, ValidationOrigin... origin) {
     this(parentResult);
     this.origin.addAll(Arrays.asList(origin));
@@ -161,16 +162,16 @@ public class ValidationResult implements AutoCloseable {
    */
   public ValidationResult add(ValidationMessage message) {
     if (Severity.ERROR.equals(message.getSeverity())) {
-      errorCount++;
+      errorCount.increment();
     } else {
-      infoCount++;
+      infoCount.increment();
     }
     listener.forEach(l -> l.listen(message));
     message.prependOrigin(origin);
     if (parentResult != null) {
       parentResult.add(message);
     }
-    if (strm != null) {
+    if (reportWriter != null) {
       report(message);
     }
     if (this.parentResult == null) {
@@ -183,8 +184,9 @@ public class ValidationResult implements AutoCloseable {
 
   private void report(ValidationMessage message) {
     try {
-      String str = formatForReport(message) + "\n";
-      strm.write(str.getBytes(StandardCharsets.UTF_8));
+      StringBuilder str = new StringBuilder();
+      appendForReport(str, message);
+      reportWriter.write(str.append('\n'));
     } catch (IOException ex) {
       if (!this.log) {
         log(message);
@@ -202,23 +204,38 @@ public class ValidationResult implements AutoCloseable {
   }
 
   public static String formatForLog(ValidationMessage message) {
-    String originStr = "";
+    StringBuilder str = new StringBuilder();
+    appendForLog(str, message);
+    return str.toString();
+  }
+
+  public static String formatForReport(ValidationMessage message) {
+    StringBuilder str = new StringBuilder();
+    appendForReport(str, message);
+    return str.toString();
+  }
+
+  private static void appendForLog(StringBuilder str, ValidationMessage message) {
+    str.append(message.getMessage());
     if (!message.getOrigin().isEmpty()) {
-      originStr =
-          " "
-              + message.getOrigin().stream()
-                  .map(origin -> origin.toString())
-                  .collect(Collectors.joining(", ", "[", "]"));
+      String separator = " [";
+      for (ValidationOrigin messageOrigin : message.getOrigin()) {
+        str.append(separator).append(messageOrigin);
+        separator = ", ";
+      }
+      str.append(']');
     }
-
-    return String.format("%s%s", message.getMessage(), originStr);
   }
 
-  public static String formatForReport(ValidationMessage message) {
-    return String.format("%s: %s", message.getSeverity(), formatForLog(message));
+  private static void appendForReport(StringBuilder str, ValidationMessage message) {
+    str.append(message.getSeverity()).append(": ");
+    appendForLog(str, message);
   }
 
-  /** Adds a new validation listener to the validation result. */
+  /**
+   * Adds a new validation listener to the validation result. Listeners are called by the threads
+   * that add messages and must be thread-safe if messages are added from more than one thread.
+   */
   public ValidationResult add(MessageListener listener) {
     this.listener.add(listener);
     return this;
@@ -229,29 +246,29 @@ public class ValidationResult implements AutoCloseable {
    * severity.
    */
   public boolean isValid() {
-    return errorCount == 0;
+    return errorCount.sum() == 0;
   }
 
   /** Returns the number of validation messages in this validation result. */
   public long count() {
-    return infoCount + errorCount;
+    return infoCount.sum() + errorCount.sum();
   }
 
   /** Returns the number of validation messages in this validation result for a given severity. */
   public long count(Severity severity) {
     if (Severity.ERROR.equals(severity)) {
-      return errorCount;
+      return errorCount.sum();
     } else {
-      return infoCount;
+      return infoCount.sum();
     }
   }
 
+  /** Forces the messages written to the report file to storage and closes it. */
   @Override
   public void close() {
-    if (strm != null) {
+    if (reportWriter != null) {
       try {
-        strm.flush();
-        strm.close();
+        reportWriter.close();
       } catch (IOException ex) {
       }
     }
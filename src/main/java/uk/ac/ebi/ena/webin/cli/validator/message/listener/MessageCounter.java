@@ -10,15 +10,17 @@
  */
 package uk.ac.ebi.ena.webin.cli.validator.message.listener;
 
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import uk.ac.ebi.ena.webin.cli.validator.message.ValidationMessage;
 import uk.ac.ebi.ena.webin.cli.validator.message.ValidationMessage.Severity;
 
+/** Counts the messages with a given severity whose text matches a predicate. Thread-safe. */
 public class MessageCounter implements MessageListener {
 
   private final Severity severity;
   private final Predicate<String> messagePredicate;
-  private int count = 0;
+  private final AtomicInteger count = new AtomicInteger();
 
   public MessageCounter(Severity severity, Predicate<String> messagePredicate) {
     this.severity = severity;
@@ -28,12 +30,12 @@ public class MessageCounter implements MessageListener {
   @Override
   public void listen(ValidationMessage message) {
     if (severity.equals(message.getSeverity()) && messagePredicate.test(message.getMessage())) {
-      count++;
+      count.incrementAndGet();
     }
   }
 
   public int getCount() {
-    return count;
+    return count.get();
   }
 
   public static MessageCounter text(Severity severity, String text) {
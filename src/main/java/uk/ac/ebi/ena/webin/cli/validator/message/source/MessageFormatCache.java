@@ -0,0 +1,47 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.validator.message.source;
+
+import java.text.MessageFormat;
+import java.util.Locale;
+
+/**
+ * Keeps the parsed pattern of a message source so that the pattern is not parsed again for every
+ * message. The parsed pattern is copied for each use because {@link MessageFormat} is not
+ * thread-safe. It is parsed again if the default format locale changes.
+ */
+public final class MessageFormatCache {
+
+  private final String pattern;
+
+  /** The parsed pattern. Null until first used. */
+  private volatile MessageFormat format;
+
+  public MessageFormatCache(String pattern) {
+    this.pattern = pattern;
+  }
+
+  /** Returns the parsed pattern. It is shared and must not be changed or used for formatting. */
+  public MessageFormat get() {
+    Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+    MessageFormat parsedFormat = format;
+    if (parsedFormat == null || !locale.equals(parsedFormat.getLocale())) {
+      parsedFormat = new MessageFormat(pattern, locale);
+      format = parsedFormat;
+    }
+    return parsedFormat;
+  }
+
+  /** Returns the same as {@link MessageFormat#format(String, Object...)}. */
+  public String format(Object... arguments) {
+    return ((MessageFormat) get().clone()).format(arguments);
+  }
+}
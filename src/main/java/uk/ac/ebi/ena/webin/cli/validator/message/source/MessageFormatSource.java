@@ -12,10 +12,22 @@ package uk.ac.ebi.ena.webin.cli.validator.message.source;
 
 import java.text.MessageFormat;
 
+/** Message source whose text is a {@link MessageFormat} pattern. */
 public interface MessageFormatSource extends MessageSource {
 
+  /**
+   * Returns the parsed text. The returned format may be shared and must not be changed or used for
+   * formatting. Sources used for many messages, such as message enums, keep the parsed text in a
+   * {@link MessageFormatCache} instead of parsing it every time.
+   *
+   * @throws IllegalArgumentException if the text is not a valid pattern.
+   */
+  default MessageFormat messageFormat() {
+    return new MessageFormat(text());
+  }
+
   default String format(Object... arguments) {
-    return MessageFormat.format(text(), arguments);
+    return ((MessageFormat) messageFormat().clone()).format(arguments);
   }
 
   default String regex() {
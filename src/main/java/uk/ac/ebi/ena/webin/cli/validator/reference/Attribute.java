@@ -10,9 +10,15 @@
  */
 package uk.ac.ebi.ena.webin.cli.validator.reference;
 
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
-/** Reference attribute with tag, value and unit. */
+/**
+ * Reference attribute with tag, value and unit. Attribute names, units and tags are shared by many
+ * references and are interned. Ontology terms are copied into an unmodifiable set when the
+ * attribute is created. Empty and single-element sets are stored as compact immutable sets.
+ */
 public class Attribute {
 
   private final String name;
@@ -22,11 +28,28 @@ public class Attribute {
   private final String tag;
 
   public Attribute(String name, String value, Set<String> iri, String unit, String tag) {
-    this.name = name;
+    this.name = intern(name);
     this.value = value;
-    this.iri = iri;
-    this.unit = unit;
-    this.tag = tag;
+    this.iri = compact(iri);
+    this.unit = intern(unit);
+    this.tag = intern(tag);
+  }
+
+  private static String intern(String string) {
+    return string != null ? string.intern() : null;
+  }
+
+  private static Set<String> compact(Set<String> iri) {
+    if (iri == null) {
+      return null;
+    }
+    if (iri.isEmpty()) {
+      return Collections.emptySet();
+    }
+    if (iri.size() == 1) {
+      return Collections.singleton(iri.iterator().next());
+    }
+    return Collections.unmodifiableSet(new LinkedHashSet<>(iri));
   }
 
   public String getName() {
@@ -37,6 +60,10 @@ public class Attribute {
     return value;
   }
 
+  /**
+   * Returns the ontology terms in the order of the set given to the constructor, or null if none
+   * were given. The returned set is an unmodifiable copy. Changes to the given set are not seen.
+   */
   public Set<String> getIri() {
     return iri;
   }
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.validator.reference;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Attribute list of a {@link Reference} that can find an attribute by name, ignoring case. Short
+ * lists are scanned. Longer lists build a name index when first searched. The index is discarded
+ * whenever the list is modified. Both use the same case folding, see {@link #foldCase(String)}.
+ */
+class AttributeList extends AbstractList<Attribute> implements RandomAccess {
+
+  /** Lists with up to this many attributes are scanned instead of being indexed. */
+  static final int INDEX_THRESHOLD = 8;
+
+  private final ArrayList<Attribute> attributes;
+
+  private volatile Map<String, Attribute> nameIndex;
+
+  AttributeList() {
+    this.attributes = new ArrayList<>();
+  }
+
+  AttributeList(Collection<Attribute> attributes) {
+    this.attributes = attributes != null ? new ArrayList<>(attributes) : new ArrayList<>();
+  }
+
+  /** Returns the first attribute with the name, ignoring case, or null if there is none. */
+  Attribute getByName(String name) {
+    if (name == null) {
+      return null;
+    }
+    String key = foldCase(name);
+    if (attributes.size() <= INDEX_THRESHOLD) {
+      for (Attribute attribute : attributes) {
+        if (attribute.getName() != null && key.equals(foldCase(attribute.getName()))) {
+          return attribute;
+        }
+      }
+      return null;
+    }
+
+    // Concurrent readers of an unmodified list may both build the index. They build the same one.
+    Map<String, Attribute> index = nameIndex;
+    if (index == null) {
+      index = new HashMap<>(attributes.size() * 4 / 3 + 1);
+      for (Attribute attribute : attributes) {
+        if (attribute.getName() != null) {
+          index.putIfAbsent(foldCase(attribute.getName()), attribute);
+        }
+      }
+      nameIndex = index;
+    }
+    return index.get(key);
+  }
+
+  /**
+   * Folds the case of each code point by converting it to upper case and then to lower case, as
+   * {@link String#equalsIgnoreCase(String)} does, without depending on the default locale. Returns
+   * the same string if no code point changes, which is the case for most attribute names.
+   */
+  static String foldCase(String name) {
+    for (int i = 0; i < name.length(); ) {
+      int codePoint = name.codePointAt(i);
+      if (fold(codePoint) != codePoint) {
+        StringBuilder folded = new StringBuilder(name.length()).append(name, 0, i);
+        while (i < name.length()) {
+          codePoint = name.codePointAt(i);
+          folded.appendCodePoint(fold(codePoint));
+          i += Character.charCount(codePoint);
+        }
+        return folded.toString();
+      }
+      i += Character.charCount(codePoint);
+    }
+    return name;
+  }
+
+  private static int fold(int codePoint) {
+    return Character.toLowerCase(Character.toUpperCase(codePoint));
+  }
+
+  @Override
+  public Attribute get(int index) {
+    return attributes.get(index);
+  }
+
+  @Override
+  public int size() {
+    return attributes.size();
+  }
+
+  @Override
+  public void add(int index, Attribute attribute) {
+    attributes.add(index, attribute);
+    modified();
+  }
+
+  @Override
+  public Attribute set(int index, Attribute attribute) {
+    Attribute previous = attributes.set(index, attribute);
+    modified();
+    return previous;
+  }
+
+  @Override
+  public Attribute remove(int index) {
+    Attribute removed = attributes.remove(index);
+    modified();
+    return removed;
+  }
+
+  @Override
+  public void clear() {
+    attributes.clear();
+    modified();
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends Attribute> collection) {
+    boolean changed = attributes.addAll(collection);
+    modified();
+    return changed;
+  }
+
+  private void modified() {
+    modCount++;
+    nameIndex = null;
+  }
+}
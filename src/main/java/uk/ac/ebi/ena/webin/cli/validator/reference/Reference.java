@@ -10,7 +10,6 @@
  */
 package uk.ac.ebi.ena.webin.cli.validator.reference;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -23,7 +22,7 @@ public abstract class Reference {
    */
   private String name;
 
-  private List<Attribute> attributes = new ArrayList<>();
+  private AttributeList attributes = new AttributeList();
 
   public String getName() {
     return name;
@@ -33,14 +32,27 @@ public abstract class Reference {
     this.name = name;
   }
 
+  /**
+   * Replaces the attributes with a copy of the given ones. The reference does not keep the given
+   * list, so later changes to it do not change the attributes of the reference. Use {@link
+   * #getAttributes()} to change them. A null list removes all attributes.
+   */
   public void setAttributes(List<Attribute> attributes) {
-    this.attributes = attributes;
+    this.attributes = new AttributeList(attributes);
   }
 
   public List<Attribute> getAttributes() {
     return attributes;
   }
 
+  /**
+   * Returns the first attribute with the given name, ignoring case, or null if there is none.
+   * References with many attributes are looked up by a name index instead of being scanned.
+   */
+  public Attribute getAttribute(String name) {
+    return attributes.getByName(name);
+  }
+
   public void addAttribute(Attribute attribute) {
     attributes.add(attribute);
   }
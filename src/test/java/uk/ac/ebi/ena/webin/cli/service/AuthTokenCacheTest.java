@@ -0,0 +1,154 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import uk.ac.ebi.ena.webin.cli.utils.TestClock;
+
+public class AuthTokenCacheTest {
+
+  private static final Instant NOW = Instant.parse("2024-01-01T00:00:00Z");
+
+  @Test
+  public void testDecodeExpiry() {
+    assertThat(AuthTokenCache.decodeExpiry(jwt(NOW.plusSeconds(3600))))
+        .isEqualTo(NOW.plusSeconds(3600));
+    assertThat(AuthTokenCache.decodeExpiry("not-a-jwt")).isNull();
+    assertThat(AuthTokenCache.decodeExpiry(null)).isNull();
+  }
+
+  @Test
+  public void testTokenIsReusedUntilExpiry() {
+    TestClock clock = new TestClock(NOW);
+    AtomicInteger fetches = new AtomicInteger();
+    AuthTokenCache cache =
+        new AuthTokenCache(
+            () -> {
+              fetches.incrementAndGet();
+              return jwt(clock.instant().plus(Duration.ofHours(1)));
+            },
+            AuthTokenCache.DEFAULT_REFRESH_BEFORE_EXPIRY,
+            clock);
+
+    String token = cache.getToken();
+    assertThat(cache.getToken()).isEqualTo(token);
+    assertThat(fetches.get()).isOne();
+
+    clock.advance(Duration.ofMinutes(30));
+    assertThat(cache.getToken()).isEqualTo(token);
+    assertThat(fetches.get()).isOne();
+
+    clock.advance(Duration.ofMinutes(30));
+    assertThat(cache.getToken()).isNotEqualTo(token);
+    assertThat(fetches.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testInvalidate() {
+    AtomicInteger fetches = new AtomicInteger();
+    AuthTokenCache cache =
+        new AuthTokenCache(
+            () -> jwt(NOW.plus(Duration.ofHours(1))) + fetches.incrementAndGet(),
+            AuthTokenCache.DEFAULT_REFRESH_BEFORE_EXPIRY,
+            new TestClock(NOW));
+
+    String token = cache.getToken();
+    cache.invalidate("other");
+    assertThat(cache.getToken()).isEqualTo(token);
+
+    cache.invalidate(token);
+    assertThat(cache.getToken()).isNotEqualTo(token);
+    assertThat(fetches.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testConcurrentCallersShareOneFetch() throws Exception {
+    AtomicInteger fetches = new AtomicInteger();
+    AuthTokenCache cache =
+        new AuthTokenCache(
+            () -> {
+              fetches.incrementAndGet();
+              try {
+                Thread.sleep(200);
+              } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+              }
+              return jwt(Instant.now().plus(Duration.ofHours(1)));
+            });
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> tokens = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        tokens.add(executor.submit(cache::getToken));
+      }
+      for (Future<String> token : tokens) {
+        assertThat(token.get()).isEqualTo(tokens.get(0).get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertThat(fetches.get()).isOne();
+  }
+
+  @Test
+  public void testRefreshRunsOnExecutor() throws Exception {
+    TestClock clock = new TestClock(NOW);
+    List<String> fetchThreads = new CopyOnWriteArrayList<>();
+    AtomicInteger fetches = new AtomicInteger();
+    ExecutorService refreshExecutor =
+        Executors.newSingleThreadExecutor(r -> new Thread(r, "test-token-refresh"));
+    try {
+      AuthTokenCache cache =
+          new AuthTokenCache(
+              () -> {
+                fetchThreads.add(Thread.currentThread().getName());
+                // Short-lived tokens are refreshed half way through their lifetime.
+                return jwt(clock.instant().plusSeconds(1)) + fetches.incrementAndGet();
+              },
+              AuthTokenCache.DEFAULT_REFRESH_BEFORE_EXPIRY,
+              clock,
+              refreshExecutor);
+
+      cache.getToken();
+      long deadline = System.currentTimeMillis() + 5000;
+      while (fetchThreads.size() < 2 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertThat(fetchThreads).hasSize(2);
+      assertThat(fetchThreads.get(1)).isEqualTo("test-token-refresh");
+    } finally {
+      refreshExecutor.shutdown();
+    }
+  }
+
+  private static String jwt(Instant expiresAt) {
+    Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+    String header = encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8));
+    String payload =
+        encoder.encodeToString(
+            ("{\"exp\":" + expiresAt.getEpochSecond() + "}").getBytes(StandardCharsets.UTF_8));
+    return header + "." + payload + ".";
+  }
+}
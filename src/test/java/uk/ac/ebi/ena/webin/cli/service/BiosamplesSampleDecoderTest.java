@@ -0,0 +1,174 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Attribute;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Sample;
+
+public class BiosamplesSampleDecoderTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BiosamplesSampleDecoderTest.class);
+
+  private static final String SAMPLE_JSON =
+      """
+      {
+        "name": "SSC_UEDIN_GS_WP2_21_ISO_SAMPLES_POOL",
+        "accession": "SAMEA13774371",
+        "webinSubmissionAccountId": "Webin-1",
+        "taxId": 9823,
+        "release": "2022-04-01T00:00:00Z",
+        "characteristics": {
+          "Organism": [
+            {
+              "text": "Sus scrofa",
+              "ontologyTerms": ["http://purl.obolibrary.org/obo/NCBITaxon_9823"]
+            }
+          ],
+          "depth": [{"text": "10", "unit": "m"}],
+          "tissue": [{"text": "liver"}, {"text": "muscle", "tag": "attribute"}]
+        },
+        "relationships": [{"source": "SAMEA13774371", "type": "derived from", "target": "x"}],
+        "externalReferences": [{"url": "https://www.ebi.ac.uk/ena", "duo": []}],
+        "structuredData": [{"type": "AMR", "content": [{"antibiotic": {"value": "x"}}]}],
+        "_links": {"self": {"href": "https://www.ebi.ac.uk/biosamples/samples/SAMEA13774371"}}
+      }
+      """;
+
+  @Test
+  public void testDecode() throws Exception {
+    Sample sample = BiosamplesSampleDecoder.decode(SAMPLE_JSON.getBytes(StandardCharsets.UTF_8));
+
+    assertThat(sample.getBioSampleId()).isEqualTo("SAMEA13774371");
+    assertThat(sample.getName()).isEqualTo("SSC_UEDIN_GS_WP2_21_ISO_SAMPLES_POOL");
+    assertThat(sample.getTaxId()).isEqualTo(9823);
+    assertThat(sample.getOrganism()).isEqualTo("Sus scrofa");
+    assertThat(sample.getSraSampleId()).isNull();
+    assertThat(sample.getAttributes().size()).isEqualTo(4);
+
+    Attribute organism = sample.getAttributes().get(0);
+    assertThat(organism.getName()).isEqualTo("Organism");
+    assertThat(organism.getIri()).contains("http://purl.obolibrary.org/obo/NCBITaxon_9823");
+
+    Attribute depth = sample.getAttributes().get(1);
+    assertThat(depth.getValue()).isEqualTo("10");
+    assertThat(depth.getUnit()).isEqualTo("m");
+    assertThat(depth.getIri()).isEmpty();
+
+    assertThat(sample.getAttributes().get(2).getValue()).isEqualTo("liver");
+    assertThat(sample.getAttributes().get(3).getValue()).isEqualTo("muscle");
+  }
+
+  @Test
+  public void testDecodePage() throws Exception {
+    String json =
+        """
+        {
+          "_embedded": {"samples": [%s, %s]},
+          "_links": {"next": {"href": "https://www.ebi.ac.uk/biosamples/samples?page=2"}},
+          "page": {"size": 2, "totalElements": 5, "totalPages": 3, "number": 1}
+        }
+        """
+            .formatted(SAMPLE_JSON, SAMPLE_JSON.replace("SAMEA13774371", "SAMEA13774372"));
+
+    BiosamplesSampleDecoder.SamplePage page =
+        BiosamplesSampleDecoder.decodePage(
+            new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+    assertThat(page.getSamples().size()).isEqualTo(2);
+    assertThat(page.getSamples().get(0).getBioSampleId()).isEqualTo("SAMEA13774371");
+    assertThat(page.getSamples().get(1).getBioSampleId()).isEqualTo("SAMEA13774372");
+    assertThat(page.getSamples().get(1).getAttributes().size()).isEqualTo(4);
+    assertThat(page.getNumber()).isEqualTo(1);
+    assertThat(page.getTotalPages()).isEqualTo(3);
+    assertThat(page.hasNextPage()).isTrue();
+  }
+
+  @Test
+  public void testDecodeEmptyPage() throws Exception {
+    String json = "{\"_links\": {}, \"page\": {\"size\": 50, \"totalPages\": 0, \"number\": 0}}";
+
+    BiosamplesSampleDecoder.SamplePage page =
+        BiosamplesSampleDecoder.decodePage(
+            new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+    assertThat(page.getSamples()).isEmpty();
+    assertThat(page.hasNextPage()).isFalse();
+  }
+
+  @Test
+  public void testDecodeTaxIdFromOrganismIri() throws Exception {
+    String json = SAMPLE_JSON.replace("\"taxId\": 9823,", "");
+    Sample sample = BiosamplesSampleDecoder.decode(json.getBytes(StandardCharsets.UTF_8));
+
+    assertThat(sample.getTaxId()).isEqualTo(9823);
+  }
+
+  @Test
+  public void testDecodeWithoutOrganism() throws Exception {
+    String json = "{\"accession\": \"SAMEA1\", \"name\": \"test\", \"characteristics\": {}}";
+    Sample sample = BiosamplesSampleDecoder.decode(json.getBytes(StandardCharsets.UTF_8));
+
+    assertThat(sample.getBioSampleId()).isEqualTo("SAMEA1");
+    assertThat(sample.getTaxId()).isNull();
+    assertThat(sample.getOrganism()).isNull();
+    assertThat(sample.getAttributes()).isEmpty();
+  }
+
+  /** Compares the streaming decoder with building a JSON tree from the same record. */
+  @Test
+  @Ignore("Benchmark")
+  public void benchmarkDecode() throws Exception {
+    StringBuilder characteristics = new StringBuilder();
+    for (int i = 0; i < 300; i++) {
+      characteristics.append(
+          String.format(
+              "\"attribute%d\": [{\"text\": \"value%d\", \"ontologyTerms\": [\"iri%d\"]}],",
+              i, i, i));
+    }
+    byte[] json =
+        SAMPLE_JSON
+            .replace("\"characteristics\": {", "\"characteristics\": {" + characteristics)
+            .getBytes(StandardCharsets.UTF_8);
+
+    ObjectMapper objectMapper = new ObjectMapper();
+    int iterations = 20_000;
+    for (int warmup = 0; warmup < 2; warmup++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        JsonNode tree = objectMapper.readTree(json);
+        assertThat(tree).isNotNull();
+      }
+      long treeNanos = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        Sample sample = BiosamplesSampleDecoder.decode(json);
+        assertThat(sample).isNotNull();
+      }
+      long streamingNanos = System.nanoTime() - start;
+
+      LOGGER.info(
+          "Tree: {} us/sample, streaming: {} us/sample",
+          treeNanos / iterations / 1000,
+          streamingNanos / iterations / 1000);
+    }
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Sample;
+
+public class ConditionalRequestInterceptorTest {
+
+  private static final URI SAMPLE_URI = URI.create("https://www.ebi.ac.uk/biosamples/SAMEA1");
+
+  private final List<HttpHeaders> sentHeaders = new ArrayList<>();
+
+  @Test
+  public void testNotModifiedResponseIsServedFromCache() throws IOException {
+    ConditionalRequestInterceptor interceptor = new ConditionalRequestInterceptor(1024);
+
+    assertThat(read(interceptor.intercept(request("token"), new byte[0], respond(200, "v1"))))
+        .isEqualTo("v1");
+    assertThat(read(interceptor.intercept(request("token"), new byte[0], respond(304, ""))))
+        .isEqualTo("v1");
+
+    assertThat(sentHeaders.get(0).getFirst(HttpHeaders.IF_NONE_MATCH)).isNull();
+    assertThat(sentHeaders.get(1).getFirst(HttpHeaders.IF_NONE_MATCH)).isEqualTo("\"v1\"");
+  }
+
+  @Test
+  public void testModifiedResponseReplacesCachedResponse() throws IOException {
+    ConditionalRequestInterceptor interceptor = new ConditionalRequestInterceptor(1024);
+
+    read(interceptor.intercept(request("token"), new byte[0], respond(200, "v1")));
+    assertThat(read(interceptor.intercept(request("token"), new byte[0], respond(200, "v2"))))
+        .isEqualTo("v2");
+    read(interceptor.intercept(request("token"), new byte[0], respond(304, "")));
+
+    assertThat(sentHeaders.get(2).getFirst(HttpHeaders.IF_NONE_MATCH)).isEqualTo("\"v2\"");
+    assertThat(interceptor.getSizeBytes()).isEqualTo(2);
+  }
+
+  @Test
+  public void testResponsesAreNotSharedBetweenCredentials() throws IOException {
+    ConditionalRequestInterceptor interceptor = new ConditionalRequestInterceptor(1024);
+
+    read(interceptor.intercept(request("token"), new byte[0], respond(200, "v1")));
+    read(interceptor.intercept(request("other"), new byte[0], respond(200, "v1")));
+
+    assertThat(sentHeaders.get(1).getFirst(HttpHeaders.IF_NONE_MATCH)).isNull();
+  }
+
+  @Test
+  public void testLargeResponsesAreNotKept() throws IOException {
+    ConditionalRequestInterceptor interceptor = new ConditionalRequestInterceptor(16);
+    String body = "0123456789";
+
+    assertThat(read(interceptor.intercept(request("token"), new byte[0], respond(200, body))))
+        .isEqualTo(body);
+    assertThat(interceptor.getSizeBytes()).isZero();
+  }
+
+  @Test
+  public void testPartlyReadResponsesAreKeptWhenClosed() throws IOException {
+    ConditionalRequestInterceptor interceptor = new ConditionalRequestInterceptor(1024);
+
+    ClientHttpResponse response =
+        interceptor.intercept(request("token"), new byte[0], respond(200, "v1"));
+    assertThat(interceptor.getSizeBytes()).isZero();
+    response.getBody().read();
+    assertThat(interceptor.getSizeBytes()).isZero();
+    response.close();
+    assertThat(interceptor.getSizeBytes()).isEqualTo(2);
+
+    read(interceptor.intercept(request("token"), new byte[0], respond(304, "")));
+    assertThat(sentHeaders.get(1).getFirst(HttpHeaders.IF_NONE_MATCH)).isEqualTo("\"v1\"");
+  }
+
+  @Test
+  public void testUnreadResponsesAreNotKept() throws IOException {
+    ConditionalRequestInterceptor interceptor = new ConditionalRequestInterceptor(1024);
+
+    interceptor.intercept(request("token"), new byte[0], respond(200, "v1")).close();
+
+    assertThat(interceptor.getSizeBytes()).isZero();
+  }
+
+  @Test
+  public void testDecodedSampleResponseIsRevalidated() throws IOException {
+    ConditionalRequestInterceptor interceptor = new ConditionalRequestInterceptor(1024);
+    // The decoder stops reading at the end of the sample object.
+    String sampleJson = "{\"accession\": \"SAMEA1\", \"taxId\": 9606}\n\n";
+
+    Sample sample;
+    try (ClientHttpResponse response =
+        interceptor.intercept(request("token"), new byte[0], respond(200, sampleJson))) {
+      sample = BiosamplesSampleDecoder.decode(response.getBody());
+    }
+    Sample revalidatedSample;
+    try (ClientHttpResponse response =
+        interceptor.intercept(request("token"), new byte[0], respond(304, ""))) {
+      revalidatedSample = BiosamplesSampleDecoder.decode(response.getBody());
+    }
+
+    assertThat(sentHeaders.get(1).getFirst(HttpHeaders.IF_NONE_MATCH)).isNotNull();
+    assertThat(revalidatedSample.getBioSampleId()).isEqualTo(sample.getBioSampleId());
+    assertThat(revalidatedSample.getTaxId()).isEqualTo(9606);
+  }
+
+  private static HttpRequest request(String token) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+    return new HttpRequest() {
+      @Override
+      public URI getURI() {
+        return SAMPLE_URI;
+      }
+
+      @Override
+      public HttpMethod getMethod() {
+        return HttpMethod.GET;
+      }
+
+      @Override
+      public HttpHeaders getHeaders() {
+        return headers;
+      }
+    };
+  }
+
+  private ClientHttpRequestExecution respond(int statusCode, String body) {
+    return (request, requestBody) -> {
+      sentHeaders.add(request.getHeaders());
+      HttpHeaders headers = new HttpHeaders();
+      if (statusCode == 200) {
+        headers.set(HttpHeaders.ETAG, "\"" + body + "\"");
+      }
+      return new ClientHttpResponse() {
+        @Override
+        public HttpStatusCode getStatusCode() {
+          return statusCode == 200 ? HttpStatus.OK : HttpStatus.NOT_MODIFIED;
+        }
+
+        @Override
+        public String getStatusText() {
+          return "";
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+          return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+          return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void close() {}
+      };
+    };
+  }
+
+  private static String read(ClientHttpResponse response) throws IOException {
+    try (response) {
+      return new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeSet;
+import org.junit.Test;
+import uk.ac.ebi.ena.webin.cli.utils.TestClock;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Attribute;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Sample;
+
+public class FileSampleCacheTest {
+
+  private static final Instant NOW = Instant.parse("2024-01-01T00:00:00Z");
+
+  @Test
+  public void testEntriesArePersisted() throws IOException {
+    File directory = Files.createTempDirectory("sample-cache").toFile();
+    TestClock clock = new TestClock(NOW);
+
+    try (FileSampleCache cache = createCache(directory, "Webin-1", clock)) {
+      cache.put("ERS000002", createSample());
+      cache.putNotFound("ERS000003");
+    }
+
+    try (FileSampleCache cache = createCache(directory, "Webin-1", clock)) {
+      Sample sample = cache.get("ERS000002").getSample();
+      assertThat(sample.getBioSampleId()).isEqualTo("SAMEA749881");
+      assertThat(sample.getSraSampleId()).isEqualTo("ERS000002");
+      assertThat(sample.getName()).isEqualTo("test");
+      assertThat(sample.getTaxId()).isEqualTo(580239);
+      assertThat(sample.getOrganism()).isEqualTo("Saccharomyces cerevisiae SK1");
+      assertThat(sample.getAttributes().size()).isEqualTo(2);
+      assertThat(sample.getAttributes().get(0).getName()).isEqualTo("strain");
+      assertThat(sample.getAttributes().get(0).getIri())
+          .isEqualTo(new TreeSet<>(Arrays.asList("http://purl.obolibrary.org/obo/a")));
+      assertThat(sample.getAttributes().get(1).getIri()).isNull();
+      assertThat(sample.getAttributes().get(1).getUnit()).isEqualTo("m");
+      assertThat(cache.get("ERS000003").isNotFound()).isTrue();
+    }
+
+    // Samples are not shared between submission accounts.
+    try (FileSampleCache cache = createCache(directory, "Webin-2", clock)) {
+      assertThat(cache.get("ERS000002")).isNull();
+    }
+  }
+
+  @Test
+  public void testExpiredEntriesAreNotReturned() throws IOException {
+    File directory = Files.createTempDirectory("sample-cache").toFile();
+    TestClock clock = new TestClock(NOW);
+
+    try (FileSampleCache cache = createCache(directory, "Webin-1", clock)) {
+      cache.put("ERS000002", createSample());
+      cache.putNotFound("ERS000003");
+    }
+
+    clock.advance(Duration.ofMinutes(1));
+    try (FileSampleCache cache = createCache(directory, "Webin-1", clock)) {
+      assertThat(cache.get("ERS000002")).isNotNull();
+      assertThat(cache.get("ERS000003")).isNull();
+    }
+
+    clock.advance(Duration.ofHours(1));
+    try (FileSampleCache cache = createCache(directory, "Webin-1", clock)) {
+      assertThat(cache.get("ERS000002")).isNull();
+      assertThat(cache.getStats().getMissCount()).isOne();
+    }
+  }
+
+  @Test
+  public void testExpiredEntriesWithValidatorsAreKept() throws IOException {
+    File directory = Files.createTempDirectory("sample-cache").toFile();
+    TestClock clock = new TestClock(NOW);
+
+    try (FileSampleCache cache = createCache(directory, "Webin-1", clock)) {
+      cache.put("SAMEA749881", createSample(), "\"v1\"", "Mon, 01 Jan 2024 00:00:00 GMT");
+      cache.put("ERS000002", createSample());
+    }
+
+    clock.advance(Duration.ofDays(1));
+    try (FileSampleCache cache = createCache(directory, "Webin-1", clock)) {
+      assertThat(cache.get("SAMEA749881")).isNull();
+      SampleCacheEntry staleEntry = cache.getStale("SAMEA749881");
+      assertThat(staleEntry.hasValidators()).isTrue();
+      assertThat(staleEntry.getEtag()).isEqualTo("\"v1\"");
+      assertThat(staleEntry.getLastModified()).isEqualTo("Mon, 01 Jan 2024 00:00:00 GMT");
+      assertThat(staleEntry.getSample().getBioSampleId()).isEqualTo("SAMEA749881");
+      assertThat(cache.getStale("ERS000002")).isNull();
+    }
+  }
+
+  @Test
+  public void testInvalidate() throws IOException {
+    File directory = Files.createTempDirectory("sample-cache").toFile();
+    TestClock clock = new TestClock(NOW);
+
+    try (FileSampleCache cache = createCache(directory, "Webin-1", clock)) {
+      cache.put("ERS000001", createSample());
+      cache.put("ERS000002", createSample());
+      cache.invalidate("ERS000002");
+      assertThat(cache.get("ERS000002")).isNull();
+    }
+
+    try (FileSampleCache cache = createCache(directory, "Webin-1", clock)) {
+      assertThat(cache.get("ERS000001")).isNotNull();
+      assertThat(cache.get("ERS000002")).isNull();
+    }
+  }
+
+  @Test
+  public void testMaxSize() throws IOException {
+    File directory = Files.createTempDirectory("sample-cache").toFile();
+    TestClock clock = new TestClock(NOW);
+
+    try (FileSampleCache cache = createCache(directory, "Webin-1", 2, clock)) {
+      cache.put("ERS000001", createSample());
+      cache.put("ERS000002", createSample());
+      cache.put("ERS000003", createSample());
+      assertThat(cache.getStats().getEvictionCount()).isOne();
+      assertThat(cache.getStats().getSize()).isEqualTo(2);
+    }
+
+    try (FileSampleCache cache = createCache(directory, "Webin-1", 2, clock)) {
+      assertThat(cache.getStats().getSize()).isEqualTo(2);
+      assertThat(cache.get("ERS000003")).isNotNull();
+    }
+  }
+
+  @Test
+  public void testEvictedEntriesAreReadFromLog() throws IOException {
+    File directory = Files.createTempDirectory("sample-cache").toFile();
+    TestClock clock = new TestClock(NOW);
+
+    try (FileSampleCache cache = createCache(directory, "Webin-1", 2, clock)) {
+      cache.put("ERS000001", createSample());
+      cache.put("ERS000002", createSample());
+      cache.put("ERS000003", createSample());
+      cache.invalidate("ERS000002");
+
+      // The evicted entry is read back from the log file and evicts another entry in turn.
+      Sample sample = cache.get("ERS000001").getSample();
+      assertThat(sample.getTaxId()).isEqualTo(580239);
+      assertThat(sample.getAttributes()).hasSize(2);
+      assertThat(cache.get("ERS000002")).isNull();
+      assertThat(cache.get("ERS000003")).isNotNull();
+      assertThat(cache.getStats().getSize()).isEqualTo(2);
+    }
+
+    try (FileSampleCache cache = createCache(directory, "Webin-1", 1, clock)) {
+      assertThat(cache.get("ERS000001")).isNotNull();
+      assertThat(cache.get("ERS000002")).isNull();
+      assertThat(cache.get("ERS000003")).isNotNull();
+    }
+  }
+
+  @Test
+  public void testCompactionKeepsEvictedEntries() throws IOException {
+    File directory = Files.createTempDirectory("sample-cache").toFile();
+    TestClock clock = new TestClock(NOW);
+
+    try (FileSampleCache cache = createCache(directory, "Webin-1", 1, clock)) {
+      cache.put("ERS000001", createSample());
+      for (int i = 0; i < 2000; i++) {
+        cache.put("ERS000002", createSample());
+      }
+    }
+
+    // Opening the cache compacts the log file.
+    try (FileSampleCache cache = createCache(directory, "Webin-1", 1, clock)) {
+      File[] logFiles = directory.listFiles((dir, name) -> name.endsWith(".jsonl"));
+      assertThat(Files.readAllLines(logFiles[0].toPath())).hasSize(2);
+      assertThat(cache.get("ERS000001")).isNotNull();
+      assertThat(cache.get("ERS000002")).isNotNull();
+    }
+  }
+
+  @Test
+  public void testCompactionKeepsEntriesWrittenByOtherCaches() throws IOException {
+    File directory = Files.createTempDirectory("sample-cache").toFile();
+    TestClock clock = new TestClock(NOW);
+
+    try (FileSampleCache cache = createCache(directory, "Webin-1", clock)) {
+      for (int i = 0; i < 2000; i++) {
+        cache.put("ERS000001", createSample());
+      }
+
+      // Opening another cache on the same file compacts it.
+      try (FileSampleCache otherCache = createCache(directory, "Webin-1", clock)) {
+        otherCache.put("ERS000002", createSample());
+      }
+      File[] logFiles = directory.listFiles((dir, name) -> name.endsWith(".jsonl"));
+      assertThat(Files.readAllLines(logFiles[0].toPath())).hasSize(2);
+
+      // The first cache appends to the compacted file instead of the replaced one.
+      cache.put("ERS000003", createSample());
+    }
+
+    try (FileSampleCache cache = createCache(directory, "Webin-1", clock)) {
+      assertThat(cache.get("ERS000001")).isNotNull();
+      assertThat(cache.get("ERS000002")).isNotNull();
+      assertThat(cache.get("ERS000003")).isNotNull();
+    }
+  }
+
+  private static FileSampleCache createCache(File directory, String partition, TestClock clock) {
+    return createCache(directory, partition, FileSampleCache.DEFAULT_MAX_SIZE, clock);
+  }
+
+  private static FileSampleCache createCache(
+      File directory, String partition, int maxSize, TestClock clock) {
+    return new FileSampleCache(
+        directory, partition, maxSize, Duration.ofHours(1), Duration.ofMinutes(1), clock);
+  }
+
+  private static Sample createSample() {
+    Sample sample = new Sample();
+    sample.setBioSampleId("SAMEA749881");
+    sample.setSraSampleId("ERS000002");
+    sample.setName("test");
+    sample.setTaxId(580239);
+    sample.setOrganism("Saccharomyces cerevisiae SK1");
+    sample.addAttribute(
+        new Attribute(
+            "strain",
+            "SK1",
+            new TreeSet<>(Collections.singleton("http://purl.obolibrary.org/obo/a")),
+            null,
+            null));
+    sample.addAttribute(new Attribute("depth", "10", null, "m", null));
+    return sample;
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+
+public class GzipDecodingInterceptorTest {
+
+  private static final URI SAMPLE_URI = URI.create("https://www.ebi.ac.uk/biosamples/SAMEA1");
+
+  private HttpHeaders sentHeaders;
+
+  @Test
+  public void testGzipResponseIsDecoded() throws IOException {
+    GzipDecodingInterceptor interceptor = new GzipDecodingInterceptor();
+    byte[] body = gzip("sample");
+
+    ClientHttpResponse response =
+        interceptor.intercept(request(), new byte[0], respond("gzip", body));
+
+    assertThat(sentHeaders.getFirst(HttpHeaders.ACCEPT_ENCODING)).isEqualTo("gzip");
+    assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isNull();
+    assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_LENGTH)).isNull();
+    assertThat(read(response)).isEqualTo("sample");
+  }
+
+  @Test
+  public void testIdentityResponseIsNotDecoded() throws IOException {
+    GzipDecodingInterceptor interceptor = new GzipDecodingInterceptor();
+    byte[] body = "sample".getBytes(StandardCharsets.UTF_8);
+
+    ClientHttpResponse response =
+        interceptor.intercept(request(), new byte[0], respond(null, body));
+
+    assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_LENGTH)).isEqualTo("6");
+    assertThat(read(response)).isEqualTo("sample");
+  }
+
+  @Test
+  public void testEmptyGzipResponse() throws IOException {
+    GzipDecodingInterceptor interceptor = new GzipDecodingInterceptor();
+
+    ClientHttpResponse response =
+        interceptor.intercept(request(), new byte[0], respond("gzip", new byte[0]));
+
+    assertThat(read(response)).isEmpty();
+  }
+
+  private static HttpRequest request() {
+    HttpHeaders headers = new HttpHeaders();
+    return new HttpRequest() {
+      @Override
+      public URI getURI() {
+        return SAMPLE_URI;
+      }
+
+      @Override
+      public HttpMethod getMethod() {
+        return HttpMethod.GET;
+      }
+
+      @Override
+      public HttpHeaders getHeaders() {
+        return headers;
+      }
+    };
+  }
+
+  private ClientHttpRequestExecution respond(String contentEncoding, byte[] body) {
+    return (request, requestBody) -> {
+      sentHeaders = request.getHeaders();
+      HttpHeaders headers = new HttpHeaders();
+      if (contentEncoding != null) {
+        headers.set(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+      }
+      headers.set(HttpHeaders.CONTENT_LENGTH, String.valueOf(body.length));
+      return new ClientHttpResponse() {
+        @Override
+        public HttpStatusCode getStatusCode() {
+          return HttpStatus.OK;
+        }
+
+        @Override
+        public String getStatusText() {
+          return "";
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+          return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+          return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public void close() {}
+      };
+    };
+  }
+
+  private static byte[] gzip(String value) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+      gzipOutputStream.write(value.getBytes(StandardCharsets.UTF_8));
+    }
+    return outputStream.toByteArray();
+  }
+
+  private static String read(ClientHttpResponse response) throws IOException {
+    try (response) {
+      return new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.client.ResourceAccessException;
+import uk.ac.ebi.ena.webin.cli.utils.Deadline;
+import uk.ac.ebi.ena.webin.cli.utils.RetryUtils;
+
+/**
+ * Sends requests through a transport using the JDK HTTP client to a local server. The server only
+ * speaks HTTP/1.1, so the client falls back to it, but the requests take the same path through the
+ * transport as they do with HTTP/2.
+ */
+public class HttpTransportTest {
+
+  private static final Duration SLOW_RESPONSE_DELAY = Duration.ofSeconds(5);
+
+  private final List<String> acceptEncodings = Collections.synchronizedList(new ArrayList<>());
+
+  private ExecutorService executor;
+  private HttpServer server;
+
+  @Before
+  public void startServer() throws IOException {
+    executor = Executors.newCachedThreadPool();
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.setExecutor(executor);
+    server.createContext("/gzip", this::handleGzip);
+    server.createContext("/slow", this::handleSlow);
+    server.start();
+  }
+
+  @After
+  public void stopServer() {
+    server.stop(0);
+    // Interrupts the handlers of slow responses.
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testHttp2RequestIsSentAndGzipResponseIsDecoded() throws IOException {
+    try (HttpTransport httpTransport = createHttp2Transport()) {
+      String response =
+          httpTransport.getRestTemplate().getForObject(getUri("/gzip"), String.class);
+
+      assertThat(response).isEqualTo("sample");
+      assertThat(acceptEncodings).containsExactly("gzip");
+    }
+  }
+
+  @Test
+  public void testHttp2DeadlineLimitsReadTimeout() throws IOException {
+    try (HttpTransport httpTransport = createHttp2Transport()) {
+      long startNanos = System.nanoTime();
+
+      assertThatThrownBy(
+              () ->
+                  RetryUtils.executeWithRetry(
+                      getUri(""),
+                      Deadline.after(Duration.ofMillis(500)),
+                      ServiceMetrics.NOOP,
+                      context ->
+                          httpTransport
+                              .getRestTemplate()
+                              .getForObject(getUri("/slow"), String.class),
+                      context -> {}))
+          .isInstanceOf(ResourceAccessException.class);
+
+      // The transport's read timeout is longer than the server's delay.
+      assertThat(Duration.ofNanos(System.nanoTime() - startNanos))
+          .isLessThan(SLOW_RESPONSE_DELAY);
+    }
+  }
+
+  private HttpTransport createHttp2Transport() {
+    return new HttpTransport.Builder()
+        .setProtocol(HttpTransport.Protocol.HTTP_2)
+        .setReadTimeout(SLOW_RESPONSE_DELAY.multipliedBy(2))
+        .build();
+  }
+
+  private String getUri(String path) {
+    return "http://localhost:" + server.getAddress().getPort() + path;
+  }
+
+  private void handleGzip(HttpExchange exchange) throws IOException {
+    acceptEncodings.add(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+      gzip.write("sample".getBytes(StandardCharsets.UTF_8));
+    }
+    exchange.getResponseHeaders().set("Content-Type", "text/plain");
+    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+    exchange.sendResponseHeaders(200, bytes.size());
+    try (OutputStream body = exchange.getResponseBody()) {
+      bytes.writeTo(body);
+    }
+  }
+
+  private void handleSlow(HttpExchange exchange) throws IOException {
+    try {
+      Thread.sleep(SLOW_RESPONSE_DELAY.toMillis());
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    exchange.sendResponseHeaders(200, -1);
+    exchange.close();
+  }
+}
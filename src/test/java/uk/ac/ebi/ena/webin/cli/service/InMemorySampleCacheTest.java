@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.Test;
+import uk.ac.ebi.ena.webin.cli.utils.TestClock;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Sample;
+
+public class InMemorySampleCacheTest {
+
+  private static final Instant NOW = Instant.parse("2024-01-01T00:00:00Z");
+
+  @Test
+  public void testTimeToLive() {
+    TestClock clock = new TestClock(NOW);
+    InMemorySampleCache cache =
+        new InMemorySampleCache(10, Duration.ofMinutes(10), Duration.ofMinutes(1), clock);
+
+    Sample sample = new Sample();
+    cache.put("ERS000002", sample);
+    cache.putNotFound("ERS000003");
+
+    assertThat(cache.get("ERS000002").getSample()).isSameAs(sample);
+    assertThat(cache.get("ERS000003").isNotFound()).isTrue();
+
+    clock.advance(Duration.ofMinutes(1));
+    assertThat(cache.get("ERS000002").getSample()).isSameAs(sample);
+    assertThat(cache.get("ERS000003")).isNull();
+
+    clock.advance(Duration.ofMinutes(9));
+    assertThat(cache.get("ERS000002")).isNull();
+
+    assertThat(cache.getStats().getHitCount()).isEqualTo(3);
+    assertThat(cache.getStats().getMissCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void testEviction() {
+    InMemorySampleCache cache =
+        new InMemorySampleCache(2, Duration.ofMinutes(10), Duration.ofMinutes(1));
+
+    cache.put("ERS000001", new Sample());
+    cache.put("ERS000002", new Sample());
+    // Makes ERS000002 the least recently used entry.
+    cache.get("ERS000001");
+    cache.put("ERS000003", new Sample());
+
+    assertThat(cache.get("ERS000001")).isNotNull();
+    assertThat(cache.get("ERS000002")).isNull();
+    assertThat(cache.get("ERS000003")).isNotNull();
+    assertThat(cache.getStats().getEvictionCount()).isOne();
+    assertThat(cache.getStats().getSize()).isEqualTo(2);
+  }
+
+  @Test
+  public void testNormalizeSampleId() {
+    assertThat(SampleService.normalizeSampleId(" samea749881 ")).isEqualTo("SAMEA749881");
+    assertThat(SampleService.normalizeSampleId("ERS000002")).isEqualTo("ERS000002");
+  }
+}
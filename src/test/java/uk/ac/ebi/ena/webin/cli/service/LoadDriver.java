@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs an operation a fixed number of times from a fixed number of threads and reports the
+ * throughput and latency percentiles. Failed operations are counted but their latencies are not
+ * included in the percentiles.
+ */
+class LoadDriver {
+
+  private final int concurrency;
+  private final int operations;
+  private final int warmupOperations;
+
+  static class Report {
+    private final int concurrency;
+    private final int operations;
+    private final int errors;
+    private final Duration elapsed;
+    private final long[] sortedLatencyNanos;
+
+    private Report(
+        int concurrency, int operations, int errors, Duration elapsed, long[] latencyNanos) {
+      this.concurrency = concurrency;
+      this.operations = operations;
+      this.errors = errors;
+      this.elapsed = elapsed;
+      this.sortedLatencyNanos = latencyNanos.clone();
+      Arrays.sort(this.sortedLatencyNanos);
+    }
+
+    int getErrors() {
+      return errors;
+    }
+
+    /** Returns the completed operations per second. */
+    double getThroughput() {
+      return operations / (elapsed.toNanos() / 1e9);
+    }
+
+    /** Returns the latency below which the given fraction, between 0 and 1, of operations fall. */
+    Duration getPercentile(double fraction) {
+      if (sortedLatencyNanos.length == 0) {
+        return Duration.ZERO;
+      }
+      int index = (int) Math.ceil(fraction * sortedLatencyNanos.length) - 1;
+      return Duration.ofNanos(
+          sortedLatencyNanos[Math.max(0, Math.min(index, sortedLatencyNanos.length - 1))]);
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "concurrency: %d, operations: %d, errors: %d, throughput: %.1f ops/s, p50: %.2f ms,"
+              + " p99: %.2f ms",
+          concurrency,
+          operations,
+          errors,
+          getThroughput(),
+          getPercentile(0.5).toNanos() / 1e6,
+          getPercentile(0.99).toNanos() / 1e6);
+    }
+  }
+
+  LoadDriver(int concurrency, int operations, int warmupOperations) {
+    this.concurrency = concurrency;
+    this.operations = operations;
+    this.warmupOperations = warmupOperations;
+  }
+
+  /**
+   * Runs the warmup operations followed by the measured operations. The operation is given a
+   * sequence number that is unique across the warmup and measured operations.
+   */
+  Report run(IntConsumer operation) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+    try {
+      execute(executor, operation, 0, warmupOperations, new long[warmupOperations]);
+
+      long[] latencyNanos = new long[operations];
+      long start = System.nanoTime();
+      int errors = execute(executor, operation, warmupOperations, operations, latencyNanos);
+      Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+      long[] successfulLatencyNanos =
+          Arrays.stream(latencyNanos).filter(latency -> latency >= 0).toArray();
+      return new Report(concurrency, operations, errors, elapsed, successfulLatencyNanos);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Returns the number of failed operations. Their latencies are recorded as -1. */
+  private int execute(
+      ExecutorService executor, IntConsumer operation, int first, int count, long[] latencyNanos)
+      throws Exception {
+    AtomicInteger next = new AtomicInteger();
+    AtomicInteger errors = new AtomicInteger();
+    List<Future<?>> workers = new ArrayList<>();
+    for (int i = 0; i < concurrency; i++) {
+      workers.add(
+          executor.submit(
+              () -> {
+                int index;
+                while ((index = next.getAndIncrement()) < count) {
+                  long start = System.nanoTime();
+                  try {
+                    operation.accept(first + index);
+                    latencyNanos[index] = System.nanoTime() - start;
+                  } catch (RuntimeException ex) {
+                    latencyNanos[index] = -1;
+                    errors.incrementAndGet();
+                  }
+                }
+              }));
+    }
+    for (Future<?> worker : workers) {
+      worker.get();
+    }
+    return errors.get();
+  }
+}
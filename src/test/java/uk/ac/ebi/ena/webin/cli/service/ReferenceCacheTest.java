@@ -0,0 +1,63 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.Test;
+import uk.ac.ebi.ena.webin.cli.utils.TestClock;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Analysis;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Run;
+
+public class ReferenceCacheTest {
+
+  private static final Instant NOW = Instant.parse("2024-01-01T00:00:00Z");
+
+  @Test
+  public void testTimeToLive() {
+    TestClock clock = new TestClock(NOW);
+    ReferenceCache cache =
+        new ReferenceCache(10, Duration.ofMinutes(10), Duration.ofMinutes(1), clock);
+
+    Run run = new Run("ERR000001", "run");
+    cache.put("run", "ERR000001", run);
+    cache.putNotFound("run", "ERR000002");
+
+    assertThat(cache.get("run", "ERR000001").getValue()).isSameAs(run);
+    assertThat(cache.get("run", "ERR000002").isNotFound()).isTrue();
+
+    clock.advance(Duration.ofMinutes(1));
+    assertThat(cache.get("run", "ERR000001").getValue()).isSameAs(run);
+    assertThat(cache.get("run", "ERR000002")).isNull();
+
+    clock.advance(Duration.ofMinutes(9));
+    assertThat(cache.get("run", "ERR000001")).isNull();
+
+    assertThat(cache.getStats().getHitCount()).isEqualTo(3);
+    assertThat(cache.getStats().getMissCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void testReferenceTypesAreSeparate() {
+    ReferenceCache cache = new ReferenceCache();
+
+    Analysis analysis = new Analysis("ERZ000001", "analysis");
+    cache.put("analysis", "ERZ000001", analysis);
+
+    assertThat(cache.get("run", "ERZ000001")).isNull();
+    assertThat(cache.get("analysis", "ERZ000001").getValue()).isSameAs(analysis);
+
+    cache.invalidate("analysis", "ERZ000001");
+    assertThat(cache.get("analysis", "ERZ000001")).isNull();
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceTimeoutException;
+import uk.ac.ebi.ena.webin.cli.utils.AsyncUtils;
+import uk.ac.ebi.ena.webin.cli.utils.Deadline;
+
+public class ReferenceLookupTest {
+
+  private static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+  @Test
+  public void testLookupIsCached() {
+    TestLookup lookup = new TestLookup(1);
+    AtomicInteger retrievals = new AtomicInteger();
+
+    for (int i = 0; i < 2; i++) {
+      assertThat(
+              AsyncUtils.join(
+                  lookup.lookupAsync(
+                      "ers1",
+                      "ERS1",
+                      Deadline.none(),
+                      () -> {
+                        retrievals.incrementAndGet();
+                        return CompletableFuture.completedFuture("sample");
+                      })))
+          .isEqualTo("sample");
+    }
+    assertThat(retrievals.get()).isOne();
+  }
+
+  @Test
+  public void testNotFoundIsCached() {
+    TestLookup lookup = new TestLookup(1);
+
+    assertThatThrownBy(
+            () ->
+                AsyncUtils.join(
+                    lookup.lookupAsync(
+                        "ERS1",
+                        "ERS1",
+                        Deadline.none(),
+                        () -> CompletableFuture.failedFuture(new NotFoundException()))))
+        .isInstanceOf(NotFoundException.class);
+    assertThat(lookup.cache).containsEntry("ERS1", null);
+    assertThatThrownBy(
+            () ->
+                AsyncUtils.join(
+                    lookup.lookupAsync(
+                        "ERS1",
+                        "ERS1",
+                        Deadline.none(),
+                        () -> CompletableFuture.completedFuture("sample"))))
+        .isInstanceOf(NotFoundException.class);
+  }
+
+  @Test
+  public void testConcurrentLookupsAreCoalesced() {
+    TestLookup lookup = new TestLookup(1);
+    CompletableFuture<String> retrieval = new CompletableFuture<>();
+
+    CompletableFuture<String> first =
+        lookup.lookupAsync("ERS1", "ERS1", Deadline.none(), () -> retrieval);
+    CompletableFuture<String> second =
+        lookup.lookupAsync(
+            "ERS1",
+            "ERS1",
+            Deadline.none(),
+            () -> {
+              throw new AssertionError("Not coalesced");
+            });
+    retrieval.complete("sample");
+
+    assertThat(first.join()).isEqualTo("sample");
+    assertThat(second.join()).isEqualTo("sample");
+  }
+
+  @Test
+  public void testLookupTimeout() {
+    TestLookup lookup = new TestLookup(1);
+
+    assertThatThrownBy(
+            () ->
+                AsyncUtils.join(
+                    lookup.lookupAsync(
+                        "ERS1",
+                        "ERS1",
+                        Deadline.after(Duration.ofMillis(10)),
+                        CompletableFuture::new)))
+        .isInstanceOf(ServiceTimeoutException.class);
+  }
+
+  @Test
+  public void testBatch() {
+    TestLookup lookup = new TestLookup(2);
+    AtomicInteger inProgress = new AtomicInteger();
+    AtomicInteger maxInProgress = new AtomicInteger();
+
+    BatchResult<String> result =
+        lookup.awaitBatch(
+            lookup.lookupBatchAsync(
+                Arrays.asList("ERS1", " ERS2 ", "ERS1", "", null, "ERSUNKNOWN"),
+                id -> {
+                  maxInProgress.accumulateAndGet(inProgress.incrementAndGet(), Math::max);
+                  inProgress.decrementAndGet();
+                  return id.contains("UNKNOWN")
+                      ? CompletableFuture.failedFuture(new NotFoundException())
+                      : CompletableFuture.completedFuture("sample " + id);
+                }));
+
+    assertThat(result.getResults().keySet()).containsExactly("ERS1", "ERS2");
+    assertThat(result.get("ERS2")).isEqualTo("sample ERS2");
+    assertThat(result.getError("ERSUNKNOWN")).isInstanceOf(NotFoundException.class);
+    assertThat(maxInProgress.get()).isLessThanOrEqualTo(2);
+  }
+
+  private static class NotFoundException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+  }
+
+  private static class TestLookup extends ReferenceLookup<String> {
+    private final Map<String, String> cache = new HashMap<>();
+
+    private TestLookup(int batchParallelism) {
+      super(batchParallelism, DIRECT_EXECUTOR);
+    }
+
+    @Override
+    String getReferenceType() {
+      return "sample";
+    }
+
+    @Override
+    synchronized String getCached(String id, String key) {
+      if (cache.containsKey(key) && cache.get(key) == null) {
+        throw new NotFoundException();
+      }
+      return cache.get(key);
+    }
+
+    @Override
+    synchronized void putCached(String key, String reference) {
+      cache.put(key, reference);
+    }
+
+    @Override
+    synchronized void putNotFound(String key) {
+      cache.put(key, null);
+    }
+
+    @Override
+    boolean isNotFound(Throwable ex) {
+      return ex instanceof NotFoundException;
+    }
+
+    @Override
+    ServiceTimeoutException timeout(String id) {
+      return new ServiceTimeoutException("Timed out getting " + id);
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceException;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Analysis;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Run;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Study;
+
+/** Tests the study, run and analysis services against a {@link StubWebinServer}. */
+public class ReferenceServiceStubTest {
+
+  private StubWebinServer server;
+
+  @Before
+  public void before() throws Exception {
+    server = new StubWebinServer.Builder().start();
+  }
+
+  @After
+  public void after() {
+    server.close();
+  }
+
+  @Test
+  public void testGetStudy() {
+    StudyService studyService =
+        new StudyService.Builder()
+            .setWebinRestV1Uri(server.getWebinRestUri())
+            .setCredentials("webin", "password")
+            .build();
+
+    Study study = studyService.getStudy("ERP123");
+    assertThat(study.getStudyId()).isEqualTo("ERP123");
+    assertThat(study.getBioProjectId()).isEqualTo("PRJEB123");
+    assertThat(study.getLocusTags()).containsExactly("TAG123");
+
+    assertThatThrownBy(() -> studyService.getStudy("ERPPRIVATE1"))
+        .isInstanceOf(ServiceException.class)
+        .hasMessageContaining("Unknown study ERPPRIVATE1");
+  }
+
+  @Test
+  public void testGetRuns() {
+    RunService runService =
+        new RunService.Builder()
+            .setWebinRestV1Uri(server.getWebinRestUri())
+            .setCredentials("webin", "password")
+            .setBatchParallelism(4)
+            .build();
+
+    List<String> runIds = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      runIds.add("ERR" + i);
+    }
+    runIds.add("ERR1");
+    runIds.add("ERRUNKNOWN1");
+    runIds.add("ERRPRIVATE1");
+
+    BatchResult<Run> result = runService.getRuns(runIds);
+    assertThat(result.getResults()).hasSize(100);
+    assertThat(result.get("ERR42").getRunId()).isEqualTo("ERR42");
+    assertThat(result.get("ERR42").getName()).isEqualTo("alias-ERR42");
+    assertThat(result.getError("ERRUNKNOWN1"))
+        .isInstanceOf(ServiceException.class)
+        .hasMessageContaining("Unknown run ERRUNKNOWN1");
+    assertThat(result.getError("ERRPRIVATE1")).hasMessageContaining("Unknown run ERRPRIVATE1");
+    // Duplicates are retrieved once.
+    assertThat(server.getRequestCount(StubWebinServer.RUN)).isEqualTo(102);
+
+    // Retrieved and unknown runs are cached.
+    runService.getRuns(runIds);
+    assertThat(server.getRequestCount(StubWebinServer.RUN)).isEqualTo(102);
+  }
+
+  @Test
+  public void testServicesShareCache() {
+    ReferenceCache referenceCache = new ReferenceCache();
+    RunService runService =
+        new RunService.Builder()
+            .setWebinRestV1Uri(server.getWebinRestUri())
+            .setCredentials("webin", "password")
+            .setReferenceCache(referenceCache)
+            .build();
+    AnalysisService analysisService =
+        new AnalysisService.Builder()
+            .setWebinRestV1Uri(server.getWebinRestUri())
+            .setCredentials("webin", "password")
+            .setReferenceCache(referenceCache)
+            .build();
+
+    // Entries of different reference types do not collide.
+    Run run = runService.getRun("ERZ1");
+    Analysis analysis = analysisService.getAnalysis("ERZ1");
+    assertThat(run.getRunId()).isEqualTo("ERZ1");
+    assertThat(analysis.getAnalysisId()).isEqualTo("ERZ1");
+
+    BatchResult<Analysis> result = analysisService.getAnalyses(Arrays.asList("ERZ1", "erz1 "));
+    assertThat(result.getResults()).hasSize(2);
+    assertThat(server.getRequestCount(StubWebinServer.ANALYSIS)).isOne();
+    assertThat(referenceCache.getStats().getSize()).isEqualTo(2);
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the sample service against a {@link StubWebinServer}. The server latency, error rate
+ * and payload size can be changed to model different network conditions.
+ */
+public class SampleServiceLoadTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SampleServiceLoadTest.class);
+
+  private static final Duration LATENCY = Duration.ofMillis(20);
+  private static final double ERROR_RATE = 0.01;
+  private static final int ATTRIBUTE_COUNT = 50;
+
+  private static final int OPERATIONS = 2_000;
+  private static final int WARMUP_OPERATIONS = 200;
+  private static final int BATCH_SIZE = 100;
+
+  @Test
+  public void testLoadDriverPercentiles() throws Exception {
+    LoadDriver.Report report =
+        new LoadDriver(4, 100, 0)
+            .run(
+                i -> {
+                  if (i % 10 == 0) {
+                    throw new IllegalStateException();
+                  }
+                });
+
+    assertThat(report.getErrors()).isEqualTo(10);
+    assertThat(report.getThroughput()).isPositive();
+    assertThat(report.getPercentile(0.5)).isLessThanOrEqualTo(report.getPercentile(0.99));
+  }
+
+  @Test
+  @Ignore("Benchmark")
+  public void benchmarkGetSample() throws Exception {
+    try (StubWebinServer server = startServer()) {
+      SampleService sampleService = createSampleService(server).build();
+      for (int concurrency : new int[] {1, 8, 32}) {
+        LoadDriver.Report report =
+            new LoadDriver(concurrency, OPERATIONS, WARMUP_OPERATIONS)
+                .run(i -> sampleService.getSample("SAMEA" + concurrency + "_" + i));
+        LOGGER.info("getSample: {}", report);
+      }
+    }
+  }
+
+  @Test
+  @Ignore("Benchmark")
+  public void benchmarkGetSampleWithFallback() throws Exception {
+    try (StubWebinServer server = startServer()) {
+      SampleService sampleService = createSampleService(server).build();
+      for (int concurrency : new int[] {1, 8, 32}) {
+        LoadDriver.Report report =
+            new LoadDriver(concurrency, OPERATIONS, WARMUP_OPERATIONS)
+                .run(i -> sampleService.getSample("SAMEAPRIVATE" + concurrency + "_" + i));
+        LOGGER.info("getSample with fallback: {}", report);
+      }
+    }
+  }
+
+  /** The stub server only speaks HTTP/1.1, so this measures the JDK client without multiplexing. */
+  @Test
+  @Ignore("Benchmark")
+  public void benchmarkGetSampleWithJdkHttpClient() throws Exception {
+    try (StubWebinServer server = startServer();
+        HttpTransport httpTransport =
+            new HttpTransport.Builder().setProtocol(HttpTransport.Protocol.HTTP_2).build()) {
+      SampleService sampleService =
+          createSampleService(server).setHttpTransport(httpTransport).build();
+      for (int concurrency : new int[] {1, 8, 32}) {
+        LoadDriver.Report report =
+            new LoadDriver(concurrency, OPERATIONS, WARMUP_OPERATIONS)
+                .run(i -> sampleService.getSample("SAMEA" + concurrency + "_" + i));
+        LOGGER.info("getSample with JDK HTTP client: {}", report);
+      }
+    }
+  }
+
+  @Test
+  @Ignore("Benchmark")
+  public void benchmarkGetSamples() throws Exception {
+    try (StubWebinServer server = startServer()) {
+      for (int concurrency : new int[] {1, 8}) {
+        SampleService sampleService =
+            createSampleService(server).setSampleCache(new InMemorySampleCache()).build();
+        LoadDriver.Report report =
+            new LoadDriver(concurrency, OPERATIONS / BATCH_SIZE, WARMUP_OPERATIONS / BATCH_SIZE)
+                .run(
+                    i -> {
+                      List<String> sampleIds = new ArrayList<>();
+                      for (int j = 0; j < BATCH_SIZE; j++) {
+                        sampleIds.add("SAMEA" + concurrency + "_" + (i * BATCH_SIZE + j));
+                      }
+                      sampleService.getSamples(sampleIds);
+                    });
+        LOGGER.info("getSamples ({} samples): {}", BATCH_SIZE, report);
+      }
+    }
+  }
+
+  private static StubWebinServer startServer() throws Exception {
+    return new StubWebinServer.Builder()
+        .setLatency(LATENCY)
+        .setErrorRate(ERROR_RATE)
+        .setAttributeCount(ATTRIBUTE_COUNT)
+        .start();
+  }
+
+  private static SampleService.Builder createSampleService(StubWebinServer server) {
+    return new SampleService.Builder()
+        .setWebinRestV1Uri(server.getWebinRestUri())
+        .setUserName("webin")
+        .setPassword("password")
+        .setWebinAuthUri(server.getWebinAuthUri())
+        .setBiosamplesUri(server.getBiosamplesUri())
+        .setBiosamplesWebinUserName("webin")
+        .setBiosamplesWebinPassword("password");
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.time.Duration;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceException;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceTimeoutException;
+import uk.ac.ebi.ena.webin.cli.utils.Deadline;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Sample;
+
+/** Tests the sample retrieval paths against a {@link StubWebinServer}. */
+public class SampleServiceStubTest {
+
+  private static final int ATTRIBUTE_COUNT = 5;
+
+  private StubWebinServer server;
+
+  @Before
+  public void before() throws Exception {
+    server =
+        new StubWebinServer.Builder()
+            .setAttributeCount(ATTRIBUTE_COUNT)
+            .setLatency(Duration.ofMillis(10))
+            .start();
+  }
+
+  @After
+  public void after() {
+    server.close();
+  }
+
+  @Test
+  public void testGetSampleUsingBioSampleId() {
+    Sample sample = createSampleService().build().getSample("SAMEA1");
+
+    assertThat(sample.getBioSampleId()).isEqualTo("SAMEA1");
+    assertThat(sample.getTaxId()).isEqualTo(9606);
+    assertThat(sample.getOrganism()).isEqualTo("Homo sapiens");
+    // The organism is also returned as an attribute.
+    assertThat(sample.getAttributes()).hasSize(ATTRIBUTE_COUNT + 1);
+
+    assertThat(server.getRequestCount(StubWebinServer.BIOSAMPLES_SAMPLE)).isOne();
+    assertThat(server.getRequestCount(StubWebinServer.SRA_SAMPLE)).isZero();
+  }
+
+  @Test
+  public void testGetSampleUsingSampleId() {
+    Sample sample = createSampleService().build().getSample("ERS2");
+
+    assertThat(sample.getBioSampleId()).isEqualTo("SAMEA2");
+    assertThat(sample.getTaxId()).isEqualTo(9606);
+
+    assertThat(server.getRequestCount(StubWebinServer.SRA_SAMPLE)).isOne();
+    assertThat(server.getRequestCount(StubWebinServer.BIOSAMPLES_SAMPLE)).isOne();
+    assertThat(server.getRequestCount(StubWebinServer.SAMPLE_XML)).isZero();
+  }
+
+  @Test
+  public void testSampleRetrievalFallback() {
+    Sample sample = createSampleService().build().getSample("SAMEAPRIVATE3");
+
+    assertThat(sample.getSraSampleId()).isEqualTo("ERS3");
+    assertThat(sample.getTaxId()).isEqualTo(9606);
+    assertThat(sample.getOrganism()).isEqualTo("Homo sapiens");
+    assertThat(sample.getAttributes()).hasSize(ATTRIBUTE_COUNT);
+
+    assertThat(server.getRequestCount(StubWebinServer.SAMPLE_XML)).isOne();
+  }
+
+  @Test
+  public void testGetSampleHedgedFetchesSampleXmlWithSraSample() {
+    SampleService sampleService = createSampleService().setHedgedLookup(true).build();
+
+    Sample sample = sampleService.getSample("ERSPRIVATE4");
+
+    assertThat(sample.getSraSampleId()).isEqualTo("ERSPRIVATE4");
+    assertThat(sample.getAttributes()).hasSize(ATTRIBUTE_COUNT);
+
+    assertThat(server.getRequestCount(StubWebinServer.SRA_SAMPLE)).isOne();
+    assertThat(server.getRequestCount(StubWebinServer.BIOSAMPLES_SAMPLE)).isOne();
+    // The sample XML lookup started with the ENA sample lookup is used for the fallback.
+    assertThat(server.getRequestCount(StubWebinServer.SAMPLE_XML)).isOne();
+  }
+
+  @Test
+  public void testGetSampleUsingUnknownId() {
+    SampleService sampleService = createSampleService().build();
+
+    assertThatThrownBy(() -> sampleService.getSample("ERSUNKNOWN1"))
+        .isInstanceOf(ServiceException.class);
+  }
+
+  @Test
+  public void testUnknownSampleIsReportedTheSameWayWhenCached() {
+    SampleService sampleService =
+        createSampleService().setSampleCache(new InMemorySampleCache()).build();
+
+    Throwable firstError = catchThrowable(() -> sampleService.getSample("ERSUNKNOWN1"));
+    Throwable cachedError = catchThrowable(() -> sampleService.getSample("ERSUNKNOWN1"));
+
+    assertThat(firstError).isInstanceOf(ServiceException.class);
+    assertThat(cachedError.getClass()).isEqualTo(firstError.getClass());
+    assertThat(cachedError.getMessage()).isEqualTo(firstError.getMessage());
+    assertThat(server.getRequestCount(StubWebinServer.SRA_SAMPLE)).isOne();
+  }
+
+  @Test
+  public void testGetSamplesUsesBiosamplesSearch() {
+    SampleService sampleService =
+        createSampleService().setSampleCache(new InMemorySampleCache()).build();
+
+    BatchResult<Sample> result =
+        sampleService.getSamples(Arrays.asList("SAMEA1", "SAMEA2", "SAMEA3", "SAMEA4"));
+
+    assertThat(result.isSuccessful()).isTrue();
+    assertThat(result.getResults()).hasSize(4);
+    assertThat(result.get("SAMEA3").getBioSampleId()).isEqualTo("SAMEA3");
+
+    assertThat(server.getRequestCount(StubWebinServer.BIOSAMPLES_SEARCH)).isOne();
+    assertThat(server.getRequestCount(StubWebinServer.BIOSAMPLES_SAMPLE)).isZero();
+  }
+
+  @Test
+  public void testGetSamplesUsesBiosamplesSearchWithoutCache() {
+    SampleService sampleService = createSampleService().build();
+
+    BatchResult<Sample> result =
+        sampleService.getSamples(
+            Arrays.asList("SAMEA1", "SAMEA2", "SAMEA3", "SAMEA4", "SAMEA5", "SAMEA6"));
+
+    assertThat(result.isSuccessful()).isTrue();
+    assertThat(result.getResults()).hasSize(6);
+    assertThat(result.get("SAMEA5").getBioSampleId()).isEqualTo("SAMEA5");
+
+    assertThat(server.getRequestCount(StubWebinServer.BIOSAMPLES_SEARCH)).isOne();
+    assertThat(server.getRequestCount(StubWebinServer.BIOSAMPLES_SAMPLE)).isZero();
+  }
+
+  @Test
+  public void testExpiredSampleIsRevalidated() {
+    InMemorySampleCache sampleCache =
+        new InMemorySampleCache(100, Duration.ZERO, InMemorySampleCache.DEFAULT_TIME_TO_LIVE);
+    SampleService sampleService = createSampleService().setSampleCache(sampleCache).build();
+
+    Sample sample = sampleService.getSample("SAMEA1");
+    assertThat(sampleCache.getStale("SAMEA1").getEtag()).isEqualTo("\"SAMEA1\"");
+
+    // The entry has expired straight away, so the sample is revalidated.
+    Sample revalidatedSample = sampleService.getSample("SAMEA1");
+    assertThat(revalidatedSample.getBioSampleId()).isEqualTo("SAMEA1");
+    assertThat(revalidatedSample.getAttributes()).hasSize(sample.getAttributes().size());
+
+    assertThat(server.getRequestCount(StubWebinServer.BIOSAMPLES_SAMPLE)).isEqualTo(2);
+    assertThat(server.getRequestCount(StubWebinServer.BIOSAMPLES_SAMPLE_NOT_MODIFIED)).isOne();
+  }
+
+  @Test
+  public void testSampleResponsesAreRevalidatedByTransport() throws Exception {
+    try (HttpTransport httpTransport =
+        new HttpTransport.Builder().setResponseCacheSizeBytes(1024 * 1024).build()) {
+      SampleService sampleService = createSampleService().setHttpTransport(httpTransport).build();
+
+      // The sample JSON is decoded as it is streamed, which stops at the end of the sample object.
+      Sample sample = sampleService.getSample("SAMEA1");
+      Sample revalidatedSample = sampleService.getSample("SAMEA1");
+
+      assertThat(revalidatedSample.getTaxId()).isEqualTo(sample.getTaxId());
+      assertThat(revalidatedSample.getAttributes()).hasSize(sample.getAttributes().size());
+      assertThat(server.getRequestCount(StubWebinServer.BIOSAMPLES_SAMPLE_NOT_MODIFIED)).isOne();
+    }
+  }
+
+  @Test
+  public void testGetSampleDeadline() throws Exception {
+    server.close();
+    server = new StubWebinServer.Builder().setLatency(Duration.ofSeconds(2)).start();
+
+    SampleService sampleService = createSampleService().build();
+
+    assertThatThrownBy(
+            () -> sampleService.getSample("SAMEA1", Deadline.after(Duration.ofMillis(200))))
+        .isInstanceOf(ServiceTimeoutException.class);
+  }
+
+  private SampleService.Builder createSampleService() {
+    return new SampleService.Builder()
+        .setWebinRestV1Uri(server.getWebinRestUri())
+        .setUserName("webin")
+        .setPassword("password")
+        .setWebinAuthUri(server.getWebinAuthUri())
+        .setBiosamplesUri(server.getBiosamplesUri())
+        .setBiosamplesWebinUserName("webin")
+        .setBiosamplesWebinPassword("password");
+  }
+}
@@ -12,11 +12,13 @@ package uk.ac.ebi.ena.webin.cli.service;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
-import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceException;
 import uk.ac.ebi.ena.webin.cli.validator.reference.Sample;
 
 public class SampleServiceTest {
@@ -57,7 +59,7 @@ public class SampleServiceTest {
   public void testGetSampleUsingInvalidId() {
     String id = "INVALID";
 
-    exceptionRule.expect(HttpClientErrorException.class);
+    exceptionRule.expect(ServiceException.class);
 
     SampleService sampleService =
         new SampleService.Builder()
@@ -126,12 +128,96 @@ public class SampleServiceTest {
     sampleService.getSample(id);
   }
 
+  @Test
+  public void testGetSamples() {
+    SampleService sampleService =
+        new SampleService.Builder()
+            .setWebinRestV1Uri(WEBIN_REST_URI)
+            .setUserName(WEBIN_ACCOUNT_USERNAME)
+            .setPassword(WEBIN_ACCOUNT_PASSWORD)
+            .setWebinAuthUri(WEBIN_AUTH_URI)
+            .setBiosamplesUri(BIOSAMPLES_URI)
+            .setBiosamplesWebinUserName(BIOSAMPLES_WEBIN_ACCOUNT_USERNAME)
+            .setBiosamplesWebinPassword(BIOSAMPLES_WEBIN_ACCOUNT_PASSWORD)
+            .build();
+
+    BatchResult<Sample> result =
+        sampleService.getSamples(
+            Arrays.asList(BIO_SAMPLE_ID, SAMPLE_ID, " " + SAMPLE_ID, "INVALID"));
+
+    assertThat(result.getResults().size()).isEqualTo(2);
+    assertThat(result.get(BIO_SAMPLE_ID).getTaxId()).isEqualTo(TAX_ID);
+    assertThat(result.get(SAMPLE_ID).getBioSampleId()).isEqualTo(BIO_SAMPLE_ID);
+    assertThat(result.getErrors().size()).isEqualTo(1);
+    assertThat(result.getError("INVALID")).isInstanceOf(ServiceException.class);
+    assertThat(result.isSuccessful()).isFalse();
+  }
+
+  @Test
+  public void testGetSampleAsync() throws Exception {
+    SampleService sampleService =
+        new SampleService.Builder()
+            .setWebinRestV1Uri(WEBIN_REST_URI)
+            .setUserName(WEBIN_ACCOUNT_USERNAME)
+            .setPassword(WEBIN_ACCOUNT_PASSWORD)
+            .setWebinAuthUri(WEBIN_AUTH_URI)
+            .setBiosamplesUri(BIOSAMPLES_URI)
+            .setBiosamplesWebinUserName(BIOSAMPLES_WEBIN_ACCOUNT_USERNAME)
+            .setBiosamplesWebinPassword(BIOSAMPLES_WEBIN_ACCOUNT_PASSWORD)
+            .build();
+
+    Sample sample = sampleService.getSampleAsync(SAMPLE_ID).get();
+    assertThat(sample.getBioSampleId()).isEqualTo(BIO_SAMPLE_ID);
+    assertThat(sample.getTaxId()).isEqualTo(TAX_ID);
+
+    try {
+      sampleService.getSampleAsync("INVALID").get();
+      throw new AssertionError("Expected an exception");
+    } catch (ExecutionException ex) {
+      assertThat(ex.getCause()).isInstanceOf(ServiceException.class);
+    }
+
+    BatchResult<Sample> result =
+        sampleService.getSamplesAsync(Arrays.asList(BIO_SAMPLE_ID, SAMPLE_ID)).get();
+    assertThat(result.isSuccessful()).isTrue();
+  }
+
+  @Test
+  public void testGetSampleHedged() {
+    SampleService sampleService =
+        new SampleService.Builder()
+            .setWebinRestV1Uri(WEBIN_REST_URI)
+            .setUserName(WEBIN_ACCOUNT_USERNAME)
+            .setPassword(WEBIN_ACCOUNT_PASSWORD)
+            .setWebinAuthUri(WEBIN_AUTH_URI)
+            .setBiosamplesUri(BIOSAMPLES_URI)
+            .setBiosamplesWebinUserName(BIOSAMPLES_WEBIN_ACCOUNT_USERNAME)
+            .setBiosamplesWebinPassword(BIOSAMPLES_WEBIN_ACCOUNT_PASSWORD)
+            .setHedgedLookup(true)
+            .build();
+
+    Sample biosample = sampleService.getSample(BIO_SAMPLE_ID);
+    assertThat(biosample.getBioSampleId()).isEqualTo(BIO_SAMPLE_ID);
+    assertThat(biosample.getTaxId()).isEqualTo(TAX_ID);
+
+    Sample sample = sampleService.getSample(SAMPLE_ID);
+    assertThat(sample.getBioSampleId()).isEqualTo(BIO_SAMPLE_ID);
+    assertThat(sample.getOrganism()).isEqualTo(SCIENTIFIC_NAME);
+  }
+
   @Test
   public void testSampleIdIsBiosamplesId() {
     assertThat(SampleService.isBiosamplesId(BIO_SAMPLE_ID)).isTrue();
     assertThat(SampleService.isBiosamplesId(SAMPLE_ID)).isFalse();
   }
 
+  @Test
+  public void testSampleIdIsSraSampleId() {
+    assertThat(SampleService.isSraSampleId(SAMPLE_ID)).isTrue();
+    assertThat(SampleService.isSraSampleId(" srs000002")).isTrue();
+    assertThat(SampleService.isSraSampleId(BIO_SAMPLE_ID)).isFalse();
+  }
+
   private void testGetSampleUsingValidId(String id) {
     SampleService sampleService =
         new SampleService.Builder()
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import javax.xml.stream.XMLStreamException;
+import org.junit.Test;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Attribute;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Sample;
+
+public class SampleXmlDecoderTest {
+
+  private static final String SAMPLE_XML =
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <SAMPLE_SET>
+        <SAMPLE alias="test_sample" accession="ERS000001">
+          <IDENTIFIERS>
+            <PRIMARY_ID>ERS000001</PRIMARY_ID>
+          </IDENTIFIERS>
+          <TITLE>Test sample</TITLE>
+          <SAMPLE_NAME>
+            <TAXON_ID> 9606 </TAXON_ID>
+            <SCIENTIFIC_NAME>Homo sapiens</SCIENTIFIC_NAME>
+          </SAMPLE_NAME>
+          <SAMPLE_ATTRIBUTES>
+            <SAMPLE_ATTRIBUTE>
+              <TAG>depth</TAG>
+              <VALUE>10</VALUE>
+              <UNITS>m</UNITS>
+            </SAMPLE_ATTRIBUTE>
+            <SAMPLE_ATTRIBUTE>
+              <TAG>tissue</TAG>
+              <VALUE><![CDATA[liver & muscle]]></VALUE>
+            </SAMPLE_ATTRIBUTE>
+            <SAMPLE_ATTRIBUTE>
+              <TAG>flag</TAG>
+            </SAMPLE_ATTRIBUTE>
+          </SAMPLE_ATTRIBUTES>
+        </SAMPLE>
+      </SAMPLE_SET>
+      """;
+
+  @Test
+  public void testDecode() throws Exception {
+    Sample sample = decode(SAMPLE_XML);
+
+    assertThat(sample.getName()).isEqualTo("test_sample");
+    assertThat(sample.getTaxId()).isEqualTo(9606);
+    assertThat(sample.getOrganism()).isEqualTo("Homo sapiens");
+    assertThat(sample.getAttributes().size()).isEqualTo(3);
+
+    Attribute depth = sample.getAttributes().get(0);
+    assertThat(depth.getName()).isEqualTo("depth");
+    assertThat(depth.getValue()).isEqualTo("10");
+    assertThat(depth.getUnit()).isEqualTo("m");
+
+    Attribute tissue = sample.getAttributes().get(1);
+    assertThat(tissue.getValue()).isEqualTo("liver & muscle");
+    assertThat(tissue.getUnit()).isNull();
+
+    Attribute flag = sample.getAttributes().get(2);
+    assertThat(flag.getName()).isEqualTo("flag");
+    assertThat(flag.getValue()).isNull();
+  }
+
+  @Test
+  public void testDecodeWithoutAlias() throws Exception {
+    Sample sample = decode("<SAMPLE_SET><SAMPLE/></SAMPLE_SET>");
+
+    assertThat(sample.getName()).isEmpty();
+    assertThat(sample.getTaxId()).isNull();
+    assertThat(sample.getAttributes()).isEmpty();
+  }
+
+  @Test
+  public void testExternalEntitiesAreNotResolved() {
+    String xml =
+        """
+        <?xml version="1.0"?>
+        <!DOCTYPE SAMPLE [<!ENTITY xxe SYSTEM "file:///etc/passwd">]>
+        <SAMPLE alias="&xxe;"/>
+        """;
+
+    assertThatThrownBy(() -> decode(xml)).isInstanceOf(XMLStreamException.class);
+  }
+
+  @Test
+  public void testMissingTag() {
+    String xml = "<SAMPLE><SAMPLE_ATTRIBUTE><VALUE>1</VALUE></SAMPLE_ATTRIBUTE></SAMPLE>";
+
+    assertThatThrownBy(() -> decode(xml)).isInstanceOf(XMLStreamException.class);
+  }
+
+  private static Sample decode(String xml) throws XMLStreamException {
+    return SampleXmlDecoder.decode(
+        new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+  }
+}
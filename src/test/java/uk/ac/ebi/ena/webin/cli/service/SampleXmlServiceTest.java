@@ -11,11 +11,18 @@
 package uk.ac.ebi.ena.webin.cli.service;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.springframework.web.client.HttpClientErrorException;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceException;
 import uk.ac.ebi.ena.webin.cli.validator.reference.Attribute;
 import uk.ac.ebi.ena.webin.cli.validator.reference.Sample;
 
@@ -57,6 +64,33 @@ public class SampleXmlServiceTest {
     sampleService.getSample(id);
   }
 
+  @Test
+  public void testDecodeSampleRethrowsReadError() {
+    IOException readError = new IOException("Connection reset");
+    InputStream inputStream =
+        new SequenceInputStream(
+            new ByteArrayInputStream(
+                "<SAMPLE_SET><SAMPLE accession=\"ERS000002\">".getBytes(StandardCharsets.UTF_8)),
+            new InputStream() {
+              @Override
+              public int read() throws IOException {
+                throw readError;
+              }
+            });
+
+    assertThatThrownBy(() -> SampleXmlService.decodeSample(SAMPLE_ID, inputStream))
+        .isSameAs(readError);
+  }
+
+  @Test
+  public void testDecodeSampleReportsParseError() {
+    InputStream inputStream =
+        new ByteArrayInputStream("<SAMPLE_SET><SAMPLE".getBytes(StandardCharsets.UTF_8));
+
+    assertThatThrownBy(() -> SampleXmlService.decodeSample(SAMPLE_ID, inputStream))
+        .isInstanceOf(ServiceException.class);
+  }
+
   private void testGetSourceFeatureUsingValidId(String id) {
     SampleXmlService sampleService =
         new SampleXmlService.Builder()
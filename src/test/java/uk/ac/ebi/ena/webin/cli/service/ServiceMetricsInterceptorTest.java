@@ -0,0 +1,133 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpResponse;
+
+public class ServiceMetricsInterceptorTest {
+
+  private static final URI URI = java.net.URI.create("https://www.ebi.ac.uk/ena/samples/SAMEA1");
+
+  private final List<String> recorded = new ArrayList<>();
+
+  private final ServiceMetrics metrics =
+      new ServiceMetrics() {
+        @Override
+        public void recordRequest(
+            String endpoint, String method, int statusCode, Duration latency) {
+          recorded.add("request " + endpoint + " " + method + " " + statusCode);
+        }
+
+        @Override
+        public void recordBytesReceived(String endpoint, long bytes) {
+          recorded.add("bytes " + endpoint + " " + bytes);
+        }
+      };
+
+  @Test
+  public void testResponseIsRecorded() throws IOException {
+    ServiceMetricsInterceptor interceptor = new ServiceMetricsInterceptor(metrics);
+
+    try (ClientHttpResponse response =
+        interceptor.intercept(
+            new TestRequest(), new byte[0], (request, body) -> new TestResponse("sample"))) {
+      assertThat(response.getStatusCode().value()).isEqualTo(200);
+      try (InputStream body = response.getBody()) {
+        assertThat(new String(body.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("sample");
+      }
+    }
+
+    assertThat(recorded)
+        .containsExactly("request https://www.ebi.ac.uk GET 200", "bytes https://www.ebi.ac.uk 6");
+  }
+
+  @Test
+  public void testFailedRequestIsRecorded() {
+    ServiceMetricsInterceptor interceptor = new ServiceMetricsInterceptor(metrics);
+
+    assertThatThrownBy(
+            () ->
+                interceptor.intercept(
+                    new TestRequest(),
+                    new byte[0],
+                    (request, body) -> {
+                      throw new IOException("Connection reset");
+                    }))
+        .isInstanceOf(IOException.class);
+
+    assertThat(recorded).containsExactly("request https://www.ebi.ac.uk GET 0");
+  }
+
+  private static class TestRequest implements HttpRequest {
+    @Override
+    public URI getURI() {
+      return URI;
+    }
+
+    @Override
+    public HttpMethod getMethod() {
+      return HttpMethod.GET;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return new HttpHeaders();
+    }
+  }
+
+  private static class TestResponse implements ClientHttpResponse {
+    private final byte[] body;
+
+    private TestResponse(String body) {
+      this.body = body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public HttpStatusCode getStatusCode() {
+      return HttpStatus.OK;
+    }
+
+    @Override
+    public String getStatusText() {
+      return "OK";
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return new HttpHeaders();
+    }
+
+    @Override
+    public InputStream getBody() {
+      return new ByteArrayInputStream(body);
+    }
+
+    @Override
+    public void close() {}
+  }
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Embedded HTTP server that stands in for the Webin REST, Webin authentication and Biosamples
+ * services so that the services can be tested, and measured, offline. It serves canned responses
+ * for any accession:
+ *
+ * <ul>
+ *   <li>{@code POST /auth/token}: a token that expires after an hour.
+ *   <li>{@code GET /ena/submit/drop-box/cli/reference/sample/{id}}: the ENA sample.
+ *   <li>{@code GET /ena/submit/drop-box/samples/{id}}: the sample XML.
+ *   <li>{@code GET /ena/submit/drop-box/cli/reference/{project,run,analysis}/{id}}: the study, run
+ *       or analysis.
+ *   <li>{@code GET /biosamples/v2/samples/{id}}: the Biosamples sample.
+ *   <li>{@code GET /biosamples/samples?filter=acc:{id}...}: Biosamples search results.
+ * </ul>
+ *
+ * <p>Accessions starting with {@code SAM} are Biosamples accessions and the others ENA accessions.
+ * Both refer to the same sample, for example SAMEA1 and ERS1. Accessions that contain {@code
+ * UNKNOWN} are not found. Biosamples records of accessions that contain {@code PRIVATE} have no
+ * taxonomy, like those of private samples, so that the ENA fallback is used. Studies, runs and
+ * analyses whose accessions contain {@code PRIVATE} cannot be referenced.
+ *
+ * <p>Biosamples sample responses have an {@code ETag}. Requests whose {@code If-None-Match} header
+ * matches it are answered with 304 (Not Modified).
+ *
+ * <p>Every response is delayed by the configured latency and fails with 503 at the configured
+ * error rate.
+ */
+public class StubWebinServer implements AutoCloseable {
+
+  public static final String AUTH_TOKEN = "auth";
+  public static final String SRA_SAMPLE = "sraSample";
+  public static final String SAMPLE_XML = "sampleXml";
+  public static final String BIOSAMPLES_SAMPLE = "biosamplesSample";
+  /** Counts the Biosamples sample requests that were answered with 304 (Not Modified). */
+  public static final String BIOSAMPLES_SAMPLE_NOT_MODIFIED = "biosamplesSampleNotModified";
+  public static final String BIOSAMPLES_SEARCH = "biosamplesSearch";
+  public static final String STUDY = "study";
+  public static final String RUN = "run";
+  public static final String ANALYSIS = "analysis";
+
+  private static final String WEBIN_REST_PATH = "/ena/submit/drop-box/";
+  private static final String BIOSAMPLES_PATH = "/biosamples";
+
+  private static final int TAX_ID = 9606;
+  private static final String ORGANISM = "Homo sapiens";
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final Duration latency;
+  private final double errorRate;
+  private final int attributeCount;
+
+  private final Map<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+
+  public static class Builder {
+    private Duration latency = Duration.ZERO;
+    private double errorRate;
+    private int attributeCount = 10;
+
+    /** The time every response is delayed by. */
+    public Builder setLatency(Duration latency) {
+      this.latency = latency;
+      return this;
+    }
+
+    /** The fraction of requests, between 0 and 1, that fail with 503. */
+    public Builder setErrorRate(double errorRate) {
+      this.errorRate = errorRate;
+      return this;
+    }
+
+    /** The number of attributes of every sample, which determines the size of the responses. */
+    public Builder setAttributeCount(int attributeCount) {
+      this.attributeCount = attributeCount;
+      return this;
+    }
+
+    public StubWebinServer start() throws IOException {
+      return new StubWebinServer(this);
+    }
+  }
+
+  private StubWebinServer(Builder builder) throws IOException {
+    this.latency = builder.latency;
+    this.errorRate = builder.errorRate;
+    this.attributeCount = builder.attributeCount;
+
+    this.executor =
+        Executors.newCachedThreadPool(
+            r -> {
+              Thread thread = new Thread(r, "stub-webin-server");
+              thread.setDaemon(true);
+              return thread;
+            });
+    this.server =
+        HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    this.server.setExecutor(executor);
+    this.server.createContext("/", this::handle);
+    this.server.start();
+  }
+
+  public String getBaseUri() {
+    return "http://localhost:" + server.getAddress().getPort();
+  }
+
+  public String getWebinRestUri() {
+    return getBaseUri() + WEBIN_REST_PATH;
+  }
+
+  public String getWebinAuthUri() {
+    return getBaseUri() + "/auth/token";
+  }
+
+  public String getBiosamplesUri() {
+    return getBaseUri() + BIOSAMPLES_PATH;
+  }
+
+  /** Returns the number of requests received by an endpoint, for example {@link #SRA_SAMPLE}. */
+  public long getRequestCount(String endpoint) {
+    LongAdder count = requestCounts.get(endpoint);
+    return count != null ? count.sum() : 0;
+  }
+
+  public void resetRequestCounts() {
+    requestCounts.clear();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      // Clients may join base URIs that end with a slash with paths that start with one.
+      String path = exchange.getRequestURI().getPath().replaceAll("/+", "/");
+      String endpoint = getEndpoint(exchange.getRequestMethod(), path);
+      if (endpoint == null) {
+        send(exchange, 404, "text/plain", "");
+        return;
+      }
+      requestCounts.computeIfAbsent(endpoint, key -> new LongAdder()).increment();
+
+      if (!latency.isZero()) {
+        Thread.sleep(latency.toMillis());
+      }
+      if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+        send(exchange, 503, "text/plain", "Service unavailable");
+        return;
+      }
+
+      String id = path.substring(path.lastIndexOf('/') + 1);
+      switch (endpoint) {
+        case AUTH_TOKEN:
+          send(exchange, 200, "text/plain", token());
+          break;
+        case BIOSAMPLES_SEARCH:
+          send(exchange, 200, "application/hal+json", searchJson(exchange));
+          break;
+        default:
+          if (id.contains("UNKNOWN")) {
+            send(exchange, 404, "text/plain", "");
+          } else if (endpoint.equals(SRA_SAMPLE)) {
+            send(exchange, 200, "application/json", sraSampleJson(id));
+          } else if (endpoint.equals(STUDY)) {
+            send(exchange, 200, "application/json", studyJson(id));
+          } else if (endpoint.equals(RUN) || endpoint.equals(ANALYSIS)) {
+            send(exchange, 200, "application/json", referenceJson(id));
+          } else if (endpoint.equals(SAMPLE_XML)) {
+            send(exchange, 200, "application/xml", sampleXml(id));
+          } else {
+            sendBiosamplesSample(exchange, id);
+          }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static String getEndpoint(String method, String path) {
+    if (method.equals("POST") && path.equals("/auth/token")) {
+      return AUTH_TOKEN;
+    }
+    if (!method.equals("GET")) {
+      return null;
+    }
+    if (path.startsWith(WEBIN_REST_PATH + "cli/reference/sample/")) {
+      return SRA_SAMPLE;
+    }
+    if (path.startsWith(WEBIN_REST_PATH + "cli/reference/project/")) {
+      return STUDY;
+    }
+    if (path.startsWith(WEBIN_REST_PATH + "cli/reference/run/")) {
+      return RUN;
+    }
+    if (path.startsWith(WEBIN_REST_PATH + "cli/reference/analysis/")) {
+      return ANALYSIS;
+    }
+    if (path.startsWith(WEBIN_REST_PATH + "samples/")) {
+      return SAMPLE_XML;
+    }
+    if (path.startsWith(BIOSAMPLES_PATH + "/v2/samples/")) {
+      return BIOSAMPLES_SAMPLE;
+    }
+    if (path.equals(BIOSAMPLES_PATH + "/samples")) {
+      return BIOSAMPLES_SEARCH;
+    }
+    return null;
+  }
+
+  private void sendBiosamplesSample(HttpExchange exchange, String id) throws IOException {
+    String etag = "\"" + biosamplesId(id) + "\"";
+    exchange.getResponseHeaders().set("ETag", etag);
+    if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+      requestCounts
+          .computeIfAbsent(BIOSAMPLES_SAMPLE_NOT_MODIFIED, key -> new LongAdder())
+          .increment();
+      exchange.sendResponseHeaders(304, -1);
+      return;
+    }
+    send(exchange, 200, "application/json", biosamplesSampleJson(id));
+  }
+
+  private static void send(HttpExchange exchange, int status, String contentType, String body)
+      throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", contentType);
+    exchange.sendResponseHeaders(status, bytes.length > 0 ? bytes.length : -1);
+    if (bytes.length > 0) {
+      try (OutputStream outputStream = exchange.getResponseBody()) {
+        outputStream.write(bytes);
+      }
+    }
+  }
+
+  /** Returns the number shared by the Biosamples and ENA accessions of a sample. */
+  private static String number(String id) {
+    return id.replaceFirst("^(SAM[A-Z]*|[A-Z]RS)", "");
+  }
+
+  private static String biosamplesId(String id) {
+    return id.startsWith("SAM") ? id : "SAMEA" + number(id);
+  }
+
+  private static String sraId(String id) {
+    return id.startsWith("SAM") ? "ERS" + number(id) : id;
+  }
+
+  private static String token() {
+    Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+    String payload = "{\"exp\":" + Instant.now().plus(Duration.ofHours(1)).getEpochSecond() + "}";
+    return encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8))
+        + "."
+        + encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8))
+        + ".";
+  }
+
+  private static String sraSampleJson(String id) {
+    return String.format(
+        "{\"taxId\": %d, \"id\": \"%s\", \"organism\": \"%s\", \"bioSampleId\": \"%s\","
+            + " \"alias\": \"alias-%s\", \"canBeReferenced\": true}",
+        TAX_ID, sraId(id), ORGANISM, biosamplesId(id), number(id));
+  }
+
+  private static String studyJson(String id) {
+    return String.format(
+        "{\"id\": \"%s\", \"bioProjectId\": \"PRJEB%s\", \"locusTags\": [\"TAG%s\"],"
+            + " \"canBeReferenced\": %b}",
+        id, id.replaceAll("\\D", ""), id.replaceAll("\\D", ""), !id.contains("PRIVATE"));
+  }
+
+  private static String referenceJson(String id) {
+    return String.format(
+        "{\"id\": \"%s\", \"alias\": \"alias-%s\", \"canBeReferenced\": %b}",
+        id, id, !id.contains("PRIVATE"));
+  }
+
+  private String sampleXml(String id) {
+    StringBuilder xml = new StringBuilder();
+    xml.append("<SAMPLE_SET><SAMPLE alias=\"alias-")
+        .append(number(id))
+        .append("\" accession=\"")
+        .append(sraId(id))
+        .append("\"><SAMPLE_NAME><TAXON_ID>")
+        .append(TAX_ID)
+        .append("</TAXON_ID><SCIENTIFIC_NAME>")
+        .append(ORGANISM)
+        .append("</SCIENTIFIC_NAME></SAMPLE_NAME><SAMPLE_ATTRIBUTES>");
+    for (int i = 0; i < attributeCount; i++) {
+      xml.append("<SAMPLE_ATTRIBUTE><TAG>attribute")
+          .append(i)
+          .append("</TAG><VALUE>value")
+          .append(i)
+          .append("</VALUE></SAMPLE_ATTRIBUTE>");
+    }
+    return xml.append("</SAMPLE_ATTRIBUTES></SAMPLE></SAMPLE_SET>").toString();
+  }
+
+  private String biosamplesSampleJson(String id) {
+    String accession = biosamplesId(id);
+    boolean isPrivate = accession.contains("PRIVATE");
+    StringBuilder json = new StringBuilder();
+    json.append("{\"name\": \"alias-")
+        .append(number(id))
+        .append("\", \"accession\": \"")
+        .append(accession)
+        .append("\", ");
+    if (!isPrivate) {
+      json.append("\"taxId\": ").append(TAX_ID).append(", ");
+    }
+    json.append("\"characteristics\": {");
+    if (!isPrivate) {
+      json.append("\"organism\": [{\"text\": \"")
+          .append(ORGANISM)
+          .append("\", \"ontologyTerms\": [\"http://purl.obolibrary.org/obo/NCBITaxon_")
+          .append(TAX_ID)
+          .append("\"]}]");
+    }
+    for (int i = 0; i < attributeCount; i++) {
+      if (!isPrivate || i > 0) {
+        json.append(", ");
+      }
+      json.append("\"attribute").append(i).append("\": [{\"text\": \"value").append(i);
+      json.append("\"}]");
+    }
+    return json.append("}}").toString();
+  }
+
+  /** Returns all requested samples that exist in a single page. */
+  private String searchJson(HttpExchange exchange) {
+    Set<String> accessions = new LinkedHashSet<>();
+    String query = exchange.getRequestURI().getRawQuery();
+    if (query != null) {
+      for (String parameter : query.split("&")) {
+        String value = URLDecoder.decode(parameter, StandardCharsets.UTF_8);
+        if (value.startsWith("filter=acc:")) {
+          accessions.add(value.substring("filter=acc:".length()));
+        }
+      }
+    }
+
+    List<String> samples = new ArrayList<>();
+    for (String accession : accessions) {
+      if (!accession.contains("UNKNOWN")) {
+        samples.add(biosamplesSampleJson(accession));
+      }
+    }
+    return String.format(
+        "{\"_embedded\": {\"samples\": [%s]}, \"page\": {\"size\": %d, \"totalElements\": %d,"
+            + " \"totalPages\": 1, \"number\": 0}}",
+        String.join(", ", samples), samples.size(), samples.size());
+  }
+}
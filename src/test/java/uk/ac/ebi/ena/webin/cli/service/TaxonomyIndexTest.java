@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+public class TaxonomyIndexTest {
+
+  private static final String NODES =
+      String.join(
+          "\n",
+          "1\t|\t1\t|\tno rank\t|\t\t|",
+          "2759\t|\t131567\t|\tsuperkingdom\t|\t\t|",
+          "131567\t|\t1\t|\tno rank\t|\t\t|",
+          "4932\t|\t4930\t|\tspecies\t|\t\t|",
+          "4930\t|\t2759\t|\tgenus\t|\t\t|",
+          "9606\t|\t9605\t|\tspecies\t|\t\t|",
+          "9605\t|\t2759\t|\tgenus\t|\t\t|",
+          "33208\t|\t2759\t|\tkingdom\t|\t\t|",
+          "100\t|\t33208\t|\tgenus\t|\t\t|",
+          "200\t|\t2759\t|\tgenus\t|\t\t|");
+
+  private static final String NAMES =
+      String.join(
+          "\n",
+          "1\t|\troot\t|\t\t|\tscientific name\t|",
+          "2759\t|\tEukaryota\t|\t\t|\tscientific name\t|",
+          "2759\t|\teukaryotes\t|\t\t|\tgenbank common name\t|",
+          "131567\t|\tcellular organisms\t|\t\t|\tscientific name\t|",
+          "4932\t|\tSaccharomyces cerevisiae\t|\t\t|\tscientific name\t|",
+          "4932\t|\tbaker's yeast\t|\t\t|\tcommon name\t|",
+          "4930\t|\tSaccharomyces\t|\t\t|\tscientific name\t|",
+          "9606\t|\tHomo sapiens\t|\t\t|\tscientific name\t|",
+          "9606\t|\thuman\t|\t\t|\tgenbank common name\t|",
+          "9605\t|\tHomo\t|\t\t|\tscientific name\t|",
+          "33208\t|\tMetazoa\t|\t\t|\tscientific name\t|",
+          "100\t|\tAnkyra\t|\tAnkyra <metazoa>\t|\tscientific name\t|",
+          "200\t|\tAnkyra\t|\tAnkyra <plant>\t|\tscientific name\t|");
+
+  @Test
+  public void testGetTaxon() throws IOException {
+    TaxonomyIndex index = buildIndex();
+
+    assertThat(index.size()).isEqualTo(10);
+
+    TaxonomyIndex.Taxon taxon = index.getTaxon(9606);
+    assertThat(taxon.getTaxId()).isEqualTo(9606);
+    assertThat(taxon.getParentTaxId()).isEqualTo(9605);
+    assertThat(taxon.getScientificName()).isEqualTo("Homo sapiens");
+    assertThat(taxon.getRank()).isEqualTo("species");
+
+    assertThat(index.getScientificName(4932)).isEqualTo("Saccharomyces cerevisiae");
+    assertThat(index.getTaxon(12345)).isNull();
+    assertThat(index.getScientificName(12345)).isNull();
+  }
+
+  @Test
+  public void testGetTaxId() throws IOException {
+    TaxonomyIndex index = buildIndex();
+
+    assertThat(index.getTaxId("Homo sapiens")).isEqualTo(9606);
+    assertThat(index.getTaxId(" homo SAPIENS ")).isEqualTo(9606);
+    assertThat(index.getTaxId("Saccharomyces")).isEqualTo(4930);
+    assertThat(index.getTaxId("root")).isEqualTo(1);
+    // Only scientific names are indexed.
+    assertThat(index.getTaxId("human")).isNull();
+    assertThat(index.getTaxId("Unknown")).isNull();
+    assertThat(index.getTaxId("")).isNull();
+
+    // Names shared by more than one taxon are ambiguous.
+    assertThat(index.getTaxId("Ankyra")).isNull();
+    assertThat(index.getTaxIds("Ankyra")).containsExactly(100, 200);
+  }
+
+  @Test
+  public void testGetLineage() throws IOException {
+    TaxonomyIndex index = buildIndex();
+
+    List<String> lineage =
+        index.getLineage(9606).stream()
+            .map(TaxonomyIndex.Taxon::getScientificName)
+            .collect(Collectors.toList());
+    assertThat(lineage)
+        .containsExactly("Homo sapiens", "Homo", "Eukaryota", "cellular organisms", "root");
+
+    assertThat(index.getLineage(12345)).isEmpty();
+  }
+
+  @Test
+  public void testOpen() throws IOException {
+    Path directory = writeTaxdump();
+    Path indexFile = directory.resolve("taxonomy.idx");
+    TaxonomyIndex.build(directory, indexFile);
+
+    TaxonomyIndex index = TaxonomyIndex.open(indexFile);
+    assertThat(index.size()).isEqualTo(10);
+    assertThat(index.getTaxId("Metazoa")).isEqualTo(33208);
+  }
+
+  private static TaxonomyIndex buildIndex() throws IOException {
+    Path directory = writeTaxdump();
+    return TaxonomyIndex.build(directory, directory.resolve("taxonomy.idx"));
+  }
+
+  private static Path writeTaxdump() throws IOException {
+    Path directory = Files.createTempDirectory("taxdump");
+    Files.write(directory.resolve("nodes.dmp"), NODES.getBytes(StandardCharsets.UTF_8));
+    Files.write(directory.resolve("names.dmp"), NAMES.getBytes(StandardCharsets.UTF_8));
+    return directory;
+  }
+}
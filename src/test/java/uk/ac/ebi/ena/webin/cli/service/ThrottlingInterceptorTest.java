@@ -0,0 +1,54 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class ThrottlingInterceptorTest {
+
+  @Test
+  public void testGetEndpoint() {
+    ThrottlingInterceptor interceptor = new ThrottlingInterceptor(0, 4, false);
+    interceptor.addServiceEndpoint("https://www.ebi.ac.uk/ena/submit/drop-box/api");
+    interceptor.addServiceEndpoint("https://www.ebi.ac.uk/ena/submit/webin-v2");
+    interceptor.addServiceEndpoint("https://www.ebi.ac.uk/biosamples");
+
+    assertThat(interceptor.getEndpoint("https://www.ebi.ac.uk/ena/submit/webin-v2/sample/SAMEA1"))
+        .isEqualTo("https://www.ebi.ac.uk/ena/submit/webin-v2");
+    assertThat(interceptor.getEndpoint("https://www.ebi.ac.uk/biosamples/samples?size=10"))
+        .isEqualTo("https://www.ebi.ac.uk/biosamples");
+    assertThat(interceptor.getEndpoint("https://www.ebi.ac.uk/biosamples"))
+        .isEqualTo("https://www.ebi.ac.uk/biosamples");
+    // Only whole path segments match.
+    assertThat(interceptor.getEndpoint("https://www.ebi.ac.uk/biosamples-v2/samples"))
+        .isEqualTo("https://www.ebi.ac.uk");
+    assertThat(interceptor.getEndpoint("https://www.ebi.ac.uk/ena/taxonomy/rest/any-name/x"))
+        .isEqualTo("https://www.ebi.ac.uk");
+  }
+
+  @Test
+  public void testServicesOnTheSameHostAreThrottledSeparately() {
+    ThrottlingInterceptor interceptor = new ThrottlingInterceptor(0, 4, false);
+    interceptor.addServiceEndpoint("https://www.ebi.ac.uk/ena/submit/webin-v2");
+    interceptor.addServiceEndpoint("https://www.ebi.ac.uk/biosamples");
+
+    String webinEndpoint = interceptor.getEndpoint("https://www.ebi.ac.uk/ena/submit/webin-v2/x");
+    String biosamplesEndpoint = interceptor.getEndpoint("https://www.ebi.ac.uk/biosamples/x");
+    assertThat(interceptor.getConcurrencyLimiter(webinEndpoint))
+        .isNotSameAs(interceptor.getConcurrencyLimiter(biosamplesEndpoint));
+    assertThat(interceptor.getRateLimiter(webinEndpoint))
+        .isNotSameAs(interceptor.getRateLimiter(biosamplesEndpoint));
+    // Without adaptive concurrency the limit stays at the maximum.
+    assertThat(interceptor.getConcurrencyLimiter(webinEndpoint).getLimit()).isEqualTo(4);
+  }
+}
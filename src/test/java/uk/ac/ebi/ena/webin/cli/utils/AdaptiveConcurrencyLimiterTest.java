@@ -0,0 +1,154 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceTimeoutException;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+  private static final Duration LATENCY = Duration.ofMillis(100);
+
+  @Test
+  public void testLimit() {
+    AdaptiveConcurrencyLimiter limiter =
+        new AdaptiveConcurrencyLimiter("https://test", 2, 1, 10, new TestClock(Instant.now()));
+
+    assertThat(limiter.tryAcquire()).isTrue();
+    assertThat(limiter.tryAcquire()).isTrue();
+    assertThat(limiter.tryAcquire()).isFalse();
+    assertThat(limiter.getInFlight()).isEqualTo(2);
+
+    limiter.onIgnore();
+    assertThat(limiter.getInFlight()).isOne();
+    assertThat(limiter.tryAcquire()).isTrue();
+  }
+
+  @Test
+  public void testAdditiveIncrease() {
+    AdaptiveConcurrencyLimiter limiter =
+        new AdaptiveConcurrencyLimiter("https://test", 4, 1, 5, new TestClock(Instant.now()));
+
+    // The limit grows by about one after a limit's worth of requests made while it was used up.
+    for (int i = 0; i < 5; i++) {
+      fill(limiter);
+      limiter.onSuccess(LATENCY);
+      drain(limiter);
+    }
+    assertThat(limiter.getLimit()).isEqualTo(5);
+
+    // The limit does not exceed the maximum.
+    for (int i = 0; i < 20; i++) {
+      fill(limiter);
+      limiter.onSuccess(LATENCY);
+      drain(limiter);
+    }
+    assertThat(limiter.getLimit()).isEqualTo(5);
+  }
+
+  @Test
+  public void testLimitDoesNotGrowWhileUnused() {
+    AdaptiveConcurrencyLimiter limiter =
+        new AdaptiveConcurrencyLimiter("https://test", 4, 1, 10, new TestClock(Instant.now()));
+
+    for (int i = 0; i < 100; i++) {
+      assertThat(limiter.tryAcquire()).isTrue();
+      limiter.onSuccess(LATENCY);
+    }
+    assertThat(limiter.getLimit()).isEqualTo(4);
+  }
+
+  @Test
+  public void testMultiplicativeDecreaseOnOverload() {
+    TestClock clock = new TestClock(Instant.now());
+    AdaptiveConcurrencyLimiter limiter =
+        new AdaptiveConcurrencyLimiter("https://test", 8, 2, 10, clock);
+
+    assertThat(limiter.tryAcquire()).isTrue();
+    limiter.onOverload();
+    assertThat(limiter.getLimit()).isEqualTo(6);
+
+    // The requests that were in flight when the endpoint became overloaded cut the limit once.
+    assertThat(limiter.tryAcquire()).isTrue();
+    limiter.onOverload();
+    assertThat(limiter.getLimit()).isEqualTo(6);
+
+    clock.advance(AdaptiveConcurrencyLimiter.DECREASE_INTERVAL);
+    assertThat(limiter.tryAcquire()).isTrue();
+    limiter.onOverload();
+    assertThat(limiter.getLimit()).isEqualTo(4);
+
+    // The limit does not fall below the minimum.
+    for (int i = 0; i < 10; i++) {
+      clock.advance(AdaptiveConcurrencyLimiter.DECREASE_INTERVAL);
+      assertThat(limiter.tryAcquire()).isTrue();
+      limiter.onOverload();
+    }
+    assertThat(limiter.getLimit()).isEqualTo(2);
+  }
+
+  @Test
+  public void testDecreaseOnHighLatency() {
+    AdaptiveConcurrencyLimiter limiter =
+        new AdaptiveConcurrencyLimiter("https://test", 8, 1, 10, new TestClock(Instant.now()));
+
+    for (int i = 0; i < 10; i++) {
+      assertThat(limiter.tryAcquire()).isTrue();
+      limiter.onSuccess(LATENCY);
+    }
+    assertThat(limiter.getLimit()).isEqualTo(8);
+
+    assertThat(limiter.tryAcquire()).isTrue();
+    limiter.onSuccess(LATENCY.multipliedBy(10));
+    assertThat(limiter.getLimit()).isEqualTo(6);
+  }
+
+  @Test
+  public void testAcquireDoesNotWaitBeyondDeadline() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("https://test", 1, 1, 1);
+
+    limiter.acquire(Deadline.none());
+    assertThatThrownBy(() -> limiter.acquire(Deadline.after(Duration.ofMillis(100))))
+        .isInstanceOf(ServiceTimeoutException.class);
+  }
+
+  @Test
+  public void testAcquireWaitsForRelease() throws Exception {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("https://test", 1, 1, 1);
+    limiter.acquire(Deadline.none());
+
+    CompletableFuture<Void> waiting =
+        CompletableFuture.runAsync(() -> limiter.acquire(Deadline.after(Duration.ofSeconds(10))));
+    Thread.sleep(100);
+    assertThat(waiting.isDone()).isFalse();
+
+    limiter.onIgnore();
+    waiting.get(10, TimeUnit.SECONDS);
+    assertThat(limiter.getInFlight()).isOne();
+  }
+
+  private static void fill(AdaptiveConcurrencyLimiter limiter) {
+    while (limiter.tryAcquire()) {}
+  }
+
+  private static void drain(AdaptiveConcurrencyLimiter limiter) {
+    while (limiter.getInFlight() > 0) {
+      limiter.onIgnore();
+    }
+  }
+}
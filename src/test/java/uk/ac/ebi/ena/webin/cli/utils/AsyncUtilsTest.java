@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+public class AsyncUtilsTest {
+
+  @Test
+  public void testUnwrap() {
+    IllegalStateException error = new IllegalStateException();
+
+    assertThat(AsyncUtils.unwrap(new CompletionException(error))).isSameAs(error);
+    assertThat(AsyncUtils.unwrap(error)).isSameAs(error);
+  }
+
+  @Test
+  public void testPropagateCancellation() {
+    CompletableFuture<String> source = new CompletableFuture<>();
+    CompletableFuture<Integer> dependent =
+        AsyncUtils.propagateCancellation(source.thenApply(String::length), source);
+
+    dependent.cancel(false);
+
+    assertThat(source.isCancelled()).isTrue();
+  }
+
+  @Test
+  public void testThenComposeCancellable() {
+    CompletableFuture<String> source = new CompletableFuture<>();
+    CompletableFuture<Integer> composed = new CompletableFuture<>();
+    CompletableFuture<Integer> result =
+        AsyncUtils.thenComposeCancellable(source, value -> composed);
+
+    source.complete("value");
+    assertThat(result.isDone()).isFalse();
+
+    composed.complete(5);
+    assertThat(result.join()).isEqualTo(5);
+  }
+
+  @Test
+  public void testThenComposeCancellableCancelsComposedFuture() {
+    CompletableFuture<String> source = new CompletableFuture<>();
+    CompletableFuture<Integer> composed = new CompletableFuture<>();
+    CompletableFuture<Integer> result =
+        AsyncUtils.thenComposeCancellable(source, value -> composed);
+
+    source.complete("value");
+    result.cancel(false);
+
+    assertThat(composed.isCancelled()).isTrue();
+  }
+
+  @Test
+  public void testThenComposeCancellableBeforeSourceCompletes() {
+    CompletableFuture<String> source = new CompletableFuture<>();
+    AtomicBoolean called = new AtomicBoolean();
+    CompletableFuture<Integer> result =
+        AsyncUtils.thenComposeCancellable(
+            source,
+            value -> {
+              called.set(true);
+              return CompletableFuture.completedFuture(1);
+            });
+
+    result.cancel(false);
+
+    assertThat(source.isCancelled()).isTrue();
+    assertThat(called.get()).isFalse();
+  }
+}
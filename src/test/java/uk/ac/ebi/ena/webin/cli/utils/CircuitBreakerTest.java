@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+  private static final Duration OPEN_DURATION = Duration.ofSeconds(30);
+
+  @Test
+  public void testOpensAfterConsecutiveFailures() {
+    CircuitBreaker circuitBreaker = createCircuitBreaker(new TestClock(Instant.now()));
+
+    circuitBreaker.onFailure();
+    circuitBreaker.onFailure();
+    circuitBreaker.onSuccess();
+    circuitBreaker.onFailure();
+    circuitBreaker.onFailure();
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+
+    circuitBreaker.onFailure();
+    circuitBreaker.onFailure();
+    circuitBreaker.onFailure();
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(circuitBreaker.tryAcquirePermission()).isFalse();
+  }
+
+  @Test
+  public void testHalfOpenTrialCallSucceeds() {
+    TestClock clock = new TestClock(Instant.now());
+    CircuitBreaker circuitBreaker = createCircuitBreaker(clock);
+    open(circuitBreaker);
+
+    clock.advance(OPEN_DURATION);
+    assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+    // Only one trial call at a time.
+    assertThat(circuitBreaker.tryAcquirePermission()).isFalse();
+
+    circuitBreaker.onSuccess();
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+  }
+
+  @Test
+  public void testHalfOpenTrialCallFails() {
+    TestClock clock = new TestClock(Instant.now());
+    CircuitBreaker circuitBreaker = createCircuitBreaker(clock);
+    open(circuitBreaker);
+
+    clock.advance(OPEN_DURATION);
+    assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+    circuitBreaker.onFailure();
+
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(circuitBreaker.tryAcquirePermission()).isFalse();
+  }
+
+  @Test
+  public void testHalfOpenTrialCallIgnored() {
+    TestClock clock = new TestClock(Instant.now());
+    CircuitBreaker circuitBreaker = createCircuitBreaker(clock);
+    open(circuitBreaker);
+
+    clock.advance(OPEN_DURATION);
+    assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+    circuitBreaker.onIgnore();
+
+    // Another trial call may be made.
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+    assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+  }
+
+  @Test
+  public void testGetEndpoint() {
+    assertThat(CircuitBreaker.getEndpoint("https://www.ebi.ac.uk/ena/submit/{id}"))
+        .isEqualTo("https://www.ebi.ac.uk");
+    assertThat(CircuitBreaker.getEndpoint("http://localhost:8080"))
+        .isEqualTo("http://localhost:8080");
+  }
+
+  @Test
+  public void testGetServiceEndpoint() {
+    assertThat(CircuitBreaker.getServiceEndpoint("https://www.ebi.ac.uk/ena/submit/drop-box/"))
+        .isEqualTo("https://www.ebi.ac.uk/ena/submit/drop-box");
+    assertThat(CircuitBreaker.getServiceEndpoint("https://www.ebi.ac.uk/biosamples?size=1#top"))
+        .isEqualTo("https://www.ebi.ac.uk/biosamples");
+    assertThat(CircuitBreaker.forEndpoint("https://www.ebi.ac.uk/biosamples"))
+        .isNotSameAs(CircuitBreaker.forEndpoint("https://www.ebi.ac.uk/ena/submit/drop-box"));
+  }
+
+  private static CircuitBreaker createCircuitBreaker(TestClock clock) {
+    return new CircuitBreaker("http://localhost", 5, OPEN_DURATION, clock);
+  }
+
+  private static void open(CircuitBreaker circuitBreaker) {
+    for (int i = 0; i < 5; i++) {
+      circuitBreaker.onFailure();
+    }
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+  }
+}
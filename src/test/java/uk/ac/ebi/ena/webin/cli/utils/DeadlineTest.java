@@ -0,0 +1,57 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import org.junit.Test;
+
+public class DeadlineTest {
+
+  @Test
+  public void testNone() {
+    Deadline deadline = Deadline.none();
+    assertThat(deadline.isNone()).isTrue();
+    assertThat(deadline.isExpired()).isFalse();
+    assertThat(deadline.getRemainingMillis()).isEqualTo(Long.MAX_VALUE);
+    assertThat(deadline.getTimeout()).isNull();
+    assertThat(Deadline.after(null)).isSameAs(deadline);
+  }
+
+  @Test
+  public void testAfter() {
+    Deadline deadline = Deadline.after(Duration.ofMinutes(1));
+    assertThat(deadline.isNone()).isFalse();
+    assertThat(deadline.isExpired()).isFalse();
+    assertThat(deadline.getRemainingMillis()).isBetween(1L, 60_000L);
+    assertThat(deadline.getTimeout()).isEqualTo(Duration.ofMinutes(1));
+
+    Deadline expired = Deadline.after(Duration.ZERO);
+    assertThat(expired.isExpired()).isTrue();
+    assertThat(expired.getRemainingMillis()).isZero();
+  }
+
+  @Test
+  public void testCurrent() {
+    Deadline deadline = Deadline.after(Duration.ofMinutes(1));
+    assertThat(Deadline.current().isNone()).isTrue();
+
+    Deadline previous = Deadline.setCurrent(deadline);
+    try {
+      assertThat(previous).isNull();
+      assertThat(Deadline.current()).isSameAs(deadline);
+    } finally {
+      Deadline.restoreCurrent(previous);
+    }
+    assertThat(Deadline.current().isNone()).isTrue();
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.Test;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceTimeoutException;
+
+public class RateLimiterTest {
+
+  @Test
+  public void testBurstThenRate() {
+    TestClock clock = new TestClock(Instant.now());
+    RateLimiter rateLimiter = new RateLimiter("https://test", 10, 2, clock);
+
+    assertThat(rateLimiter.reserve(Long.MAX_VALUE)).isZero();
+    assertThat(rateLimiter.reserve(Long.MAX_VALUE)).isZero();
+    // Tokens are borrowed from the future so that waiting callers are served in order.
+    assertThat(rateLimiter.reserve(Long.MAX_VALUE)).isEqualTo(100);
+    assertThat(rateLimiter.reserve(Long.MAX_VALUE)).isEqualTo(200);
+    assertThat(rateLimiter.reserve(150)).isEqualTo(-1);
+
+    clock.advance(Duration.ofMillis(200));
+    assertThat(rateLimiter.reserve(Long.MAX_VALUE)).isEqualTo(100);
+
+    // The saved up tokens are capped.
+    clock.advance(Duration.ofHours(1));
+    assertThat(rateLimiter.reserve(Long.MAX_VALUE)).isZero();
+    assertThat(rateLimiter.reserve(Long.MAX_VALUE)).isZero();
+    assertThat(rateLimiter.reserve(Long.MAX_VALUE)).isEqualTo(100);
+  }
+
+  @Test
+  public void testPause() {
+    TestClock clock = new TestClock(Instant.now());
+    RateLimiter rateLimiter = new RateLimiter("https://test", 10, 5, clock);
+
+    rateLimiter.pause(Duration.ofSeconds(2));
+    assertThat(rateLimiter.reserve(Long.MAX_VALUE)).isEqualTo(2100);
+
+    // A shorter pause does not end the longer one.
+    rateLimiter.pause(Duration.ofSeconds(1));
+    assertThat(rateLimiter.reserve(Long.MAX_VALUE)).isEqualTo(2200);
+
+    clock.advance(Duration.ofSeconds(3));
+    assertThat(rateLimiter.reserve(Long.MAX_VALUE)).isZero();
+  }
+
+  @Test
+  public void testUnlimitedRateCanBePaused() {
+    TestClock clock = new TestClock(Instant.now());
+    RateLimiter rateLimiter = new RateLimiter("https://test", 0, 1, clock);
+
+    for (int i = 0; i < 100; i++) {
+      assertThat(rateLimiter.reserve(Long.MAX_VALUE)).isZero();
+    }
+
+    rateLimiter.pause(Duration.ofSeconds(1));
+    assertThat(rateLimiter.reserve(Long.MAX_VALUE)).isEqualTo(1000);
+    clock.advance(Duration.ofSeconds(1));
+    assertThat(rateLimiter.reserve(Long.MAX_VALUE)).isZero();
+  }
+
+  @Test
+  public void testAcquireDoesNotWaitBeyondDeadline() {
+    RateLimiter rateLimiter = new RateLimiter("https://test", 0, 1);
+    rateLimiter.pause(Duration.ofMinutes(1));
+
+    assertThatThrownBy(() -> rateLimiter.acquire(Deadline.after(Duration.ofMillis(100))))
+        .isInstanceOf(ServiceTimeoutException.class);
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.Test;
+
+public class RetryBudgetTest {
+
+  @Test
+  public void testRetriesAreLimitedToRatioOfRequests() {
+    TestClock clock = new TestClock(Instant.now());
+    RetryBudget retryBudget = new RetryBudget(0.5, 0, 2, clock);
+
+    // The budget starts full.
+    assertThat(retryBudget.tryRetry()).isTrue();
+    assertThat(retryBudget.tryRetry()).isTrue();
+    assertThat(retryBudget.tryRetry()).isFalse();
+
+    retryBudget.onRequest();
+    assertThat(retryBudget.tryRetry()).isFalse();
+    retryBudget.onRequest();
+    assertThat(retryBudget.tryRetry()).isTrue();
+    assertThat(retryBudget.tryRetry()).isFalse();
+  }
+
+  @Test
+  public void testMinRetriesPerSecond() {
+    TestClock clock = new TestClock(Instant.now());
+    RetryBudget retryBudget = new RetryBudget(0, 1, 2, clock);
+
+    assertThat(retryBudget.tryRetry()).isTrue();
+    assertThat(retryBudget.tryRetry()).isTrue();
+    assertThat(retryBudget.tryRetry()).isFalse();
+
+    clock.advance(Duration.ofSeconds(1));
+    assertThat(retryBudget.tryRetry()).isTrue();
+    assertThat(retryBudget.tryRetry()).isFalse();
+
+    // The budget is capped.
+    clock.advance(Duration.ofHours(1));
+    assertThat(retryBudget.tryRetry()).isTrue();
+    assertThat(retryBudget.tryRetry()).isTrue();
+    assertThat(retryBudget.tryRetry()).isFalse();
+  }
+}
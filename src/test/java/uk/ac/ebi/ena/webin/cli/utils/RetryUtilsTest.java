@@ -0,0 +1,250 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import uk.ac.ebi.ena.webin.cli.service.ServiceMetrics;
+import uk.ac.ebi.ena.webin.cli.service.exception.ServiceTimeoutException;
+
+public class RetryUtilsTest {
+
+  @Test
+  public void testExecuteWithRetryAsync() throws Exception {
+    AtomicInteger attempts = new AtomicInteger();
+    List<Integer> retries = new ArrayList<>();
+
+    CompletableFuture<String> result =
+        RetryUtils.executeWithRetryAsync(
+            null,
+            Deadline.none(),
+            ServiceMetrics.NOOP,
+            () -> {
+              if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("failed");
+              }
+              return "done";
+            },
+            retries::add,
+            AsyncUtils.getDefaultExecutor(),
+            IllegalStateException.class);
+
+    // Waits of 1s and 3s before the retries.
+    assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo("done");
+    assertThat(attempts.get()).isEqualTo(3);
+    assertThat(retries).containsExactly(1, 2);
+  }
+
+  @Test
+  public void testExecuteWithRetryAsyncDoesNotRetryOtherErrors() throws Exception {
+    AtomicInteger attempts = new AtomicInteger();
+    IllegalArgumentException error = new IllegalArgumentException("failed");
+
+    CompletableFuture<String> result =
+        RetryUtils.executeWithRetryAsync(
+            null,
+            Deadline.none(),
+            ServiceMetrics.NOOP,
+            () -> {
+              attempts.incrementAndGet();
+              throw error;
+            },
+            retryCount -> {},
+            AsyncUtils.getDefaultExecutor(),
+            IllegalStateException.class);
+
+    try {
+      result.get(10, TimeUnit.SECONDS);
+      throw new AssertionError("Expected an exception");
+    } catch (ExecutionException ex) {
+      assertThat(ex.getCause()).isSameAs(error);
+    }
+    assertThat(attempts.get()).isOne();
+  }
+
+  @Test
+  public void testOpenCircuitBreakerFailsFast() {
+    String uri = "http://circuit-breaker-test.ebi.ac.uk/samples/{id}";
+    CircuitBreaker circuitBreaker =
+        CircuitBreaker.forEndpoint(CircuitBreaker.getServiceEndpoint(uri));
+    for (int i = 0; i < CircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++) {
+      circuitBreaker.onFailure();
+    }
+    AtomicInteger attempts = new AtomicInteger();
+
+    assertThatThrownBy(
+            () ->
+                RetryUtils.executeWithRetry(
+                    uri,
+                    Deadline.none(),
+                    ServiceMetrics.NOOP,
+                    context -> attempts.incrementAndGet(),
+                    context -> {},
+                    IllegalStateException.class))
+        .isInstanceOf(CircuitBreakerOpenException.class);
+    assertThat(attempts.get()).isZero();
+  }
+
+  @Test
+  public void testTooManyRequestsAreNotReportedToCircuitBreaker() {
+    String uri = "http://too-many-requests-test.ebi.ac.uk/samples/{id}";
+    CircuitBreaker circuitBreaker =
+        CircuitBreaker.forEndpoint(CircuitBreaker.getServiceEndpoint(uri));
+    for (int i = 0; i < CircuitBreaker.DEFAULT_FAILURE_THRESHOLD - 1; i++) {
+      circuitBreaker.onFailure();
+    }
+    HttpClientErrorException error =
+        HttpClientErrorException.create(
+            HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", null, null, null);
+
+    assertThatThrownBy(
+            () ->
+                RetryUtils.executeWithRetry(
+                    uri,
+                    Deadline.none(),
+                    ServiceMetrics.NOOP,
+                    context -> {
+                      throw error;
+                    },
+                    context -> {}))
+        .isSameAs(error);
+
+    // The throttled call neither reset nor added to the consecutive failures.
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    circuitBreaker.onFailure();
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+  }
+
+  @Test
+  public void testRetriesStopBeforeDeadline() {
+    AtomicInteger attempts = new AtomicInteger();
+    IllegalStateException error = new IllegalStateException("failed");
+
+    // The first retry would wait about 1s, which does not leave time for another attempt.
+    assertThatThrownBy(
+            () ->
+                RetryUtils.executeWithRetry(
+                    null,
+                    Deadline.after(Duration.ofMillis(1200)),
+                    ServiceMetrics.NOOP,
+                    context -> {
+                      attempts.incrementAndGet();
+                      throw error;
+                    },
+                    context -> {},
+                    IllegalStateException.class))
+        .isInstanceOf(ServiceTimeoutException.class)
+        .hasCause(error);
+    assertThat(attempts.get()).isOne();
+  }
+
+  @Test
+  public void testExecuteWithRetryAsyncStopsBeforeDeadline() throws Exception {
+    AtomicInteger attempts = new AtomicInteger();
+
+    CompletableFuture<String> result =
+        RetryUtils.executeWithRetryAsync(
+            null,
+            Deadline.after(Duration.ofMillis(1200)),
+            ServiceMetrics.NOOP,
+            () -> {
+              attempts.incrementAndGet();
+              throw new IllegalStateException("failed");
+            },
+            retryCount -> {},
+            AsyncUtils.getDefaultExecutor(),
+            IllegalStateException.class);
+
+    try {
+      result.get(10, TimeUnit.SECONDS);
+      throw new AssertionError("Expected an exception");
+    } catch (ExecutionException ex) {
+      assertThat(ex.getCause()).isInstanceOf(ServiceTimeoutException.class);
+    }
+    assertThat(attempts.get()).isOne();
+  }
+
+  @Test
+  public void testDeadlineIsCurrentDuringAttempt() {
+    Deadline deadline = Deadline.after(Duration.ofMinutes(1));
+
+    Deadline current =
+        RetryUtils.executeWithRetry(
+            null,
+            deadline,
+            ServiceMetrics.NOOP,
+            context -> Deadline.current(),
+            context -> {},
+            Exception.class);
+
+    assertThat(current).isSameAs(deadline);
+    assertThat(Deadline.current().isNone()).isTrue();
+  }
+
+  @Test
+  public void testRetriesAreRecorded() throws Exception {
+    String uri = "http://retry-metrics-test.ebi.ac.uk/samples/{id}";
+    AtomicInteger attempts = new AtomicInteger();
+    List<String> recordedRetries = new ArrayList<>();
+    ServiceMetrics metrics =
+        new ServiceMetrics() {
+          @Override
+          public void recordRetry(String endpoint, int retryCount) {
+            recordedRetries.add(endpoint + " " + retryCount);
+          }
+        };
+
+    CompletableFuture<String> result =
+        RetryUtils.executeWithRetryAsync(
+            uri,
+            Deadline.none(),
+            metrics,
+            () -> {
+              if (attempts.incrementAndGet() < 2) {
+                throw new IllegalStateException("failed");
+              }
+              return "done";
+            },
+            retryCount -> {},
+            AsyncUtils.getDefaultExecutor(),
+            IllegalStateException.class);
+
+    assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo("done");
+    assertThat(recordedRetries).containsExactly("http://retry-metrics-test.ebi.ac.uk 1");
+  }
+
+  @Test
+  public void testParseRetryAfter() {
+    Instant now = Instant.parse("2015-10-21T07:28:00Z");
+
+    assertThat(RetryUtils.parseRetryAfter("120", now)).isEqualTo(Duration.ofSeconds(120));
+    assertThat(RetryUtils.parseRetryAfter(" 0 ", now)).isEqualTo(Duration.ZERO);
+    assertThat(RetryUtils.parseRetryAfter("Wed, 21 Oct 2015 07:28:30 GMT", now))
+        .isEqualTo(Duration.ofSeconds(30));
+    assertThat(RetryUtils.parseRetryAfter("Wed, 21 Oct 2015 07:27:00 GMT", now))
+        .isEqualTo(Duration.ZERO);
+    assertThat(RetryUtils.parseRetryAfter("-1", now)).isNull();
+    assertThat(RetryUtils.parseRetryAfter("soon", now)).isNull();
+    assertThat(RetryUtils.parseRetryAfter(null, now)).isNull();
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.junit.Test;
+
+public class SingleFlightTest {
+
+  private static final int CALLERS = 8;
+
+  @Test
+  public void testConcurrentCallsAreCoalesced() throws Exception {
+    SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+
+    List<Future<String>> results =
+        submit(
+            () ->
+                singleFlight.execute(
+                    "SAMEA1",
+                    () -> {
+                      calls.incrementAndGet();
+                      await(release);
+                      return "sample";
+                    }),
+            () -> singleFlight.getInFlightCount() == 1 && calls.get() == 1,
+            release);
+
+    for (Future<String> result : results) {
+      assertThat(result.get()).isEqualTo("sample");
+    }
+    assertThat(calls.get()).isOne();
+    assertThat(singleFlight.getInFlightCount()).isZero();
+
+    // Completed calls are not retained.
+    assertThat(singleFlight.execute("SAMEA1", () -> "again")).isEqualTo("again");
+  }
+
+  @Test
+  public void testErrorIsPropagatedToAllCallers() throws Exception {
+    SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    IllegalStateException error = new IllegalStateException("failed");
+
+    List<Future<String>> results =
+        submit(
+            () ->
+                singleFlight.execute(
+                    "SAMEA1",
+                    () -> {
+                      calls.incrementAndGet();
+                      await(release);
+                      throw error;
+                    }),
+            () -> singleFlight.getInFlightCount() == 1 && calls.get() == 1,
+            release);
+
+    for (Future<String> result : results) {
+      try {
+        result.get();
+        throw new AssertionError("Expected an exception");
+      } catch (ExecutionException ex) {
+        assertThat(ex.getCause()).isSameAs(error);
+      }
+    }
+    assertThat(calls.get()).isOne();
+    assertThat(singleFlight.getInFlightCount()).isZero();
+  }
+
+  @Test
+  public void testDifferentKeysAreNotCoalesced() {
+    SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    String result =
+        singleFlight.execute("SAMEA1", () -> singleFlight.execute("SAMEA2", () -> "nested"));
+
+    assertThat(result).isEqualTo("nested");
+  }
+
+  /**
+   * Submits the task from several threads, waits until the condition holds and all callers have
+   * had time to join the call in progress, and then releases the latch.
+   */
+  private static List<Future<String>> submit(
+      Callable<String> task, BooleanSupplier condition, CountDownLatch release)
+      throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+    try {
+      List<Future<String>> results = new ArrayList<>();
+      for (int i = 0; i < CALLERS; i++) {
+        results.add(executor.submit(task));
+      }
+      while (!condition.getAsBoolean()) {
+        Thread.sleep(10);
+      }
+      Thread.sleep(200);
+      release.countDown();
+      return results;
+    } finally {
+      executor.shutdown();
+      assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
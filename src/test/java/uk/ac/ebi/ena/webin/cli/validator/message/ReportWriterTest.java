@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.validator.message;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ScheduledFuture;
+import org.junit.Test;
+
+public class ReportWriterTest {
+
+  @Test
+  public void testLinesAreReadableBeforeFlush() throws IOException {
+    Path reportFile = File.createTempFile("report", null).toPath();
+    try (ReportWriter reportWriter = new ReportWriter(reportFile, Duration.ofHours(1), 1000)) {
+      reportWriter.write("LINE1\n");
+      reportWriter.write("LINE2\n");
+
+      assertThat(Files.readAllLines(reportFile)).containsExactly("LINE1", "LINE2");
+      assertThat(reportWriter.getFlushedLines()).isZero();
+
+      reportWriter.flush();
+      assertThat(reportWriter.getFlushedLines()).isEqualTo(2);
+    }
+  }
+
+  @Test
+  public void testFlushCount() throws Exception {
+    Path reportFile = File.createTempFile("report", null).toPath();
+    try (ReportWriter reportWriter = new ReportWriter(reportFile, Duration.ofHours(1), 10)) {
+      for (int i = 0; i < 9; i++) {
+        reportWriter.write("LINE\n");
+      }
+      Thread.sleep(100);
+      assertThat(reportWriter.getFlushedLines()).isZero();
+
+      reportWriter.write("LINE\n");
+      waitForFlushedLines(reportWriter, 10);
+    }
+  }
+
+  @Test
+  public void testFlushInterval() throws Exception {
+    Path reportFile = File.createTempFile("report", null).toPath();
+    try (ReportWriter reportWriter = new ReportWriter(reportFile, Duration.ofMillis(50), 1000)) {
+      reportWriter.write("LINE\n");
+      waitForFlushedLines(reportWriter, 1);
+    }
+  }
+
+  @Test
+  public void testClose() throws IOException {
+    Path reportFile = File.createTempFile("report", null).toPath();
+    ReportWriter reportWriter = new ReportWriter(reportFile, Duration.ofHours(1), 1000);
+    reportWriter.write("LINE1\n");
+    reportWriter.close();
+
+    assertThat(reportWriter.getFlushedLines()).isOne();
+    assertThat(Files.readAllLines(reportFile)).containsExactly("LINE1");
+    assertThatThrownBy(() -> reportWriter.write("LINE2\n")).isInstanceOf(IOException.class);
+
+    // Closing again has no effect.
+    reportWriter.close();
+  }
+
+  @Test
+  public void testCloseRemovesScheduledFlush() throws IOException {
+    Path reportFile = File.createTempFile("report", null).toPath();
+    ReportWriter reportWriter = new ReportWriter(reportFile, Duration.ofHours(1), 1000);
+    ScheduledFuture<?> scheduledFlush = reportWriter.getScheduledFlush();
+    assertThat(ReportWriter.isQueued(scheduledFlush)).isTrue();
+
+    reportWriter.close();
+    assertThat(ReportWriter.isQueued(scheduledFlush)).isFalse();
+  }
+
+  @Test
+  public void testScheduledFlushEndsWhenWriterIsCollected() throws Exception {
+    Path reportFile = File.createTempFile("report", null).toPath();
+    ReportWriter reportWriter = new ReportWriter(reportFile, Duration.ofMillis(10), 1000);
+    ScheduledFuture<?> scheduledFlush = reportWriter.getScheduledFlush();
+    WeakReference<ReportWriter> writerReference = new WeakReference<>(reportWriter);
+    reportWriter = null;
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while ((writerReference.get() != null || ReportWriter.isQueued(scheduledFlush))
+        && System.currentTimeMillis() < deadline) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertThat(writerReference.get()).isNull();
+    assertThat(scheduledFlush.isCancelled()).isTrue();
+    assertThat(ReportWriter.isQueued(scheduledFlush)).isFalse();
+  }
+
+  private static void waitForFlushedLines(ReportWriter reportWriter, long lines)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (reportWriter.getFlushedLines() < lines && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(reportWriter.getFlushedLines()).isEqualTo(lines);
+  }
+}
@@ -11,10 +11,14 @@
 package uk.ac.ebi.ena.webin.cli.validator.message;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import java.text.MessageFormat;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.assertj.core.api.Assertions;
 import org.junit.Test;
 import uk.ac.ebi.ena.webin.cli.validator.message.ValidationMessage.Severity;
+import uk.ac.ebi.ena.webin.cli.validator.message.source.MessageFormatCache;
 import uk.ac.ebi.ena.webin.cli.validator.message.source.MessageFormatSource;
 
 public class ValidationMessageTest {
@@ -39,6 +43,71 @@ public class ValidationMessageTest {
         .isEqualTo("Test TEST1 TEST2");
   }
 
+  @Test
+  public void testFormatCache() {
+    for (String pattern :
+        new String[] {"Test {0}", "Test {0,number,#.##} {1}", "Test ''{0}''", "Test"}) {
+      MessageFormatCache messageFormat = new MessageFormatCache(pattern);
+      for (int i = 0; i < 2; i++) {
+        Assertions.assertThat(messageFormat.format(1.2345, "TEST"))
+            .isEqualTo(MessageFormat.format(pattern, 1.2345, "TEST"));
+      }
+      Assertions.assertThat(messageFormat.get()).isSameAs(messageFormat.get());
+    }
+  }
+
+  @Test
+  public void testInvalidPatternThrowsWhenMessageIsCreated() {
+    assertThatThrownBy(() -> ValidationMessage.error("Test {0", "TEST"))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> ValidationMessage.error(new TestMessage("Test {0"), "TEST"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testInvalidArgumentThrowsWhenMessageIsCreated() {
+    assertThatThrownBy(() -> ValidationMessage.error("Test {0,number}", "TEST"))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> ValidationMessage.info(new TestMessage("Test {0,date}"), "TEST"))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThat(ValidationMessage.error("Test {0,number} {1}", 1, null).getMessage())
+        .isEqualTo("Test 1 null");
+  }
+
+  @Test
+  public void testMessageIsFormattedLazily() {
+    AtomicInteger formatCount = new AtomicInteger();
+    TestMessage source =
+        new TestMessage("Test {0}") {
+          @Override
+          public String format(Object... arguments) {
+            formatCount.incrementAndGet();
+            return super.format(arguments);
+          }
+        };
+
+    ValidationMessage message = ValidationMessage.error(source, "TEST");
+    assertThat(message.getSource()).isSameAs(source);
+    assertThat(formatCount.get()).isZero();
+
+    assertThat(message.getMessage()).isEqualTo("Test TEST");
+    assertThat(message.getMessage()).isEqualTo("Test TEST");
+    assertThat(formatCount.get()).isOne();
+  }
+
+  @Test
+  public void testErrorWithPattern() {
+    ValidationMessage message = ValidationMessage.error("Test {0} {1}", "TEST1", 2);
+    assertThat(message.getSeverity()).isEqualTo(Severity.ERROR);
+    assertThat(message.getSource()).isNull();
+    assertThat(message.getMessage()).isEqualTo("Test TEST1 2");
+
+    message = ValidationMessage.info("Test {0}", "TEST");
+    assertThat(message.getSeverity()).isEqualTo(Severity.INFO);
+    assertThat(message.getMessage()).isEqualTo("Test TEST");
+  }
+
   @Test
   public void testRegex() {
     Assertions.assertThat(new TestMessage("Test {0}").regex()).isEqualTo("Test .*");
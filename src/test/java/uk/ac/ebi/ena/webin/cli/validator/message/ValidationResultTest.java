@@ -17,11 +17,16 @@ import static uk.ac.ebi.ena.webin.cli.validator.message.ValidationResult.formatF
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.assertj.core.api.AssertionsForClassTypes;
 import org.junit.Test;
 import uk.ac.ebi.ena.webin.cli.validator.message.ValidationMessage.Severity;
+import uk.ac.ebi.ena.webin.cli.validator.message.listener.MessageCounter;
 
 public class ValidationResultTest {
 
@@ -195,6 +200,54 @@ public class ValidationResultTest {
     AssertionsForClassTypes.assertThat(lines.get(3)).endsWith("INFO: MESSAGE4 [ORIGIN: TEST]");
   }
 
+  @Test
+  public void testConcurrentAdd() throws Exception {
+    int threads = 8;
+    int messagesPerThread = 1000;
+    Path reportFile = File.createTempFile("temp", null).toPath();
+    ValidationResult result = new ValidationResult(reportFile.toFile());
+    result.setLog(false);
+    MessageCounter errorCounter = MessageCounter.regex(Severity.ERROR, "ERROR.*");
+    result.add(errorCounter);
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        ValidationResult chunkResult = result.create(new ValidationOrigin("CHUNK", t));
+        futures.add(
+            executor.submit(
+                () -> {
+                  for (int i = 0; i < messagesPerThread; i++) {
+                    chunkResult.add(
+                        i % 2 == 0
+                            ? ValidationMessage.error("ERROR" + i)
+                            : ValidationMessage.info("INFO" + i));
+                  }
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    result.close();
+
+    int total = threads * messagesPerThread;
+    assertThat(result.count()).isEqualTo(total);
+    assertThat(result.count(Severity.ERROR)).isEqualTo(total / 2);
+    assertThat(result.count(Severity.INFO)).isEqualTo(total / 2);
+    assertThat(result.isValid()).isFalse();
+    assertThat(errorCounter.getCount()).isEqualTo(total / 2);
+
+    List<String> lines = Files.readAllLines(reportFile);
+    assertThat(lines.size()).isEqualTo(total);
+    for (String line : lines) {
+      assertThat(line.matches("(ERROR: ERROR|INFO: INFO)\\d+ \\[CHUNK: \\d+\\]")).isTrue();
+    }
+  }
+
   @Test
   public void testWriteLog() throws IOException {
     try {
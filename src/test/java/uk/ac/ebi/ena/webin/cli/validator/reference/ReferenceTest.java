@@ -0,0 +1,132 @@
+/*
+ * Copyright 2018-2023 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.validator.reference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import org.junit.Test;
+
+public class ReferenceTest {
+
+  @Test
+  public void testGetAttributeFromShortList() {
+    Sample sample = new Sample();
+    sample.addAttribute(new Attribute("strain", "SK1", null, null, null));
+    sample.addAttribute(new Attribute("Organism", "Homo sapiens", null, null, null));
+
+    assertThat(sample.getAttribute("organism").getValue()).isEqualTo("Homo sapiens");
+    assertThat(sample.getAttribute("ORGANISM").getValue()).isEqualTo("Homo sapiens");
+    assertThat(sample.getAttribute("unknown")).isNull();
+    assertThat(sample.getAttribute(null)).isNull();
+  }
+
+  @Test
+  public void testGetAttributeFromIndexedList() {
+    List<Attribute> attributes = new ArrayList<>();
+    for (int i = 0; i < AttributeList.INDEX_THRESHOLD * 2; i++) {
+      attributes.add(new Attribute("attribute" + i, "value" + i, null, null, null));
+    }
+    attributes.add(new Attribute("Organism", "Homo sapiens", null, null, null));
+    attributes.add(new Attribute("organism", "Mus musculus", null, null, null));
+
+    Sample sample = new Sample();
+    sample.setAttributes(attributes);
+
+    assertThat(sample.getAttribute("attribute3").getValue()).isEqualTo("value3");
+    // The first attribute with the name is returned.
+    assertThat(sample.getAttribute("organism").getValue()).isEqualTo("Homo sapiens");
+
+    // The index follows changes to the list.
+    sample.getAttributes().remove(sample.getAttribute("organism"));
+    assertThat(sample.getAttribute("organism").getValue()).isEqualTo("Mus musculus");
+
+    sample.addAttribute(new Attribute("strain", "SK1", null, null, null));
+    assertThat(sample.getAttribute("STRAIN").getValue()).isEqualTo("SK1");
+
+    sample.getAttributes().set(0, new Attribute("replaced", "value", null, null, null));
+    assertThat(sample.getAttribute("attribute0")).isNull();
+    assertThat(sample.getAttribute("replaced")).isNotNull();
+
+    sample.getAttributes().clear();
+    assertThat(sample.getAttribute("attribute3")).isNull();
+  }
+
+  @Test
+  public void testScanAndIndexFoldCaseAlike() {
+    // Names whose case folding differs from toLowerCase(Locale.ROOT).
+    List<Attribute> attributes = new ArrayList<>();
+    attributes.add(new Attribute("\u212Aelvin", "1", null, null, null));
+    attributes.add(new Attribute("\u0130d", "2", null, null, null));
+
+    Sample shortSample = new Sample();
+    shortSample.setAttributes(attributes);
+    for (int i = 0; i < AttributeList.INDEX_THRESHOLD; i++) {
+      attributes.add(new Attribute("attribute" + i, "value" + i, null, null, null));
+    }
+    Sample longSample = new Sample();
+    longSample.setAttributes(attributes);
+
+    for (String name : Arrays.asList("kelvin", "KELVIN", "id", "\u0130D", "\u0131d")) {
+      Attribute scanned = shortSample.getAttribute(name);
+      Attribute indexed = longSample.getAttribute(name);
+      assertThat(indexed).isSameAs(scanned);
+    }
+    assertThat(AttributeList.foldCase("organism")).isSameAs("organism");
+  }
+
+  @Test
+  public void testSetAttributesCopiesList() {
+    List<Attribute> attributes = new ArrayList<>();
+    attributes.add(new Attribute("strain", "SK1", null, null, null));
+
+    Sample sample = new Sample();
+    sample.setAttributes(attributes);
+    attributes.clear();
+
+    assertThat(sample.getAttributes()).hasSize(1);
+  }
+
+  @Test
+  public void testAttributeIsCompact() {
+    Attribute first =
+        new Attribute(new String("organism"), "Homo sapiens", null, new String("m"), null);
+    Attribute second =
+        new Attribute(new String("organism"), "Mus musculus", null, new String("m"), null);
+
+    assertThat(first.getName()).isSameAs(second.getName());
+    assertThat(first.getUnit()).isSameAs(second.getUnit());
+    assertThat(first.getIri()).isNull();
+
+    assertThat(new Attribute("organism", null, new TreeSet<>(), null, null).getIri())
+        .isSameAs(Collections.emptySet());
+    assertThat(
+            new Attribute("organism", null, new TreeSet<>(Arrays.asList("a")), null, null)
+                .getIri())
+        .containsExactly("a");
+    assertThat(
+            new Attribute("organism", null, new TreeSet<>(Arrays.asList("b", "a")), null, null)
+                .getIri())
+        .containsExactly("a", "b");
+
+    TreeSet<String> iri = new TreeSet<>(Arrays.asList("b", "a"));
+    Attribute attribute = new Attribute("organism", null, iri, null, null);
+    iri.add("c");
+    assertThat(attribute.getIri()).containsExactly("a", "b");
+    assertThatThrownBy(() -> attribute.getIri().add("c"))
+        .isInstanceOf(UnsupportedOperationException.class);
+  }
+}